@@ -17,10 +17,23 @@
  */
 package controllers.api;
 
+import java.util.List;
+
 import javax.inject.Inject;
 
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.Query;
+import com.avaje.ebean.QueryIterator;
+
 import framework.services.api.AbstractApiController;
+import framework.services.api.ApiError;
 import framework.services.configuration.II18nMessagesPlugin;
+import play.Logger;
+import play.libs.F.Promise;
+import play.libs.Json;
+import play.mvc.Result;
+import play.mvc.Results.Chunks;
+import play.mvc.Results.StringChunks;
 
 /**
  * The base class for any ApiController.
@@ -29,9 +42,121 @@ import framework.services.configuration.II18nMessagesPlugin;
  */
 public class ApiController extends AbstractApiController {
 
+    /**
+     * The max number of objects of a page of a list endpoint.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * The response header containing the cursor of the next page of a list
+     * endpoint (absent for the last page).
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /**
+     * The number of objects serialized in a chunk of a streamed list.
+     */
+    private static final int STREAM_CHUNK_SIZE = 100;
+
     @Inject
     private II18nMessagesPlugin messagesPlugin;
 
+    /**
+     * Get the JSON response of a list endpoint.
+     * 
+     * Without page size, the objects are streamed as a JSON array in chunks,
+     * while iterating the query, so that they are never all in memory.
+     * 
+     * With a page size, the objects are returned by increasing id (the list
+     * endpoints have no other order), starting after the cursor: the id of
+     * the last object of the previous page. So a page is a range of the
+     * primary key index whatever its position, and the pages neither overlap
+     * nor skip an object when some are created or deleted meanwhile. If there
+     * are more objects, the cursor of the next page is set in the header
+     * {@link #NEXT_CURSOR_HEADER}.
+     * 
+     * @param query
+     *            the query of the objects
+     * @param cursor
+     *            the cursor returned with the previous page (null for the
+     *            first page)
+     * @param pageSize
+     *            the max number of objects (null for all)
+     */
+    protected <T> Result getJsonListResponse(Query<T> query, Long cursor, Integer pageSize) {
+
+        if (pageSize != null && (pageSize < 1 || pageSize > MAX_PAGE_SIZE)) {
+            return getJsonErrorResponse(new ApiError(400, "The page size must be between 1 and " + MAX_PAGE_SIZE));
+        }
+
+        if (cursor != null && cursor < 0) {
+            return getJsonErrorResponse(new ApiError(400, "The cursor is not valid"));
+        }
+
+        if (cursor != null || pageSize != null) {
+            query.orderBy("id");
+            if (cursor != null) {
+                query.where().gt("id", cursor);
+            }
+        }
+
+        if (pageSize == null) {
+            Chunks<String> chunks = StringChunks.whenReady(out -> Promise.promise(() -> {
+                writeAsJsonArray(query, out);
+                return null;
+            }));
+            return ok(chunks).as("application/json");
+        }
+
+        List<T> objects = query.setMaxRows(pageSize + 1).findList();
+        if (objects.size() > pageSize) {
+            objects = objects.subList(0, pageSize);
+            response().setHeader(NEXT_CURSOR_HEADER, String.valueOf(Ebean.getBeanId(objects.get(pageSize - 1))));
+        }
+        return getJsonSuccessResponse(objects);
+    }
+
+    /**
+     * Write the objects of a query as a JSON array in a chunked response.
+     * 
+     * The status of the response is already sent, so if an error occurs the
+     * array is not terminated (and thus the client gets an invalid JSON).
+     * 
+     * @param query
+     *            the query of the objects
+     * @param out
+     *            the output of the chunked response
+     */
+    private static <T> void writeAsJsonArray(Query<T> query, Chunks.Out<String> out) {
+
+        QueryIterator<T> iterator = query.findIterate();
+        try {
+
+            StringBuilder chunk = new StringBuilder("[");
+            int count = 0;
+            while (iterator.hasNext()) {
+                if (count > 0) {
+                    chunk.append(",");
+                }
+                chunk.append(Json.mapper().writeValueAsString(iterator.next()));
+                count++;
+                if (count % STREAM_CHUNK_SIZE == 0) {
+                    out.write(chunk.toString());
+                    chunk.setLength(0);
+                }
+            }
+            chunk.append("]");
+            out.write(chunk.toString());
+
+        } catch (Exception e) {
+            Logger.error("impossible to stream the objects of the query", e);
+        } finally {
+            iterator.close();
+            out.close();
+        }
+
+    }
+
     /**
      * Get the i18n messages service.
      */
@@ -75,6 +75,11 @@ public class ActorApiController extends ApiController {
      *            if not null then return only actors with the given competency.
      * @param orgUnitId
      *            if not null then return only actors with the given org unit.
+     * @param cursor
+     *            the cursor returned with the previous page (null for the
+     *            first page)
+     * @param pageSize
+     *            the max number of objects of the page (null for all)
      */
     @ApiAuthentication(additionalCheck = ApiAuthenticationBizdockCheck.class)
     @ApiOperation(value = "list the Actors", notes = "Return the list of Actors in the system", response = Actor.class, httpMethod = "GET")
@@ -84,7 +89,9 @@ public class ActorApiController extends ApiController {
             value = "managerId", required = false) @QueryParam("managerId") Long managerId,
             @ApiParam(value = "actorTypeId", required = false) @QueryParam("actorTypeId") Long actorTypeId, @ApiParam(value = "competencyId",
                     required = false) @QueryParam("competencyId") Long competencyId,
-            @ApiParam(value = "orgUnitId", required = false) @QueryParam("orgUnitId") Long orgUnitId) {
+            @ApiParam(value = "orgUnitId", required = false) @QueryParam("orgUnitId") Long orgUnitId,
+            @ApiParam(value = "cursor", required = false) @QueryParam("cursor") Long cursor,
+            @ApiParam(value = "pageSize", required = false) @QueryParam("pageSize") Integer pageSize) {
 
         try {
 
@@ -105,7 +112,7 @@ public class ActorApiController extends ApiController {
                 return getJsonErrorResponse(new ApiError(400, errorMsg));
             }
 
-            return getJsonSuccessResponse(ActorDao.getActorAsListByFilter(isActive, managerId, actorTypeId, competencyId, orgUnitId));
+            return getJsonListResponse(ActorDao.getActorAsExprByFilter(isActive, managerId, actorTypeId, competencyId, orgUnitId).query(), cursor, pageSize);
         } catch (Exception e) {
             return getJsonErrorResponse(new ApiError(500, "INTERNAL SERVER ERROR", e));
         }
@@ -37,6 +37,7 @@ import framework.services.api.server.ApiAuthentication;
 import models.datasyndication.DataSyndication;
 import play.mvc.BodyParser;
 import play.mvc.Result;
+import services.datasyndication.models.DataSyndicationPayload;
 
 /**
  * The API controller for the Data syndication.
@@ -55,10 +56,12 @@ public class DataSyndicationApiController extends ApiController {
      *            the agreement item id
      */
     @ApiAuthentication(additionalCheck = ApiAuthenticationBizdockCheck.class)
-    @ApiOperation(value = "Post syndicated data", notes = "Post a syndicated data for an item of an agreement link.", httpMethod = "POST")
+    @ApiOperation(value = "Post syndicated data", notes = "Post a syndicated data (full or delta to merge) for an item of an agreement link.",
+            httpMethod = "POST")
     @ApiImplicitParams({ @ApiImplicitParam(name = "body", value = "A syndicated data", required = true, dataType = "Json", paramType = "body") })
     @ApiResponses(value = { @ApiResponse(code = 204, message = "success"), @ApiResponse(code = 400, message = "bad request", response = ApiError.class),
             @ApiResponse(code = 404, message = "not found", response = ApiError.class),
+            @ApiResponse(code = 409, message = "delta without data to merge into", response = ApiError.class),
             @ApiResponse(code = 500, message = "error", response = ApiError.class) })
     @BodyParser.Of(BodyParser.Raw.class)
     public Result postData(@ApiParam(value = "Agreement link ID", required = true) @PathParam("agreementLinkId") Long agreementLinkId,
@@ -77,7 +80,31 @@ public class DataSyndicationApiController extends ApiController {
                 dataSyndication.dataSyndicationAgreementItemId = agreementItemId;
             }
 
-            dataSyndication.data = new ObjectMapper().writeValueAsString(json);
+            if (json.isArray()) {
+
+                // full table posted by an instance without delta
+                // synchronization
+                dataSyndication.data = new ObjectMapper().writeValueAsString(json);
+
+            } else {
+
+                DataSyndicationPayload payload = new ObjectMapper().treeToValue(json, DataSyndicationPayload.class);
+
+                // merge a delta with the current data
+                if (!payload.isFull) {
+                    DataSyndicationPayload currentPayload = DataSyndicationDao.getDataSyndicationAsPayload(dataSyndication);
+                    if (currentPayload == null) {
+                        return getJsonErrorResponse(new ApiError(409, "The delta cannot be merged, a full synchronization is required"));
+                    }
+                    currentPayload.merge(payload);
+                    payload = currentPayload;
+                }
+
+                payload.isFull = true;
+                dataSyndication.data = new ObjectMapper().writeValueAsString(payload);
+
+            }
+
             dataSyndication.save();
 
             // return json success
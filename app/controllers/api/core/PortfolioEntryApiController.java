@@ -114,6 +114,11 @@ public class PortfolioEntryApiController extends ApiController {
      * @param isPublic
      *            true to return only public portfolio entries, false only
      *            confidential, null all.
+     * @param cursor
+     *            the cursor returned with the previous page (null for the
+     *            first page)
+     * @param pageSize
+     *            the max number of objects of the page (null for all)
      */
     @ApiAuthentication(additionalCheck = ApiAuthenticationBizdockCheck.class)
     @ApiOperation(value = "list the Portfolio Entries", notes = "Return the list of Portfolio Entries in the system", response = PortfolioEntry.class,
@@ -126,7 +131,9 @@ public class PortfolioEntryApiController extends ApiController {
             @ApiParam(value = "portfolioId", required = false, allowMultiple = true) @QueryParam("portfolioId") List<Long> portfolioId,
             @ApiParam(value = "archived", required = false) @QueryParam("archived") Boolean archived,
             @ApiParam(value = "portfolioEntryTypeId", required = false, allowMultiple = true) @QueryParam("portfolioEntryTypeId") List<Long> portfolioEntryTypeId,
-            @ApiParam(value = "isPublic", required = false) @QueryParam("isPublic") Boolean isPublic) {
+            @ApiParam(value = "isPublic", required = false) @QueryParam("isPublic") Boolean isPublic,
+            @ApiParam(value = "cursor", required = false) @QueryParam("cursor") Long cursor,
+            @ApiParam(value = "pageSize", required = false) @QueryParam("pageSize") Integer pageSize) {
 
         try {
 
@@ -148,8 +155,8 @@ public class PortfolioEntryApiController extends ApiController {
                 return getJsonErrorResponse(new ApiError(400, errorMsg));
             }
 
-            return getJsonSuccessResponse(PortfolioEntryDao.getPEAsListByFilter(managerId, sponsoringUnitId, deliveryUnitId, portfolioId, archived,
-                    portfolioEntryTypeId, isPublic));
+            return getJsonListResponse(PortfolioEntryDao.getPEAsExprByFilter(managerId, sponsoringUnitId, deliveryUnitId, portfolioId, archived,
+                    portfolioEntryTypeId, isPublic).query(), cursor, pageSize);
         } catch (Exception e) {
             return getJsonErrorResponse(new ApiError(500, "INTERNAL SERVER ERROR", e));
         }
@@ -186,6 +193,11 @@ public class PortfolioEntryApiController extends ApiController {
      *
      * @param id
      *              the portfolio entry id
+     * @param cursor
+     *            the cursor returned with the previous page (null for the
+     *            first page)
+     * @param pageSize
+     *            the max number of objects of the page (null for all)
      */
     @ApiAuthentication(additionalCheck = ApiAuthenticationBizdockCheck.class)
     @ApiOperation(value = "Get a portfolio entry timesheets", notes = "Return the timesheet entries for a specific portfolio entry", response = TimesheetLog.class, httpMethod = "GET")
@@ -194,12 +206,14 @@ public class PortfolioEntryApiController extends ApiController {
             @ApiResponse(code = 400, message = "bad request", response = ApiError.class),
             @ApiResponse(code = 404, message = "not found", response = ApiError.class),
             @ApiResponse(code = 500, message = "error", response = ApiError.class)})
-    public Result getPorfolioEntryTimesheetLogs(@ApiParam(value = "portfolio entry id", required = true) @PathParam("id") Long id) {
+    public Result getPorfolioEntryTimesheetLogs(@ApiParam(value = "portfolio entry id", required = true) @PathParam("id") Long id,
+            @ApiParam(value = "cursor", required = false) @QueryParam("cursor") Long cursor,
+            @ApiParam(value = "pageSize", required = false) @QueryParam("pageSize") Integer pageSize) {
         try {
             if (PortfolioEntryDao.getPEById(id) == null) {
                 return getJsonErrorResponse(new ApiError(404, "The Porfolio Entry with the specified id is not found"));
             }
-            return getJsonSuccessResponse(TimesheetDao.getTimesheetLogActiveAsExprByPortfolioEntry(id).findList());
+            return getJsonListResponse(TimesheetDao.getTimesheetLogActiveAsExprByPortfolioEntry(id).query(), cursor, pageSize);
         } catch (Exception e) {
             return getJsonErrorResponse(new ApiError(500, "INTERNAL SERVER ERROR"));
         }
@@ -211,12 +225,12 @@ public class PortfolioEntryApiController extends ApiController {
      * @param id
      *              the portfolio entry id
      * @param groupBy
-     *              if provided, group actor timesheets by month or by week
+     *              if provided, group actor timesheets by day, week, month or quarter
      * @param actorId
      *              if provided, filter for one actor only
      * @param startDate
      *              if provided, filter for timesheet logs after the start date
-     * @param actorId
+     * @param endDate
      *              if provided, filter for timesheet logs before the end date
      */
     @ApiAuthentication(additionalCheck = ApiAuthenticationBizdockCheck.class)
@@ -228,7 +242,7 @@ public class PortfolioEntryApiController extends ApiController {
             @ApiResponse(code = 500, message = "error", response = ApiError.class)})
     public Result getPortfolioEntryTimesheetSummary(
             @ApiParam(value = "portfolio entry id", required = true) @PathParam("id") Long id,
-            @ApiParam(value = "group by") @QueryParam("groupBy") String groupBy,
+            @ApiParam(value = "group by", allowableValues = "day,week,month,quarter") @QueryParam("groupBy") String groupBy,
             @ApiParam(value = "actor id") @QueryParam("actorId") Long actorId,
             @ApiParam(value = "start date") @QueryParam("startDate") String startDateString,
             @ApiParam(value = "end date") @QueryParam("endDate") String endDateString) {
@@ -388,6 +402,11 @@ public class PortfolioEntryApiController extends ApiController {
      * 
      * @param id
      *            the portfolio entry id
+     * @param cursor
+     *            the cursor returned with the previous page (null for the
+     *            first page)
+     * @param pageSize
+     *            the max number of objects of the page (null for all)
      */
     @ApiAuthentication(additionalCheck = ApiAuthenticationBizdockCheck.class)
     @ApiOperation(value = "list the Events of the specified Portfolio Entry",
@@ -395,13 +414,15 @@ public class PortfolioEntryApiController extends ApiController {
     @ApiResponses(value = { @ApiResponse(code = 200, message = "success"), @ApiResponse(code = 400, message = "bad request", response = ApiError.class),
             @ApiResponse(code = 404, message = "not found", response = ApiError.class),
             @ApiResponse(code = 500, message = "error", response = ApiError.class) })
-    public Result getPortfolioEntryEventsList(@ApiParam(value = "portfolio entry id", required = true) @PathParam("id") Long id) {
+    public Result getPortfolioEntryEventsList(@ApiParam(value = "portfolio entry id", required = true) @PathParam("id") Long id,
+            @ApiParam(value = "cursor", required = false) @QueryParam("cursor") Long cursor,
+            @ApiParam(value = "pageSize", required = false) @QueryParam("pageSize") Integer pageSize) {
 
         try {
             if (PortfolioEntryDao.getPEById(id) == null) {
                 return getJsonErrorResponse(new ApiError(404, "The Portfolio Entry with the specified id is not found"));
             }
-            return getJsonSuccessResponse(PortfolioEntryEventDao.getPEEventAsExprByPE(id).findList());
+            return getJsonListResponse(PortfolioEntryEventDao.getPEEventAsExprByPE(id).query(), cursor, pageSize);
 
         } catch (Exception e) {
             return getJsonErrorResponse(new ApiError(500, "INTERNAL SERVER ERROR", e));
@@ -526,6 +547,11 @@ public class PortfolioEntryApiController extends ApiController {
      * 
      * @param id
      *            the portfolio entry id.
+     * @param cursor
+     *            the cursor returned with the previous page (null for the
+     *            first page)
+     * @param pageSize
+     *            the max number of objects of the page (null for all)
      */
     @ApiAuthentication(additionalCheck = ApiAuthenticationBizdockCheck.class)
     @ApiOperation(value = "list the Requirements of the specified Portfolio Entry",
@@ -533,13 +559,15 @@ public class PortfolioEntryApiController extends ApiController {
     @ApiResponses(value = { @ApiResponse(code = 200, message = "success"), @ApiResponse(code = 400, message = "bad request", response = ApiError.class),
             @ApiResponse(code = 404, message = "not found", response = ApiError.class),
             @ApiResponse(code = 500, message = "error", response = ApiError.class) })
-    public Result getRequirementsList(@ApiParam(value = "portfolio entry id", required = true) @PathParam("id") Long id) {
+    public Result getRequirementsList(@ApiParam(value = "portfolio entry id", required = true) @PathParam("id") Long id,
+            @ApiParam(value = "cursor", required = false) @QueryParam("cursor") Long cursor,
+            @ApiParam(value = "pageSize", required = false) @QueryParam("pageSize") Integer pageSize) {
 
         try {
             if (PortfolioEntryDao.getPEById(id) == null) {
                 return getJsonErrorResponse(new ApiError(404, "The Portfolio Entry with the specified id is not found"));
             }
-            return getJsonSuccessResponse(RequirementDAO.getRequirementAsListByPE(id));
+            return getJsonListResponse(RequirementDAO.getRequirementAsExprByPE(id).query(), cursor, pageSize);
 
         } catch (Exception e) {
             return getJsonErrorResponse(new ApiError(500, "INTERNAL SERVER ERROR", e));
@@ -578,6 +606,11 @@ public class PortfolioEntryApiController extends ApiController {
      * 
      * @param id
      *            the portfolio entry id
+     * @param cursor
+     *            the cursor returned with the previous page (null for the
+     *            first page)
+     * @param pageSize
+     *            the max number of objects of the page (null for all)
      **/
     @ApiAuthentication(additionalCheck = ApiAuthenticationBizdockCheck.class)
     @ApiOperation(value = "list the Budget Lines of the specified Portfolio Entry",
@@ -585,13 +618,15 @@ public class PortfolioEntryApiController extends ApiController {
     @ApiResponses(value = { @ApiResponse(code = 200, message = "success"), @ApiResponse(code = 400, message = "bad request", response = ApiError.class),
             @ApiResponse(code = 404, message = "not found", response = ApiError.class),
             @ApiResponse(code = 500, message = "error", response = ApiError.class) })
-    public Result getBudgetLinesOfPortfolioEntriesList(@ApiParam(value = "portfolio entry id", required = true) @PathParam("id") Long id) {
+    public Result getBudgetLinesOfPortfolioEntriesList(@ApiParam(value = "portfolio entry id", required = true) @PathParam("id") Long id,
+            @ApiParam(value = "cursor", required = false) @QueryParam("cursor") Long cursor,
+            @ApiParam(value = "pageSize", required = false) @QueryParam("pageSize") Integer pageSize) {
 
         try {
             if (PortfolioEntryDao.getPEById(id) == null) {
                 return getJsonErrorResponse(new ApiError(404, "The portfolio entry with the specified id is not found"));
             }
-            return getJsonSuccessResponse(PortfolioEntryBudgetDAO.getPEBudgetLineAsListByPE(id));
+            return getJsonListResponse(PortfolioEntryBudgetDAO.getPEBudgetLineAsExprByPE(id).query(), cursor, pageSize);
 
         } catch (Exception e) {
             return getJsonErrorResponse(new ApiError(500, "INTERNAL SERVER ERROR", e));
@@ -604,6 +639,11 @@ public class PortfolioEntryApiController extends ApiController {
      * 
      * @param id
      *            the portfolio entry id
+     * @param cursor
+     *            the cursor returned with the previous page (null for the
+     *            first page)
+     * @param pageSize
+     *            the max number of objects of the page (null for all)
      **/
     @ApiAuthentication(additionalCheck = ApiAuthenticationBizdockCheck.class)
     @ApiOperation(value = "list the Allocated Org Units of the specified Portfolio Entry",
@@ -612,12 +652,14 @@ public class PortfolioEntryApiController extends ApiController {
     @ApiResponses(value = { @ApiResponse(code = 200, message = "success"), @ApiResponse(code = 400, message = "bad request", response = ApiError.class),
             @ApiResponse(code = 404, message = "not found", response = ApiError.class),
             @ApiResponse(code = 500, message = "error", response = ApiError.class) })
-    public Result getPortfolioEntryResourcePlanAllocatedOrgUnitsList(@ApiParam(value = "portfolio entry id", required = true) @PathParam("id") Long id) {
+    public Result getPortfolioEntryResourcePlanAllocatedOrgUnitsList(@ApiParam(value = "portfolio entry id", required = true) @PathParam("id") Long id,
+            @ApiParam(value = "cursor", required = false) @QueryParam("cursor") Long cursor,
+            @ApiParam(value = "pageSize", required = false) @QueryParam("pageSize") Integer pageSize) {
         try {
             if (PortfolioEntryDao.getPEById(id) == null) {
                 return getJsonErrorResponse(new ApiError(404, "The portfolio entry with the specified id is not found"));
             }
-            return getJsonSuccessResponse(PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitAsListByPE(id));
+            return getJsonListResponse(PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitAsExprByPE(id).query(), cursor, pageSize);
 
         } catch (Exception e) {
             return getJsonErrorResponse(new ApiError(500, "INTERNAL SERVER ERROR", e));
@@ -629,6 +671,11 @@ public class PortfolioEntryApiController extends ApiController {
      * 
      * @param id
      *            the portfolio entry id
+     * @param cursor
+     *            the cursor returned with the previous page (null for the
+     *            first page)
+     * @param pageSize
+     *            the max number of objects of the page (null for all)
      **/
     @ApiAuthentication(additionalCheck = ApiAuthenticationBizdockCheck.class)
     @ApiOperation(value = "list the Allocated actors of the specified Portfolio Entry",
@@ -637,12 +684,14 @@ public class PortfolioEntryApiController extends ApiController {
     @ApiResponses(value = { @ApiResponse(code = 200, message = "success"), @ApiResponse(code = 400, message = "bad request", response = ApiError.class),
             @ApiResponse(code = 404, message = "not found", response = ApiError.class),
             @ApiResponse(code = 500, message = "error", response = ApiError.class) })
-    public Result getPortfolioEntryResourcePlanAllocatedActorsList(@ApiParam(value = "portfolio entry id", required = true) @PathParam("id") Long id) {
+    public Result getPortfolioEntryResourcePlanAllocatedActorsList(@ApiParam(value = "portfolio entry id", required = true) @PathParam("id") Long id,
+            @ApiParam(value = "cursor", required = false) @QueryParam("cursor") Long cursor,
+            @ApiParam(value = "pageSize", required = false) @QueryParam("pageSize") Integer pageSize) {
         try {
             if (PortfolioEntryDao.getPEById(id) == null) {
                 return getJsonErrorResponse(new ApiError(404, "The portfolio entry with the specified id is not found"));
             }
-            return getJsonSuccessResponse(PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsListByPE(id));
+            return getJsonListResponse(PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsExprByPE(id).query(), cursor, pageSize);
 
         } catch (Exception e) {
             return getJsonErrorResponse(new ApiError(500, "INTERNAL SERVER ERROR", e));
@@ -654,6 +703,11 @@ public class PortfolioEntryApiController extends ApiController {
      * 
      * @param id
      *            the portfolio entry id
+     * @param cursor
+     *            the cursor returned with the previous page (null for the
+     *            first page)
+     * @param pageSize
+     *            the max number of objects of the page (null for all)
      **/
     @ApiAuthentication(additionalCheck = ApiAuthenticationBizdockCheck.class)
     @ApiOperation(value = "list the Allocated Competencies of the specified Portfolio Entry",
@@ -662,12 +716,14 @@ public class PortfolioEntryApiController extends ApiController {
     @ApiResponses(value = { @ApiResponse(code = 200, message = "success"), @ApiResponse(code = 400, message = "bad request", response = ApiError.class),
             @ApiResponse(code = 404, message = "not found", response = ApiError.class),
             @ApiResponse(code = 500, message = "error", response = ApiError.class) })
-    public Result getPortfolioEntryResourcePlanAllocatedCompetenciesList(@ApiParam(value = "portfolio entry id", required = true) @PathParam("id") Long id) {
+    public Result getPortfolioEntryResourcePlanAllocatedCompetenciesList(@ApiParam(value = "portfolio entry id", required = true) @PathParam("id") Long id,
+            @ApiParam(value = "cursor", required = false) @QueryParam("cursor") Long cursor,
+            @ApiParam(value = "pageSize", required = false) @QueryParam("pageSize") Integer pageSize) {
         try {
             if (PortfolioEntryDao.getPEById(id) == null) {
                 return getJsonErrorResponse(new ApiError(404, "The portfolio entry with the specified id is not found"));
             }
-            return getJsonSuccessResponse(PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedCompetencyAsListByPE(id));
+            return getJsonListResponse(PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedCompetencyAsExprByPE(id).query(), cursor, pageSize);
 
         } catch (Exception e) {
             return getJsonErrorResponse(new ApiError(500, "INTERNAL SERVER ERROR", e));
@@ -679,6 +735,11 @@ public class PortfolioEntryApiController extends ApiController {
      * 
      * @param id
      *            the portfolio entry id
+     * @param cursor
+     *            the cursor returned with the previous page (null for the
+     *            first page)
+     * @param pageSize
+     *            the max number of objects of the page (null for all)
      **/
     @ApiAuthentication(additionalCheck = ApiAuthenticationBizdockCheck.class)
     @ApiOperation(value = "list the Work Orders of the specified Portfolio Entry",
@@ -686,12 +747,14 @@ public class PortfolioEntryApiController extends ApiController {
     @ApiResponses(value = { @ApiResponse(code = 200, message = "success"), @ApiResponse(code = 400, message = "bad request", response = ApiError.class),
             @ApiResponse(code = 404, message = "not found", response = ApiError.class),
             @ApiResponse(code = 500, message = "error", response = ApiError.class) })
-    public Result getWorkOrdersList(@ApiParam(value = "portfolioEntryId", required = true) @PathParam("id") Long id) {
+    public Result getWorkOrdersList(@ApiParam(value = "portfolioEntryId", required = true) @PathParam("id") Long id,
+            @ApiParam(value = "cursor", required = false) @QueryParam("cursor") Long cursor,
+            @ApiParam(value = "pageSize", required = false) @QueryParam("pageSize") Integer pageSize) {
         try {
             if (PortfolioEntryDao.getPEById(id) == null) {
                 return getJsonErrorResponse(new ApiError(404, "The portfolio entry with the specified id is not found"));
             }
-            return getJsonSuccessResponse(WorkOrderDAO.getWorkOrderAsList(id));
+            return getJsonListResponse(WorkOrderDAO.getWorkOrderAsExprByPE(id).query(), cursor, pageSize);
 
         } catch (Exception e) {
             return getJsonErrorResponse(new ApiError(500, "INTERNAL SERVER ERROR", e));
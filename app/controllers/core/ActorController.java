@@ -19,7 +19,6 @@ package controllers.core;
 
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -27,10 +26,8 @@ import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
 
 import be.objectify.deadbolt.java.actions.Dynamic;
 import be.objectify.deadbolt.java.actions.Group;
@@ -49,7 +46,6 @@ import framework.services.account.IPreferenceManagerPlugin;
 import framework.services.custom_attribute.ICustomAttributeManagerService;
 import framework.utils.DefaultSelectableValueHolderCollection;
 import framework.utils.IColumnFormatter;
-import framework.utils.JqueryGantt;
 import framework.utils.Menu.ClickableMenuItem;
 import framework.utils.Menu.HeaderMenuItem;
 import framework.utils.Msg;
@@ -66,25 +62,22 @@ import models.pmo.PortfolioEntry;
 import models.timesheet.TimesheetActivity;
 import models.timesheet.TimesheetActivityAllocatedActor;
 import models.timesheet.TimesheetReport;
-import play.Logger;
 import play.data.Form;
 import play.mvc.Controller;
 import play.mvc.Result;
 import play.mvc.With;
 import security.CheckActorExists;
 import services.budgettracking.IBudgetTrackingService;
+import services.capacityforecast.ICapacityForecastService;
+import services.gantt.IGanttDataService;
+import services.kpi.AbstractKpiBatchRunner;
 import services.tableprovider.ITableProvider;
-import utils.SortableCollection;
-import utils.SortableCollection.DateSortableObject;
 import utils.form.ActorCapacityFormData;
 import utils.form.ActorCompetenciesFormData;
 import utils.form.ActorDefaultCompetencyFormData;
 import utils.form.ActorFormData;
 import utils.form.TimesheetActivityAllocatedActorFormData;
 import utils.form.TimesheetReportApprovalFormData;
-import utils.gantt.SourceDataValue;
-import utils.gantt.SourceItem;
-import utils.gantt.SourceValue;
 import utils.table.*;
 
 /**
@@ -100,6 +93,9 @@ public class ActorController extends Controller {
     @Inject
     private IBudgetTrackingService budgetTrackingService;
 
+    @Inject
+    private ICapacityForecastService capacityForecastService;
+
     @Inject
     private ITableProvider tableProvider;
 
@@ -109,6 +105,9 @@ public class ActorController extends Controller {
     @Inject
     private ICustomAttributeManagerService customAttributeManagerService;
 
+    @Inject
+    private IGanttDataService ganttDataService;
+
     public static Form<ActorFormData> formTemplate = Form.form(ActorFormData.class);
 
     private static Form<TimesheetReportApprovalFormData> timesheetReportApprovalFormTemplate = Form.form(TimesheetReportApprovalFormData.class);
@@ -277,6 +276,9 @@ public class ActorController extends Controller {
         // save the custom attributes
         this.getCustomAttributeManagerService().validateAndSaveValues(boundForm, Actor.class, actor.id);
 
+        // the org unit of the actor could have changed
+        getCapacityForecastService().refreshActor(actor.id);
+
         return redirect(controllers.core.routes.ActorController.view(actor.id));
     }
 
@@ -296,6 +298,8 @@ public class ActorController extends Controller {
         // delete the actor
         actor.doDelete();
 
+        getCapacityForecastService().refreshActor(id);
+
         // success message
         Utilities.sendSuccessFlashMessage(Msg.get("core.actor.delete.successful"));
 
@@ -356,10 +360,13 @@ public class ActorController extends Controller {
             // force the default competency to an existing one
             actor.defaultCompetency = actor.competencies.get(0);
             actor.save();
+            getCapacityForecastService().refreshActor(actor.id);
             return ok(views.html.core.actor.default_competency_edit.render(actor, new DefaultSelectableValueHolderCollection<Long>(actor.competencies),
                     defaultCompetencyForm));
         }
 
+        getCapacityForecastService().refreshActor(actor.id);
+
         Utilities.sendSuccessFlashMessage(Msg.get("core.actor.competencies.edit.successful"));
 
         return redirect(controllers.core.routes.ActorController.view(actor.id));
@@ -385,6 +392,8 @@ public class ActorController extends Controller {
         defaultCompetencyFormData.fill(actor);
         actor.save();
 
+        getCapacityForecastService().refreshActor(actor.id);
+
         Utilities.sendSuccessFlashMessage(Msg.get("core.actor.competencies.edit.successful"));
 
         return redirect(controllers.core.routes.ActorController.view(actor.id));
@@ -410,6 +419,9 @@ public class ActorController extends Controller {
         Pagination<PortfolioEntry> pagination = PortfolioEntryDao.getPEActiveAsPaginationByManagerOrDirectStakeholder(this.getPreferenceManagerPlugin(), id);
         pagination.setCurrentPage(page);
 
+        // compute the KPI columns of the page with one batch by KPI
+        AbstractKpiBatchRunner.prepareBatch(pagination.getListOfObjects().stream().map(portfolioEntry -> portfolioEntry.id).collect(Collectors.toList()));
+
         List<PortfolioEntryListView> portfolioEntriesView = new ArrayList<PortfolioEntryListView>();
         for (PortfolioEntry portfolioEntry : pagination.getListOfObjects()) {
             portfolioEntriesView.add(new PortfolioEntryListView(portfolioEntry, StakeholderDao.getStakeholderAsListByActorAndPE(id, portfolioEntry.id)));
@@ -463,119 +475,8 @@ public class ActorController extends Controller {
         // get the actor
         Actor actor = ActorDao.getActorById(id);
 
-        // prepare the data (to order them)
-        SortableCollection<DateSortableObject> sortableCollection = new SortableCollection<>();
-
-        PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsListByActorAndActiveAndArchived(id, true, false)
-                .stream()
-                .filter(allocatedActor -> allocatedActor.endDate != null)
-                .forEach(allocatedActor -> {
-                    sortableCollection.addObject(new DateSortableObject(allocatedActor.endDate, allocatedActor));
-                });
-
-        TimesheetDao.getTimesheetActivityAllocatedActorAsListByActor(id, true)
-                .stream()
-                .filter(allocatedActivity -> allocatedActivity.endDate != null)
-                .forEach(allocatedActivity -> {
-                    sortableCollection.addObject(new DateSortableObject(allocatedActivity.endDate, allocatedActivity));
-                });
-
         // construct the gantt
-
-        List<SourceItem> items = new ArrayList<SourceItem>();
-
-        for (DateSortableObject dateSortableObject : sortableCollection.getSorted()) {
-
-            if (dateSortableObject.getObject() instanceof PortfolioEntryResourcePlanAllocatedActor) {
-
-                PortfolioEntryResourcePlanAllocatedActor allocatedActor = (PortfolioEntryResourcePlanAllocatedActor) dateSortableObject.getObject();
-
-                // get the from date
-                Date from = allocatedActor.startDate;
-
-                // get the to date
-                Date to = allocatedActor.endDate;
-
-                // get the portfolio entry
-                Long portfolioEntryId = allocatedActor.portfolioEntryResourcePlan.lifeCycleInstancePlannings.get(0).lifeCycleInstance.portfolioEntry.id;
-                PortfolioEntry portfolioEntry = PortfolioEntryDao.getPEById(portfolioEntryId);
-
-                String packageName = allocatedActor.portfolioEntryPlanningPackage != null ? allocatedActor.portfolioEntryPlanningPackage.getName() : "";
-
-                SourceItem item = new SourceItem(portfolioEntry.getName(), packageName);
-
-                String cssClass = null;
-
-                if (from != null) {
-
-                    to = JqueryGantt.cleanToDate(from, to);
-                    cssClass = "";
-
-                } else {
-
-                    from = to;
-                    cssClass = "diamond diamond-";
-
-                }
-
-                cssClass += allocatedActor.portfolioEntryResourcePlanAllocationStatusType.getCssClass();
-
-                SourceDataValue dataValue = new SourceDataValue(controllers.core.routes.PortfolioEntryPlanningController.resources(portfolioEntry.id).url(),
-                        null, null, null, null);
-
-                item.values.add(new SourceValue(from, to, "",
-                        views.html.framework_views.parts.formats.display_number.render(allocatedActor.days, null, false).body(), cssClass, dataValue));
-
-                items.add(item);
-
-            }
-
-            if (dateSortableObject.getObject() instanceof TimesheetActivityAllocatedActor) {
-
-                TimesheetActivityAllocatedActor allocatedActivity = (TimesheetActivityAllocatedActor) dateSortableObject.getObject();
-
-                // get the from date
-                Date from = allocatedActivity.startDate;
-
-                // get the to date
-                Date to = allocatedActivity.endDate;
-
-                SourceItem item = new SourceItem(allocatedActivity.timesheetActivity.getName(), "");
-
-                String cssClass = null;
-
-                if (from != null) {
-
-                    to = JqueryGantt.cleanToDate(from, to);
-                    cssClass = "";
-
-                } else {
-
-                    from = to;
-                    cssClass = "diamond diamond-";
-
-                }
-
-                cssClass += "info";
-
-                SourceDataValue dataValue = new SourceDataValue(controllers.core.routes.ActorController.allocationDetails(actor.id, 0, 0, false).url(), null,
-                        null, null, null);
-
-                item.values.add(new SourceValue(from, to, "",
-                        views.html.framework_views.parts.formats.display_number.render(allocatedActivity.days, null, false).body(), cssClass, dataValue));
-
-                items.add(item);
-            }
-
-        }
-
-        String ganttSource = "";
-        try {
-            ObjectWriter ow = new ObjectMapper().writer().withDefaultPrettyPrinter();
-            ganttSource = ow.writeValueAsString(items);
-        } catch (JsonProcessingException e) {
-            Logger.error(e.getMessage());
-        }
+        String ganttSource = getGanttDataService().getActorAllocationSource(id);
 
         return ok(views.html.core.actor.actor_allocation.render(actor, ganttSource));
     }
@@ -756,6 +657,8 @@ public class ActorController extends Controller {
         // save the custom attributes
         this.getCustomAttributeManagerService().validateAndSaveValues(boundForm, TimesheetActivityAllocatedActor.class, allocatedActivity.id);
 
+        getCapacityForecastService().refreshActor(id);
+
         return redirect(controllers.core.routes.ActorController.allocationDetails(id, 0, 0, false));
 
     }
@@ -783,6 +686,8 @@ public class ActorController extends Controller {
         // set the delete flag to true
         allocatedActivity.doDelete();
 
+        getCapacityForecastService().refreshActor(id);
+
         Utilities.sendSuccessFlashMessage(Msg.get("core.actor.allocated_activity.delete.successful"));
 
         return redirect(controllers.core.routes.ActorController.allocationDetails(id, 0, 0, false));
@@ -942,6 +847,13 @@ public class ActorController extends Controller {
         return this.budgetTrackingService;
     }
 
+    /**
+     * Get the capacity forecast service.
+     */
+    private ICapacityForecastService getCapacityForecastService() {
+        return this.capacityForecastService;
+    }
+
     /**
      * Get the table provider.
      */
@@ -963,4 +875,11 @@ public class ActorController extends Controller {
         return this.customAttributeManagerService;
     }
 
+    /**
+     * Get the gantt data service.
+     */
+    private IGanttDataService getGanttDataService() {
+        return this.ganttDataService;
+    }
+
 }
@@ -22,21 +22,23 @@ import be.objectify.deadbolt.java.actions.Group;
 import be.objectify.deadbolt.java.actions.Restrict;
 import be.objectify.deadbolt.java.actions.SubjectPresent;
 import com.avaje.ebean.ExpressionList;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
 import constants.IMafConstants;
+import constants.MafDataType;
 import controllers.ControllersUtils;
 import dao.finance.PortfolioEntryResourcePlanDAO;
 import dao.pmo.ActorDao;
 import dao.pmo.OrgUnitDao;
 import dao.pmo.PortfolioEntryDao;
 import dao.timesheet.TimesheetDao;
+import framework.commons.message.EventMessage;
 import framework.security.ISecurityService;
 import framework.services.account.IPreferenceManagerPlugin;
+import framework.services.audit.IAuditLoggerService;
 import framework.services.configuration.II18nMessagesPlugin;
 import framework.services.custom_attribute.ICustomAttributeManagerService;
+import framework.services.plugins.IEventBroadcastingService;
 import framework.services.session.IUserSessionManagerPlugin;
 import framework.utils.*;
 import framework.utils.Menu.ClickableMenuItem;
@@ -57,15 +59,13 @@ import play.mvc.Result;
 import play.mvc.With;
 import security.CheckActorExists;
 import security.CheckOrgUnitExists;
+import services.action_log.IMafActionLogService;
 import services.budgettracking.IBudgetTrackingService;
+import services.capacityforecast.ICapacityForecastService;
+import services.gantt.IGanttDataService;
 import services.tableprovider.ITableProvider;
-import utils.SortableCollection;
-import utils.SortableCollection.DateSortableObject;
 import utils.form.OrgUnitFormData;
 import utils.form.TimesheetActivityAllocatedActorFormData;
-import utils.gantt.SourceDataValue;
-import utils.gantt.SourceItem;
-import utils.gantt.SourceValue;
 import utils.table.*;
 
 import javax.inject.Inject;
@@ -86,6 +86,8 @@ public class OrgUnitController extends Controller {
     @Inject
     private IBudgetTrackingService budgetTrackingService;
     @Inject
+    private ICapacityForecastService capacityForecastService;
+    @Inject
     private IUserSessionManagerPlugin userSessionManagerPlugin;
     @Inject
     private ISecurityService securityService;
@@ -95,6 +97,14 @@ public class OrgUnitController extends Controller {
     private IPreferenceManagerPlugin preferenceManagerPlugin;
     @Inject
     private ICustomAttributeManagerService customAttributeManagerService;
+    @Inject
+    private IMafActionLogService mafActionLogService;
+    @Inject
+    private IAuditLoggerService auditLoggerService;
+    @Inject
+    private IEventBroadcastingService eventBroadcastingService;
+    @Inject
+    private IGanttDataService ganttDataService;
 
     private static Logger.ALogger log = Logger.of(OrgUnitController.class);
 
@@ -275,10 +285,7 @@ public class OrgUnitController extends Controller {
         Pagination<PortfolioEntry> pagination = PortfolioEntryDao.getPEActiveAsPaginationByOrgUnit(this.getPreferenceManagerPlugin(), id);
         pagination.setCurrentPage(page);
 
-        List<PortfolioEntryListView> portfolioEntriesView = new ArrayList<PortfolioEntryListView>();
-        for (PortfolioEntry portfolioEntry : pagination.getListOfObjects()) {
-            portfolioEntriesView.add(new PortfolioEntryListView(portfolioEntry));
-        }
+        List<PortfolioEntryListView> portfolioEntriesView = PortfolioEntryListView.getAsList(pagination.getListOfObjects());
 
         List<Object> configurationList = getConfiguration().getList("table.view.portfolioentry.columns.hide");
         Set<String> hideNonDefaultColumns = configurationList != null ?
@@ -303,120 +310,8 @@ public class OrgUnitController extends Controller {
         // get the org unit
         OrgUnit orgUnit = OrgUnitDao.getOrgUnitById(id);
 
-        // prepare the data (to order them)
-        SortableCollection<DateSortableObject> sortableCollection = new SortableCollection<>();
-        PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsListByOrgUnitAndActive(id, true, true)
-                .stream()
-                .filter(allocatedActor -> allocatedActor.endDate != null)
-                .forEach(allocatedActor
-                        -> sortableCollection.addObject(new DateSortableObject(allocatedActor.endDate, allocatedActor))
-                );
-
-        TimesheetDao.getTimesheetActivityAllocatedActorAsListByOrgUnit(id, true)
-                .stream()
-                .filter(allocatedActivity -> allocatedActivity.endDate != null)
-                .forEach(allocatedActivity
-                        -> sortableCollection.addObject(new DateSortableObject(allocatedActivity.endDate, allocatedActivity))
-                );
-
         // construct the gantt
-
-        List<SourceItem> items = new ArrayList<SourceItem>();
-
-        for (DateSortableObject dateSortableObject : sortableCollection.getSorted()) {
-
-            if (dateSortableObject.getObject() instanceof PortfolioEntryResourcePlanAllocatedActor) {
-
-                PortfolioEntryResourcePlanAllocatedActor allocatedActor = (PortfolioEntryResourcePlanAllocatedActor) dateSortableObject.getObject();
-
-                // get the from date
-                Date from = allocatedActor.startDate;
-
-                // get the to date
-                Date to = allocatedActor.endDate;
-
-                // get the portfolio entry
-                Long portfolioEntryId = allocatedActor.portfolioEntryResourcePlan.lifeCycleInstancePlannings.get(0).lifeCycleInstance.portfolioEntry.id;
-                PortfolioEntry portfolioEntry = PortfolioEntryDao.getPEById(portfolioEntryId);
-
-                String packageName = allocatedActor.portfolioEntryPlanningPackage != null ? allocatedActor.portfolioEntryPlanningPackage.getName() + " / "
-                        : "";
-
-                SourceItem item = new SourceItem(allocatedActor.actor.getNameHumanReadable(), portfolioEntry.getName());
-
-                String cssClass = null;
-
-                if (from != null) {
-
-                    to = JqueryGantt.cleanToDate(from, to);
-                    cssClass = "";
-
-                } else {
-
-                    from = to;
-                    cssClass = "diamond diamond-";
-
-                }
-
-                cssClass += allocatedActor.portfolioEntryResourcePlanAllocationStatusType.getCssClass();
-
-                SourceDataValue dataValue = new SourceDataValue(controllers.core.routes.PortfolioEntryPlanningController.resources(portfolioEntry.id).url(),
-                        null, null, null, null);
-
-                item.values.add(new SourceValue(from, to, "",
-                        packageName + views.html.framework_views.parts.formats.display_number.render(allocatedActor.days, null, false).body(), cssClass,
-                        dataValue));
-
-                items.add(item);
-
-            }
-
-            if (dateSortableObject.getObject() instanceof TimesheetActivityAllocatedActor) {
-
-                TimesheetActivityAllocatedActor allocatedActivity = (TimesheetActivityAllocatedActor) dateSortableObject.getObject();
-
-                // get the from date
-                Date from = allocatedActivity.startDate;
-
-                // get the to date
-                Date to = allocatedActivity.endDate;
-
-                SourceItem item = new SourceItem(allocatedActivity.actor.getNameHumanReadable(), allocatedActivity.timesheetActivity.getName());
-
-                String cssClass = null;
-
-                if (from != null) {
-
-                    to = JqueryGantt.cleanToDate(from, to);
-                    cssClass = "";
-
-                } else {
-
-                    from = to;
-                    cssClass = "diamond diamond-";
-
-                }
-
-                cssClass += "info";
-
-                SourceDataValue dataValue = new SourceDataValue(
-                        controllers.core.routes.ActorController.allocationDetails(allocatedActivity.actor.id, 0, 0, false).url(), null, null, null, null);
-
-                item.values.add(new SourceValue(from, to, "",
-                        views.html.framework_views.parts.formats.display_number.render(allocatedActivity.days, null, false).body(), cssClass, dataValue));
-
-                items.add(item);
-            }
-
-        }
-
-        String ganttSource = "";
-        try {
-            ObjectWriter ow = new ObjectMapper().writer().withDefaultPrettyPrinter();
-            ganttSource = ow.writeValueAsString(items);
-        } catch (JsonProcessingException e) {
-            Logger.error(e.getMessage());
-        }
+        String ganttSource = getGanttDataService().getOrgUnitAllocationSource(id);
 
         return ok(views.html.core.orgunit.org_unit_allocation.render(orgUnit, ganttSource));
 
@@ -709,17 +604,14 @@ public class OrgUnitController extends Controller {
                 + "</div>");
     }
 
+    /**
+     * Update the given delivery units allocations status
+     *
+     * @param ids the list of allocations ids
+     * @param status the status to update
+     */
     private void updateDeliveryUnitsAllocationsStatus(List<String> ids, PortfolioEntryResourcePlanAllocationStatusType.AllocationStatus status) {
-        if (ids != null) {
-            ids.forEach(idAsString -> {
-                Long id = Long.parseLong(idAsString);
-                PortfolioEntryResourcePlanAllocatedOrgUnit allocatedOrgUnit = PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitById(id);
-                allocatedOrgUnit.portfolioEntryResourcePlanAllocationStatusType = PortfolioEntryResourcePlanDAO.getAllocationStatusByType(status);
-                allocatedOrgUnit.lastStatusTypeUpdateTime = new Date();
-                allocatedOrgUnit.lastStatusTypeUpdateActor = ActorDao.getActorByUid(getUserSessionManagerPlugin().getUserSessionId(ctx()));
-                allocatedOrgUnit.update();
-            });
-        }
+        updateAllocationsStatus(PortfolioEntryResourcePlanAllocatedOrgUnit.class, "orgUnit", ids, status);
     }
 
     /**
@@ -797,15 +689,36 @@ public class OrgUnitController extends Controller {
      * @param status the status to update
      */
     private void updateActorsPortfolioEntryAllocationsStatus(List<String> ids, PortfolioEntryResourcePlanAllocationStatusType.AllocationStatus status) {
+        updateAllocationsStatus(PortfolioEntryResourcePlanAllocatedActor.class, "actor", ids, status);
+    }
+
+    /**
+     * Update the status of the given allocations with set-based updates, log
+     * the updated allocations (one batch), then once by portfolio entry (all
+     * loaded with one query): audit the change, notify the plugins, refresh
+     * the capacity forecast and recompute the budget tracking.
+     *
+     * @param allocationClass the allocation class
+     * @param allocationType the allocation type (for the action log)
+     * @param ids the list of allocations ids
+     * @param status the status to update
+     */
+    private void updateAllocationsStatus(Class<?> allocationClass, String allocationType, List<String> ids,
+            PortfolioEntryResourcePlanAllocationStatusType.AllocationStatus status) {
         if (ids != null) {
-            ids.forEach(idAsString -> {
-                Long id = Long.parseLong(idAsString);
-                PortfolioEntryResourcePlanAllocatedActor allocatedActor = PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorById(id);
-                allocatedActor.portfolioEntryResourcePlanAllocationStatusType = PortfolioEntryResourcePlanDAO.getAllocationStatusByType(status);
-                allocatedActor.lastStatusTypeUpdateTime = new Date();
-                allocatedActor.lastStatusTypeUpdateActor = ActorDao.getActorByUid(getUserSessionManagerPlugin().getUserSessionId(ctx()));
-                allocatedActor.update();
-            });
+            List<Long> allocationIds = ids.stream().map(Long::parseLong).collect(Collectors.toList());
+            Actor actor = ActorDao.getActorByUid(getUserSessionManagerPlugin().getUserSessionId(ctx()));
+            Map<Long, List<Long>> allocationIdsByPortfolioEntry = PortfolioEntryResourcePlanDAO.updateAllocationsStatus(allocationClass, allocationIds,
+                    status, actor);
+            getMafActionLogService().logChangeAllocationsStatus(allocationType, status.name(), actor != null ? actor.id : null,
+                    allocationIdsByPortfolioEntry);
+            for (PortfolioEntry portfolioEntry : PortfolioEntryDao.getPEAsListByIds(allocationIdsByPortfolioEntry.keySet())) {
+                getAuditLoggerService().logUpdate(portfolioEntry);
+                getEventBroadcastingService().postOutMessage(
+                        new EventMessage(portfolioEntry.id, MafDataType.getPortfolioEntry(), EventMessage.MessageType.OBJECT_UPDATED));
+                getCapacityForecastService().refreshPortfolioEntry(portfolioEntry.id);
+            }
+            getBudgetTrackingService().recomputePortfolioEntries(allocationIdsByPortfolioEntry.keySet());
         }
     }
 
@@ -890,6 +803,8 @@ public class OrgUnitController extends Controller {
         allocatedActivityFormData.fill(allocatedActivity);
         allocatedActivity.save();
 
+        getCapacityForecastService().refreshActor(allocatedActivity.actor.id);
+
         Utilities.sendSuccessFlashMessage(Msg.get("core.org_unit.actor_allocated_activity.add.successful"));
 
         // save the custom attributes
@@ -1116,6 +1031,13 @@ public class OrgUnitController extends Controller {
         return this.budgetTrackingService;
     }
 
+    /**
+     * Get the capacity forecast service.
+     */
+    private ICapacityForecastService getCapacityForecastService() {
+        return this.capacityForecastService;
+    }
+
     /**
      * Get the security service.
      * 
@@ -1146,4 +1068,32 @@ public class OrgUnitController extends Controller {
         return this.customAttributeManagerService;
     }
 
+    /**
+     * Get the MAF action log service.
+     */
+    private IMafActionLogService getMafActionLogService() {
+        return this.mafActionLogService;
+    }
+
+    /**
+     * Get the gantt data service.
+     */
+    private IGanttDataService getGanttDataService() {
+        return this.ganttDataService;
+    }
+
+    /**
+     * Get the audit logger service.
+     */
+    private IAuditLoggerService getAuditLoggerService() {
+        return this.auditLoggerService;
+    }
+
+    /**
+     * Get the event broadcasting service.
+     */
+    private IEventBroadcastingService getEventBroadcastingService() {
+        return this.eventBroadcastingService;
+    }
+
 }
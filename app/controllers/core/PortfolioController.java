@@ -141,10 +141,7 @@ public class PortfolioController extends Controller {
         portfolioEntryPagination.setCurrentPage(portfolioEntryPage);
         portfolioEntryPagination.setPageQueryName("portfolioEntryPage");
 
-        List<PortfolioEntryListView> portfolioEntriesView = new ArrayList<PortfolioEntryListView>();
-        for (PortfolioEntry portfolioEntry : portfolioEntryPagination.getListOfObjects()) {
-            portfolioEntriesView.add(new PortfolioEntryListView(portfolioEntry));
-        }
+        List<PortfolioEntryListView> portfolioEntriesView = PortfolioEntryListView.getAsList(portfolioEntryPagination.getListOfObjects());
 
         Table<PortfolioEntryListView> filledPortfolioEntryTable = this.getTableProvider().get().portfolioEntry.templateTable.fill(portfolioEntriesView,
                 PortfolioEntryListView.getHideNonDefaultColumns(true, true));
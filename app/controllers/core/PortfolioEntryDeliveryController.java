@@ -71,6 +71,8 @@ import play.mvc.Result;
 import play.mvc.With;
 import security.CheckPortfolioEntryExists;
 import security.dynamic.PortfolioEntryDynamicHelper;
+import services.delivery.IRequirementStatisticsService;
+import services.delivery.RequirementStatistics;
 import services.tableprovider.ITableProvider;
 import utils.form.DeliverableFormData;
 import utils.form.DeliverableRequirementsFormData;
@@ -106,6 +108,8 @@ public class PortfolioEntryDeliveryController extends Controller {
     private IPreferenceManagerPlugin preferenceManagerPlugin;
     @Inject
     private ICustomAttributeManagerService customAttributeManagerService;
+    @Inject
+    private IRequirementStatisticsService requirementStatisticsService;
 
     private static Logger.ALogger log = Logger.of(PortfolioEntryDeliveryController.class);
 
@@ -678,6 +682,9 @@ public class PortfolioEntryDeliveryController extends Controller {
         // get the portfolio entry
         PortfolioEntry portfolioEntry = PortfolioEntryDao.getPEById(id);
 
+        // get all the requirement statistics of the portfolio entry
+        RequirementStatistics statistics = this.getRequirementStatisticsService().getStatistics(id);
+
         // priority pie chart (for the needs)
 
         DistributedDonut distributedDonutPriority = new DistributedDonut(getMessagesPlugin());
@@ -685,7 +692,7 @@ public class PortfolioEntryDeliveryController extends Controller {
         DistributedDonut.Elem mustElem = new DistributedDonut.Elem(Msg.get("core.portfolio_entry_delivery.requirement.status.priority.must.true.label"));
         double mustTotal = 0;
         for (Type type : Type.values()) {
-            Double count = Double.valueOf(RequirementDAO.getRequirementNeedsAsExprByPEAndStatusType(id, type, true).findRowCount());
+            Double count = Double.valueOf(statistics.getNeedsCount(type, true));
             if (count != null && count.doubleValue() != 0) {
                 mustElem.addSubValue(Msg.get("object.requirement_status.type." + type.name() + ".label"), count);
                 mustTotal += count.doubleValue();
@@ -699,7 +706,7 @@ public class PortfolioEntryDeliveryController extends Controller {
         DistributedDonut.Elem notMustElem = new DistributedDonut.Elem(Msg.get("core.portfolio_entry_delivery.requirement.status.priority.must.false.label"));
         double notMustTotal = 0;
         for (Type type : Type.values()) {
-            Double count = Double.valueOf(RequirementDAO.getRequirementNeedsAsExprByPEAndStatusType(id, type, false).findRowCount());
+            Double count = Double.valueOf(statistics.getNeedsCount(type, false));
             if (count != null && count.doubleValue() != 0) {
                 notMustElem.addSubValue(Msg.get("object.requirement_status.type." + type.name() + ".label"), count);
                 notMustTotal += count.doubleValue();
@@ -729,7 +736,7 @@ public class PortfolioEntryDeliveryController extends Controller {
             for (RequirementPriority priority : RequirementDAO.getRequirementPriorityAsList()) {
                 BasicBar.Elem elem = new BasicBar.Elem(priority.getName());
                 for (Type type : Type.values()) {
-                    elem.addValue(Double.valueOf(RequirementDAO.getRequirementNeedsAsExprByPEAndStatusTypeAndPriority(id, type, priority.id).findRowCount()));
+                    elem.addValue(Double.valueOf(statistics.getNeedsCountByPriority(type, priority.id)));
                 }
                 basicBarPriority.addElem(elem);
             }
@@ -744,7 +751,7 @@ public class PortfolioEntryDeliveryController extends Controller {
                 Msg.get("core.portfolio_entry_delivery.requirement.status.severity.blocker.true.label"));
         double blockerTotal = 0;
         for (Type type : Type.values()) {
-            Double count = Double.valueOf(RequirementDAO.getRequirementDefectsAsExprByPEAndStatusType(id, type, true).findRowCount());
+            Double count = Double.valueOf(statistics.getDefectsCount(type, true));
             if (count != null && count.doubleValue() != 0) {
                 blockerElem.addSubValue(Msg.get("object.requirement_status.type." + type.name() + ".label"), count);
                 blockerTotal += count.doubleValue();
@@ -759,7 +766,7 @@ public class PortfolioEntryDeliveryController extends Controller {
                 Msg.get("core.portfolio_entry_delivery.requirement.status.severity.blocker.false.label"));
         double nonBlockerTotal = 0;
         for (Type type : Type.values()) {
-            Double count = Double.valueOf(RequirementDAO.getRequirementDefectsAsExprByPEAndStatusType(id, type, false).findRowCount());
+            Double count = Double.valueOf(statistics.getDefectsCount(type, false));
             if (count != null && count.doubleValue() != 0) {
                 nonBlockerElem.addSubValue(Msg.get("object.requirement_status.type." + type.name() + ".label"), count);
                 nonBlockerTotal += count.doubleValue();
@@ -789,8 +796,7 @@ public class PortfolioEntryDeliveryController extends Controller {
             for (RequirementSeverity requirementSeverity : RequirementDAO.getRequirementSeverityAsList()) {
                 BasicBar.Elem elem = new BasicBar.Elem(requirementSeverity.getName());
                 for (Type type : Type.values()) {
-                    elem.addValue(Double.valueOf(
-                            RequirementDAO.getRequirementDefectsAsExprByPEAndStatusTypeAndSeverity(id, type, requirementSeverity.id).findRowCount()));
+                    elem.addValue(Double.valueOf(statistics.getDefectsCountBySeverity(type, requirementSeverity.id)));
                 }
                 basicBarSeverity.addElem(elem);
             }
@@ -918,6 +924,8 @@ public class PortfolioEntryDeliveryController extends Controller {
             requirementFormData.fill(requirement);
             requirement.save();
 
+            this.getRequirementStatisticsService().invalidate(portfolioEntry.id);
+
             Utilities.sendSuccessFlashMessage(Msg.get("core.portfolio_entry_delivery.requirement.add.successful"));
 
         } else { // edit case
@@ -930,6 +938,8 @@ public class PortfolioEntryDeliveryController extends Controller {
             requirementFormData.fill(requirement);
             requirement.update();
 
+            this.getRequirementStatisticsService().invalidate(portfolioEntry.id);
+
             Utilities.sendSuccessFlashMessage(Msg.get("core.portfolio_entry_delivery.requirement.edit.successful"));
 
         }
@@ -1258,4 +1268,11 @@ public class PortfolioEntryDeliveryController extends Controller {
         return this.customAttributeManagerService;
     }
 
+    /**
+     * Get the requirement statistics service.
+     */
+    private IRequirementStatisticsService getRequirementStatisticsService() {
+        return this.requirementStatisticsService;
+    }
+
 }
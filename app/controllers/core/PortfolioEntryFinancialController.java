@@ -19,6 +19,7 @@ package controllers.core;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -62,6 +63,7 @@ import play.mvc.With;
 import security.CheckPortfolioEntryExists;
 import services.budgettracking.IBudgetTrackingService;
 import services.tableprovider.ITableProvider;
+import utils.finance.FinancialAmounts;
 import utils.finance.Totals;
 import utils.form.EngageWorkOrderAmountSelectorFormData;
 import utils.form.PortfolioEntryBudgetLineFormData;
@@ -303,14 +305,9 @@ public class PortfolioEntryFinancialController extends Controller {
         // get the portfolioEntry
         PortfolioEntry portfolioEntry = PortfolioEntryDao.getPEById(id);
 
-        // compute the totals
-        Double opexTotalBudget = PortfolioEntryDao.getPEAsBudgetAmountByOpex(id, true);
-        Double capexTotalBudget = PortfolioEntryDao.getPEAsBudgetAmountByOpex(id, false);
-        Double opexTotalCostToComplete = PortfolioEntryDao.getPEAsCostToCompleteAmountByOpex(this.getPreferenceManagerPlugin(), id, true);
-        Double capexTotalCostToComplete = PortfolioEntryDao.getPEAsCostToCompleteAmountByOpex(this.getPreferenceManagerPlugin(), id, false);
-        Double opexTotalEngaged = PortfolioEntryDao.getPEAsEngagedAmountByOpex(this.getPreferenceManagerPlugin(), id, true);
-        Double capexTotalEngaged = PortfolioEntryDao.getPEAsEngagedAmountByOpex(this.getPreferenceManagerPlugin(), id, false);
-        Totals totals = new Totals(opexTotalBudget, capexTotalBudget, opexTotalCostToComplete, capexTotalCostToComplete, opexTotalEngaged, capexTotalEngaged);
+        // compute the totals (all amounts are loaded in one round trip)
+        FinancialAmounts amounts = PortfolioEntryDao.getPEAsFinancialAmountsMapByPE(this.getPreferenceManagerPlugin(), Collections.singletonList(id)).get(id);
+        Totals totals = amounts.getTotals(null);
 
         Totals effortTotals = null;
         Totals costTotals = null;
@@ -318,24 +315,10 @@ public class PortfolioEntryFinancialController extends Controller {
         if (this.getBudgetTrackingService().isActive()) {
 
             // compute the totals for effort
-            Double effortOpexTotalBudget = PortfolioEntryDao.getPEAsBudgetAmountByOpex(id, true, true);
-            Double effortCapexTotalBudget = PortfolioEntryDao.getPEAsBudgetAmountByOpex(id, false, true);
-            Double effortOpexTotalCostToComplete = PortfolioEntryDao.getPEAsCostToCompleteAmountByOpex(this.getPreferenceManagerPlugin(), id, true, true);
-            Double effortCapexTotalCostToComplete = PortfolioEntryDao.getPEAsCostToCompleteAmountByOpex(this.getPreferenceManagerPlugin(), id, false, true);
-            Double effortOpexTotalEngaged = PortfolioEntryDao.getPEAsEngagedAmountByOpex(this.getPreferenceManagerPlugin(), id, true, true);
-            Double effortCapexTotalEngaged = PortfolioEntryDao.getPEAsEngagedAmountByOpex(this.getPreferenceManagerPlugin(), id, false, true);
-            effortTotals = new Totals(effortOpexTotalBudget, effortCapexTotalBudget, effortOpexTotalCostToComplete, effortCapexTotalCostToComplete,
-                    effortOpexTotalEngaged, effortCapexTotalEngaged);
+            effortTotals = amounts.getTotals(true);
 
             // compute the totals for cost
-            Double costOpexTotalBudget = PortfolioEntryDao.getPEAsBudgetAmountByOpex(id, true, false);
-            Double costCapexTotalBudget = PortfolioEntryDao.getPEAsBudgetAmountByOpex(id, false, false);
-            Double costOpexTotalCostToComplete = PortfolioEntryDao.getPEAsCostToCompleteAmountByOpex(this.getPreferenceManagerPlugin(), id, true, false);
-            Double costCapexTotalCostToComplete = PortfolioEntryDao.getPEAsCostToCompleteAmountByOpex(this.getPreferenceManagerPlugin(), id, false, false);
-            Double costOpexTotalEngaged = PortfolioEntryDao.getPEAsEngagedAmountByOpex(this.getPreferenceManagerPlugin(), id, true, false);
-            Double costCapexTotalEngaged = PortfolioEntryDao.getPEAsEngagedAmountByOpex(this.getPreferenceManagerPlugin(), id, false, false);
-            costTotals = new Totals(costOpexTotalBudget, costCapexTotalBudget, costOpexTotalCostToComplete, costCapexTotalCostToComplete, costOpexTotalEngaged,
-                    costCapexTotalEngaged);
+            costTotals = amounts.getTotals(false);
 
         }
 
@@ -488,7 +488,7 @@ public class PortfolioEntryGovernanceController extends Controller {
                             instanceApprover.save();
                         }
                         // notification (approvers)
-                        ActorDao.sendNotification(this.getNotificationManagerService(), this.getI18nMessagesPlugin(), lifeCycleMilestone.actorApprovers,
+                        ActorDao.sendNotification(lifeCycleMilestone.actorApprovers,
                                 NotificationCategory.getByCode(Code.APPROVAL), approversUrl,
                                 "core.portfolio_entry_governance.milestone.request.voterequired.notification.title",
                                 "core.portfolio_entry_governance.milestone.request.voterequired.notification.message", portfolioEntry.getName());
@@ -500,7 +500,7 @@ public class PortfolioEntryGovernanceController extends Controller {
                             instanceApprover.save();
                         }
 
-                        ActorDao.sendNotification(this.getNotificationManagerService(), this.getI18nMessagesPlugin(), lifeCycleMilestone.orgUnitApprovers.stream().map(o -> o.manager).collect(Collectors.toList()),
+                        ActorDao.sendNotification(lifeCycleMilestone.orgUnitApprovers.stream().map(o -> o.manager).collect(Collectors.toList()),
                                 NotificationCategory.getByCode(Code.APPROVAL), approversUrl,
                                 "core.portfolio_entry_governance.milestone.request.voterequired.notification.title",
                                 "core.portfolio_entry_governance.milestone.request.voterequired.notification.message", portfolioEntry.getName());
@@ -713,8 +713,6 @@ public class PortfolioEntryGovernanceController extends Controller {
         actors.addAll(portfolioEntry.portfolios.stream().map(portfolio -> portfolio.manager).collect(Collectors.toList()));
 
         ActorDao.sendNotification(
-                this.getNotificationManagerService(),
-                this.getI18nMessagesPlugin(),
                 actors,
                 NotificationCategory.getByCode(Code.PORTFOLIO_ENTRY),
                 routes.PortfolioEntryGovernanceController.index(portfolioEntry.id).url(),
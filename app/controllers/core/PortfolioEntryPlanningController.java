@@ -25,6 +25,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import constants.IMafConstants;
+import constants.MafDataType;
 import controllers.ControllersUtils;
 import dao.delivery.IterationDAO;
 import dao.finance.PortfolioEntryResourcePlanDAO;
@@ -35,11 +36,14 @@ import dao.pmo.PortfolioEntryDao;
 import dao.pmo.PortfolioEntryPlanningPackageDao;
 import dao.pmo.StakeholderDao;
 import dao.timesheet.TimesheetDao;
+import framework.commons.message.EventMessage;
 import framework.security.ISecurityService;
 import framework.services.account.AccountManagementException;
 import framework.services.account.IPreferenceManagerPlugin;
+import framework.services.audit.IAuditLoggerService;
 import framework.services.configuration.II18nMessagesPlugin;
 import framework.services.custom_attribute.ICustomAttributeManagerService;
+import framework.services.plugins.IEventBroadcastingService;
 import framework.services.notification.INotificationManagerPlugin;
 import framework.services.session.IUserSessionManagerPlugin;
 import framework.services.storage.IAttachmentManagerPlugin;
@@ -64,7 +68,9 @@ import play.mvc.Http;
 import play.mvc.Result;
 import play.mvc.With;
 import security.CheckPortfolioEntryExists;
+import services.action_log.IMafActionLogService;
 import services.budgettracking.IBudgetTrackingService;
+import services.capacityforecast.ICapacityForecastService;
 import services.datasyndication.IDataSyndicationService;
 import services.datasyndication.models.DataSyndicationAgreementItem;
 import services.datasyndication.models.DataSyndicationAgreementLink;
@@ -114,11 +120,19 @@ public class PortfolioEntryPlanningController extends Controller {
     @Inject
     private IBudgetTrackingService budgetTrackingService;
     @Inject
+    private ICapacityForecastService capacityForecastService;
+    @Inject
     private INotificationManagerPlugin notificationManagerService;
     @Inject
     private ITableProvider tableProvider;
     @Inject
     private ICustomAttributeManagerService customAttributeManagerService;
+    @Inject
+    private IMafActionLogService mafActionLogService;
+    @Inject
+    private IAuditLoggerService auditLoggerService;
+    @Inject
+    private IEventBroadcastingService eventBroadcastingService;
 
     private static Logger.ALogger log = Logger.of(PortfolioEntryPlanningController.class);
 
@@ -1280,16 +1294,30 @@ public class PortfolioEntryPlanningController extends Controller {
 
     }
 
+    /**
+     * Update the status of the given competency allocations with set-based
+     * updates, log the updated allocations (one batch), then once by portfolio
+     * entry (all loaded with one query): audit the change, notify the
+     * plugins, refresh the capacity forecast and recompute the budget
+     * tracking.
+     *
+     * @param ids the list of allocations ids
+     * @param status the status to update
+     */
     private void updateCompentencyAllocationsStatus(List<String> ids, PortfolioEntryResourcePlanAllocationStatusType.AllocationStatus status) {
         if (ids != null) {
-            ids.forEach(idAsString -> {
-                Long id = Long.parseLong(idAsString);
-                PortfolioEntryResourcePlanAllocatedCompetency allocatedCompentency = PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedCompetencyById(id);
-                allocatedCompentency.portfolioEntryResourcePlanAllocationStatusType = PortfolioEntryResourcePlanDAO.getAllocationStatusByType(status);
-                allocatedCompentency.lastStatusTypeUpdateTime = new Date();
-                allocatedCompentency.lastStatusTypeUpdateActor = ActorDao.getActorByUid(getUserSessionManagerPlugin().getUserSessionId(ctx()));
-                allocatedCompentency.update();
-            });
+            List<Long> allocationIds = ids.stream().map(Long::parseLong).collect(Collectors.toList());
+            Actor actor = ActorDao.getActorByUid(getUserSessionManagerPlugin().getUserSessionId(ctx()));
+            Map<Long, List<Long>> allocationIdsByPortfolioEntry = PortfolioEntryResourcePlanDAO
+                    .updateAllocationsStatus(PortfolioEntryResourcePlanAllocatedCompetency.class, allocationIds, status, actor);
+            getMafActionLogService().logChangeAllocationsStatus("competency", status.name(), actor != null ? actor.id : null, allocationIdsByPortfolioEntry);
+            for (PortfolioEntry portfolioEntry : PortfolioEntryDao.getPEAsListByIds(allocationIdsByPortfolioEntry.keySet())) {
+                getAuditLoggerService().logUpdate(portfolioEntry);
+                getEventBroadcastingService().postOutMessage(
+                        new EventMessage(portfolioEntry.id, MafDataType.getPortfolioEntry(), EventMessage.MessageType.OBJECT_UPDATED));
+                getCapacityForecastService().refreshPortfolioEntry(portfolioEntry.id);
+            }
+            getBudgetTrackingService().recomputePortfolioEntries(allocationIdsByPortfolioEntry.keySet());
         }
     }
 
@@ -1695,6 +1723,8 @@ public class PortfolioEntryPlanningController extends Controller {
         }
         allocatedActor.save();
 
+        getCapacityForecastService().refreshPortfolioEntry(allocatedActor.getAssociatedPortfolioEntry().id);
+
         return status(Http.Status.NO_CONTENT);
     }
 
@@ -1807,6 +1837,8 @@ public class PortfolioEntryPlanningController extends Controller {
 
         }
 
+        getCapacityForecastService().refreshPortfolioEntry(id);
+
         return redirect(controllers.core.routes.PortfolioEntryPlanningController.resources(id));
 
     }
@@ -1834,6 +1866,8 @@ public class PortfolioEntryPlanningController extends Controller {
         // set the delete flag to true
         allocatedActor.doDelete();
 
+        getCapacityForecastService().refreshPortfolioEntry(id);
+
         Utilities.sendSuccessFlashMessage(Msg.get("core.portfolio_entry_planning.allocated_actor.delete.successful"));
 
         return redirect(controllers.core.routes.PortfolioEntryPlanningController.resources(id));
@@ -1972,6 +2006,8 @@ public class PortfolioEntryPlanningController extends Controller {
 
         }
 
+        getCapacityForecastService().refreshPortfolioEntry(id);
+
         return redirect(routes.PortfolioEntryPlanningController.resources(id));
     }
 
@@ -1998,6 +2034,8 @@ public class PortfolioEntryPlanningController extends Controller {
         // set the delete flag to true
         allocatedOrgUnit.doDelete();
 
+        getCapacityForecastService().refreshPortfolioEntry(id);
+
         Utilities.sendSuccessFlashMessage(Msg.get("core.portfolio_entry_planning.allocated_org_unit.delete.successful"));
 
         return redirect(controllers.core.routes.PortfolioEntryPlanningController.resources(id));
@@ -2123,6 +2161,8 @@ public class PortfolioEntryPlanningController extends Controller {
 
         }
 
+        getCapacityForecastService().refreshPortfolioEntry(id);
+
         return redirect(controllers.core.routes.PortfolioEntryPlanningController.resources(id));
 
     }
@@ -2151,6 +2191,8 @@ public class PortfolioEntryPlanningController extends Controller {
         // set the delete flag to true
         allocatedCompetency.doDelete();
 
+        getCapacityForecastService().refreshPortfolioEntry(id);
+
         Utilities.sendSuccessFlashMessage(Msg.get("core.portfolio_entry_planning.allocated_competency.delete.successful"));
 
         return redirect(controllers.core.routes.PortfolioEntryPlanningController.resources(id));
@@ -2243,6 +2285,8 @@ public class PortfolioEntryPlanningController extends Controller {
             stakeholder.save();
         }
 
+        getCapacityForecastService().refreshPortfolioEntry(id);
+
         Utilities.sendSuccessFlashMessage(Msg.get("core.portfolio_entry_planning.reallocate_resource.successful"));
 
         if (allocatedOrgUnit.days.compareTo(allocatedActor.days) > 0) {
@@ -2339,6 +2383,8 @@ public class PortfolioEntryPlanningController extends Controller {
 
         allocatedOrgUnit.save();
 
+        getCapacityForecastService().refreshPortfolioEntry(id);
+
         Utilities.sendSuccessFlashMessage(Msg.get("core.portfolio_entry_planning.reallocate.report_balance.successful"));
 
         return redirect(controllers.core.routes.PortfolioEntryPlanningController.resources(id));
@@ -2433,6 +2479,8 @@ public class PortfolioEntryPlanningController extends Controller {
             stakeholder.save();
         }
 
+        getCapacityForecastService().refreshPortfolioEntry(id);
+
         Utilities.sendSuccessFlashMessage(Msg.get("core.portfolio_entry_planning.reallocate_resource.successful"));
 
         if (allocatedCompetency.days.compareTo(allocatedActor.days) > 0) {
@@ -2491,6 +2539,8 @@ public class PortfolioEntryPlanningController extends Controller {
         allocatedCompetency.days = new BigDecimal(days);
         allocatedCompetency.save();
 
+        getCapacityForecastService().refreshPortfolioEntry(id);
+
         Utilities.sendSuccessFlashMessage(Msg.get("core.portfolio_entry_planning.reallocate.report_balance.successful"));
 
         return redirect(controllers.core.routes.PortfolioEntryPlanningController.resources(id));
@@ -2648,6 +2698,13 @@ public class PortfolioEntryPlanningController extends Controller {
         return this.budgetTrackingService;
     }
 
+    /**
+     * Get the capacity forecast service.
+     */
+    private ICapacityForecastService getCapacityForecastService() {
+        return this.capacityForecastService;
+    }
+
     /**
      * Get the notification manager service.
      */
@@ -2669,4 +2726,25 @@ public class PortfolioEntryPlanningController extends Controller {
         return this.customAttributeManagerService;
     }
 
+    /**
+     * Get the MAF action log service.
+     */
+    private IMafActionLogService getMafActionLogService() {
+        return this.mafActionLogService;
+    }
+
+    /**
+     * Get the audit logger service.
+     */
+    private IAuditLoggerService getAuditLoggerService() {
+        return this.auditLoggerService;
+    }
+
+    /**
+     * Get the event broadcasting service.
+     */
+    private IEventBroadcastingService getEventBroadcastingService() {
+        return this.eventBroadcastingService;
+    }
+
 }
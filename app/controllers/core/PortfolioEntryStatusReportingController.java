@@ -85,6 +85,7 @@ import security.CheckPortfolioEntryExists;
 import services.datasyndication.IDataSyndicationService;
 import services.datasyndication.models.DataSyndicationAgreementItem;
 import services.datasyndication.models.DataSyndicationAgreementLink;
+import services.tableexport.ITableExportService;
 import services.tableprovider.ITableProvider;
 import utils.form.*;
 import utils.reporting.IReportingUtils;
@@ -123,6 +124,8 @@ public class PortfolioEntryStatusReportingController extends Controller {
     private ITableProvider tableProvider;
     @Inject
     private ICustomAttributeManagerService customAttributeManagerService;
+    @Inject
+    private ITableExportService tableExportService;
 
     private static Logger.ALogger log = Logger.of(PortfolioEntryStatusReportingController.class);
 
@@ -370,6 +373,9 @@ public class PortfolioEntryStatusReportingController extends Controller {
     /**
      * Export the content of the current events table as Excel.
      * 
+     * The file is written by a background job, which loads and writes the
+     * events page by page (see ITableExportService).
+     * 
      * @param id
      *            the portfolio entry id
      */
@@ -384,7 +390,7 @@ public class PortfolioEntryStatusReportingController extends Controller {
                 // Get the current user
                 final String uid = getUserSessionManagerPlugin().getUserSessionId(ctx());
 
-                // construct the table
+                // get the filtered and sorted query
                 FilterConfig<PortfolioEntryEventListView> filterConfig = getTableProvider().get().portfolioEntryEvent.filterConfig.getCurrent(uid,
                         request());
 
@@ -392,36 +398,14 @@ public class PortfolioEntryStatusReportingController extends Controller {
                         .updateWithSearchExpression(PortfolioEntryEventDao.getPEEventAsExprByPE(id));
                 filterConfig.updateWithSortExpression(expressionList);
 
-                List<PortfolioEntryEventListView> portfolioEntryEventListView = expressionList.findList().stream().map(PortfolioEntryEventListView::new).collect(Collectors.toList());
-
-                Table<PortfolioEntryEventListView> table = getTableProvider().get().portfolioEntryEvent.templateTable
-                        .fillForFilterConfig(portfolioEntryEventListView, filterConfig.getColumnsToHide());
-
-                final byte[] excelFile = TableExcelRenderer.renderFormatted(table);
+                Set<String> columnsToHide = filterConfig.getColumnsToHide();
 
                 final String fileName = String.format("eventsExport_%1$td_%1$tm_%1$ty_%1$tH-%1$tM-%1$tS.xlsx", new Date());
-                final String successTitle = Msg.get("excel.export.success.title");
-                final String successMessage = Msg.get("excel.export.success.message", fileName);
-                final String failureTitle = Msg.get("excel.export.failure.title");
-                final String failureMessage = Msg.get("excel.export.failure.message");
 
-                // Execute asynchronously
-                getSysAdminUtils().scheduleOnce(false, "Events Excel Export", Duration.create(0, TimeUnit.MILLISECONDS), new Runnable() {
-                    @Override
-                    public void run() {
-
-                        try {
-                            OutputStream out = getPersonalStoragePlugin().createNewFile(uid, fileName);
-                            IOUtils.copy(new ByteArrayInputStream(excelFile), out);
-                            getNotificationManagerPlugin().sendNotification(uid, NotificationCategory.getByCode(Code.DOCUMENT), successTitle,
-                                    successMessage, controllers.my.routes.MyPersonalStorage.index().url());
-                        } catch (IOException e) {
-                            log.error("Unable to export the excel file", e);
-                            getNotificationManagerPlugin().sendNotification(uid, NotificationCategory.getByCode(Code.ISSUE), failureTitle, failureMessage,
-                                    routes.PortfolioEntryStatusReportingController.events(id).url());
-                        }
-                    }
-                });
+                getTableExportService().exportAsExcel(uid, ctx().lang(), fileName, "Events Excel Export", expressionList,
+                        ids -> PortfolioEntryEventDao.getPEEventAsListByIds(ids).stream().map(PortfolioEntryEventListView::new).collect(Collectors.toList()),
+                        rows -> getTableProvider().get().portfolioEntryEvent.templateTable.fillForFilterConfig(rows, columnsToHide),
+                        routes.PortfolioEntryStatusReportingController.events(id).url());
 
                 return ok(Json.newObject());
 
@@ -1489,6 +1473,9 @@ public class PortfolioEntryStatusReportingController extends Controller {
     /**
      * Export the content of the current timesheet logs table as Excel.
      * 
+     * The file is written by a background job, which loads and writes the
+     * timesheet logs page by page (see ITableExportService).
+     * 
      * @param id
      *            the portfolio entry id
      */
@@ -1503,46 +1490,21 @@ public class PortfolioEntryStatusReportingController extends Controller {
                 // Get the current user
                 final String uid = getUserSessionManagerPlugin().getUserSessionId(ctx());
 
-                // construct the table
+                // get the filtered and sorted query
                 FilterConfig<TimesheetLogListView> filterConfig = getTableProvider().get().timesheetLog.filterConfig.getCurrent(uid, request());
 
                 ExpressionList<TimesheetLog> expressionList = filterConfig
                         .updateWithSearchExpression(TimesheetDao.getTimesheetLogAsExprByPortfolioEntry(id));
                 filterConfig.updateWithSortExpression(expressionList);
 
-                List<TimesheetLogListView> timesheetLogListView = new ArrayList<TimesheetLogListView>();
-                for (TimesheetLog timesheetLog : expressionList.findList()) {
-                    timesheetLogListView.add(new TimesheetLogListView(timesheetLog));
-                }
-
-                Table<TimesheetLogListView> table = getTableProvider().get().timesheetLog.templateTable.fillForFilterConfig(timesheetLogListView,
-                        filterConfig.getColumnsToHide());
-
-                final byte[] excelFile = TableExcelRenderer.renderFormatted(table);
+                Set<String> columnsToHide = filterConfig.getColumnsToHide();
 
                 final String fileName = String.format("timesheetsExport_%1$td_%1$tm_%1$ty_%1$tH-%1$tM-%1$tS.xlsx", new Date());
-                final String successTitle = Msg.get("excel.export.success.title");
-                final String successMessage = Msg.get("excel.export.success.message", fileName);
-                final String failureTitle = Msg.get("excel.export.failure.title");
-                final String failureMessage = Msg.get("excel.export.failure.message");
 
-                // Execute asynchronously
-                getSysAdminUtils().scheduleOnce(false, "Timesheets Excel Export", Duration.create(0, TimeUnit.MILLISECONDS), new Runnable() {
-                    @Override
-                    public void run() {
-
-                        try {
-                            OutputStream out = getPersonalStoragePlugin().createNewFile(uid, fileName);
-                            IOUtils.copy(new ByteArrayInputStream(excelFile), out);
-                            getNotificationManagerPlugin().sendNotification(uid, NotificationCategory.getByCode(Code.DOCUMENT), successTitle,
-                                    successMessage, controllers.my.routes.MyPersonalStorage.index().url());
-                        } catch (IOException e) {
-                            log.error("Unable to export the excel file", e);
-                            getNotificationManagerPlugin().sendNotification(uid, NotificationCategory.getByCode(Code.ISSUE), failureTitle, failureMessage,
-                                    routes.PortfolioEntryStatusReportingController.timesheets(id).url());
-                        }
-                    }
-                });
+                getTableExportService().exportAsExcel(uid, ctx().lang(), fileName, "Timesheets Excel Export", expressionList,
+                        ids -> TimesheetDao.getTimesheetLogAsListByIds(ids).stream().map(TimesheetLogListView::new).collect(Collectors.toList()),
+                        rows -> getTableProvider().get().timesheetLog.templateTable.fillForFilterConfig(rows, columnsToHide),
+                        routes.PortfolioEntryStatusReportingController.timesheets(id).url());
 
                 return ok(Json.newObject());
 
@@ -1683,4 +1645,11 @@ public class PortfolioEntryStatusReportingController extends Controller {
         return this.customAttributeManagerService;
     }
 
+    /**
+     * Get the table export service.
+     */
+    private ITableExportService getTableExportService() {
+        return this.tableExportService;
+    }
+
 }
@@ -39,7 +39,6 @@ import dao.pmo.PortfolioEntryDao;
 import framework.security.ISecurityService;
 import framework.services.account.IPreferenceManagerPlugin;
 import framework.services.configuration.II18nMessagesPlugin;
-import framework.services.notification.INotificationManagerPlugin;
 import framework.services.session.IUserSessionManagerPlugin;
 import framework.services.storage.IAttachmentManagerPlugin;
 import framework.utils.FileAttachmentHelper;
@@ -96,8 +95,6 @@ public class ProcessTransitionRequestController extends Controller {
     @Inject
     private IBudgetTrackingService budgetTrackingService;
     @Inject
-    private INotificationManagerPlugin notificationManagerService;
-    @Inject
     private ITableProvider tableProvider;
     @Inject
     private IPreferenceManagerPlugin preferenceManagerPlugin;
@@ -262,7 +259,7 @@ public class ProcessTransitionRequestController extends Controller {
 
                 // notification
                 List<Actor> actors = new ArrayList<Actor>(Arrays.asList(portfolioEntry.manager, request.requester));
-                ActorDao.sendNotification(this.getNotificationManagerService(), this.getI18nMessagesPlugin(), actors,
+                ActorDao.sendNotification(actors,
                         NotificationCategory.getByCode(Code.APPROVAL),
                         controllers.core.routes.PortfolioEntryGovernanceController.index(portfolioEntry.id).url(),
                         "core.process_transition_request.process_milestone_request.panel.form.accept.approved.notification.title",
@@ -276,7 +273,7 @@ public class ProcessTransitionRequestController extends Controller {
 
                 // notification (manager + requester)
                 List<Actor> actors = new ArrayList<>(Arrays.asList(portfolioEntry.manager, request.requester));
-                ActorDao.sendNotification(this.getNotificationManagerService(), this.getI18nMessagesPlugin(), actors,
+                ActorDao.sendNotification(actors,
                         NotificationCategory.getByCode(Code.REQUEST_REVIEW),
                         controllers.core.routes.PortfolioEntryGovernanceController.index(portfolioEntry.id).url(),
                         "core.process_transition_request.process_milestone_request.panel.form.accept.instance.notification.title",
@@ -296,7 +293,7 @@ public class ProcessTransitionRequestController extends Controller {
                     }
 
                     // notification (approvers)
-                    ActorDao.sendNotification(this.getNotificationManagerService(), this.getI18nMessagesPlugin(), approvers,
+                    ActorDao.sendNotification(approvers,
                             NotificationCategory.getByCode(Code.APPROVAL), approversUrl,
                             "core.process_transition_request.process_milestone_request.panel.form.vote_required.notification.title",
                             "core.process_transition_request.process_milestone_request.panel.form.vote_required.notification.message", portfolioEntry.getName());
@@ -313,7 +310,7 @@ public class ProcessTransitionRequestController extends Controller {
                     }
 
                     // notification (approvers)
-                    ActorDao.sendNotification(this.getNotificationManagerService(), this.getI18nMessagesPlugin(), approvers,
+                    ActorDao.sendNotification(approvers,
                             NotificationCategory.getByCode(Code.APPROVAL), approversUrl,
                             "core.process_transition_request.process_milestone_request.panel.form.vote_required.notification.title",
                             "core.process_transition_request.process_milestone_request.panel.form.vote_required.notification.message", portfolioEntry.getName());
@@ -377,7 +374,7 @@ public class ProcessTransitionRequestController extends Controller {
 
         // send notification (manager + requester)
         List<Actor> actors = new ArrayList<Actor>(Arrays.asList(portfolioEntry.manager, request.requester));
-        ActorDao.sendNotification(this.getNotificationManagerService(), this.getI18nMessagesPlugin(), actors,
+        ActorDao.sendNotification(actors,
                 NotificationCategory.getByCode(Code.REQUEST_REVIEW),
                 controllers.core.routes.PortfolioEntryGovernanceController.index(portfolioEntry.id).url(),
                 "core.process_transition_request.process_milestone_request.panel.form.reject.notification.title",
@@ -446,13 +443,6 @@ public class ProcessTransitionRequestController extends Controller {
         return this.budgetTrackingService;
     }
 
-    /**
-     * Get the notification manager service.
-     */
-    private INotificationManagerPlugin getNotificationManagerService() {
-        return this.notificationManagerService;
-    }
-
     /**
      * Get the table provider.
      */
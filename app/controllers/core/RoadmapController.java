@@ -20,15 +20,13 @@ package controllers.core;
 import be.objectify.deadbolt.java.actions.Group;
 import be.objectify.deadbolt.java.actions.Restrict;
 import com.avaje.ebean.ExpressionList;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import constants.IMafConstants;
 import controllers.ControllersUtils;
 import dao.finance.PortfolioEntryResourcePlanDAO;
-import dao.governance.LifeCycleMilestoneDao;
-import dao.governance.LifeCyclePlanningDao;
 import dao.pmo.ActorDao;
 import dao.pmo.OrgUnitDao;
 import dao.pmo.PortfolioEntryDao;
@@ -38,53 +36,46 @@ import framework.security.ISecurityService;
 import framework.services.account.AccountManagementException;
 import framework.services.account.IPreferenceManagerPlugin;
 import framework.services.configuration.II18nMessagesPlugin;
-import framework.services.notification.INotificationManagerPlugin;
 import framework.services.session.IUserSessionManagerPlugin;
-import framework.services.storage.IPersonalStoragePlugin;
-import framework.services.system.ISysAdminUtils;
 import framework.utils.*;
-import models.common.ResourceAllocation;
 import models.common.ResourceAllocationDetail;
 import models.finance.*;
-import models.framework_models.account.NotificationCategory;
-import models.framework_models.account.NotificationCategory.Code;
-import models.governance.LifeCycleInstance;
-import models.governance.LifeCyclePhase;
-import models.governance.PlannedLifeCycleMilestoneInstance;
 import models.pmo.*;
 import models.timesheet.TimesheetActivityAllocatedActor;
 import models.timesheet.TimesheetActivityAllocatedActorDetail;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import play.Configuration;
 import play.Logger;
+import play.cache.CacheApi;
 import play.data.Form;
 import play.data.validation.Constraints.Required;
 import play.libs.F.Promise;
 import play.libs.Json;
 import play.mvc.Controller;
 import play.mvc.Result;
-import scala.concurrent.duration.Duration;
 import security.dynamic.PortfolioEntryDynamicHelper;
 import services.budgettracking.IBudgetTrackingService;
+import services.capacityforecast.CapacityCellDetails;
+import services.capacityforecast.ICapacityForecastService;
+import services.gantt.IGanttDataService;
+import services.tableexport.ITableExportService;
 import services.tableprovider.ITableProvider;
-import utils.gantt.SourceDataValue;
+import utils.finance.FinancialAmounts;
+import utils.finance.Totals;
 import utils.gantt.SourceItem;
-import utils.gantt.SourceValue;
 import utils.table.PortfolioEntryListView;
 import views.html.core.roadmap.roadmap_capacity_forecast_cell_details_fragment;
 import views.html.core.roadmap.roadmap_capacity_forecast_table_orgunits_fragment;
 
 import javax.inject.Inject;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -101,12 +92,6 @@ public class RoadmapController extends Controller {
     @Inject
     private IUserSessionManagerPlugin userSessionManagerPlugin;
     @Inject
-    private INotificationManagerPlugin notificationManagerPlugin;
-    @Inject
-    private ISysAdminUtils sysAdminUtils;
-    @Inject
-    private IPersonalStoragePlugin personalStoragePlugin;
-    @Inject
     private ISecurityService securityService;
     @Inject
     private II18nMessagesPlugin i18nMessagesPlugin;
@@ -118,16 +103,23 @@ public class RoadmapController extends Controller {
     private ITableProvider tableProvider;
     @Inject
     private IBudgetTrackingService budgetTrackingService;
+    @Inject
+    private ICapacityForecastService capacityForecastService;
+    @Inject
+    private IGanttDataService ganttDataService;
+    @Inject
+    private ITableExportService tableExportService;
+    @Inject
+    private CacheApi cache;
 
     private static Logger.ALogger log = Logger.of(RoadmapController.class);
 
     private static Form<CapacityForecastForm> capacityForecastFormTemplate = Form.form(CapacityForecastForm.class);
 
-    /**
-     * The default CSS class for a gantt bar. The classes are defined in the
-     * file main.css of app-framework.
-     */
-    private static final String GANTT_DEFAULT_CSS_CLASS = "default";
+    private static final int PLANNING_SOURCE_PAGE_SIZE = 100;
+    private static final int PLANNING_SOURCE_MAX_PAGE_SIZE = 1000;
+    private static final String PLANNING_SOURCE_DATE_FORMAT = "yyyy-MM-dd";
+    private static final int PLANNING_SOURCE_IDS_CACHE_DURATION = 600;
 
     /**
      * Display the roadmap.<br/>
@@ -192,6 +184,9 @@ public class RoadmapController extends Controller {
 
     /**
      * Export the content of the current table as Excel.
+     * 
+     * The file is written by a background job, which loads and writes the
+     * portfolio entries page by page (see ITableExportService).
      */
     public Promise<Result> exportAsExcel() {
         return Promise.promise(() -> {
@@ -201,41 +196,20 @@ public class RoadmapController extends Controller {
                 // Get the current user
                 final String uid = getUserSessionManagerPlugin().getUserSessionId(ctx());
 
-                // construct the table
+                // get the filtered and sorted query
                 PostQueryFilterConfig<PortfolioEntryListView, PortfolioEntry> filterConfig = getTableProvider().get().portfolioEntry.filterConfig.getCurrent(uid, request());
 
-                ExpressionList<PortfolioEntry> expressionList = filterConfig.updateWithSearchExpression(PortfolioEntryDynamicHelper.getPortfolioEntriesViewAllowedAsQuery(getSecurityService()));
-                filterConfig.updateWithSortExpression(expressionList);
-
-                List<PortfolioEntryListView> portfolioEntryListView = expressionList.findList().stream().map(PortfolioEntryListView::new).collect(Collectors.toList());
-
-                Table<PortfolioEntryListView> table = getTableProvider().get().portfolioEntry.templateTable.fillForFilterConfig(portfolioEntryListView,
-                        getColumnsToHide(filterConfig));
+                ExpressionList<PortfolioEntry> expressionList = PortfolioEntryListView.TableDefinition.getSelectionQuery(filterConfig,
+                        PortfolioEntryDynamicHelper.getPortfolioEntriesViewAllowedAsQuery(getSecurityService()));
 
-                final byte[] excelFile = TableExcelRenderer.renderFormatted(table);
+                Set<String> columnsToHide = getColumnsToHide(filterConfig);
 
                 final String fileName = String.format("roadmapExport_%1$td_%1$tm_%1$ty_%1$tH-%1$tM-%1$tS.xlsx", new Date());
-                final String successTitle = Msg.get("excel.export.success.title");
-                final String successMessage = Msg.get("excel.export.success.message", fileName);
-                final String failureTitle = Msg.get("excel.export.failure.title");
-                final String failureMessage = Msg.get("excel.export.failure.message");
-
-                // Execute asynchronously
-                getSysAdminUtils().scheduleOnce(false, "Roadmap Excel Export", Duration.create(0, TimeUnit.MILLISECONDS), new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            OutputStream out = getPersonalStoragePlugin().createNewFile(uid, fileName);
-                            IOUtils.copy(new ByteArrayInputStream(excelFile), out);
-                            getNotificationManagerPlugin().sendNotification(uid, NotificationCategory.getByCode(Code.DOCUMENT), successTitle,
-                                    successMessage, controllers.my.routes.MyPersonalStorage.index().url());
-                        } catch (IOException e) {
-                            log.error("Unable to export the excel file", e);
-                            getNotificationManagerPlugin().sendNotification(uid, NotificationCategory.getByCode(Code.ISSUE), failureTitle, failureMessage,
-                                    routes.RoadmapController.index().url());
-                        }
-                    }
-                });
+
+                getTableExportService().exportAsExcel(uid, ctx().lang(), fileName, "Roadmap Excel Export", expressionList,
+                        PortfolioEntryListView::getAsListByIds,
+                        rows -> getTableProvider().get().portfolioEntry.templateTable.fillForFilterConfig(rows, columnsToHide),
+                        routes.RoadmapController.index().url());
 
                 return ok(Json.newObject());
 
@@ -261,156 +235,105 @@ public class RoadmapController extends Controller {
      * and end dates (see just above)
      */
     public Result viewPlanning() {
+        return ok(views.html.core.roadmap.roadmap_view_planning.render(PLANNING_SOURCE_PAGE_SIZE));
+    }
 
-        try {
-
-            // get the filter config
-            String uid = getUserSessionManagerPlugin().getUserSessionId(ctx());
-            PostQueryFilterConfig<PortfolioEntryListView, PortfolioEntry> filterConfig = this.getTableProvider().get().portfolioEntry.filterConfig.getCurrent(uid, request());
-
-            ExpressionList<PortfolioEntry> expressionList = filterConfig.updateWithSearchExpression(PortfolioEntryDynamicHelper.getPortfolioEntriesViewAllowedAsQuery(getSecurityService()));
-            filterConfig.updateWithSortExpression(expressionList);
-
-            // initiate the source items (gantt)
-            List<SourceItem> items = new ArrayList<>();
-
-            // compute the items (for each portfolio entry)
-            for (PortfolioEntry portfolioEntry : expressionList.findList()) {
-
-                // get the active life cycle process instance
-                LifeCycleInstance processInstance = portfolioEntry.activeLifeCycleInstance;
-
-                // get the roadmap phases of a process
-                List<LifeCyclePhase> lifeCyclePhases = LifeCycleMilestoneDao.getLCPhaseRoadmapAsListByLCProcess(processInstance.lifeCycleProcess.id);
-
-                if (lifeCyclePhases != null && !lifeCyclePhases.isEmpty()) {
-
-                    // get the last planned milestone instances
-                    List<PlannedLifeCycleMilestoneInstance> lastPlannedMilestoneInstances = LifeCyclePlanningDao
-                            .getPlannedLCMilestoneInstanceLastAsListByPE(portfolioEntry.id);
-
-                    if (lastPlannedMilestoneInstances != null && lastPlannedMilestoneInstances.size() > 0) {
-
-                        // transform the list of last planned milestone
-                        // instances to
-                        // a map
-                        Map<Long, PlannedLifeCycleMilestoneInstance> lastPlannedMilestoneInstancesAsMap = new HashMap<>();
-                        for (PlannedLifeCycleMilestoneInstance plannedMilestoneInstance : lastPlannedMilestoneInstances) {
-                            lastPlannedMilestoneInstancesAsMap.put(plannedMilestoneInstance.lifeCycleMilestone.id, plannedMilestoneInstance);
-                        }
-
-                        /*
-                         * compute the common components for all phases
-                         */
-
-                        // get the CSS class
-                        String cssClass = GANTT_DEFAULT_CSS_CLASS;
-                        PortfolioEntryReport report = portfolioEntry.lastPortfolioEntryReport;
-                        if (report != null && report.portfolioEntryReportStatusType != null) {
-                            cssClass = report.portfolioEntryReportStatusType.cssClass;
-                        }
-
-                        // create the source data value (used when clicking on a
-                        // phase)
-                        SourceDataValue sourceDataValue = new SourceDataValue(
-                                controllers.core.routes.PortfolioEntryController.overview(portfolioEntry.id).url(), portfolioEntry.getName(),
-                                portfolioEntry.getDescription(), views.html.modelsparts.display_actor.render(portfolioEntry.manager).body(),
-                                views.html.framework_views.parts.formats.display_list_of_values.render(portfolioEntry.portfolios, "display").body());
-
-                        boolean isFirstLoop = true;
-
-                        for (LifeCyclePhase phase : lifeCyclePhases) {
-
-                            if (lastPlannedMilestoneInstancesAsMap.containsKey(phase.startLifeCycleMilestone.id)
-                                    && lastPlannedMilestoneInstancesAsMap.containsKey(phase.endLifeCycleMilestone.id)) {
-
-                                // get the from date
-                                Date from = LifeCyclePlanningDao.getPlannedLCMilestoneInstanceAsPassedDate(
-                                        lastPlannedMilestoneInstancesAsMap.get(phase.startLifeCycleMilestone.id).id);
-
-                                // get the to date
-                                Date to = LifeCyclePlanningDao
-                                        .getPlannedLCMilestoneInstanceAsPassedDate(lastPlannedMilestoneInstancesAsMap.get(phase.endLifeCycleMilestone.id).id);
-
-                                if (from != null && to != null) {
-
-                                    to = JqueryGantt.cleanToDate(from, to);
-
-                                    // add gap for the from date
-                                    if (phase.gapDaysStart != null && phase.gapDaysStart > 0) {
-                                        Calendar c = Calendar.getInstance();
-                                        c.setTime(from);
-                                        c.add(Calendar.DATE, phase.gapDaysStart);
-                                        from = c.getTime();
-                                    }
-
-                                    // remove gap for the to date
-                                    if (phase.gapDaysEnd != null && phase.gapDaysEnd > 0) {
-                                        Calendar c = Calendar.getInstance();
-                                        c.setTime(to);
-                                        c.add(Calendar.DATE, -1 * phase.gapDaysEnd);
-                                        to = c.getTime();
-                                    }
-
-                                    String name = "";
-                                    String str = "";
-                                    if (isFirstLoop) {
-                                        if (portfolioEntry.governanceId != null) {
-                                            name += portfolioEntry.governanceId + " - ";
-                                        }
-                                        name += portfolioEntry.getName();
-                                        str = String.format("<a href= %s > %s </a>" , controllers.core.routes.PortfolioEntryGovernanceController.index(portfolioEntry.id).url() , name ) ;
-                                    }
+    /**
+     * Get a page of rows of the planning (gantt) of the current roadmap as
+     * JSON: the total number of portfolio entries, the token of their ids and
+     * the source items of the requested ones.
+     * 
+     * The ids of the filtered portfolio entries are selected once, for the
+     * first page, and kept in the cache with a token: the next pages are
+     * requested with this token. The ETag of a page is computed from the token,
+     * the range, the time window and the last update of the planning of its
+     * portfolio entries, so an unchanged page is not built again.
+     * 
+     * @param offset
+     *            the index of the first portfolio entry
+     * @param limit
+     *            the max number of portfolio entries
+     * @param from
+     *            the start of the time window (yyyy-MM-dd), null for no start
+     * @param to
+     *            the end of the time window (yyyy-MM-dd), null for no end
+     * @param token
+     *            the token of the ids returned with the first page, null to
+     *            select the ids
+     */
+    public Result getPlanningSource(Integer offset, Integer limit, String from, String to, String token) {
 
-                                    SourceItem item = new SourceItem(str, "");
+        Date windowStart;
+        Date windowEnd;
+        try {
+            SimpleDateFormat dateFormat = new SimpleDateFormat(PLANNING_SOURCE_DATE_FORMAT);
+            windowStart = from != null && !from.isEmpty() ? dateFormat.parse(from) : null;
+            windowEnd = to != null && !to.isEmpty() ? dateFormat.parse(to) : null;
+        } catch (ParseException e) {
+            return badRequest();
+        }
 
-                                    item.values.add(new SourceValue(from, to, "", phase.getName(), cssClass, sourceDataValue));
+        if (offset < 0 || limit <= 0) {
+            return badRequest();
+        }
 
-                                    items.add(item);
+        try {
 
-                                    isFirstLoop = false;
+            String uid = getUserSessionManagerPlugin().getUserSessionId(ctx());
 
-                                }
+            // get the ids of the token, or select them
+            List<Long> ids = null;
+            if (token != null) {
+                ids = getCache().get(getPlanningSourceIdsCacheKey(uid, token));
+            }
+            if (ids == null) {
 
-                            }
+                PostQueryFilterConfig<PortfolioEntryListView, PortfolioEntry> filterConfig = this.getTableProvider().get().portfolioEntry.filterConfig
+                        .getCurrent(uid, request());
+                ids = PortfolioEntryListView.TableDefinition.getSelectedIds(filterConfig,
+                        PortfolioEntryDynamicHelper.getPortfolioEntriesViewAllowedAsQuery(getSecurityService()));
+                token = DigestUtils.sha1Hex(StringUtils.join(ids, ","));
+                getCache().set(getPlanningSourceIdsCacheKey(uid, token), ids, PLANNING_SOURCE_IDS_CACHE_DURATION);
 
-                        }
+            }
 
-                    }
+            List<Long> pageIds = ids.subList(Math.min(offset, ids.size()), Math.min(offset + Math.min(limit, PLANNING_SOURCE_MAX_PAGE_SIZE), ids.size()));
 
-                }
+            // the ETag is known before building the page
+            Date lastUpdate = PortfolioEntryDao.getPEPlanningLastUpdateByIds(pageIds);
+            String etag = "\"" + DigestUtils.sha1Hex(token + "|" + offset + "|" + limit + "|" + from + "|" + to + "|" + ctx().lang().code() + "|"
+                    + (lastUpdate != null ? lastUpdate.getTime() : "")) + "\"";
+            response().setHeader(ETAG, etag);
+            if (etag.equals(request().getHeader(IF_NONE_MATCH))) {
+                return status(NOT_MODIFIED);
             }
 
-            String source = "";
-            try {
-                ObjectWriter ow = new ObjectMapper().writer().withDefaultPrettyPrinter();
-                source = ow.writeValueAsString(items);
-            } catch (JsonProcessingException e) {
-                Logger.error(e.getMessage());
-            }
+            // compute the items of the requested portfolio entries
+            List<SourceItem> items = getGanttDataService().getRoadmapSourceItems(pageIds, windowStart, windowEnd);
 
-            return ok(views.html.core.roadmap.roadmap_view_planning.render(source));
+            ObjectNode node = Json.newObject();
+            node.put("total", ids.size());
+            node.put("token", token);
+            node.set("items", Json.toJson(items));
+
+            return ok(node);
 
         } catch (Exception e) {
-            return ControllersUtils.logAndReturnUnexpectedError(e, log, getConfiguration(), getI18nMessagesPlugin());
+            log.error("impossible to get the planning source", e);
+            return internalServerError();
         }
     }
 
     /**
-     * Get the allocated days
+     * Get the cache key of the ids of the planning source of a user.
      * 
-     * @param days
-     *            the days
-     * @param forecastDays
-     *            forecast days
+     * @param uid
+     *            the uid of the user
+     * @param token
+     *            the token of the ids
      */
-    private BigDecimal getAllocatedDays(BigDecimal days, BigDecimal forecastDays) {
-        if (this.getBudgetTrackingService().isActive()) {
-            if (forecastDays != null && !forecastDays.equals(BigDecimal.ZERO)) {
-                return forecastDays;
-            }
-        }
-        return days;
+    private static String getPlanningSourceIdsCacheKey(String uid, String token) {
+        return "roadmap.planning.ids." + uid + "." + token;
     }
 
     /**
@@ -427,10 +350,9 @@ public class RoadmapController extends Controller {
             ObjectMapper mapper = new ObjectMapper();
             List<String> ids = new ArrayList<>();
 
-            ExpressionList<PortfolioEntry> expressionList = filterConfig.updateWithSearchExpression(PortfolioEntryDynamicHelper.getPortfolioEntriesViewAllowedAsQuery(getSecurityService()));
-            filterConfig.updateWithSortExpression(expressionList);
-
-            ids.addAll(expressionList.findList().stream().map(portfolioEntry -> String.valueOf(portfolioEntry.id)).collect(Collectors.toList()));
+            ids.addAll(PortfolioEntryListView.TableDefinition
+                    .getSelectedIds(filterConfig, PortfolioEntryDynamicHelper.getPortfolioEntriesViewAllowedAsQuery(getSecurityService())).stream()
+                    .map(String::valueOf).collect(Collectors.toList()));
 
             JsonNode node = mapper.valueToTree(ids);
 
@@ -467,60 +389,57 @@ public class RoadmapController extends Controller {
         BigDecimal engagedCapex = BigDecimal.ZERO;
         BigDecimal engagedOpex = BigDecimal.ZERO;
 
-        for (String idString : ids) {
-
-            Long id = Long.valueOf(idString);
-
-            PortfolioEntry portfolioEntry = PortfolioEntryDao.getPEById(id);
+        List<Long> portfolioEntryIds = ids.stream().map(Long::valueOf).collect(Collectors.toList());
+
+        // allocation
+        List<Map<Long, BigDecimal>> allocatedDaysConfirmed = Arrays.asList(
+                PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsDaysMapByPEAndConfirmed(portfolioEntryIds, true),
+                PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitAsDaysMapByPE(portfolioEntryIds, true),
+                PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedCompetencyAsDaysMapByPE(portfolioEntryIds, true));
+        List<Map<Long, BigDecimal>> allocatedDaysNotConfirmed = Arrays.asList(
+                PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsDaysMapByPEAndConfirmed(portfolioEntryIds, false),
+                PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitAsDaysMapByPE(portfolioEntryIds, false),
+                PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedCompetencyAsDaysMapByPE(portfolioEntryIds, false));
+
+        for (Map<Long, BigDecimal> days : allocatedDaysConfirmed) {
+            for (BigDecimal entryDays : days.values()) {
+                allocationConfirmed = allocationConfirmed.add(entryDays);
+            }
+        }
+        for (Map<Long, BigDecimal> days : allocatedDaysNotConfirmed) {
+            for (BigDecimal entryDays : days.values()) {
+                allocationNotConfirmed = allocationNotConfirmed.add(entryDays);
+            }
+        }
+        allocation = allocationConfirmed.add(allocationNotConfirmed);
 
-            // allocation
-            BigDecimal entryAllocatedActorDaysConfirmed = PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsDaysByPEAndConfirmed(portfolioEntry, true);
-            BigDecimal entryAllocatedActorDaysNotConfirmed = PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsDaysByPEAndConfirmed(portfolioEntry,
-                    false);
-            BigDecimal entryAllocatedOrgUnitDaysConfirmed = PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitAsDaysByPE(portfolioEntry, true);
-            BigDecimal entryAllocatedOrgUnitDaysNotConfirmed = PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitAsDaysByPE(portfolioEntry,
-                    false);
-            BigDecimal entryAllocatedCompetencyDaysConfirmed = PortfolioEntryResourcePlanDAO
-                    .getPEResourcePlanAllocatedCompetencyAsDaysByPortfolioEntry(portfolioEntry, true);
-            BigDecimal entryAllocatedCompetencyDaysNotConfirmed = PortfolioEntryResourcePlanDAO
-                    .getPEResourcePlanAllocatedCompetencyAsDaysByPortfolioEntry(portfolioEntry, false);
+        if (getSecurityService().restrict(IMafConstants.PORTFOLIO_ENTRY_VIEW_FINANCIAL_INFO_ALL_PERMISSION)) {
 
-            BigDecimal entryAllocationDaysConfirmed = entryAllocatedActorDaysConfirmed.add(entryAllocatedOrgUnitDaysConfirmed)
-                    .add(entryAllocatedCompetencyDaysConfirmed);
-            BigDecimal entryAllocationDaysNotConfirmed = entryAllocatedActorDaysNotConfirmed.add(entryAllocatedOrgUnitDaysNotConfirmed)
-                    .add(entryAllocatedCompetencyDaysNotConfirmed);
+            // budget, forecast and engaged of all entries in one round trip
+            Map<Long, FinancialAmounts> amounts = PortfolioEntryDao.getPEAsFinancialAmountsMapByPE(this.getPreferenceManagerPlugin(), portfolioEntryIds);
 
-            allocation = allocation.add(entryAllocationDaysConfirmed).add(entryAllocationDaysNotConfirmed);
-            allocationConfirmed = allocationConfirmed.add(entryAllocationDaysConfirmed);
-            allocationNotConfirmed = allocationNotConfirmed.add(entryAllocationDaysNotConfirmed);
+            for (FinancialAmounts entryAmounts : amounts.values()) {
 
-            if (getSecurityService().restrict(IMafConstants.PORTFOLIO_ENTRY_VIEW_FINANCIAL_INFO_ALL_PERMISSION)) {
+                Totals entryTotals = entryAmounts.getTotals(null);
 
                 // budget
-                Double entryBudgetCapex = PortfolioEntryDao.getPEAsBudgetAmountByOpex(id, false);
-                Double entryBudgetOpex = PortfolioEntryDao.getPEAsBudgetAmountByOpex(id, true);
-
-                budget = budget.add(new BigDecimal(entryBudgetCapex + entryBudgetOpex));
-                budgetCapex = budgetCapex.add(new BigDecimal(entryBudgetCapex));
-                budgetOpex = budgetOpex.add(new BigDecimal(entryBudgetOpex));
+                budgetCapex = budgetCapex.add(new BigDecimal(entryTotals.getCapexBudget()));
+                budgetOpex = budgetOpex.add(new BigDecimal(entryTotals.getOpexBudget()));
 
                 // forecast
-                Double entryCostToCompleteCapex = PortfolioEntryDao.getPEAsCostToCompleteAmountByOpex(this.getPreferenceManagerPlugin(), id, false);
-                Double entryCostToCompleteOpex = PortfolioEntryDao.getPEAsCostToCompleteAmountByOpex(this.getPreferenceManagerPlugin(), id, true);
-                Double entryEngagedCapex = PortfolioEntryDao.getPEAsEngagedAmountByOpex(this.getPreferenceManagerPlugin(), id, false);
-                Double entryEngagedOpex = PortfolioEntryDao.getPEAsEngagedAmountByOpex(this.getPreferenceManagerPlugin(), id, true);
-
-                forecast = forecast.add(new BigDecimal(entryCostToCompleteCapex + entryCostToCompleteOpex + entryEngagedCapex + entryEngagedOpex));
-                forecastCapex = forecastCapex.add(new BigDecimal(entryCostToCompleteCapex + entryEngagedCapex));
-                forecastOpex = forecastOpex.add(new BigDecimal(entryCostToCompleteOpex + entryEngagedOpex));
+                forecastCapex = forecastCapex.add(new BigDecimal(entryTotals.getForecast(false)));
+                forecastOpex = forecastOpex.add(new BigDecimal(entryTotals.getForecast(true)));
 
                 // engaged
-                engaged = engaged.add(new BigDecimal(entryEngagedCapex + entryEngagedOpex));
-                engagedCapex = engagedCapex.add(new BigDecimal(entryEngagedCapex));
-                engagedOpex = engagedOpex.add(new BigDecimal(entryEngagedOpex));
+                engagedCapex = engagedCapex.add(new BigDecimal(entryTotals.getCapexEngaged()));
+                engagedOpex = engagedOpex.add(new BigDecimal(entryTotals.getOpexEngaged()));
 
             }
 
+            budget = budgetCapex.add(budgetOpex);
+            forecast = forecastCapex.add(forecastOpex);
+            engaged = engagedCapex.add(engagedOpex);
+
         }
 
         budget = budget.setScale(2, RoundingMode.HALF_UP);
@@ -562,30 +481,6 @@ public class RoadmapController extends Controller {
 
     }
 
-    private Date getEndTime(Integer year, Integer month) {
-        Calendar yearEndDay = Calendar.getInstance();
-        yearEndDay.set(Calendar.YEAR, year + 1);
-        yearEndDay.set(Calendar.MONTH, month - 1);
-        yearEndDay.set(Calendar.DAY_OF_MONTH, 31);
-        yearEndDay.set(Calendar.HOUR_OF_DAY, 23);
-        yearEndDay.set(Calendar.MINUTE, 59);
-        yearEndDay.set(Calendar.SECOND, 59);
-        yearEndDay.set(Calendar.MILLISECOND, 999);
-        return yearEndDay.getTime();
-    }
-
-    private Date getStartTime(Integer year, Integer month) {
-        Calendar yearStartDay = Calendar.getInstance();
-        yearStartDay.set(Calendar.YEAR, year);
-        yearStartDay.set(Calendar.MONTH, month);
-        yearStartDay.set(Calendar.DAY_OF_MONTH, 1);
-        yearStartDay.set(Calendar.HOUR_OF_DAY, 0);
-        yearStartDay.set(Calendar.MINUTE, 0);
-        yearStartDay.set(Calendar.SECOND, 0);
-        yearStartDay.set(Calendar.MILLISECOND, 0);
-        return yearStartDay.getTime();
-    }
-
     /**
      * Get capacity table by employee
      */
@@ -600,40 +495,25 @@ public class RoadmapController extends Controller {
             ids.add(id.asLong());
         }
 
-        List<PortfolioEntryResourcePlanAllocatedActor> allocatedActors = new ArrayList<>();
-
-        ids.forEach(
-            id -> allocatedActors.addAll(PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsListByPE(id, getStartTime(year, month), getEndTime(year, month), onlyConfirmed, null, null))
-        );
+        // Get the planned days by actor from the capacity cube
+        Map<Long, double[]> plannedByActor = getCapacityForecastService().getPlannedByActor(ids, onlyConfirmed, year, month);
 
         // Add actor capacities group by actor
         Map<Long, ActorCapacity> actorCapacities = new HashMap<>();
-        for (PortfolioEntryResourcePlanAllocatedActor allocatedActor: allocatedActors) {
-
-            ActorCapacity actorCapacity;
-            if (actorCapacities.containsKey(allocatedActor.actor.id)) {
-                actorCapacity = actorCapacities.get(allocatedActor.actor.id);
-            } else {
-                actorCapacity = new ActorCapacity(warningLimitPercent, allocatedActor.actor);
+        for (Actor actor : ActorDao.getActorAsListByIds(plannedByActor.keySet())) {
 
-                // Add availables just once
-                List<models.pmo.ActorCapacity> actorAvailables = ActorDao.getActorCapacityAsArrayByActorAndYear(allocatedActor.actor, year, month);
-                for (models.pmo.ActorCapacity available : actorAvailables) {
-                    actorCapacity.addAvailable(getColumnIndex(month, available.month - 1), available.value == null ? 0.0 : available.value);
-                }
+            ActorCapacity actorCapacity = new ActorCapacity(warningLimitPercent, actor);
 
+            // Add availables
+            List<models.pmo.ActorCapacity> actorAvailables = ActorDao.getActorCapacityAsArrayByActorAndYear(actor, year, month);
+            for (models.pmo.ActorCapacity available : actorAvailables) {
+                actorCapacity.addAvailable(getColumnIndex(month, available.month - 1), available.value == null ? 0.0 : available.value);
             }
 
             // Add planned
-            if (allocatedActor.portfolioEntryResourcePlanAllocatedActorDetails.isEmpty()) {
-                allocatedActor.computeAllocationDetails(getBudgetTrackingService().isActive(), getPreferenceManagerPlugin().getPreferenceValueAsBoolean(IMafConstants.RESOURCES_WEEK_DAYS_ALLOCATION_PREFERENCE));
-            }
-            allocatedActor.portfolioEntryResourcePlanAllocatedActorDetails
-                    .stream()
-                    .filter(detail -> (detail.year.equals(year) && detail.month >= month) || (detail.year.equals(year + 1) && detail.month < month))
-                    .forEach(detail -> actorCapacity.addPlanned(getColumnIndex(month, detail.month), detail.days == null ? 0.0 : detail.days));
+            actorCapacity.addPlanned(plannedByActor.get(actor.id));
 
-            actorCapacities.put(allocatedActor.actor.id, actorCapacity);
+            actorCapacities.put(actor.id, actorCapacity);
         }
 
         return ok(views.html.core.roadmap.roadmap_capacity_forecast_table_actors_fragment.render(actorCapacities.values().stream().sorted(Comparator.comparing(a -> a.getActor().firstName)).collect(Collectors.toList()), year, month, monthsDisplayed));
@@ -650,110 +530,28 @@ public class RoadmapController extends Controller {
             ids.add(id.asLong());
         }
 
-        List<PortfolioEntryResourcePlanAllocatedActor> allocatedActors = new ArrayList<>();
-        List<PortfolioEntryResourcePlanAllocatedOrgUnit> allocatedOrgUnits = new ArrayList<>();
-        Date yearStartTime = getStartTime(year, month);
-        Date yearEndTime = getEndTime(year, month);
-
-        ids.forEach(
-                id -> {
-                    allocatedActors.addAll(PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsListByPE(id, yearStartTime, yearEndTime, onlyConfirmed, null, null));
-                    allocatedOrgUnits.addAll(PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitAsListByPE(id, yearStartTime, yearEndTime, onlyConfirmed, null));
-                }
-        );
-
         /**
-         * Compute the capacities for the org unit and actor allocations and
-         * group them by org unit.
+         * Get the planned days by org unit from the capacity cube: the org unit
+         * allocations, the actor allocations (grouped by org unit of the actor)
+         * and the activity allocations of the actors of the org unit.
          */
+        Map<Long, double[]> plannedByOrgUnit = getCapacityForecastService().getPlannedByOrgUnit(ids, onlyConfirmed, year, month);
 
         Map<Long, OrgUnitCapacity> orgUnitCapacities = new HashMap<>();
+        for (OrgUnit orgUnit : OrgUnitDao.getOrgUnitAsListByIds(plannedByOrgUnit.keySet())) {
 
-        // Org unit: the org unit is simply the one of the allocated org
-        // unit.
-        Boolean workingDaysOnly = getPreferenceManagerPlugin().getPreferenceValueAsBoolean(IMafConstants.RESOURCES_WEEK_DAYS_ALLOCATION_PREFERENCE);
-
-        for (PortfolioEntryResourcePlanAllocatedOrgUnit allocatedOrgUnit : allocatedOrgUnits) {
-
-            OrgUnitCapacity orgUnitCapacity;
-            if (orgUnitCapacities.containsKey(allocatedOrgUnit.orgUnit.id)) {
-                orgUnitCapacity = orgUnitCapacities.get(allocatedOrgUnit.orgUnit.id);
-            } else {
-                orgUnitCapacity = new OrgUnitCapacity(warningLimitPercent, allocatedOrgUnit.orgUnit);
-            }
-
-            // Add planned
-            if (allocatedOrgUnit.portfolioEntryResourcePlanAllocatedOrgUnitDetails.isEmpty()) {
-                allocatedOrgUnit.computeAllocationDetails(getBudgetTrackingService().isActive(), workingDaysOnly);
-            }
-
-            allocatedOrgUnit.portfolioEntryResourcePlanAllocatedOrgUnitDetails
-                    .stream()
-                    .filter(detail -> (detail.year.equals(year) && detail.month >= month) || (detail.year.equals(year + 1) && detail.month < month))
-                    .forEach(detail -> orgUnitCapacity.addPlanned(getColumnIndex(month, detail.month), detail.days == null ? 0.0 : detail.days));
-
-            orgUnitCapacities.put(allocatedOrgUnit.orgUnit.id, orgUnitCapacity);
-        }
-
-        // Actor: the org unit is the one of the actor of the allocated
-        // actor.
-        for (PortfolioEntryResourcePlanAllocatedActor allocatedActor : allocatedActors) {
-
-            if (allocatedActor.actor.orgUnit != null) {
-
-                OrgUnitCapacity orgUnitCapacity;
-                if (orgUnitCapacities.containsKey(allocatedActor.actor.orgUnit.id)) {
-                    orgUnitCapacity = orgUnitCapacities.get(allocatedActor.actor.orgUnit.id);
-                } else {
-                    orgUnitCapacity = new OrgUnitCapacity(warningLimitPercent, allocatedActor.actor.orgUnit);
-                }
-
-                if (allocatedActor.portfolioEntryResourcePlanAllocatedActorDetails.isEmpty()) {
-                    allocatedActor.computeAllocationDetails(getBudgetTrackingService().isActive(), workingDaysOnly);
-                }
-
-                allocatedActor.portfolioEntryResourcePlanAllocatedActorDetails
-                        .stream()
-                        .filter(detail -> (detail.year.equals(year) && detail.month >= month) || (detail.year.equals(year + 1) && detail.month < month))
-                        .forEach(detail -> orgUnitCapacity.addPlanned(getColumnIndex(month, detail.month), detail.days == null ? 0.0 : detail.days));
-
-                orgUnitCapacities.put(allocatedActor.actor.orgUnit.id, orgUnitCapacity);
-            }
-        }
-
-        /**
-         * Get and compute the activity capacities and the actor available
-         * capacities.
-         */
-
-        for (Entry<Long, OrgUnitCapacity> entry : orgUnitCapacities.entrySet()) {
-
-            OrgUnitCapacity orgUnitCapacity = entry.getValue();
-
-            // Get the activity allocations.
-            List<TimesheetActivityAllocatedActor> allocatedActivities = TimesheetDao.getTimesheetActivityAllocatedActorAsListByOrgUnitAndPeriod(
-                    orgUnitCapacity.getOrgUnit().id, yearStartTime, yearEndTime);
-
-            // Compute the activity allocations.
-            for (TimesheetActivityAllocatedActor allocatedActivity : allocatedActivities) {
-                if (allocatedActivity.timesheetActivityAllocatedActorDetails.isEmpty()) {
-                    allocatedActivity.computeAllocationDetails(false, workingDaysOnly);
-                }
-                allocatedActivity.timesheetActivityAllocatedActorDetails
-                        .stream()
-                        .filter(detail -> (detail.year.equals(year) && detail.month >= month) || (detail.year.equals(year + 1) && detail.month < month))
-                        .forEach(detail -> orgUnitCapacity.addPlanned(getColumnIndex(month, detail.month), detail.days == null ? 0.0 : detail.days));
-
-                orgUnitCapacities.put(allocatedActivity.actor.orgUnit.id, orgUnitCapacity);
-            }
+            OrgUnitCapacity orgUnitCapacity = new OrgUnitCapacity(warningLimitPercent, orgUnit);
+            orgUnitCapacity.addPlanned(plannedByOrgUnit.get(orgUnit.id));
 
             // Get the available actor capacities.
-            List<models.pmo.ActorCapacity> actorCapacities = ActorDao.getActorCapacityAsListByOrgUnitAndYear(orgUnitCapacity.getOrgUnit().id, year, month);
+            List<models.pmo.ActorCapacity> actorCapacities = ActorDao.getActorCapacityAsListByOrgUnitAndYear(orgUnit.id, year, month);
 
             // Compute the available actor capacities.
             for (models.pmo.ActorCapacity actorCapacity : actorCapacities) {
                 orgUnitCapacity.addAvailable(getColumnIndex(month, actorCapacity.month - 1), actorCapacity.value);
             }
+
+            orgUnitCapacities.put(orgUnit.id, orgUnitCapacity);
         }
 
         return ok(roadmap_capacity_forecast_table_orgunits_fragment.render(
@@ -784,81 +582,29 @@ public class RoadmapController extends Controller {
             ids.add(id.asLong());
         }
 
-        List<PortfolioEntryResourcePlanAllocatedActor> allocatedActors = new ArrayList<>();
-        List<PortfolioEntryResourcePlanAllocatedCompetency> allocatedCompetencies = new ArrayList<>();
-        Date yearStartTime = getStartTime(year, month);
-        Date yearEndTime = getEndTime(year, month);
-
-        ids.forEach(
-                id -> {
-                    allocatedActors.addAll(PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsListByPE(id, yearStartTime, yearEndTime, onlyConfirmed, null, null));
-                    allocatedCompetencies.addAll(PortfolioEntryResourcePlanDAO.getPEPlanAllocatedCompetencyAsListByPE(id, yearStartTime, yearEndTime, onlyConfirmed, null));
-                }
-        );
-
         /**
-         * Compute the capacities for the competencies and actor allocations
-         * and group them by competency.
+         * Get the planned days by competency from the capacity cube: the
+         * competency allocations, the actor allocations (grouped by default
+         * competency of the actor) and the activity allocations of the actors
+         * having the competency as default.
          */
+        Map<Long, double[]> plannedByCompetency = getCapacityForecastService().getPlannedByCompetency(ids, onlyConfirmed, year, month);
 
         Map<Long, CompetencyCapacity> competencyCapacities = new HashMap<>();
+        for (Competency competency : ActorDao.getCompetencyAsListByIds(plannedByCompetency.keySet())) {
 
-        // Competency: the competency is simply the one of the allocated
-        // comptency.
-        for (PortfolioEntryResourcePlanAllocatedCompetency allocatedCompetency : allocatedCompetencies) {
-
-            CompetencyCapacity competencyCapacity = null;
-            if (competencyCapacities.containsKey(allocatedCompetency.competency.id)) {
-                competencyCapacity = competencyCapacities.get(allocatedCompetency.competency.id);
-            } else {
-                competencyCapacity = new CompetencyCapacity(warningLimitPercent, allocatedCompetency.competency);
-                competencyCapacities.put(allocatedCompetency.competency.id, competencyCapacity);
-            }
-
-            computeCapacity(allocatedCompetency.startDate, allocatedCompetency.endDate, allocatedCompetency.days, year, month,
-                    competencyCapacity);
-        }
-
-        // Actor: the competency is the one of the actor of the allocated
-        // actor.
-        for (PortfolioEntryResourcePlanAllocatedActor allocatedActor : allocatedActors) {
-
-            if (allocatedActor.actor.defaultCompetency != null) {
-
-                CompetencyCapacity competencyCapacity = null;
-                if (competencyCapacities.containsKey(allocatedActor.actor.defaultCompetency.id)) {
-                    competencyCapacity = competencyCapacities.get(allocatedActor.actor.defaultCompetency.id);
-                } else {
-                    competencyCapacity = new CompetencyCapacity(warningLimitPercent, allocatedActor.actor.defaultCompetency);
-                    competencyCapacities.put(allocatedActor.actor.defaultCompetency.id, competencyCapacity);
-                }
-
-                computeCapacity(allocatedActor.startDate, allocatedActor.endDate, getAllocatedDays(allocatedActor.days, allocatedActor.forecastDays),
-                        year, month, competencyCapacity);
-
-            }
-        }
-
-        for (Entry<Long, CompetencyCapacity> entry : competencyCapacities.entrySet()) {
-
-            CompetencyCapacity competencyCapacity = entry.getValue();
-
-            // Get the activity allocations.
-            List<TimesheetActivityAllocatedActor> allocatedActivities = TimesheetDao.getTimesheetActivityAllocatedActorAsListByCompetencyAndPeriod(
-                    competencyCapacity.getCompetency().id, yearStartTime, yearEndTime);
-
-            // Compute the activity allocations.
-            for (TimesheetActivityAllocatedActor allocatedActivity : allocatedActivities) {
-                computeCapacity(allocatedActivity.startDate, allocatedActivity.endDate, allocatedActivity.days, year, month, competencyCapacity);
-            }
+            CompetencyCapacity competencyCapacity = new CompetencyCapacity(warningLimitPercent, competency);
+            competencyCapacity.addPlanned(plannedByCompetency.get(competency.id));
 
             // Get the available actor capacities.
-            List<models.pmo.ActorCapacity> actorCapacities = ActorDao.getActorCapacityAsListByCompetencyAndYear(competencyCapacity.getCompetency().id, year);
+            List<models.pmo.ActorCapacity> actorCapacities = ActorDao.getActorCapacityAsListByCompetencyAndYear(competency.id, year);
 
             // Compute the available actor capacities.
             for (models.pmo.ActorCapacity actorCapacity : actorCapacities) {
                 competencyCapacity.addAvailable(getColumnIndex(month, actorCapacity.month - 1), actorCapacity.value);
             }
+
+            competencyCapacities.put(competency.id, competencyCapacity);
         }
 
         return ok(views.html.core.roadmap.roadmap_capacity_forecast_table_competencies_fragment.render(new ArrayList<>(competencyCapacities.values()), year, month, monthsDisplayed));
@@ -897,119 +643,24 @@ public class RoadmapController extends Controller {
             }
 
             /**
-             * Compute the period according to the selected year.
-             */
-            Calendar monthStartDay = Calendar.getInstance();
-            monthStartDay.set(Calendar.YEAR, year);
-            monthStartDay.set(Calendar.MONTH, month);
-            monthStartDay.set(Calendar.DAY_OF_MONTH, 1);
-            monthStartDay.set(Calendar.HOUR_OF_DAY, 0);
-            monthStartDay.set(Calendar.MINUTE, 0);
-            monthStartDay.set(Calendar.SECOND, 0);
-            monthStartDay.set(Calendar.MILLISECOND, 0);
-
-            Calendar monthEndDay = Calendar.getInstance();
-            monthEndDay.set(Calendar.YEAR, year);
-            monthEndDay.set(Calendar.MONTH, month);
-            monthEndDay.set(Calendar.DAY_OF_MONTH, monthEndDay.getActualMaximum(Calendar.DAY_OF_MONTH));
-            monthEndDay.set(Calendar.HOUR_OF_DAY, 23);
-            monthEndDay.set(Calendar.MINUTE, 59);
-            monthEndDay.set(Calendar.SECOND, 59);
-            monthEndDay.set(Calendar.MILLISECOND, 999);
-
-            /**
-             * Get the PE allocations.
+             * Get the planned days of the month from the capacity cube.
              */
-            List<PortfolioEntryResourcePlanAllocatedOrgUnit> allocatedOrgUnits = new ArrayList<>();
-            List<PortfolioEntryResourcePlanAllocatedCompetency> allocatedCompetencies = new ArrayList<>();
-            List<PortfolioEntryResourcePlanAllocatedActor> allocatedActors = new ArrayList<>();
-
-            for (Long id : ids) {
-
-                if (orgUnit != null) {
-
-                    allocatedOrgUnits.addAll(PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitAsListByPE(id, monthStartDay.getTime(),
-                            monthEndDay.getTime(), false, objectId));
-
-                    allocatedActors.addAll(PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsListByPE(id, monthStartDay.getTime(), monthEndDay.getTime(),
-                            false, objectId, null));
-                }
-                if (competency != null) {
-                    allocatedCompetencies.addAll(PortfolioEntryResourcePlanDAO.getPEPlanAllocatedCompetencyAsListByPE(id, monthStartDay.getTime(),
-                            monthEndDay.getTime(), false, objectId));
-
-                    allocatedActors.addAll(PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsListByPE(id, monthStartDay.getTime(), monthEndDay.getTime(),
-                            false, null, objectId));
-                }
-
+            CapacityCellDetails cellDetails = new CapacityCellDetails();
+            if (orgUnit != null) {
+                cellDetails = getCapacityForecastService().getCellDetailsByOrgUnit(ids, objectId, year, month);
+            } else if (competency != null) {
+                cellDetails = getCapacityForecastService().getCellDetailsByCompetency(ids, objectId, year, month);
             }
 
-            /**
-             * Compute the capacities for the objet (org unit or competency) and
-             * actor allocations and group them by actor.
-             */
-
             Map<Long, CapacityDetails> capacityDetailsRows = new HashMap<>();
             Map<Long, CapacityDetailsByInitiative> capacityDetailsByInitiativeRows = new HashMap<>();
 
-            if (orgUnit != null) {
-                // There is exactly one org unit.
-                CapacityDetails capacityDetailsOrgUnit = new CapacityDetails(orgUnit);
-                capacityDetailsOrgUnit.addPlannedPortfolioEntryConfirmed(
-                        allocatedOrgUnits
-                                .stream()
-                                .filter(ResourceAllocation::isConfirmed)
-                                .mapToDouble(allocatedOrgUnit -> {
-                                    ResourceAllocationDetail detail = allocatedOrgUnit.getDetail(year, month);
-                                    return detail == null ? 0 : detail.getDays();
-                                })
-                                .sum()
-                );
-                capacityDetailsOrgUnit.addPlannedPortfolioEntryNotConfirmed(
-                        allocatedOrgUnits
-                                .stream()
-                                .filter(allocatedOrgUnit -> !allocatedOrgUnit.isConfirmed())
-                                .mapToDouble(allocatedOrgUnit -> {
-                                    ResourceAllocationDetail detail = allocatedOrgUnit.getDetail(year, month);
-                                    return detail == null ? 0 : detail.getDays();
-                                })
-                                .sum()
-                );
-                capacityDetailsRows.put(0L, capacityDetailsOrgUnit);
-
-                // Compute allocation by initiative
-                allocatedOrgUnits.stream()
-                        .forEach(orgUnitAllocation -> {
-                            PortfolioEntry portfolioEntry = orgUnitAllocation.getAssociatedPortfolioEntry();
-
-                            CapacityDetailsByInitiative capacityDetailsByInitiative;
-                            if (capacityDetailsByInitiativeRows.containsKey(portfolioEntry.id)) {
-                                capacityDetailsByInitiative = capacityDetailsByInitiativeRows.get(portfolioEntry.id);
-                            } else {
-                                capacityDetailsByInitiative = new CapacityDetailsByInitiative(portfolioEntry);
-                            }
-
-                            ResourceAllocationDetail orgUnitAllocationDetail = orgUnitAllocation.getDetail(year, month);
-                            if (orgUnitAllocationDetail != null) {
-                                if (orgUnitAllocation.isConfirmed()) {
-                                    capacityDetailsByInitiative.addGenericConfirmed(orgUnitAllocationDetail.getDays());
-                                } else {
-                                    capacityDetailsByInitiative.addGenericNotConfirmed(orgUnitAllocationDetail.getDays());
-                                }
-                            }
-
-                            capacityDetailsByInitiativeRows.put(portfolioEntry.id, capacityDetailsByInitiative);
-                        });
-            }
-
-            if (competency != null) {
-                // There is exactly one competency.
-                CapacityDetails capacityDetailsCompetency = new CapacityDetails(competency);
-                capacityDetailsRows.put(0L, capacityDetailsCompetency);
-                for (PortfolioEntryResourcePlanAllocatedCompetency allocatedCompetency : allocatedCompetencies) {
-                    computeCapacityDetails(allocatedCompetency.startDate, allocatedCompetency.endDate, allocatedCompetency.days, year, month, false,
-                            allocatedCompetency.portfolioEntryResourcePlanAllocationStatusType.status.equals(PortfolioEntryResourcePlanAllocationStatusType.AllocationStatus.CONFIRMED), capacityDetailsCompetency);
-                }
+            // There is exactly one org unit or one competency.
+            if (orgUnit != null || competency != null) {
+                CapacityDetails capacityDetailsObject = orgUnit != null ? new CapacityDetails(orgUnit) : new CapacityDetails(competency);
+                capacityDetailsObject.addPlannedPortfolioEntryConfirmed(cellDetails.getGenericDays().getConfirmed());
+                capacityDetailsObject.addPlannedPortfolioEntryNotConfirmed(cellDetails.getGenericDays().getNotConfirmed());
+                capacityDetailsRows.put(0L, capacityDetailsObject);
             }
 
             // Actor
@@ -1028,65 +679,44 @@ public class RoadmapController extends Controller {
                 }
             }
 
-            // Add project allocations
-            allocatedActors.stream().forEach(allocatedActor -> {
-
-                CapacityDetails capacityDetailsActor = capacityDetailsRows.get(allocatedActor.actor.id);
-                ResourceAllocationDetail allocatedActorDetail = allocatedActor.getDetail(year, month);
-                if (allocatedActorDetail != null) {
-
-                    if (allocatedActor.isConfirmed()) {
-                        capacityDetailsActor.addPlannedPortfolioEntryConfirmed(allocatedActorDetail.getDays());
-                    } else {
-                        capacityDetailsActor.addPlannedPortfolioEntryNotConfirmed(allocatedActorDetail.getDays());
-                    }
-
-                    // Compute allocation by initiative
-                    PortfolioEntry portfolioEntry = allocatedActor.getAssociatedPortfolioEntry();
-
-                    CapacityDetailsByInitiative capacityDetailsByInitiative;
-                    if (capacityDetailsByInitiativeRows.containsKey(portfolioEntry.id)) {
-                        capacityDetailsByInitiative = capacityDetailsByInitiativeRows.get(portfolioEntry.id);
-                    } else {
-                        capacityDetailsByInitiative = new CapacityDetailsByInitiative(portfolioEntry);
+            // Add project allocations and activities
+            for (Map.Entry<Long, CapacityDetails> entry : capacityDetailsRows.entrySet()) {
+                if (!entry.getKey().equals(0L)) {
+                    CapacityCellDetails.Days nominativeDays = cellDetails.getNominativeDaysByActor().get(entry.getKey());
+                    if (nominativeDays != null) {
+                        entry.getValue().addPlannedPortfolioEntryConfirmed(nominativeDays.getConfirmed());
+                        entry.getValue().addPlannedPortfolioEntryNotConfirmed(nominativeDays.getNotConfirmed());
                     }
+                    entry.getValue().addPlannedActivity(cellDetails.getActivityDaysByActor().getOrDefault(entry.getKey(), 0.0));
+                }
+            }
 
-                    if (allocatedActor.isConfirmed()) {
-                        capacityDetailsByInitiative.addNominativeConfirmed(allocatedActorDetail.getDays());
-                    } else {
-                        capacityDetailsByInitiative.addNominativeNotConfirmed(allocatedActorDetail.getDays());
-                    }
+            // Add the available capacities
+            List<Long> actorIds = capacityDetailsRows.keySet().stream().filter(id -> !id.equals(0L)).collect(Collectors.toList());
+            for (models.pmo.ActorCapacity actorCapacity : ActorDao.getActorCapacityAsListByActorsAndPeriod(actorIds, year, month + 1)) {
+                capacityDetailsRows.get(actorCapacity.actor.id).addAvailable(actorCapacity.value);
+            }
 
-                    capacityDetailsByInitiativeRows.put(portfolioEntry.id, capacityDetailsByInitiative);
+            // Compute allocation by initiative (the generic allocations are
+            // only given for an org unit)
+            Set<Long> portfolioEntryIds = new HashSet<>(cellDetails.getNominativeDaysByPortfolioEntry().keySet());
+            if (orgUnit != null) {
+                portfolioEntryIds.addAll(cellDetails.getGenericDaysByPortfolioEntry().keySet());
+            }
+            for (PortfolioEntry portfolioEntry : PortfolioEntryDao.getPEAsListByIds(portfolioEntryIds)) {
+                CapacityDetailsByInitiative capacityDetailsByInitiative = new CapacityDetailsByInitiative(portfolioEntry);
+                CapacityCellDetails.Days genericDays = cellDetails.getGenericDaysByPortfolioEntry().get(portfolioEntry.id);
+                if (orgUnit != null && genericDays != null) {
+                    capacityDetailsByInitiative.addGenericConfirmed(genericDays.getConfirmed());
+                    capacityDetailsByInitiative.addGenericNotConfirmed(genericDays.getNotConfirmed());
                 }
-            });
-
-            // Add activities and available
-
-            capacityDetailsRows.entrySet().stream().filter(entry -> !entry.getKey().equals(0L)).forEach(entry -> {
-
-                CapacityDetails capacityDetails = entry.getValue();
-
-                // Get the activity allocations.
-                capacityDetails.addPlannedActivity(
-                    capacityDetails
-                            .actor
-                            .timesheetActivityAllocatedActors
-                            .stream()
-                            // Get detail for the given month and year
-                            .map(allocatedActivity -> allocatedActivity.getDetail(year, month))
-                            .filter(detail -> detail != null && detail.getDays() != null)
-                            // Sum the days of the allocations
-                            .mapToDouble(ResourceAllocationDetail::getDays)
-                            .sum()
-                );
-
-                // Get the available actor capacity
-                models.pmo.ActorCapacity actorCapacity = ActorDao.getActorCapacityByActorAndPeriod(capacityDetails.getActor().id, year, month + 1);
-                if (actorCapacity != null) {
-                    capacityDetails.addAvailable(actorCapacity.value);
+                CapacityCellDetails.Days nominativeDays = cellDetails.getNominativeDaysByPortfolioEntry().get(portfolioEntry.id);
+                if (nominativeDays != null) {
+                    capacityDetailsByInitiative.addNominativeConfirmed(nominativeDays.getConfirmed());
+                    capacityDetailsByInitiative.addNominativeNotConfirmed(nominativeDays.getNotConfirmed());
                 }
-            });
+                capacityDetailsByInitiativeRows.put(portfolioEntry.id, capacityDetailsByInitiative);
+            }
 
             // get the month name
             Calendar cal = Calendar.getInstance();
@@ -1271,7 +901,7 @@ public class RoadmapController extends Controller {
 
             pagination.setCurrentPage(filterConfig.getCurrentPage());
 
-            List<PortfolioEntryListView> portfolioEntryListView = pagination.getListOfObjects().stream().map(PortfolioEntryListView::new).collect(Collectors.toList());
+            List<PortfolioEntryListView> portfolioEntryListView = PortfolioEntryListView.getAsList(pagination.getListOfObjects());
 
             Table<PortfolioEntryListView> table = this.getTableProvider().get().portfolioEntry.templateTable.fillForFilterConfig(portfolioEntryListView,
                     getColumnsToHide(filterConfig));
@@ -1306,38 +936,6 @@ public class RoadmapController extends Controller {
         return columnsToHide;
     }
 
-    /**
-     * Compute and share the capacity of an allocation.
-     * 
-     * @param startDate
-     *            the allocation start date
-     * @param endDate
-     *            the allocation end date
-     * @param allocatedDays
-     *            the number of allocated days
-     * @param year
-     *            the year
-     * @param resourceRequestCapacity
-     *            the resrouce request capacity
-     */
-    private static void computeCapacity(Date startDate, Date endDate, BigDecimal allocatedDays, Integer year, Integer month,
-            ResourceRequestCapacity resourceRequestCapacity) {
-
-        // compute the day rate
-        long endMillis = removeTime(endDate).getTimeInMillis();
-        long startMillis = removeTime(startDate).getTimeInMillis();
-        int days = 1 + (int) ((endMillis - startMillis) / (1000 * 60 * 60 * 24));
-        Double dayRate = allocatedDays.doubleValue() / days;
-
-        Calendar start = removeTime(startDate);
-        for (int i = 0; i < days; i++) {
-            if (year == start.get(Calendar.YEAR)) {
-                resourceRequestCapacity.addPlanned(getColumnIndex(month, start.get(Calendar.MONTH)), dayRate);
-            }
-            start.add(Calendar.DAY_OF_MONTH, 1);
-        }
-    }
-
     /**
      * Get the 0-based index of the displayed column for a given month based on the starting month number
      *
@@ -1370,68 +968,6 @@ public class RoadmapController extends Controller {
         return BigDecimal.valueOf(capacities.stream().mapToDouble(capacity -> capacity.resourceCapacityColumns.get(column).planned).sum()).setScale(1, RoundingMode.HALF_UP).doubleValue();
     }
 
-    /**
-     * Compute and share the capacity of an allocation.
-     * 
-     * @param startDate
-     *            the allocation start date
-     * @param endDate
-     *            the allocation end date
-     * @param allocatedDays
-     *            the number of allocated days
-     * @param year
-     *            the year
-     * @param month
-     *            the month
-     * @param isActivity
-     *            true if the allocation is for an activity
-     * @param isConfirmed
-     *            true if the allocation is confirmed
-     * @param capacityDetails
-     *            the capacity details
-     */
-    private static void computeCapacityDetails(Date startDate, Date endDate, BigDecimal allocatedDays, Integer year, Integer month, boolean isActivity,
-            boolean isConfirmed, CapacityDetails capacityDetails) {
-
-        // compute the day rate
-        long endMillis = removeTime(endDate).getTimeInMillis();
-        long startMillis = removeTime(startDate).getTimeInMillis();
-        int days = 1 + (int) ((endMillis - startMillis) / (1000 * 60 * 60 * 24));
-        Double dayRate = allocatedDays.doubleValue() / days;
-
-        Calendar start = removeTime(startDate);
-        for (int i = 0; i < days; i++) {
-            if (year.intValue() == start.get(Calendar.YEAR) && month.intValue() == start.get(Calendar.MONTH)) {
-                if (isActivity) {
-                    capacityDetails.addPlannedActivity(dayRate);
-                } else {
-                    if (isConfirmed) {
-                        capacityDetails.addPlannedPortfolioEntryConfirmed(dayRate);
-                    } else {
-                        capacityDetails.addPlannedPortfolioEntryNotConfirmed(dayRate);
-                    }
-                }
-            }
-            start.add(Calendar.DAY_OF_MONTH, 1);
-        }
-    }
-
-    /**
-     * Remove the time part of a date and return a calendar.
-     * 
-     * @param date
-     *            the date
-     */
-    private static Calendar removeTime(Date date) {
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(date);
-        calendar.set(Calendar.HOUR_OF_DAY, 0);
-        calendar.set(Calendar.MINUTE, 0);
-        calendar.set(Calendar.SECOND, 0);
-        calendar.set(Calendar.MILLISECOND, 0);
-        return calendar;
-    }
-
     /**
      * The capacity forecast configuration form.
      * 
@@ -1530,6 +1066,18 @@ public class RoadmapController extends Controller {
             this.resourceCapacityColumns.get(column).addPlanned(planned);
         }
 
+        /**
+         * Increase the planned values of all columns.
+         * 
+         * @param planned
+         *            the planned values to add, by column
+         */
+        public void addPlanned(double[] planned) {
+            for (int i = 0; i < planned.length; i++) {
+                this.resourceCapacityColumns.get(i).addPlanned(planned[i]);
+            }
+        }
+
         /**
          * increase the available value for a column.
          * 
@@ -1968,27 +1516,6 @@ public class RoadmapController extends Controller {
         return userSessionManagerPlugin;
     }
 
-    /**
-     * Get the notification manager service.
-     */
-    private INotificationManagerPlugin getNotificationManagerPlugin() {
-        return notificationManagerPlugin;
-    }
-
-    /**
-     * Get the personal storage service.
-     */
-    private IPersonalStoragePlugin getPersonalStoragePlugin() {
-        return personalStoragePlugin;
-    }
-
-    /**
-     * Get the system admin utils.
-     */
-    private ISysAdminUtils getSysAdminUtils() {
-        return sysAdminUtils;
-    }
-
     /**
      * Get the security service.
      */
@@ -2031,4 +1558,32 @@ public class RoadmapController extends Controller {
         return this.budgetTrackingService;
     }
 
+    /**
+     * Get the capacity forecast service.
+     */
+    private ICapacityForecastService getCapacityForecastService() {
+        return this.capacityForecastService;
+    }
+
+    /**
+     * Get the gantt data service.
+     */
+    private IGanttDataService getGanttDataService() {
+        return this.ganttDataService;
+    }
+
+    /**
+     * Get the table export service.
+     */
+    private ITableExportService getTableExportService() {
+        return this.tableExportService;
+    }
+
+    /**
+     * Get the cache service.
+     */
+    private CacheApi getCache() {
+        return this.cache;
+    }
+
 }
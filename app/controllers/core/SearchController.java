@@ -61,6 +61,8 @@ import play.mvc.Result;
 import security.dynamic.BudgetBucketDynamicHelper;
 import security.dynamic.PortfolioDynamicHelper;
 import security.dynamic.PortfolioEntryDynamicHelper;
+import services.search.ISearchIndexService;
+import services.search.ISearchIndexService.IndexedType;
 import services.tableprovider.ITableProvider;
 import utils.table.ActorListView;
 import utils.table.BudgetBucketListView;
@@ -91,6 +93,8 @@ public class SearchController extends Controller {
     private IPreferenceManagerPlugin preferenceManagerPlugin;
     @Inject
     private ITableProvider tableProvider;
+    @Inject
+    private ISearchIndexService searchIndexService;
 
     private static Form<SearchFormData> formTemplate = Form.form(SearchFormData.class);
     private static Logger.ALogger log = Logger.of(SearchController.class);
@@ -171,18 +175,16 @@ public class SearchController extends Controller {
         }
 
         SearchFormData searchFormData = boundForm.get();
-        
-        // clean the key words
-        String keywords = searchFormData.keywords.replaceAll("\\*", "%").trim();
-        if (!keywords.contains("%")) {
-        	 keywords = keywords.replaceAll(" ", "%").trim();
-             keywords = "%" + keywords + "%";
+
+        // clean the key words: "*" for the wild cards, a search of a sub text
+        // if there is no wild card
+        String keywords = searchFormData.keywords.replaceAll("%", "*").trim();
+        if (!keywords.contains("*")) {
+            keywords = "*" + keywords.replaceAll(" ", "*") + "*";
         }
+        IndexedType indexedType = searchFormData.objectType.getIndexedType();
+
         boolean isActive = searchFormData.isActive;
-        
-        Expression expression = Expr.or(Expr.or(Expr.ilike("name", keywords), Expr.ilike("governanceId", keywords )), Expr.ilike("refId", keywords ));
-        Expression portfolioExpression = Expr.or(Expr.or(Expr.ilike("name", keywords ), Expr.ilike("refId", keywords )), Expr.ilike("refId", keywords));
-        Expression budgetBucketExpression = Expr.or(Expr.ilike("name", keywords ), Expr.ilike("refId", keywords ));
 
         switch (searchFormData.objectType) {
         case PORTFOLIO_ENTRY:
@@ -194,20 +196,19 @@ public class SearchController extends Controller {
             List<PortfolioEntry> portfolioEntries;
             try {
             	
-            	ExpressionList<PortfolioEntry> expressionList; 
-            	
-            	if (isActive) {
-            		expressionList =  PortfolioEntryDynamicHelper.getPortfolioEntriesViewAllowedAsQuery(getSecurityService()).add(expression).eq("archived", false);
-            	}
-            	else {
-            		expressionList =  PortfolioEntryDynamicHelper.getPortfolioEntriesViewAllowedAsQuery(getSecurityService()).add(expression);
-            	}
-                portfolioEntries = expressionList.findList();
+                portfolioEntries = getSearchIndexService().find(indexedType, keywords, ids -> {
+                    ExpressionList<PortfolioEntry> expressionList = PortfolioEntryDynamicHelper.getPortfolioEntriesViewAllowedAsQuery(getSecurityService())
+                            .add(getIdsExpression(ids));
+                    if (isActive) {
+                        expressionList.eq("archived", false);
+                    }
+                    return expressionList.findList();
+                }, portfolioEntry -> portfolioEntry.id);
             } catch (AccountManagementException e) {
                 return ControllersUtils.logAndReturnUnexpectedError(e, log, getConfiguration(), getI18nMessagesPlugin());
             }
 
-            List<PortfolioEntryListView> portfolioEntryListView = portfolioEntries.stream().map(PortfolioEntryListView::new).collect(Collectors.toList());
+            List<PortfolioEntryListView> portfolioEntryListView = PortfolioEntryListView.getAsList(portfolioEntries);
 
             if (!portfolioEntryListView.isEmpty()) {
 
@@ -234,14 +235,14 @@ public class SearchController extends Controller {
             List<Portfolio> portfolios = null;
             try 
             {
-            	ExpressionList<Portfolio> expressionList;
-            	if (isActive) {
-            		expressionList = PortfolioDynamicHelper.getPortfoliosViewAllowedAsQuery(portfolioExpression, null, getSecurityService()).eq("is_active", isActive);
-            	}
-            	else {
-            		expressionList = PortfolioDynamicHelper.getPortfoliosViewAllowedAsQuery(portfolioExpression, null, getSecurityService());
-            	}
-                portfolios = expressionList.findList();              		
+                portfolios = getSearchIndexService().find(indexedType, keywords, ids -> {
+                    ExpressionList<Portfolio> expressionList = PortfolioDynamicHelper.getPortfoliosViewAllowedAsQuery(getIdsExpression(ids), null,
+                            getSecurityService());
+                    if (isActive) {
+                        expressionList.eq("is_active", isActive);
+                    }
+                    return expressionList.findList();
+                }, portfolio -> portfolio.id);
             } catch (AccountManagementException e) {
                 return ControllersUtils.logAndReturnUnexpectedError(e, log, getConfiguration(), getI18nMessagesPlugin());
             }
@@ -265,14 +266,9 @@ public class SearchController extends Controller {
 
             Logger.debug("ACTOR");
 
-            List<Actor> actors ;
-            if (isActive) {
-            	 actors = ActorDao.getActorAsListByKeywords(keywords, true);
-            }
-            else {
-            	 actors = ActorDao.getActorAsListByKeywords(keywords, false);
-            }
-            
+            List<Actor> actors = getSearchIndexService().find(indexedType, keywords, ids -> ActorDao.getActorAsListByIdsAndActive(ids, isActive),
+                    actor -> actor.id);
+
             if (actors.size() > 0) {
                 if (actors.size() == 1) {
                     return redirect(controllers.core.routes.ActorController.view(actors.get(0).id));
@@ -291,14 +287,9 @@ public class SearchController extends Controller {
 
             Logger.debug("ORGUNIT");
 
-            List<OrgUnit> orgUnits ;
-            
-            if (isActive) {
-            	orgUnits = OrgUnitDao.getOrgUnitAsListByKeywordsAndFilter2(keywords, true, false, false);
-            }
-            else {
-            	orgUnits = OrgUnitDao.getOrgUnitAsListByKeywordsAndFilter2(keywords, false, false, false);
-            }
+            List<OrgUnit> orgUnits = getSearchIndexService().find(indexedType, keywords,
+                    ids -> OrgUnitDao.getOrgUnitAsListByIdsAndFilter(ids, isActive, false, false), orgUnit -> orgUnit.id);
+
             if (orgUnits.size() > 0) {
                 if (orgUnits.size() == 1) {
                     return redirect(controllers.core.routes.OrgUnitController.view(orgUnits.get(0).id, 0));
@@ -317,8 +308,9 @@ public class SearchController extends Controller {
 
             Logger.debug("PURCHASE_ORDER");
 
-            List<PurchaseOrder> purchaseOrders = PurchaseOrderDAO.getPurchaseOrderAsListByRefIdLike2(keywords);
-            
+            List<PurchaseOrder> purchaseOrders = getSearchIndexService().find(indexedType, keywords, PurchaseOrderDAO::getPurchaseOrderAsListByIds,
+                    purchaseOrder -> purchaseOrder.id);
+
             if (purchaseOrders.size() > 0) {
                 if (purchaseOrders.size() == 1) {
                     return redirect(controllers.core.routes.PurchaseOrderController.view(purchaseOrders.get(0).id));
@@ -340,16 +332,14 @@ public class SearchController extends Controller {
             // search the budget buckets
             List<BudgetBucket> budgetBuckets;
             try {
-            	ExpressionList<BudgetBucket> expressionList ; 
-                
-            	if (isActive) {
-            		expressionList = BudgetBucketDynamicHelper.getBudgetBucketsViewAllowedAsQuery(budgetBucketExpression, null, getSecurityService()).eq("is_active", isActive);
-                    
-            	}
-            	else {
-            		expressionList = BudgetBucketDynamicHelper.getBudgetBucketsViewAllowedAsQuery(budgetBucketExpression, null, getSecurityService());                
-            	}
-            	budgetBuckets = expressionList.findList();
+                budgetBuckets = getSearchIndexService().find(indexedType, keywords, ids -> {
+                    ExpressionList<BudgetBucket> expressionList = BudgetBucketDynamicHelper.getBudgetBucketsViewAllowedAsQuery(getIdsExpression(ids), null,
+                            getSecurityService());
+                    if (isActive) {
+                        expressionList.eq("is_active", isActive);
+                    }
+                    return expressionList.findList();
+                }, budgetBucket -> budgetBucket.id);
             } catch (AccountManagementException e) {
                 return ControllersUtils.logAndReturnUnexpectedError(e, log, getConfiguration(), getI18nMessagesPlugin());
             }
@@ -376,6 +366,17 @@ public class SearchController extends Controller {
                 this.getPreferenceManagerPlugin(), this.getSecurityService()), "core.search.submit.noresult"));
     }
 
+    /**
+     * Get the expression restricting a query to the ids found by the search
+     * index.
+     * 
+     * @param ids
+     *            the ids, null for all
+     */
+    private static Expression getIdsExpression(List<Long> ids) {
+        return ids != null ? Expr.in("id", ids) : Expr.isNotNull("id");
+    }
+
     /**
      * The search form data is used to display the fields of the search form.
      * 
@@ -404,7 +405,27 @@ public class SearchController extends Controller {
      * List of all possible searchable object (entity) types.
      */
     public static enum ObjectTypes {
-        PORTFOLIO_ENTRY, ACTOR, PORTFOLIO, ORGUNIT, PURCHASE_ORDER, BUDGET_BUCKET;
+        PORTFOLIO_ENTRY(IndexedType.PORTFOLIO_ENTRY), ACTOR(IndexedType.ACTOR), PORTFOLIO(IndexedType.PORTFOLIO), ORGUNIT(IndexedType.ORG_UNIT),
+        PURCHASE_ORDER(IndexedType.PURCHASE_ORDER), BUDGET_BUCKET(IndexedType.BUDGET_BUCKET);
+
+        private IndexedType indexedType;
+
+        /**
+         * Construct an object type.
+         * 
+         * @param indexedType
+         *            the corresponding type of the search index
+         */
+        private ObjectTypes(IndexedType indexedType) {
+            this.indexedType = indexedType;
+        }
+
+        /**
+         * Get the corresponding type of the search index.
+         */
+        public IndexedType getIndexedType() {
+            return this.indexedType;
+        }
     }
 
     /**
@@ -455,4 +476,11 @@ public class SearchController extends Controller {
     private ITableProvider getTableProvider() {
         return this.tableProvider;
     }
+
+    /**
+     * Get the search index service.
+     */
+    private ISearchIndexService getSearchIndexService() {
+        return this.searchIndexService;
+    }
 }
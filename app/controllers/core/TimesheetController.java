@@ -23,15 +23,17 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import javax.inject.Inject;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.apache.commons.lang3.tuple.Pair;
 
 import com.avaje.ebean.Ebean;
+import com.avaje.ebean.Transaction;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -63,6 +65,7 @@ import models.timesheet.TimesheetReport;
 import play.Configuration;
 import play.Logger;
 import play.data.Form;
+import play.libs.Json;
 import play.mvc.Controller;
 import play.mvc.Result;
 import play.mvc.With;
@@ -88,6 +91,8 @@ public class TimesheetController extends Controller {
 
     private static Logger.ALogger log = Logger.of(TimesheetController.class);
 
+    private static final int WEEKLY_SAVE_BATCH_SIZE = 100;
+
     private static Form<TimesheetReportApprovalFormData> timesheetReportApprovalFormTemplate = Form.form(TimesheetReportApprovalFormData.class);
 
     /**
@@ -128,6 +133,11 @@ public class TimesheetController extends Controller {
 
     /**
      * Save the weekly timesheet.
+     * 
+     * The submitted grid is compared to the entries and logs of the report
+     * (loaded in one query) and only the changes are written, as JDBC
+     * batches. The version of the report when it has been displayed is
+     * checked so that a concurrent save is not silently overwritten.
      */
     @Restrict({ @Group(IMafConstants.TIMESHEET_ENTRY_PERMISSION) })
     public Result weeklySave() {
@@ -135,10 +145,10 @@ public class TimesheetController extends Controller {
         String[] dataString = request().body().asFormUrlEncoded().get("data");
 
         try {
-            JSONObject dataJson = new JSONObject(dataString[0]);
+            JsonNode dataJson = Json.parse(dataString[0]);
 
             // get the report
-            Long reportId = dataJson.getLong("reportId");
+            Long reportId = dataJson.get("reportId").asLong();
             TimesheetReport report = TimesheetDao.getTimesheetReportById(reportId);
 
             // create the date format
@@ -158,132 +168,103 @@ public class TimesheetController extends Controller {
                 return redirect(controllers.core.routes.TimesheetController.weeklyFill(sdf.format(report.startDate)));
             }
 
-            Ebean.beginTransaction();
-
-            try {
+            // get the version of the report when it has been displayed
+            Long version = getJsonLong(dataJson, "version");
 
-                // get the entries
-                JSONArray entriesJson = dataJson.getJSONArray("entries");
+            Transaction transaction = Ebean.beginTransaction();
 
-                for (int i = 0; i < entriesJson.length(); i++) {
-
-                    JSONObject entryJson;
-                    try {
-                        entryJson = entriesJson.getJSONObject(i);
-                    } catch (JSONException e) {
-                        entryJson = null;
-                    }
+            try {
 
-                    if (entryJson != null) {
+                // check and increment the version of the report
+                if (!TimesheetDao.updateTimesheetReportVersion(report.id, version != null ? new Date(version) : null)) {
+                    Ebean.rollbackTransaction();
+                    Utilities.sendErrorFlashMessage(Msg.get("core.timesheet.fill.save.error.concurrent_update"));
+                    return redirect(controllers.core.routes.TimesheetController.weeklyFill(sdf.format(report.startDate)));
+                }
 
-                        // get the attributes
-                        boolean inDB = entryJson.getBoolean("inDB");
+                transaction.setBatchMode(true);
+                transaction.setBatchSize(WEEKLY_SAVE_BATCH_SIZE);
 
-                        Boolean toRemove;
-                        try {
-                            toRemove = entryJson.getBoolean("toRemove");
-                        } catch (JSONException e) {
-                            toRemove = null;
-                        }
+                // get the existing entries with their logs
+                Map<Long, TimesheetEntry> existingEntries = new HashMap<>();
+                for (TimesheetEntry entry : TimesheetDao.getTimesheetEntryAsListWithLogsByReport(report.id)) {
+                    existingEntries.put(entry.id, entry);
+                }
 
-                        Long entryId;
-                        try {
-                            entryId = entryJson.getLong("entryId");
-                        } catch (JSONException e) {
-                            entryId = null;
-                        }
+                // save the entries
+                List<Pair<TimesheetEntry, JsonNode>> entriesToLog = new ArrayList<>();
+                for (JsonNode entryJson : dataJson.path("entries")) {
 
-                        Long portfolioEntryId;
-                        try {
-                            portfolioEntryId = entryJson.getLong("portfolioEntryId");
-                        } catch (JSONException e) {
-                            portfolioEntryId = null;
-                        }
+                    if (!entryJson.isObject() || entryJson.path("logs").size() != 7) {
+                        continue;
+                    }
 
-                        Long packageId;
-                        try {
-                            packageId = entryJson.getLong("packageId");
-                        } catch (JSONException e) {
-                            packageId = null;
+                    TimesheetEntry entry = null;
+                    if (entryJson.path("inDB").asBoolean()) {
+                        entry = existingEntries.get(getJsonLong(entryJson, "entryId"));
+                        if (entry == null) {
+                            continue;
                         }
-
-                        Long activityId;
-                        try {
-                            activityId = entryJson.getLong("activityId");
-                        } catch (JSONException e) {
-                            activityId = null;
+                        if (entryJson.path("toRemove").asBoolean()) {
+                            entry.doDelete();
+                            continue;
                         }
+                    } else {
+                        entry = new TimesheetEntry();
+                        entry.timesheetReport = report;
+                    }
 
-                        // get the logs
-                        JSONArray logsJson = entryJson.getJSONArray("logs");
-
-                        if (logsJson.length() == 7) {
-
-                            TimesheetEntry entry = null;
-                            if (inDB) {
-                                entry = TimesheetDao.getTimesheetEntryById(entryId);
-                            } else {
-                                entry = new TimesheetEntry();
-                                entry.timesheetReport = report;
-                            }
-
-                            if (inDB && toRemove) {
-                                entry.doDelete();
-                            } else {
-
-                                entry.portfolioEntry = null;
-                                entry.portfolioEntryPlanningPackage = null;
-                                entry.timesheetActivity = null;
-
-                                if (portfolioEntryId != null) { // initiative
-                                    entry.portfolioEntry = PortfolioEntryDao.getPEById(portfolioEntryId);
-                                    if (packageId != null) {
-                                        entry.portfolioEntryPlanningPackage = PortfolioEntryPlanningPackageDao.getPEPlanningPackageById(packageId);
-                                    }
-                                } else { // activity
-                                    entry.timesheetActivity = TimesheetDao.getTimesheetActivityById(activityId);
-                                }
-
-                                entry.save();
-
-                                for (int j = 0; j < logsJson.length(); j++) {
+                    if (setTimesheetEntryObject(entry, getJsonLong(entryJson, "portfolioEntryId"), getJsonLong(entryJson, "packageId"),
+                            getJsonLong(entryJson, "activityId"))) {
+                        entry.save();
+                    }
 
-                                    JSONObject logJson = logsJson.getJSONObject(j);
+                    entriesToLog.add(Pair.of(entry, entryJson));
+                }
 
-                                    // get the attributes
-                                    double hours = logJson.getDouble("hours");
+                // execute the entries batch, the new logs need the ids of the
+                // new entries
+                transaction.flushBatch();
 
-                                    Long logId;
-                                    try {
-                                        logId = logJson.getLong("logId");
-                                    } catch (JSONException e) {
-                                        logId = null;
-                                    }
+                // save the logs
+                for (Pair<TimesheetEntry, JsonNode> entryToLog : entriesToLog) {
 
-                                    TimesheetLog log = null;
-                                    if (inDB) {
-                                        log = TimesheetDao.getTimesheetLogById(logId);
-                                    } else {
-                                        log = new TimesheetLog();
-                                        log.timesheetEntry = entry;
+                    TimesheetEntry entry = entryToLog.getLeft();
+                    boolean inDB = entryToLog.getRight().path("inDB").asBoolean();
 
-                                        Calendar cal = Calendar.getInstance();
-                                        cal.setTime(report.startDate);
-                                        cal.add(Calendar.DAY_OF_YEAR, j);
-                                        log.logDate = cal.getTime();
-                                    }
+                    Map<Long, TimesheetLog> existingLogs = new HashMap<>();
+                    if (inDB) {
+                        for (TimesheetLog log : entry.timesheetLogs) {
+                            existingLogs.put(log.id, log);
+                        }
+                    }
 
-                                    log.hours = hours;
+                    JsonNode logsJson = entryToLog.getRight().get("logs");
+                    for (int j = 0; j < logsJson.size(); j++) {
 
-                                    log.save();
+                        double hours = logsJson.get(j).path("hours").asDouble();
 
-                                }
+                        TimesheetLog log = null;
+                        if (inDB) {
+                            log = existingLogs.get(getJsonLong(logsJson.get(j), "logId"));
+                            if (log == null || Double.valueOf(hours).equals(log.hours)) {
+                                continue;
                             }
-
+                        } else {
+                            log = new TimesheetLog();
+                            log.timesheetEntry = entry;
+
+                            Calendar cal = Calendar.getInstance();
+                            cal.setTime(report.startDate);
+                            cal.add(Calendar.DAY_OF_YEAR, j);
+                            log.logDate = cal.getTime();
                         }
 
-                    }
+                        log.hours = hours;
 
+                        log.save();
+
+                    }
                 }
 
                 Ebean.commitTransaction();
@@ -303,6 +284,57 @@ public class TimesheetController extends Controller {
 
     }
 
+    /**
+     * Set the object (initiative with an optional package, or activity) of a
+     * timesheet entry.
+     * 
+     * The objects are set as references (they are not loaded).
+     * 
+     * @param entry
+     *            the timesheet entry
+     * @param portfolioEntryId
+     *            the portfolio entry id (for an initiative)
+     * @param packageId
+     *            the planning package id (optional, for an initiative)
+     * @param activityId
+     *            the activity id (if not an initiative)
+     * @return true if the object of the entry has been changed
+     */
+    private static boolean setTimesheetEntryObject(TimesheetEntry entry, Long portfolioEntryId, Long packageId, Long activityId) {
+
+        if (portfolioEntryId != null) {
+            activityId = null;
+        } else {
+            packageId = null;
+        }
+
+        if (entry.id != null && Objects.equals(portfolioEntryId, entry.portfolioEntry != null ? entry.portfolioEntry.id : null)
+                && Objects.equals(packageId, entry.portfolioEntryPlanningPackage != null ? entry.portfolioEntryPlanningPackage.id : null)
+                && Objects.equals(activityId, entry.timesheetActivity != null ? entry.timesheetActivity.id : null)) {
+            return false;
+        }
+
+        entry.portfolioEntry = portfolioEntryId != null ? Ebean.getReference(PortfolioEntry.class, portfolioEntryId) : null;
+        entry.portfolioEntryPlanningPackage = packageId != null ? Ebean.getReference(PortfolioEntryPlanningPackage.class, packageId) : null;
+        entry.timesheetActivity = activityId != null ? Ebean.getReference(TimesheetActivity.class, activityId) : null;
+
+        return true;
+    }
+
+    /**
+     * Get a number attribute of a JSON object of the weekly timesheet.
+     * 
+     * @param json
+     *            the JSON object
+     * @param fieldName
+     *            the attribute name
+     * @return the value, null if not a number
+     */
+    private static Long getJsonLong(JsonNode json, String fieldName) {
+        JsonNode value = json.path(fieldName);
+        return value.isNumber() ? value.asLong() : null;
+    }
+
     /**
      * Copy the entries (without "hours") of the previous report to the given
      * report (for a weekly).
@@ -46,6 +46,7 @@ import play.libs.F.Function0;
 import play.libs.F.Promise;
 import play.mvc.Controller;
 import play.mvc.Result;
+import services.tableexport.ITableExportService;
 
 /**
  * Each user of MAF is allocated a personal storage space.<br/>
@@ -66,6 +67,8 @@ public class MyPersonalStorage extends Controller {
     private II18nMessagesPlugin i18nMessagesPlugin;
     @Inject
     private Configuration configuration;
+    @Inject
+    private ITableExportService tableExportService;
 
     private static Logger.ALogger log = Logger.of(MyPersonalStorage.class);
 
@@ -114,7 +117,7 @@ public class MyPersonalStorage extends Controller {
                 files.add(new PersonalStorageFile(file));
             }
             Table<PersonalStorageFile> loadedTable = tableFileTemplate.fill(files);
-            return ok(views.html.my.personalstorage_display.render(loadedTable));
+            return ok(views.html.my.personalstorage_display.render(loadedTable, getTableExportService().getExportsInProgress(currentUserUid)));
         } catch (Exception e) {
             return ControllersUtils.logAndReturnUnexpectedError(e, log, getConfiguration(), getI18nMessagesPlugin());
         }
@@ -256,4 +259,11 @@ public class MyPersonalStorage extends Controller {
     private Configuration getConfiguration() {
         return configuration;
     }
+
+    /**
+     * Get the table export service.
+     */
+    private ITableExportService getTableExportService() {
+        return tableExportService;
+    }
 }
@@ -24,6 +24,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import models.datasyndication.DataSyndication;
 import play.Logger;
+import services.datasyndication.models.DataSyndicationPayload;
 
 /**
  * DAO for the {@link DataSyndication} object.
@@ -76,6 +77,10 @@ public abstract class DataSyndicationDao {
         DataSyndication dataSyndication = getDataSyndicationByLinkAndItem(dataSyndicationAgreementLinkId, dataSyndicationAgreementItemId);
 
         if (dataSyndication != null) {
+            if (isPayload(dataSyndication)) {
+                DataSyndicationPayload payload = getDataSyndicationAsPayload(dataSyndication);
+                return payload != null ? payload.getData() : null;
+            }
             try {
                 DataJsonMapping dataJsonMapping = new ObjectMapper().readValue("{ \"data\" : " + dataSyndication.data + " }", DataJsonMapping.class);
                 return dataJsonMapping.data;
@@ -88,6 +93,37 @@ public abstract class DataSyndicationDao {
 
     }
 
+    /**
+     * Return true if the data part of a data syndication is stored as a
+     * payload (with the row keys), else it is stored as a simple table (data
+     * posted by an instance without delta synchronization).
+     * 
+     * @param dataSyndication
+     *            the data syndication
+     */
+    public static boolean isPayload(DataSyndication dataSyndication) {
+        return dataSyndication.data != null && dataSyndication.data.trim().startsWith("{");
+    }
+
+    /**
+     * Get the data part of a data syndication as a payload.
+     * 
+     * Return null if the data is not stored as a payload.
+     * 
+     * @param dataSyndication
+     *            the data syndication
+     */
+    public static DataSyndicationPayload getDataSyndicationAsPayload(DataSyndication dataSyndication) {
+        if (isPayload(dataSyndication)) {
+            try {
+                return new ObjectMapper().readValue(dataSyndication.data, DataSyndicationPayload.class);
+            } catch (Exception e) {
+                Logger.error("impossible to convert the data to a DataSyndicationPayload", e);
+            }
+        }
+        return null;
+    }
+
     /**
      * JSON Mapping class for the data attribute of a DataSyndication.
      * 
@@ -17,7 +17,14 @@
  */
 package dao.delivery;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
 
 import com.avaje.ebean.Ebean;
 import com.avaje.ebean.ExpressionList;
@@ -25,6 +32,7 @@ import com.avaje.ebean.Model.Finder;
 import com.avaje.ebean.Query;
 import com.avaje.ebean.RawSql;
 import com.avaje.ebean.RawSqlBuilder;
+import com.avaje.ebean.SqlRow;
 
 import framework.utils.DefaultSelectableValueHolderCollection;
 import framework.utils.ISelectableValueHolderCollection;
@@ -35,6 +43,7 @@ import models.delivery.RequirementStatus;
 import models.delivery.RequirementStatus.Type;
 import models.delivery.TotalRequirement;
 import models.delivery.TotalStoryPoints;
+import models.sql.RequirementEfforts;
 
 /**
  * DAO for the {@link Requirement}, {@link RequirementPriority},
@@ -280,6 +289,89 @@ public abstract class RequirementDAO {
         return expr.findRowCount();
     }
 
+    /**
+     * Get the effort totals (remaining effort, effort and initial estimation)
+     * of all the requirements (direct or across a deliverable) of some
+     * portfolio entries with a single grouped query.
+     * 
+     * A requirement that is both direct and across a deliverable (or across
+     * several deliverables) of a portfolio entry is counted once.
+     * 
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     * 
+     * @return the efforts by portfolio entry id (an entry is returned for each
+     *         given portfolio entry id, the totals are zero when the portfolio
+     *         entry has no requirement)
+     */
+    public static Map<Long, RequirementEfforts> getRequirementAllAsEffortsMapByPE(Collection<Long> portfolioEntryIds) {
+
+        Map<Long, RequirementEfforts> efforts = new HashMap<>();
+
+        if (!portfolioEntryIds.isEmpty()) {
+
+            String ids = StringUtils.join(portfolioEntryIds, ",");
+
+            String sql = "SELECT pr.portfolio_entry_id AS portfolio_entry_id, SUM(r.remaining_effort) AS remaining_effort, SUM(r.effort) AS effort, "
+                    + "SUM(r.initial_estimation) AS initial_estimation FROM requirement r JOIN ("
+                    + "SELECT dr.id AS requirement_id, dr.portfolio_entry_id AS portfolio_entry_id FROM requirement dr WHERE dr.portfolio_entry_id IN (" + ids
+                    + ") UNION SELECT drq.requirement_id AS requirement_id, ped.portfolio_entry_id AS portfolio_entry_id FROM deliverable_requirement drq "
+                    + "JOIN portfolio_entry_deliverable ped ON ped.deliverable_id = drq.deliverable_id WHERE ped.portfolio_entry_id IN (" + ids + ")"
+                    + ") pr ON pr.requirement_id = r.id WHERE r.deleted = 0 GROUP BY pr.portfolio_entry_id";
+
+            for (SqlRow row : Ebean.createSqlQuery(sql).findList()) {
+                efforts.put(row.getLong("portfolio_entry_id"), new RequirementEfforts(row.getBigDecimal("remaining_effort"), row.getBigDecimal("effort"),
+                        row.getBigDecimal("initial_estimation")));
+            }
+
+        }
+
+        for (Long portfolioEntryId : portfolioEntryIds) {
+            RequirementEfforts portfolioEntryEfforts = efforts.computeIfAbsent(portfolioEntryId, id -> new RequirementEfforts());
+            if (portfolioEntryEfforts.remainingEffort == null) {
+                portfolioEntryEfforts.remainingEffort = BigDecimal.ZERO;
+            }
+            if (portfolioEntryEfforts.effort == null) {
+                portfolioEntryEfforts.effort = BigDecimal.ZERO;
+            }
+            if (portfolioEntryEfforts.initialEstimation == null) {
+                portfolioEntryEfforts.initialEstimation = BigDecimal.ZERO;
+            }
+        }
+
+        return efforts;
+    }
+
+    /**
+     * Get the statistics rows of the direct requirements of some portfolio
+     * entries with a single grouped query.
+     * 
+     * A row is returned for each combination of portfolio entry, defect flag,
+     * scoped flag, status (type and deleted flag), priority (id and must flag)
+     * and severity (id and blocker flag), with the number of requirements
+     * ("total") and their story points ("story_points").
+     * 
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     */
+    public static List<SqlRow> getRequirementStatsAsListByPE(Collection<Long> portfolioEntryIds) {
+
+        if (portfolioEntryIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String sql = "SELECT r.portfolio_entry_id AS portfolio_entry_id, r.is_defect AS is_defect, r.is_scoped AS is_scoped, rs.type AS status_type, "
+                + "rs.deleted AS status_deleted, rp.id AS priority_id, rp.is_must AS is_must, rsv.id AS severity_id, rsv.is_blocker AS is_blocker, "
+                + "COUNT(r.id) AS total, SUM(r.story_points) AS story_points FROM requirement r "
+                + "LEFT JOIN requirement_status rs ON r.requirement_status_id = rs.id "
+                + "LEFT JOIN requirement_priority rp ON r.requirement_priority_id = rp.id "
+                + "LEFT JOIN requirement_severity rsv ON r.requirement_severity_id = rsv.id "
+                + "WHERE r.deleted = 0 AND r.portfolio_entry_id IN (" + StringUtils.join(portfolioEntryIds, ",") + ") "
+                + "GROUP BY r.portfolio_entry_id, r.is_defect, r.is_scoped, rs.type, rs.deleted, rp.id, rp.is_must, rsv.id, rsv.is_blocker";
+
+        return Ebean.createSqlQuery(sql).findList();
+    }
+
     /**
      * Get the closed story points of direct requirements of an iteration.
      * 
@@ -314,7 +406,17 @@ public abstract class RequirementDAO {
      *            the portfolio entry id.
      */
     public static List<Requirement> getRequirementAsListByPE(Long portfolioEntryId) {
-        return RequirementDAO.findRequirement.where().eq("deleted", false).eq("portfolioEntry.id", portfolioEntryId).findList();
+        return getRequirementAsExprByPE(portfolioEntryId).findList();
+    }
+
+    /**
+     * Get the direct requirements of a portfolio entry as an expression list.
+     * 
+     * @param portfolioEntryId
+     *            the portfolio entry id.
+     */
+    public static ExpressionList<Requirement> getRequirementAsExprByPE(Long portfolioEntryId) {
+        return RequirementDAO.findRequirement.where().eq("deleted", false).eq("portfolioEntry.id", portfolioEntryId);
     }
 
     /**
@@ -20,7 +20,6 @@ package dao.finance;
 import java.util.List;
 
 import com.avaje.ebean.Ebean;
-import com.avaje.ebean.Expr;
 import com.avaje.ebean.ExpressionList;
 import com.avaje.ebean.Model.Finder;
 import com.avaje.ebean.Query;
@@ -62,14 +61,18 @@ public abstract class BudgetBucketDAO {
     }
 
     /**
-     * Search from all budget buckets for which the criteria matches with the
-     * name of the ref ID.
+     * Get the active budget buckets with some ids (as found by the search
+     * index).
      * 
-     * @param key
-     *            the search criteria (wild cards should be %)
+     * @param ids
+     *            the budget bucket ids (null for all)
      */
-    public static List<BudgetBucket> getActiveBudgetBucketAsListByName(String key) {
-        return BudgetBucketDAO.findBudgetBucket.where().eq("deleted", false).eq("isActive", true).or(Expr.ilike("name", key + "%"), Expr.ilike("refId", key + "%")).findList();
+    public static List<BudgetBucket> getActiveBudgetBucketAsListByIds(List<Long> ids) {
+        ExpressionList<BudgetBucket> expressionList = BudgetBucketDAO.findBudgetBucket.where().eq("deleted", false).eq("isActive", true);
+        if (ids != null) {
+            expressionList.in("id", ids);
+        }
+        return expressionList.findList();
     }
 
     /**
@@ -79,17 +82,6 @@ public abstract class BudgetBucketDAO {
         return new DefaultSelectableValueHolderCollection<>(getBudgetBucketAsListByActiveAndApproved(new Boolean(true), null));
     }
 
-    /**
-     * Search from all budget buckets with the search process defined by the
-     * method "searchFromAllBudgetBuckets" and return a value holder collection.
-     * 
-     * @param key
-     *            the search criteria (wild cards should be %)
-     */
-    public static ISelectableValueHolderCollection<Long> getActiveBudgetBucketSelectableAsListByName(String key) {
-        return new DefaultSelectableValueHolderCollection<>(getActiveBudgetBucketAsListByName(key));
-    }
-
     /**
      * Get an budget bucket by id.
      * 
@@ -21,15 +21,13 @@ import java.util.List;
 
 import javax.persistence.PersistenceException;
 
+import com.avaje.ebean.ExpressionList;
 import com.avaje.ebean.Model.Finder;
-import com.avaje.ebean.RawSql;
-import com.avaje.ebean.RawSqlBuilder;
 
 import framework.utils.DefaultSelectableValueHolderCollection;
 import framework.utils.ISelectableValueHolderCollection;
 import models.finance.CostCenter;
 import models.finance.PurchaseOrderLineItem;
-import play.mvc.Http;
 
 /**
  * DAO for the {@link CostCenter} object.
@@ -73,26 +71,17 @@ public abstract class CostCenterDAO {
     }
 
     /**
-     * Search from all cost centers for which the criteria matches with the name
-     * of the ref ID.
+     * Get the cost centers with some ids (as found by the search index).
      * 
-     * note: the name is either directly in the cost center table or in the i18n
-     * messages table
-     * 
-     * @param key
-     *            the search criteria (wild cards should be %)
+     * @param ids
+     *            the cost center ids (null for all)
      */
-    public static List<CostCenter> getCostCenterAsListByName(String key) {
-
-        String sql = "SELECT cc.id FROM `cost_center` cc LEFT OUTER JOIN `i18n_messages` im ON im.key = cc.name WHERE cc.deleted = 0";
-
-        sql += " AND (im.language = '" + Http.Context.current().lang().code() + "' OR im.language IS NULL)";
-
-        sql += " AND (cc.name LIKE \"" + key + "%\" OR cc.ref_id LIKE \"" + key + "%\" OR im.value LIKE \"" + key + "%\") ";
-
-        RawSql rawSql = RawSqlBuilder.parse(sql).columnMapping("cc.id", "id").create();
-
-        return CostCenterDAO.find.query().setRawSql(rawSql).findList();
+    public static List<CostCenter> getCostCenterAsListByIds(List<Long> ids) {
+        ExpressionList<CostCenter> expressionList = CostCenterDAO.find.where().eq("deleted", false);
+        if (ids != null) {
+            expressionList.in("id", ids);
+        }
+        return expressionList.findList();
     }
 
     /**
@@ -102,17 +91,6 @@ public abstract class CostCenterDAO {
         return new DefaultSelectableValueHolderCollection<>(getCostCenterAsList());
     }
 
-    /**
-     * Search from all cost centers with the search process defined by the
-     * method "searchFromAllCostCenters" and return a value holder collection.
-     * 
-     * @param key
-     *            the search criteria (wild cards should be %)
-     */
-    public static ISelectableValueHolderCollection<Long> getCostCenterSelectableAsVHByName(String key) {
-        return new DefaultSelectableValueHolderCollection<>(getCostCenterAsListByName(key));
-    }
-
     /**
      * Get an cost center by id.
      * 
@@ -174,6 +174,17 @@ public abstract class PortfolioEntryBudgetDAO {
      *            the portfolio entry id
      **/
     public static List<PortfolioEntryBudgetLine> getPEBudgetLineAsListByPE(Long portfolioEntryId) {
+        return getPEBudgetLineAsExprByPE(portfolioEntryId).findList();
+    }
+
+    /**
+     * Get the portfolio entry budget lines of a portfolio entry as an
+     * expression list.
+     * 
+     * @param portfolioEntryId
+     *            the portfolio entry id
+     **/
+    public static ExpressionList<PortfolioEntryBudgetLine> getPEBudgetLineAsExprByPE(Long portfolioEntryId) {
 
         return PortfolioEntryBudgetDAO.findPortfolioEntryBudgetLine.where().eq("deleted", false)
                 .eq("portfolioEntryBudget.lifeCycleInstancePlannings.lifeCycleInstance.portfolioEntry.id", portfolioEntryId)
@@ -181,7 +192,7 @@ public abstract class PortfolioEntryBudgetDAO {
                 .eq("portfolioEntryBudget.lifeCycleInstancePlannings.isFrozen", false)
                 .eq("portfolioEntryBudget.lifeCycleInstancePlannings.lifeCycleInstance.deleted", false)
                 .eq("portfolioEntryBudget.lifeCycleInstancePlannings.lifeCycleInstance.isActive", true)
-                .eq("portfolioEntryBudget.lifeCycleInstancePlannings.lifeCycleInstance.portfolioEntry.deleted", false).findList();
+                .eq("portfolioEntryBudget.lifeCycleInstancePlannings.lifeCycleInstance.portfolioEntry.deleted", false);
 
     }
 
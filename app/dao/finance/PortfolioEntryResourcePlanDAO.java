@@ -18,8 +18,17 @@
 package dao.finance;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
 
 import com.avaje.ebean.Ebean;
 import com.avaje.ebean.Expr;
@@ -28,14 +37,19 @@ import com.avaje.ebean.Model.Finder;
 import com.avaje.ebean.Query;
 import com.avaje.ebean.RawSql;
 import com.avaje.ebean.RawSqlBuilder;
+import com.avaje.ebean.SqlRow;
+import com.avaje.ebean.SqlUpdate;
+import com.google.common.collect.Lists;
 
 import framework.utils.DefaultSelectableValueHolderCollection;
 import framework.utils.ISelectableValueHolderCollection;
 import framework.utils.Pagination;
 import models.finance.*;
 import models.governance.LifeCycleInstancePlanning;
+import models.pmo.Actor;
 import models.pmo.PortfolioEntry;
 import models.pmo.PortfolioEntryPlanningPackage;
+import models.sql.TotalByObject;
 import models.sql.TotalDays;
 import play.Play;
 
@@ -49,6 +63,12 @@ import play.Play;
  */
 public abstract class PortfolioEntryResourcePlanDAO {
 
+    /**
+     * The max number of allocation ids in an IN clause (status update,
+     * portfolio entry of the allocations).
+     */
+    private static final int ALLOCATIONS_BATCH_SIZE = 500;
+
     public static Finder<Long, PortfolioEntryResourcePlanAllocatedActor> findPEResourcePlanAllocatedActor = new Finder<>(
             PortfolioEntryResourcePlanAllocatedActor.class);
 
@@ -200,9 +220,7 @@ public abstract class PortfolioEntryResourcePlanDAO {
                 .eq("portfolioEntryResourcePlan.deleted", false).eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.deleted", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.isFrozen", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.deleted", false)
-                .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.isActive", true)
-                .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.portfolioEntry.deleted", false)
-                .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.portfolioEntry.archived", false);
+                .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.isActive", true);
 
         if (activeOnly) {
             expr = expr.add(Expr.or(Expr.isNull("endDate"), Expr.gt("endDate", new Date())));
@@ -246,9 +264,7 @@ public abstract class PortfolioEntryResourcePlanDAO {
                 .eq("portfolioEntryResourcePlan.deleted", false).eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.deleted", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.isFrozen", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.deleted", false)
-                .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.isActive", true)
-                .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.portfolioEntry.deleted", false)
-                .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.portfolioEntry.archived", false);
+                .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.isActive", true);
 
         if (activeOnly) {
             expr = expr.add(Expr.or(Expr.isNull("endDate"), Expr.gt("endDate", new Date())));
@@ -377,15 +393,23 @@ public abstract class PortfolioEntryResourcePlanDAO {
      *            the portfolio entry id
      **/
     public static List<PortfolioEntryResourcePlanAllocatedActor> getPEPlanAllocatedActorAsListByPE(Long portfolioEntryId) {
+        return getPEPlanAllocatedActorAsExprByPE(portfolioEntryId).findList();
+    }
 
-        ExpressionList<PortfolioEntryResourcePlanAllocatedActor> exprAllocatedActors = PortfolioEntryResourcePlanDAO.findPEResourcePlanAllocatedActor.where()
+    /**
+     * Get the allocated actors of a portfolio entry as an expression list.
+     *
+     * @param portfolioEntryId
+     *            the portfolio entry id
+     **/
+    public static ExpressionList<PortfolioEntryResourcePlanAllocatedActor> getPEPlanAllocatedActorAsExprByPE(Long portfolioEntryId) {
+        return PortfolioEntryResourcePlanDAO.findPEResourcePlanAllocatedActor.where()
                 .eq("deleted", false).eq("portfolioEntryResourcePlan.deleted", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.deleted", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.isFrozen", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.deleted", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.isActive", true)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.portfolioEntry.id", portfolioEntryId);
-        return exprAllocatedActors.findList();
     }
 
     /**
@@ -532,15 +556,24 @@ public abstract class PortfolioEntryResourcePlanDAO {
      *            the portfolio entry id
      **/
     public static List<PortfolioEntryResourcePlanAllocatedCompetency> getPEResourcePlanAllocatedCompetencyAsListByPE(Long portfolioEntryId) {
-        ExpressionList<PortfolioEntryResourcePlanAllocatedCompetency> exprAllocatedCompetencies = PortfolioEntryResourcePlanDAO.findPEResourcePlanAllocatedCompetency
+        return getPEResourcePlanAllocatedCompetencyAsExprByPE(portfolioEntryId).findList();
+    }
+
+    /**
+     * Get the allocated competencies of a portfolio entry as an expression
+     * list.
+     *
+     * @param portfolioEntryId
+     *            the portfolio entry id
+     **/
+    public static ExpressionList<PortfolioEntryResourcePlanAllocatedCompetency> getPEResourcePlanAllocatedCompetencyAsExprByPE(Long portfolioEntryId) {
+        return PortfolioEntryResourcePlanDAO.findPEResourcePlanAllocatedCompetency
                 .where().eq("deleted", false).eq("portfolioEntryResourcePlan.deleted", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.deleted", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.isFrozen", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.deleted", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.isActive", true)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.portfolioEntry.id", portfolioEntryId);
-
-        return exprAllocatedCompetencies.findList();
     }
 
     /**
@@ -624,9 +657,7 @@ public abstract class PortfolioEntryResourcePlanDAO {
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.deleted", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.isFrozen", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.deleted", false)
-                .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.isActive", true)
-                .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.portfolioEntry.deleted", false)
-                .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.portfolioEntry.archived", false);
+                .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.isActive", true);
 
         if (activeOnly) {
             expr = expr.add(Expr.or(Expr.isNull("endDate"), Expr.gt("endDate", new Date())));
@@ -796,6 +827,142 @@ public abstract class PortfolioEntryResourcePlanDAO {
         return totalDays;
     }
 
+    /**
+     * Get the total allocated actors days (for the current resource plan) of
+     * some portfolio entries, by portfolio entry id.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     * @param isConfirmed
+     *            set to true for confirmed resource; to false for non-confirmed
+     *            resource; to null for all
+     */
+    public static Map<Long, BigDecimal> getPEPlanAllocatedActorAsDaysMapByPEAndConfirmed(Collection<Long> portfolioEntryIds, Boolean isConfirmed) {
+        return getPEResourcePlanAsDaysMapByPE("portfolio_entry_resource_plan_allocated_actor", "perpaa.days", "pe.id", portfolioEntryIds,
+                getConfirmedCondition("perpaa", isConfirmed));
+    }
+
+    /**
+     * Get the total allocated org unit days (for the current resource plan) of
+     * some portfolio entries, by portfolio entry id.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     * @param isConfirmed
+     *            set to true for confirmed resource; to false for non-confirmed
+     *            resource; to null for all
+     */
+    public static Map<Long, BigDecimal> getPEResourcePlanAllocatedOrgUnitAsDaysMapByPE(Collection<Long> portfolioEntryIds, Boolean isConfirmed) {
+        return getPEResourcePlanAsDaysMapByPE("portfolio_entry_resource_plan_allocated_org_unit", "perpaa.days", "pe.id", portfolioEntryIds,
+                getConfirmedCondition("perpaa", isConfirmed));
+    }
+
+    /**
+     * Get the total allocated competency days (for the current resource plan)
+     * of some portfolio entries, by portfolio entry id.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     * @param isConfirmed
+     *            set to true for confirmed resource; to false for non-confirmed
+     *            resource; to null for all
+     */
+    public static Map<Long, BigDecimal> getPEResourcePlanAllocatedCompetencyAsDaysMapByPE(Collection<Long> portfolioEntryIds, Boolean isConfirmed) {
+        return getPEResourcePlanAsDaysMapByPE("portfolio_entry_resource_plan_allocated_competency", "perpaa.days", "pe.id", portfolioEntryIds,
+                getConfirmedCondition("perpaa", isConfirmed));
+    }
+
+    /**
+     * Get the total allocated resources forecast days (for the current resource
+     * plan) of some portfolio entries, by portfolio entry id.
+     *
+     * Note: forecast days concern only actor and org unit.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     */
+    public static Map<Long, BigDecimal> getPEResourcePlanAsForecastDaysMapByPE(Collection<Long> portfolioEntryIds) {
+        String forecastDays = "CASE WHEN perpaa.forecast_days IS NULL THEN perpaa.days ELSE perpaa.forecast_days END";
+        Map<Long, BigDecimal> totalDays = getPEResourcePlanAsDaysMapByPE("portfolio_entry_resource_plan_allocated_actor", forecastDays, "pe.id",
+                portfolioEntryIds, "");
+        getPEResourcePlanAsDaysMapByPE("portfolio_entry_resource_plan_allocated_org_unit", forecastDays, "pe.id", portfolioEntryIds, "")
+                .forEach((id, days) -> totalDays.merge(id, days, BigDecimal::add));
+        return totalDays;
+    }
+
+    /**
+     * Get the total allocated days (actors, org units and competencies for the
+     * current resource plan) of the planning packages of some portfolio
+     * entries, by planning package id.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     */
+    public static Map<Long, BigDecimal> getPEResourcePlanAsDaysMapByPlanningPackage(Collection<Long> portfolioEntryIds) {
+        String cond = " AND perpaa.portfolio_entry_planning_package_id IS NOT NULL";
+        String groupBy = "perpaa.portfolio_entry_planning_package_id";
+        Map<Long, BigDecimal> totalDays = getPEResourcePlanAsDaysMapByPE("portfolio_entry_resource_plan_allocated_actor", "perpaa.days", groupBy,
+                portfolioEntryIds, cond);
+        getPEResourcePlanAsDaysMapByPE("portfolio_entry_resource_plan_allocated_org_unit", "perpaa.days", groupBy, portfolioEntryIds, cond)
+                .forEach((id, days) -> totalDays.merge(id, days, BigDecimal::add));
+        getPEResourcePlanAsDaysMapByPE("portfolio_entry_resource_plan_allocated_competency", "perpaa.days", groupBy, portfolioEntryIds, cond)
+                .forEach((id, days) -> totalDays.merge(id, days, BigDecimal::add));
+        return totalDays;
+    }
+
+    /**
+     * Sum a days expression of an allocation table (for the current resource
+     * plan of some portfolio entries) with a single grouped query.
+     *
+     * @param allocationTable
+     *            the allocation table, aliased "perpaa" in the query
+     * @param daysExpression
+     *            the summed expression
+     * @param groupBy
+     *            the grouping column, returned as key of the map
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     * @param condition
+     *            an additional SQL condition (starting by " AND"), could be
+     *            empty
+     */
+    private static Map<Long, BigDecimal> getPEResourcePlanAsDaysMapByPE(String allocationTable, String daysExpression, String groupBy,
+            Collection<Long> portfolioEntryIds, String condition) {
+
+        if (portfolioEntryIds.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        String sql = "SELECT " + groupBy + " AS objectId, SUM(" + daysExpression + ") AS total FROM " + allocationTable + " perpaa "
+                + "JOIN life_cycle_instance_planning lcip ON perpaa.portfolio_entry_resource_plan_id = lcip.portfolio_entry_resource_plan_id "
+                + "JOIN portfolio_entry pe ON lcip.life_cycle_instance_id = pe.active_life_cycle_instance_id "
+                + "WHERE perpaa.deleted = 0 AND lcip.deleted = 0 AND lcip.is_frozen = 0 AND pe.id IN (" + StringUtils.join(portfolioEntryIds, ",") + ")"
+                + condition + " GROUP BY " + groupBy;
+
+        return TotalByObject.getAsMap(sql);
+    }
+
+    /**
+     * Get the SQL condition on the allocation status of an allocation table.
+     *
+     * @param alias
+     *            the alias of the allocation table
+     * @param isConfirmed
+     *            set to true for confirmed resource; to false for non-confirmed
+     *            resource; to null for all
+     */
+    private static String getConfirmedCondition(String alias, Boolean isConfirmed) {
+        if (isConfirmed == null) {
+            return "";
+        }
+        if (isConfirmed) {
+            return " AND " + alias
+                    + ".portfolio_entry_resource_plan_allocation_status_type_id = (SELECT id FROM portfolio_entry_resource_plan_allocation_status_type WHERE status = 'CONFIRMED')";
+        }
+        return " AND " + alias
+                + ".portfolio_entry_resource_plan_allocation_status_type_id in (SELECT id FROM portfolio_entry_resource_plan_allocation_status_type WHERE status != 'CONFIRMED')";
+    }
+
     /**
      * Get the allocated org units of a portfolio entry.
      *
@@ -803,16 +970,23 @@ public abstract class PortfolioEntryResourcePlanDAO {
      *            the portfolio entry id
      **/
     public static List<PortfolioEntryResourcePlanAllocatedOrgUnit> getPEResourcePlanAllocatedOrgUnitAsListByPE(Long portfolioEntryId) {
+        return getPEResourcePlanAllocatedOrgUnitAsExprByPE(portfolioEntryId).findList();
+    }
 
-        ExpressionList<PortfolioEntryResourcePlanAllocatedOrgUnit> exprAllocatedOrgUnits = PortfolioEntryResourcePlanDAO.findPEResourcePlanAllocatedOrgUnit
+    /**
+     * Get the allocated org units of a portfolio entry as an expression list.
+     *
+     * @param portfolioEntryId
+     *            the portfolio entry id
+     **/
+    public static ExpressionList<PortfolioEntryResourcePlanAllocatedOrgUnit> getPEResourcePlanAllocatedOrgUnitAsExprByPE(Long portfolioEntryId) {
+        return PortfolioEntryResourcePlanDAO.findPEResourcePlanAllocatedOrgUnit
                 .where().eq("deleted", false).eq("portfolioEntryResourcePlan.deleted", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.deleted", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.isFrozen", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.deleted", false)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.isActive", true)
                 .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.portfolioEntry.id", portfolioEntryId);
-
-        return exprAllocatedOrgUnits.findList();
     }
 
     /**
@@ -833,6 +1007,198 @@ public abstract class PortfolioEntryResourcePlanDAO {
         return getAllocationStatusByType(PortfolioEntryResourcePlanAllocationStatusType.AllocationStatus.valueOf(name));
     }
 
+    /**
+     * Get the portfolio entry of some allocations (of the same kind) with one
+     * join query by batch (instead of navigating the resource plan, its life
+     * cycle instance plannings and their life cycle instance for each
+     * allocation).
+     * 
+     * @param allocationClass
+     *            the allocation class: PortfolioEntryResourcePlanAllocatedActor,
+     *            PortfolioEntryResourcePlanAllocatedOrgUnit or
+     *            PortfolioEntryResourcePlanAllocatedCompetency
+     * @param ids
+     *            the allocation ids
+     * 
+     * @return the portfolio entry id by allocation id
+     */
+    public static Map<Long, Long> getPEIdAsMapByAllocations(Class<?> allocationClass, Collection<Long> ids) {
+
+        String table = getAllocationTable(allocationClass);
+
+        Map<Long, Long> portfolioEntryIds = new HashMap<>();
+
+        for (List<Long> batchIds : Lists.partition(new ArrayList<>(new LinkedHashSet<>(ids)), ALLOCATIONS_BATCH_SIZE)) {
+
+            String sql = "SELECT DISTINCT a.id AS id, lci.portfolio_entry_id AS portfolio_entry_id FROM " + table + " a"
+                    + " JOIN life_cycle_instance_planning lcip ON lcip.portfolio_entry_resource_plan_id = a.portfolio_entry_resource_plan_id"
+                    + " JOIN life_cycle_instance lci ON lci.id = lcip.life_cycle_instance_id"
+                    + " WHERE a.id IN (" + StringUtils.join(batchIds, ",") + ")";
+
+            for (SqlRow row : Ebean.createSqlQuery(sql).findList()) {
+                portfolioEntryIds.putIfAbsent(row.getLong("id"), row.getLong("portfolio_entry_id"));
+            }
+
+        }
+
+        return portfolioEntryIds;
+    }
+
+    /**
+     * Change the status of some allocations (of the same kind) with set-based
+     * updates.
+     * 
+     * The allocations are processed by batches: for each batch, the non
+     * deleted allocations are selected with their portfolio entry, then the
+     * status, the last status update (time and actor) and the last update are
+     * changed with one "UPDATE ... WHERE id IN (...)" (the last update makes
+     * the budget tracking consider the portfolio entries again).
+     * 
+     * @param allocationClass
+     *            the allocation class: PortfolioEntryResourcePlanAllocatedActor,
+     *            PortfolioEntryResourcePlanAllocatedOrgUnit or
+     *            PortfolioEntryResourcePlanAllocatedCompetency
+     * @param ids
+     *            the allocation ids
+     * @param status
+     *            the new status
+     * @param actor
+     *            the actor who changes the status, could be null
+     * 
+     * @return the ids of the updated allocations by portfolio entry id
+     */
+    public static Map<Long, List<Long>> updateAllocationsStatus(Class<?> allocationClass, Collection<Long> ids,
+            PortfolioEntryResourcePlanAllocationStatusType.AllocationStatus status, Actor actor) {
+
+        String table = getAllocationTable(allocationClass);
+
+        PortfolioEntryResourcePlanAllocationStatusType statusType = getAllocationStatusByType(status);
+        if (statusType == null) {
+            throw new IllegalArgumentException("the allocation status " + status.name() + " does not exist");
+        }
+
+        Map<Long, List<Long>> allocationIdsByPortfolioEntry = new HashMap<>();
+        Date now = new Date();
+
+        Ebean.beginTransaction();
+        try {
+
+            for (List<Long> batchIds : Lists.partition(new ArrayList<>(new LinkedHashSet<>(ids)), ALLOCATIONS_BATCH_SIZE)) {
+
+                String selectSql = "SELECT DISTINCT a.id AS id, lci.portfolio_entry_id AS portfolio_entry_id FROM " + table + " a"
+                        + " JOIN life_cycle_instance_planning lcip ON lcip.portfolio_entry_resource_plan_id = a.portfolio_entry_resource_plan_id"
+                        + " JOIN life_cycle_instance lci ON lci.id = lcip.life_cycle_instance_id"
+                        + " WHERE a.deleted = 0 AND a.id IN (" + StringUtils.join(batchIds, ",") + ")";
+
+                Set<Long> updatedIds = new HashSet<>();
+                for (SqlRow row : Ebean.createSqlQuery(selectSql).findList()) {
+                    if (updatedIds.add(row.getLong("id"))) {
+                        allocationIdsByPortfolioEntry.computeIfAbsent(row.getLong("portfolio_entry_id"), id -> new ArrayList<>()).add(row.getLong("id"));
+                    }
+                }
+
+                if (!updatedIds.isEmpty()) {
+                    String updateSql = "UPDATE " + table + " SET portfolio_entry_resource_plan_allocation_status_type_id = :statusTypeId,"
+                            + " last_status_type_update_time = :now, last_status_type_update_actor_id = " + (actor != null ? ":actorId" : "NULL")
+                            + ", last_update = :now WHERE deleted = 0 AND id IN (" + StringUtils.join(updatedIds, ",") + ")";
+                    SqlUpdate update = Ebean.createSqlUpdate(updateSql);
+                    update.setParameter("statusTypeId", statusType.id);
+                    update.setParameter("now", now);
+                    if (actor != null) {
+                        update.setParameter("actorId", actor.id);
+                    }
+                    update.execute();
+                }
+
+            }
+
+            Ebean.commitTransaction();
+
+        } finally {
+            Ebean.endTransaction();
+        }
+
+        return allocationIdsByPortfolioEntry;
+    }
+
+    /**
+     * Get the allocated actors of the current resource plans of some
+     * portfolio entries (archived ones included), with their details and their status.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids, null for all entries
+     */
+    public static List<PortfolioEntryResourcePlanAllocatedActor> getPEPlanAllocatedActorActiveAsListByPEs(Collection<Long> portfolioEntryIds) {
+        return filterByActivePEs(findPEResourcePlanAllocatedActor.fetch("portfolioEntryResourcePlanAllocationStatusType")
+                .fetch("portfolioEntryResourcePlanAllocatedActorDetails").where(), portfolioEntryIds).findList();
+    }
+
+    /**
+     * Get the allocated org units of the current resource plans of some
+     * portfolio entries (archived ones included), with their details and their status.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids, null for all entries
+     */
+    public static List<PortfolioEntryResourcePlanAllocatedOrgUnit> getPEResourcePlanAllocatedOrgUnitActiveAsListByPEs(Collection<Long> portfolioEntryIds) {
+        return filterByActivePEs(findPEResourcePlanAllocatedOrgUnit.fetch("portfolioEntryResourcePlanAllocationStatusType")
+                .fetch("portfolioEntryResourcePlanAllocatedOrgUnitDetails").where(), portfolioEntryIds).findList();
+    }
+
+    /**
+     * Get the allocated competencies of the current resource plans of some
+     * portfolio entries (archived ones included), with their status.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids, null for all entries
+     */
+    public static List<PortfolioEntryResourcePlanAllocatedCompetency> getPEResourcePlanAllocatedCompetencyActiveAsListByPEs(
+            Collection<Long> portfolioEntryIds) {
+        return filterByActivePEs(findPEResourcePlanAllocatedCompetency.fetch("portfolioEntryResourcePlanAllocationStatusType").where(), portfolioEntryIds)
+                .findList();
+    }
+
+    /**
+     * Restrict an expression list of allocations to the current resource plans
+     * of some portfolio entries.
+     * 
+     * Like the former capacity forecast, the archived entries are not excluded:
+     * only the deleted allocations and plans, and the frozen plannings are.
+     *
+     * @param expr
+     *            the expression list of allocations
+     * @param portfolioEntryIds
+     *            the portfolio entry ids, null for all entries
+     */
+    private static <T> ExpressionList<T> filterByActivePEs(ExpressionList<T> expr, Collection<Long> portfolioEntryIds) {
+        expr = expr.eq("deleted", false).eq("portfolioEntryResourcePlan.deleted", false)
+                .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.deleted", false)
+                .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.isFrozen", false)
+                .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.deleted", false)
+                .eq("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.isActive", true);
+        if (portfolioEntryIds != null) {
+            expr = expr.in("portfolioEntryResourcePlan.lifeCycleInstancePlannings.lifeCycleInstance.portfolioEntry.id", portfolioEntryIds);
+        }
+        return expr;
+    }
+
+    /**
+     * Get the table of an allocation class.
+     * 
+     * @param allocationClass
+     *            the allocation class
+     */
+    private static String getAllocationTable(Class<?> allocationClass) {
+        if (PortfolioEntryResourcePlanAllocatedActor.class.equals(allocationClass)) {
+            return "portfolio_entry_resource_plan_allocated_actor";
+        } else if (PortfolioEntryResourcePlanAllocatedOrgUnit.class.equals(allocationClass)) {
+            return "portfolio_entry_resource_plan_allocated_org_unit";
+        } else if (PortfolioEntryResourcePlanAllocatedCompetency.class.equals(allocationClass)) {
+            return "portfolio_entry_resource_plan_allocated_competency";
+        }
+        throw new IllegalArgumentException("the class " + allocationClass.getName() + " is not an allocation class");
+    }
+
     public static ISelectableValueHolderCollection<Long> getAllocationStatusTypesActiveAsVH() {
         return new DefaultSelectableValueHolderCollection<>(findAllocationStatusType.where().eq("deleted", false).findList());
     }
@@ -115,10 +115,21 @@ public abstract class PurchaseOrderDAO {
                 .ilike("refId", key + "%").findList();
     }
 
-    public static List<PurchaseOrder> getPurchaseOrderAsListByRefIdLike2(String key) {
-        return PurchaseOrderDAO.findPurchaseOrder.where().eq("deleted", false).ne("refId", IMafConstants.PURCHASE_ORDER_REF_ID_FOR_BUDGET_TRACKING)
-                .ilike("refId", key ).findList();
+    /**
+     * Get the purchase orders with some ids (as found by the search index).
+     * 
+     * @param ids
+     *            the purchase order ids (null for all)
+     */
+    public static List<PurchaseOrder> getPurchaseOrderAsListByIds(List<Long> ids) {
+        ExpressionList<PurchaseOrder> expressionList = PurchaseOrderDAO.findPurchaseOrder.where().eq("deleted", false)
+                .ne("refId", IMafConstants.PURCHASE_ORDER_REF_ID_FOR_BUDGET_TRACKING);
+        if (ids != null) {
+            expressionList.in("id", ids);
+        }
+        return expressionList.findList();
     }
+
     /**
      * Search from all active purchase orders for which the criteria matches
      * with the ref id.
@@ -19,6 +19,7 @@ package dao.finance;
 
 import java.util.List;
 
+import com.avaje.ebean.ExpressionList;
 import com.avaje.ebean.Model.Finder;
 
 import models.finance.WorkOrder;
@@ -58,7 +59,17 @@ public abstract class WorkOrderDAO {
      *            the portfolio entry id
      **/
     public static List<WorkOrder> getWorkOrderAsList(Long portfolioEntryId) {
-        return WorkOrderDAO.findWorkOrder.where().eq("deleted", false).eq("portfolioEntry.id", portfolioEntryId).findList();
+        return getWorkOrderAsExprByPE(portfolioEntryId).findList();
+    }
+
+    /**
+     * Get the work orders of a portfolio entry as an expression list.
+     * 
+     * @param portfolioEntryId
+     *            the portfolio entry id
+     **/
+    public static ExpressionList<WorkOrder> getWorkOrderAsExprByPE(Long portfolioEntryId) {
+        return WorkOrderDAO.findWorkOrder.where().eq("deleted", false).eq("portfolioEntry.id", portfolioEntryId);
     }
 
     /**
@@ -21,11 +21,13 @@ import com.avaje.ebean.Ebean;
 import com.avaje.ebean.Expr;
 import com.avaje.ebean.ExpressionList;
 import com.avaje.ebean.Model.Finder;
+import com.avaje.ebean.Transaction;
 import framework.services.account.IPreferenceManagerPlugin;
 import framework.utils.DefaultSelectableValueHolder;
 import framework.utils.DefaultSelectableValueHolderCollection;
 import framework.utils.ISelectableValueHolderCollection;
 import framework.utils.Pagination;
+import models.finance.WorkOrder;
 import models.governance.*;
 import models.pmo.Actor;
 import models.pmo.PortfolioEntry;
@@ -366,9 +368,39 @@ public abstract class LifeCycleMilestoneDao {
 
     }
 
+    /**
+     * Freeze all plannings of the life cycle instance and create a new one (the
+     * current planning after the passed milestone).<br/>
+     * -the resource plan and the budget of the previous planning are copied
+     * (the previous ones are kept by the milestone instance)<br/>
+     * -the work orders are reassigned to the copied allocated resources (a
+     * work order whose resource has no copy is detached from it)<br/>
+     * -a planned milestone instance is created for each milestone that has no
+     * approved instance<br/>
+     *
+     * The work orders and the planned milestone instances are written with
+     * JDBC batching when the call is done in a transaction.
+     *
+     * Note: the copy of the resource plan and of the budget (cloneInDB) is
+     * still done for each passed milestone. Sharing them between the frozen
+     * planning and the new one (and copying them only on their first change)
+     * would need a copy-on-write in every edition of the allocations and of
+     * the budget lines, or versioned rows in the datamodel.
+     *
+     * @param lifeCycleMilestoneInstance
+     *            the passed milestone instance
+     * @param oldPlanning
+     *            the current planning before the milestone
+     */
     private static void createNextPlanningFromPreviousOne(LifeCycleMilestoneInstance lifeCycleMilestoneInstance, LifeCycleInstancePlanning oldPlanning) {
-        // set all plannings to frozen
-        lifeCycleMilestoneInstance.lifeCycleInstance.lifeCycleInstancePlannings.forEach(LifeCycleInstancePlanning::doFrozen);
+
+        Long portfolioEntryId = lifeCycleMilestoneInstance.lifeCycleInstance.portfolioEntry.id;
+
+        // set all plannings to frozen (the frozen ones are not saved again)
+        lifeCycleMilestoneInstance.lifeCycleInstance.lifeCycleInstancePlannings.stream().filter(p -> !p.isFrozen).forEach(LifeCycleInstancePlanning::doFrozen);
+
+        Transaction transaction = Ebean.currentTransaction();
+        boolean batchMode = transaction != null && transaction.isBatchMode();
 
         // create the new planning
         LifeCycleInstancePlanning planning = new LifeCycleInstancePlanning(lifeCycleMilestoneInstance.lifeCycleInstance);
@@ -378,21 +410,26 @@ public abstract class LifeCycleMilestoneDao {
             planning.portfolioEntryBudget = oldPlanning.portfolioEntryBudget.cloneInDB(allocatedResourcesMapOldToNew);
 
             // reassign the new allocated resources to existing work order
-            lifeCycleMilestoneInstance.lifeCycleInstance.portfolioEntry.workOrders
-                    .stream()
-                    .filter(workOrder -> workOrder.resourceObjectType != null)
-                    .forEach(workOrder -> {
-                        workOrder.resourceObjectId = allocatedResourcesMapOldToNew.get(workOrder.resourceObjectType).get(workOrder.resourceObjectId);
+            setBatchMode(transaction, true);
+            for (WorkOrder workOrder : lifeCycleMilestoneInstance.lifeCycleInstance.portfolioEntry.workOrders) {
+                if (workOrder.resourceObjectType != null) {
+                    // a work order without copied resource is detached from the frozen one
+                    Map<Long, Long> resourceObjectIdsOldToNew = allocatedResourcesMapOldToNew.get(workOrder.resourceObjectType);
+                    Long resourceObjectId = resourceObjectIdsOldToNew != null ? resourceObjectIdsOldToNew.get(workOrder.resourceObjectId) : null;
+                    if (!Objects.equals(resourceObjectId, workOrder.resourceObjectId)) {
+                        workOrder.resourceObjectId = resourceObjectId;
                         workOrder.save();
-            });
+                    }
+                }
+            }
+            setBatchMode(transaction, batchMode);
 
         }
         planning.save();
 
         // get the last planned dates
         Map<Long, Date> lastDates = new HashMap<>();
-        List<PlannedLifeCycleMilestoneInstance> plannedMilestones = LifeCyclePlanningDao
-                .getPlannedLCMilestoneInstanceLastAsListByPE(lifeCycleMilestoneInstance.lifeCycleInstance.portfolioEntry.id);
+        List<PlannedLifeCycleMilestoneInstance> plannedMilestones = LifeCyclePlanningDao.getPlannedLCMilestoneInstanceLastAsListByPE(portfolioEntryId);
 
         for (PlannedLifeCycleMilestoneInstance lastDate : plannedMilestones) {
             lastDates.put(lastDate.lifeCycleMilestone.id, lastDate.plannedDate);
@@ -407,21 +444,16 @@ public abstract class LifeCycleMilestoneDao {
                         .collect(Collectors.toList())
         );
 
-        for (LifeCycleMilestone milestone : milestones) {
+        /*
+         * Get (with one query) the milestones for the portfolio entry that have
+         * an approved milestone instance, meaning the milestone is passed and
+         * approved.
+         */
+        Set<Long> approvedMilestoneIds = getApprovedLCMilestoneIdsByPE(portfolioEntryId);
 
-            /**
-             * Check if the milestone for the portfolio entry has an approved
-             * milestone instance, meaning the milestone is passed and approved.
-             */
-            boolean hasApprovedInstancesForMilestoneOfPortfolioEntry = Ebean.find(LifeCycleMilestoneInstance.class).where()
-                    .eq(DELETED, false)
-                    .eq(LIFE_CYCLE_MILESTONE_ID, milestone.id)
-                    .eq(IS_PASSED, true)
-                    .eq(LIFE_CYCLE_INSTANCE_PORTFOLIO_ENTRY_ID, lifeCycleMilestoneInstance.lifeCycleInstance.portfolioEntry.id)
-                    .eq(LIFE_CYCLE_INSTANCE_IS_ACTIVE, true)
-                    .eq(LIFE_CYCLE_MILESTONE_INSTANCE_STATUS_TYPE_IS_APPROVED, true).findRowCount() > 0;
-
-            if (!hasApprovedInstancesForMilestoneOfPortfolioEntry) {
+        setBatchMode(transaction, true);
+        for (LifeCycleMilestone milestone : milestones) {
+            if (!approvedMilestoneIds.contains(milestone.id)) {
                 PlannedLifeCycleMilestoneInstance plannedInstance = new PlannedLifeCycleMilestoneInstance(planning, milestone);
                 if (lastDates.containsKey(milestone.id)) {
                     plannedInstance.plannedDate = lastDates.get(milestone.id);
@@ -429,6 +461,45 @@ public abstract class LifeCycleMilestoneDao {
                 plannedInstance.save();
             }
         }
+        setBatchMode(transaction, batchMode);
+    }
+
+    /**
+     * Get the ids of the milestones that have a passed and approved instance
+     * for the active life cycle instance of a portfolio entry.
+     *
+     * @param portfolioEntryId
+     *            the portfolio entry id
+     */
+    private static Set<Long> getApprovedLCMilestoneIdsByPE(Long portfolioEntryId) {
+        return Ebean.find(LifeCycleMilestoneInstance.class).select("id").fetch("lifeCycleMilestone", "id").where()
+                .eq(DELETED, false)
+                .eq(IS_PASSED, true)
+                .eq(LIFE_CYCLE_INSTANCE_PORTFOLIO_ENTRY_ID, portfolioEntryId)
+                .eq(LIFE_CYCLE_INSTANCE_IS_ACTIVE, true)
+                .eq(LIFE_CYCLE_MILESTONE_INSTANCE_STATUS_TYPE_IS_APPROVED, true)
+                .findList()
+                .stream()
+                .map(milestoneInstance -> milestoneInstance.lifeCycleMilestone.id)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Set the batch mode of a transaction (if any), the pending statements
+     * being flushed when the batch mode is turned off.
+     *
+     * @param transaction
+     *            the current transaction, can be null
+     * @param batchMode
+     *            the batch mode
+     */
+    private static void setBatchMode(Transaction transaction, boolean batchMode) {
+        if (transaction != null) {
+            if (!batchMode) {
+                transaction.flushBatch();
+            }
+            transaction.setBatchMode(batchMode);
+        }
     }
 
     /**
@@ -17,8 +17,16 @@
  */
 package dao.governance;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
 
 import models.governance.LifeCycleInstancePlanning;
 import models.governance.LifeCycleMilestoneInstance;
@@ -101,6 +109,51 @@ public abstract class LifeCyclePlanningDao {
         return date;
     }
 
+    /**
+     * Get the passed dates (see getPlannedLCMilestoneInstanceAsPassedDate) of
+     * some planned dates, by planned date id.
+     * 
+     * The approved milestone instances of all the concerned portfolio entries
+     * are loaded with one query.
+     * 
+     * @param plannedLifeCycleMilestoneInstances
+     *            the planned dates
+     */
+    public static Map<Long, Date> getPlannedLCMilestoneInstanceAsPassedDateMap(
+            Collection<PlannedLifeCycleMilestoneInstance> plannedLifeCycleMilestoneInstances) {
+
+        Map<Long, Date> passedDates = new HashMap<>();
+        if (plannedLifeCycleMilestoneInstances.isEmpty()) {
+            return passedDates;
+        }
+
+        Set<Long> portfolioEntryIds = new HashSet<>();
+        for (PlannedLifeCycleMilestoneInstance plannedLifeCycleMilestoneInstance : plannedLifeCycleMilestoneInstances) {
+            portfolioEntryIds.add(plannedLifeCycleMilestoneInstance.lifeCycleInstancePlanning.lifeCycleInstance.portfolioEntry.id);
+        }
+
+        // the approved passed dates by portfolio entry and milestone (the
+        // instances are sorted as in getPlannedLCMilestoneInstanceAsPassedDate
+        // so the same one is kept)
+        Map<String, Date> approvedDates = new HashMap<>();
+        for (LifeCycleMilestoneInstance milestoneInstance : LifeCycleMilestoneDao.findLifeCycleMilestoneInstance.fetch("lifeCycleInstance").where()
+                .eq(LifeCycleMilestoneDao.DELETED, false).in(LifeCycleMilestoneDao.LIFE_CYCLE_INSTANCE_PORTFOLIO_ENTRY_ID, portfolioEntryIds)
+                .eq(LifeCycleMilestoneDao.LIFE_CYCLE_INSTANCE_IS_ACTIVE, true).eq(LifeCycleMilestoneDao.IS_PASSED, true)
+                .eq(LifeCycleMilestoneDao.LIFE_CYCLE_MILESTONE_INSTANCE_STATUS_TYPE_IS_APPROVED, true).orderBy("passedDate DESC").findList()) {
+            approvedDates.put(milestoneInstance.lifeCycleInstance.portfolioEntry.id + "_" + milestoneInstance.lifeCycleMilestone.id,
+                    milestoneInstance.passedDate);
+        }
+
+        for (PlannedLifeCycleMilestoneInstance plannedLifeCycleMilestoneInstance : plannedLifeCycleMilestoneInstances) {
+            String key = plannedLifeCycleMilestoneInstance.lifeCycleInstancePlanning.lifeCycleInstance.portfolioEntry.id + "_"
+                    + plannedLifeCycleMilestoneInstance.lifeCycleMilestone.id;
+            passedDates.put(plannedLifeCycleMilestoneInstance.id,
+                    approvedDates.containsKey(key) ? approvedDates.get(key) : plannedLifeCycleMilestoneInstance.plannedDate);
+        }
+
+        return passedDates;
+    }
+
     /**
      * The planned date of a milestone for a planning.
      * 
@@ -227,8 +280,9 @@ public abstract class LifeCyclePlanningDao {
          */
 
         String sql =
-                "SELECT plcmi.id " + getSelectSqlForGetLasts("", portfolioEntryId) + " AND lcip.creation_date=(SELECT MAX(ilcip.creation_date) "
-                        + getSelectSqlForGetLasts("i", portfolioEntryId)
+                "SELECT plcmi.id " + getSelectSqlForGetLasts("", "{p}lci.portfolio_entry_id=" + portfolioEntryId)
+                        + " AND lcip.creation_date=(SELECT MAX(ilcip.creation_date) "
+                        + getSelectSqlForGetLasts("i", "{p}lci.portfolio_entry_id=" + portfolioEntryId)
                         + " GROUP BY iplcmi.life_cycle_milestone_id HAVING iplcmi.life_cycle_milestone_id=plcmi.life_cycle_milestone_id) ORDER BY lcm.order, lcm.sub_order";
 
         RawSql rawSql = RawSqlBuilder.parse(sql).columnMapping("plcmi.id", "id").create();
@@ -236,16 +290,51 @@ public abstract class LifeCyclePlanningDao {
         return findPlannedLifeCycleMilestoneInstance.query().setRawSql(rawSql).findList();
     }
 
+    /**
+     * Get the list of last planned dates of some portfolio entries, by
+     * portfolio entry id.
+     * 
+     * Same as getPlannedLCMilestoneInstanceLastAsListByPE but for all the
+     * portfolio entries in one query.
+     * 
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     */
+    public static Map<Long, List<PlannedLifeCycleMilestoneInstance>> getPlannedLCMilestoneInstanceLastAsMapByPE(Collection<Long> portfolioEntryIds) {
+
+        Map<Long, List<PlannedLifeCycleMilestoneInstance>> plannedMilestoneInstances = new HashMap<>();
+        if (portfolioEntryIds.isEmpty()) {
+            return plannedMilestoneInstances;
+        }
+
+        String sql = "id IN (SELECT plcmi.id " + getSelectSqlForGetLasts("", "{p}lci.portfolio_entry_id IN (" + StringUtils.join(portfolioEntryIds, ",") + ")")
+                + " AND lcip.creation_date=(SELECT MAX(ilcip.creation_date) " + getSelectSqlForGetLasts("i", "{p}lci.portfolio_entry_id=lci.portfolio_entry_id")
+                + " GROUP BY iplcmi.life_cycle_milestone_id HAVING iplcmi.life_cycle_milestone_id=plcmi.life_cycle_milestone_id))";
+
+        for (PlannedLifeCycleMilestoneInstance plannedMilestoneInstance : findPlannedLifeCycleMilestoneInstance.fetch("lifeCycleMilestone")
+                .fetch("lifeCycleInstancePlanning.lifeCycleInstance").orderBy("lifeCycleMilestone.order, lifeCycleMilestone.subOrder").where().raw(sql)
+                .findList()) {
+            Long portfolioEntryId = plannedMilestoneInstance.lifeCycleInstancePlanning.lifeCycleInstance.portfolioEntry.id;
+            if (!plannedMilestoneInstances.containsKey(portfolioEntryId)) {
+                plannedMilestoneInstances.put(portfolioEntryId, new ArrayList<>());
+            }
+            plannedMilestoneInstances.get(portfolioEntryId).add(plannedMilestoneInstance);
+        }
+
+        return plannedMilestoneInstances;
+    }
+
     /**
      * Get the SQL fragment that selects the tables with join (FROM) and basic
      * filters (WHERE).
      * 
      * @param prefix
      *            the base prefix for the tables
-     * @param portfolioEntryId
-     *            the portfolio entry id
+     * @param portfolioEntryCondition
+     *            the SQL condition on the portfolio entry of the life cycle
+     *            instance (aliased {p}lci)
      */
-    private static String getSelectSqlForGetLasts(String prefix, Long portfolioEntryId) {
+    private static String getSelectSqlForGetLasts(String prefix, String portfolioEntryCondition) {
 
         String s =
                 "FROM planned_life_cycle_milestone_instance {p}plcmi"
@@ -253,7 +342,7 @@ public abstract class LifeCyclePlanningDao {
                         + " JOIN life_cycle_instance {p}lci ON {p}lcip.life_cycle_instance_id = {p}lci.id"
                         + " JOIN life_cycle_process {p}lcp ON {p}lci.life_cycle_process_id = {p}lcp.id"
                         + " JOIN life_cycle_milestone {p}lcm ON {p}plcmi.life_cycle_milestone_id = {p}lcm.id"
-                        + " WHERE {p}lci.portfolio_entry_id=" + portfolioEntryId
+                        + " WHERE " + portfolioEntryCondition
                         + " AND {p}plcmi.deleted=false AND {p}lcip.deleted=false AND {p}lci.deleted=false AND {p}lci.is_active=true AND {p}lcm.deleted=false"
                         + " AND ({p}lcp.is_flexible=true OR {p}lcm.is_additional=false)"
                         + " AND ({p}lcm.is_active=true OR (SELECT COUNT(*) FROM life_cycle_milestone_instance {p}lcmi"
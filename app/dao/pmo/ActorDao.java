@@ -17,7 +17,10 @@
  */
 package dao.pmo;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -46,6 +49,8 @@ import models.pmo.ActorCapacity;
 import models.pmo.ActorType;
 import models.pmo.Competency;
 import play.Logger;
+import play.Play;
+import services.notification.IBulkNotificationService;
 
 /**
  * DAO for the {@link Actor} and {@link ActorCapacity} and {@link ActorType} and
@@ -79,6 +84,54 @@ public abstract class ActorDao {
         return findActor.where().eq("deleted", false).eq("id", id).findUnique();
     }
 
+    /**
+     * Get the actors with the given ids (including the deleted ones).
+     * 
+     * @param ids
+     *            the actor ids
+     */
+    public static List<Actor> getActorAsListByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return findActor.where().idIn(new ArrayList<>(ids)).findList();
+    }
+
+    /**
+     * Get the org unit and the default competency of some actors (including
+     * the deleted ones), the other attributes are not loaded.
+     *
+     * @param ids
+     *            the actor ids, null for all actors
+     */
+    public static List<Actor> getActorResourcesAsListByIds(Collection<Long> ids) {
+        ExpressionList<Actor> e = findActor.select("id").fetch("orgUnit", "id").fetch("defaultCompetency", "id").where();
+        if (ids != null) {
+            if (ids.isEmpty()) {
+                return new ArrayList<>();
+            }
+            e = e.idIn(new ArrayList<>(ids));
+        }
+        return e.findList();
+    }
+
+    /**
+     * Get the ids of the actors updated, or for which an activity allocation
+     * has been updated, since a date.
+     *
+     * @param since
+     *            the date
+     */
+    public static List<Long> getActorIdsAsListUpdatedForCapacitySince(Date since) {
+        String sql = "SELECT a.id AS id FROM actor a WHERE a.last_update >= :since"
+                + " UNION SELECT taaa.actor_id AS id FROM timesheet_activity_allocated_actor taaa WHERE taaa.last_update >= :since";
+        List<Long> ids = new ArrayList<>();
+        for (SqlRow row : Ebean.createSqlQuery(sql).setParameter("since", since).findList()) {
+            ids.add(row.getLong("id"));
+        }
+        return ids;
+    }
+
     /**
      * Get an actor by uid.
      * 
@@ -317,79 +370,62 @@ public abstract class ActorDao {
         RawSql rawSql = RawSqlBuilder.parse(sql).columnMapping("a.id", "id").create();
         return findActor.query().setRawSql(rawSql).findList();
     }
-    public static List<Actor> getActorAsListByKeywords(String key, boolean active) {
-        key = key.replace("\"", "\\\"");
-        String sql = "SELECT a.id FROM actor a WHERE " + "a.deleted = false AND a.is_active = " + active + " AND (a.ref_id = \"" + key + "\" OR a.uid = \"" + key
-        		 + "\" OR CONCAT_WS(\" \", a.first_name, a.last_name) LIKE \"" + key + "\" OR " + "CONCAT_WS(\" \", a.last_name, a.first_name) LIKE \"" + key
-                 + "\")";
-        RawSql rawSql = RawSqlBuilder.parse(sql).columnMapping("a.id", "id").create();
-        return findActor.query().setRawSql(rawSql).findList();
-    }
-
-    /**
-     * Search from all active actors for which the criteria matches with
-     * "firstName lastName" or "lastName firstName".
-     * 
-     * @param key
-     *            the search criteria (use % for wild cards)
-     */
-    public static List<Actor> getActorActiveAsListByKeywords(String key) {
-        key = key.replace("\"", "\\\"");
-        String sql = "SELECT a.id FROM actor a WHERE " + "a.deleted = false AND a.is_active = true AND (a.ref_id = \"" + key
-                + "\" OR CONCAT_WS(\" \", a.first_name, a.last_name) LIKE \"" + key + "%\" OR " + "CONCAT_WS(\" \", a.last_name, a.first_name) LIKE \"" + key
-                + "%\")";
-        RawSql rawSql = RawSqlBuilder.parse(sql).columnMapping("a.id", "id").create();
-        return findActor.query().setRawSql(rawSql).findList();
-    }
 
     /**
-     * Search from all active actors without uid for which the criteria matches
-     * with "firstName lastName" or "lastName firstName".
+     * Get the actors with some ids (as found by the search index) and an
+     * active flag.
      * 
-     * @param key
-     *            the search criteria (use % for wild cards)
+     * @param ids
+     *            the actor ids (null for all)
+     * @param active
+     *            true to get the active actors, false the inactive ones
      */
-    public static List<Actor> getActorActiveWithoutUidAsListByKeywords(String key) {
-        key = key.replace("\"", "\\\"");
-        String sql = "SELECT a.id FROM actor a WHERE " + "a.deleted = false AND a.is_active = true AND (a.uid IS NULL OR a.uid = '') AND (a.ref_id = \"" + key
-                + "\" OR CONCAT_WS(\" \", a.first_name, a.last_name) LIKE \"" + key + "%\" OR " + "CONCAT_WS(\" \", a.last_name, a.first_name) LIKE \"" + key
-                + "%\")";
-        RawSql rawSql = RawSqlBuilder.parse(sql).columnMapping("a.id", "id").create();
-        return findActor.query().setRawSql(rawSql).findList();
+    public static List<Actor> getActorAsListByIdsAndActive(List<Long> ids, boolean active) {
+        ExpressionList<Actor> expressionList = findActor.where().eq("deleted", false).eq("isActive", active);
+        if (ids != null) {
+            expressionList.in("id", ids);
+        }
+        return expressionList.findList();
     }
 
     /**
-     * Search from all actors with the search process defined by the method
-     * "getActorAsListByKeywords" and return a value holder collection.
+     * Get the active actors with some ids (as found by the search index).
      * 
-     * @param key
-     *            the search criteria (use % for wild cards)
+     * @param ids
+     *            the actor ids (null for all)
      */
-    public static ISelectableValueHolderCollection<Long> getActorAsVHByKeywords(String key) {
-        return new DefaultSelectableValueHolderCollection<>(getActorAsListByKeywords(key));
+    public static List<Actor> getActorActiveAsListByIds(List<Long> ids) {
+        ExpressionList<Actor> expressionList = findActor.where().eq("deleted", false).eq("isActive", true);
+        if (ids != null) {
+            expressionList.in("id", ids);
+        }
+        return expressionList.findList();
     }
 
     /**
-     * Search from all active actors with the search process defined by the
-     * method "getActorActiveAsListByKeywords" and return a value holder
-     * collection.
+     * Get the active actors without uid with some ids (as found by the search
+     * index).
      * 
-     * @param key
-     *            the search criteria (use % for wild cards)
+     * @param ids
+     *            the actor ids (null for all)
      */
-    public static ISelectableValueHolderCollection<Long> getActorActiveAsVHByKeywords(String key) {
-        return new DefaultSelectableValueHolderCollection<>(getActorActiveAsListByKeywords(key));
+    public static List<Actor> getActorActiveWithoutUidAsListByIds(List<Long> ids) {
+        ExpressionList<Actor> expressionList = findActor.where().eq("deleted", false).eq("isActive", true).or(Expr.isNull("uid"), Expr.eq("uid", ""));
+        if (ids != null) {
+            expressionList.in("id", ids);
+        }
+        return expressionList.findList();
     }
 
     /**
-     * Search from all active actors without uid and return a value holder
-     * collection.
+     * Search from all actors with the search process defined by the method
+     * "getActorAsListByKeywords" and return a value holder collection.
      * 
      * @param key
      *            the search criteria (use % for wild cards)
      */
-    public static ISelectableValueHolderCollection<Long> getActorActiveWithoutUidAsVHByKeywords(String key) {
-        return new DefaultSelectableValueHolderCollection<>(getActorActiveWithoutUidAsListByKeywords(key));
+    public static ISelectableValueHolderCollection<Long> getActorAsVHByKeywords(String key) {
+        return new DefaultSelectableValueHolderCollection<>(getActorAsListByKeywords(key));
     }
 
     /**
@@ -584,8 +620,9 @@ public abstract class ActorDao {
      * message) to a list of actors. For each actor we take the principal (only
      * if it exists).
      * 
-     * @param notificationManagerService
-     *            the notification manager service
+     * The notifications are sent in background by the bulk notification
+     * service.
+     * 
      * @param actors
      *            the list of actors for which the notification should be sent
      * @param category
@@ -597,27 +634,17 @@ public abstract class ActorDao {
      * @param message
      *            the message
      */
-    public static void sendNotificationWithContent(INotificationManagerPlugin notificationManagerService, List<Actor> actors, NotificationCategory category,
-            String url, String title, String message) {
-        Set<String> recipients = new HashSet<>();
-        for (Actor actor : actors) {
-            if (actor != null && actor.uid != null && !actor.uid.equals("")) {
-                recipients.add(actor.uid);
-            }
-        }
-        for (String recipient : recipients) {
-            sendNotificationWithContent(notificationManagerService, recipient, category, url, title, message);
-        }
+    public static void sendNotificationWithContent(List<Actor> actors, NotificationCategory category, String url, String title, String message) {
+        getBulkNotificationService().sendNotificationWithContent(getUids(actors), category, url, title, message);
     }
 
     /**
      * Send a notification to a list of actors. For each actor we take the
      * principal (only if it exists).
      * 
-     * @param notificationManagerService
-     *            the notification manager service
-     * @param i18nMessagesService
-     *            the i18n messages service
+     * The notifications are sent in background by the bulk notification
+     * service.
+     * 
      * @param actors
      *            the list of actors for which the notification should be sent
      * @param category
@@ -631,17 +658,32 @@ public abstract class ActorDao {
      * @param args
      *            the arguments for the message
      */
-    public static void sendNotification(INotificationManagerPlugin notificationManagerService, II18nMessagesPlugin i18nMessagesService, List<Actor> actors,
-            NotificationCategory category, String url, String titleKey, String messageKey, Object... args) {
-        Set<String> recipients = new HashSet<>();
+    public static void sendNotification(List<Actor> actors, NotificationCategory category, String url, String titleKey, String messageKey,
+            Object... args) {
+        getBulkNotificationService().sendNotification(getUids(actors), category, url, titleKey, messageKey, args);
+    }
+
+    /**
+     * Get the uids of the actors linked to a principal.
+     * 
+     * @param actors
+     *            the actors
+     */
+    private static Set<String> getUids(List<Actor> actors) {
+        Set<String> uids = new LinkedHashSet<>();
         for (Actor actor : actors) {
             if (actor != null && actor.uid != null && !actor.uid.equals("")) {
-                recipients.add(actor.uid);
+                uids.add(actor.uid);
             }
         }
-        for (String recipient : recipients) {
-            sendNotification(notificationManagerService, i18nMessagesService, recipient, category, url, titleKey, messageKey, args);
-        }
+        return uids;
+    }
+
+    /**
+     * Get the bulk notification service.
+     */
+    private static IBulkNotificationService getBulkNotificationService() {
+        return Play.application().injector().instanceOf(IBulkNotificationService.class);
     }
 
     /**
@@ -660,6 +702,25 @@ public abstract class ActorDao {
      *            if not null then return only actors with the given org unit.
      */
     public static List<Actor> getActorAsListByFilter(Boolean isActive, Long managerId, Long actorTypeId, Long competencyId, Long orgUnitId) {
+        return getActorAsExprByFilter(isActive, managerId, actorTypeId, competencyId, orgUnitId).findList();
+    }
+
+    /**
+     * Get the actors with filters as an expression list.
+     * 
+     * @param isActive
+     *            true to return only active actors, false only non-active, null
+     *            all.
+     * @param managerId
+     *            if not null then return only actors with the given manager.
+     * @param actorTypeId
+     *            if not null then return only actors with the given type.
+     * @param competencyId
+     *            if not null then return only actors with the given competency.
+     * @param orgUnitId
+     *            if not null then return only actors with the given org unit.
+     */
+    public static ExpressionList<Actor> getActorAsExprByFilter(Boolean isActive, Long managerId, Long actorTypeId, Long competencyId, Long orgUnitId) {
         ExpressionList<Actor> e = findActor.where().eq("deleted", false);
         if (isActive != null) {
             e = e.eq("isActive", isActive);
@@ -677,7 +738,7 @@ public abstract class ActorDao {
             e = e.eq("orgUnit.id", orgUnitId);
         }
 
-        return e.findList();
+        return e;
     }
 
     /**
@@ -762,6 +823,23 @@ public abstract class ActorDao {
         return findActorCapacity.where().eq("deleted", false).eq("actor.id", actorId).eq("year", year).eq("month", month).findUnique();
     }
 
+    /**
+     * Get the capacities of some actors for a exact month of a year.
+     * 
+     * @param actorIds
+     *            the actor ids
+     * @param year
+     *            the year
+     * @param month
+     *            the month
+     */
+    public static List<ActorCapacity> getActorCapacityAsListByActorsAndPeriod(Collection<Long> actorIds, Integer year, Integer month) {
+        if (actorIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return findActorCapacity.where().eq("deleted", false).in("actor.id", actorIds).eq("year", year).eq("month", month).findList();
+    }
+
     /**
      * Get the actor capacities list with filters.
      * 
@@ -855,6 +933,19 @@ public abstract class ActorDao {
         return findCompetency.where().eq("deleted", false).eq("id", id).findUnique();
     }
 
+    /**
+     * Get the competencies with the given ids (including the deleted ones).
+     * 
+     * @param ids
+     *            the competency ids
+     */
+    public static List<Competency> getCompetencyAsListByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return findCompetency.where().idIn(new ArrayList<>(ids)).findList();
+    }
+
     /**
      * Get all competencies.
      */
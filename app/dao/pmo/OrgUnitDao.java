@@ -17,6 +17,8 @@
  */
 package dao.pmo;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import javax.persistence.PersistenceException;
@@ -66,6 +68,19 @@ public abstract class OrgUnitDao {
         return findOrgUnit.where().eq("deleted", false).eq("id", id).findUnique();
     }
 
+    /**
+     * Get the org units with the given ids (including the deleted ones).
+     * 
+     * @param ids
+     *            the org unit ids
+     */
+    public static List<OrgUnit> getOrgUnitAsListByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return findOrgUnit.where().idIn(new ArrayList<>(ids)).findList();
+    }
+
     /**
      * Get an org unit by refId.
      * 
@@ -200,22 +215,35 @@ public abstract class OrgUnitDao {
 
         return findOrgUnit.query().setRawSql(rawSql).findList();
     }
-    public static List<OrgUnit> getOrgUnitAsListByKeywordsAndFilter2(String key, boolean mustBeActive, boolean mustBeSponsor, boolean mustBeDelivery) {
-        key = key.replace("\"", "\\\"");
-        String sql = "SELECT ou.id FROM `org_unit` ou LEFT OUTER JOIN `i18n_messages` im ON im.key = ou.name WHERE ou.deleted = 0";
+
+    /**
+     * Get the org units with some ids (as found by the search index) and
+     * filters.
+     * 
+     * @param ids
+     *            the org unit ids (null for all)
+     * @param mustBeActive
+     *            if true, the org unit must be active
+     * @param mustBeSponsor
+     *            if true, the org unit must be a sponsoring unit
+     * @param mustBeDelivery
+     *            if true, the org unit must be a delivery unit
+     */
+    public static List<OrgUnit> getOrgUnitAsListByIdsAndFilter(List<Long> ids, boolean mustBeActive, boolean mustBeSponsor, boolean mustBeDelivery) {
+        ExpressionList<OrgUnit> expressionList = findOrgUnit.where().eq("deleted", false);
         if (mustBeActive) {
-            sql += " AND ou.is_active = 1";
+            expressionList.eq("isActive", true);
         }
         if (mustBeSponsor) {
-            sql += " AND ou.can_sponsor = 1";
+            expressionList.eq("canSponsor", true);
         }
         if (mustBeDelivery) {
-            sql += " AND ou.can_deliver = 1";
+            expressionList.eq("canDeliver", true);
         }
-        sql += " AND (im.language = '" + Http.Context.current().lang().code() + "' OR im.language IS NULL)";
-        sql += " AND (ou.name LIKE \"" + key + "\" OR ou.ref_id LIKE \"" + key + "\" OR im.value LIKE \"" + key + "\") ";
-        RawSql rawSql = RawSqlBuilder.parse(sql).columnMapping("ou.id", "id").create();
-        return findOrgUnit.query().setRawSql(rawSql).findList();
+        if (ids != null) {
+            expressionList.in("id", ids);
+        }
+        return expressionList.findList();
     }
 
     /**
@@ -280,16 +308,6 @@ public abstract class OrgUnitDao {
         return new DefaultSelectableValueHolderCollection<>(getOrgUnitActiveCanDeliverAsListByPE(portfolioEntryId));
     }
 
-    /**
-     * Search from all selectable org unit and return a value holder collection.
-     * 
-     * @param key
-     *            the key word
-     */
-    public static ISelectableValueHolderCollection<Long> getOrgUnitActiveAsVHByKeywords(String key) {
-        return new DefaultSelectableValueHolderCollection<>(getOrgUnitAsListByKeywordsAndFilter(key, true, false, false));
-    }
-
     /**
      * Search from all org unit and return a value holder collection.
      * 
@@ -18,7 +18,11 @@
 package dao.pmo;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
 
 import com.avaje.ebean.Ebean;
 import com.avaje.ebean.Expr;
@@ -36,6 +40,7 @@ import framework.utils.Pagination;
 import models.pmo.Portfolio;
 import models.pmo.PortfolioType;
 import models.sql.TotalAmount;
+import utils.finance.FinancialAmounts;
 
 /**
  * DAO for the {@link Portfolio} and {@link PortfolioType} objects.
@@ -231,6 +236,24 @@ public abstract class PortfolioDao {
         return totalAmount;
     }
 
+    /**
+     * Get the total portfolio entries budget, cost to complete and engaged
+     * amounts (split by OPEX/CAPEX and effort/cost) of some portfolios, by
+     * portfolio id.
+     * 
+     * All amounts are computed in one round trip.
+     * 
+     * @param preferenceManagerPlugin
+     *            the preference manager service
+     * @param ids
+     *            the portfolio ids
+     */
+    public static Map<Long, FinancialAmounts> getPortfolioAsFinancialAmountsMap(IPreferenceManagerPlugin preferenceManagerPlugin, Collection<Long> ids) {
+        return PortfolioEntryDao.getFinancialAmountsMap(preferenceManagerPlugin, "phpe.portfolio_id",
+                " JOIN portfolio_has_portfolio_entry phpe ON pe.id = phpe.portfolio_entry_id",
+                "pe.deleted=0 AND pe.archived=0 AND phpe.portfolio_id IN (" + StringUtils.join(ids, ",") + ")", ids);
+    }
+
     /**
      * Get all active portfolios as pagination object for which an actor is a
      * stakeholder.
@@ -17,18 +17,27 @@
  */
 package dao.pmo;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.PersistenceException;
 
+import org.apache.commons.lang3.StringUtils;
+
 import com.avaje.ebean.Ebean;
 import com.avaje.ebean.Expr;
 import com.avaje.ebean.ExpressionList;
+import com.avaje.ebean.FetchConfig;
 import com.avaje.ebean.Model.Finder;
 import com.avaje.ebean.Query;
 import com.avaje.ebean.RawSql;
 import com.avaje.ebean.RawSqlBuilder;
+import com.avaje.ebean.SqlRow;
 
 import dao.finance.PurchaseOrderDAO;
 import framework.services.account.IPreferenceManagerPlugin;
@@ -42,7 +51,10 @@ import models.pmo.PortfolioEntry;
 import models.pmo.PortfolioEntryDependency;
 import models.pmo.PortfolioEntryDependencyType;
 import models.pmo.PortfolioEntryType;
+import models.sql.FinancialAmount;
 import models.sql.TotalAmount;
+import models.sql.TotalByObject;
+import utils.finance.FinancialAmounts;
 
 /**
  * DAO for the {@link PortfolioEntry} and {@link PortfolioEntryType} objects.
@@ -344,6 +356,165 @@ public abstract class PortfolioEntryDao {
         return totalAmount;
     }
 
+    /**
+     * Get the budget, cost to complete and engaged amounts (split by OPEX/CAPEX
+     * and effort/cost) of some portfolio entries, by portfolio entry id.
+     * 
+     * All amounts are computed in one round trip, the result gives the same
+     * values as getPEAsBudgetAmountByOpex, getPEAsCostToCompleteAmountByOpex
+     * and getPEAsEngagedAmountByOpex.
+     * 
+     * @param preferenceManagerPlugin
+     *            the preference manager service
+     * @param ids
+     *            the portfolio entry ids
+     */
+    public static Map<Long, FinancialAmounts> getPEAsFinancialAmountsMapByPE(IPreferenceManagerPlugin preferenceManagerPlugin, Collection<Long> ids) {
+        return getFinancialAmountsMap(preferenceManagerPlugin, "pe.id", "", "pe.id IN (" + StringUtils.join(ids, ",") + ")", ids);
+    }
+
+    /**
+     * Get the budget, cost to complete and engaged amounts of some groups of
+     * portfolio entries with a single "UNION ALL" of grouped queries.
+     * 
+     * @param preferenceManagerPlugin
+     *            the preference manager service
+     * @param groupBy
+     *            the grouping column (the portfolio entry table is aliased
+     *            "pe"), returned as key of the map
+     * @param scopeJoin
+     *            an additional SQL join (starting by " JOIN"), could be empty
+     * @param scopeCondition
+     *            the SQL condition selecting the portfolio entries
+     * @param ids
+     *            the object ids, each of them is present in the returned map
+     */
+    static Map<Long, FinancialAmounts> getFinancialAmountsMap(IPreferenceManagerPlugin preferenceManagerPlugin, String groupBy, String scopeJoin,
+            String scopeCondition, Collection<Long> ids) {
+
+        Map<Long, FinancialAmounts> amounts = new HashMap<>();
+        for (Long id : ids) {
+            amounts.put(id, new FinancialAmounts());
+        }
+
+        if (ids.isEmpty()) {
+            return amounts;
+        }
+
+        List<String> sqls = new ArrayList<>();
+
+        // budget
+        sqls.add("SELECT " + groupBy + " AS objectId, '" + FinancialAmounts.Kind.BUDGET.name()
+                + "' AS kind, pebl.is_opex AS isOpex, pebl.resource_object_type IS NOT NULL AS isEffort, "
+                + "SUM(pebl.amount * pebl.currency_rate) AS totalAmount FROM portfolio_entry_budget_line pebl "
+                + "JOIN portfolio_entry_budget peb ON pebl.portfolio_entry_budget_id=peb.id "
+                + "JOIN life_cycle_instance_planning lcip ON peb.id = lcip.portfolio_entry_budget_id "
+                + "JOIN portfolio_entry pe ON lcip.life_cycle_instance_id = pe.active_life_cycle_instance_id" + scopeJoin
+                + " WHERE pebl.deleted=0 AND peb.deleted=0 AND lcip.deleted=0 AND lcip.is_frozen=0 AND " + scopeCondition + " GROUP BY " + groupBy
+                + ", pebl.is_opex, pebl.resource_object_type IS NOT NULL");
+
+        String woSelect = " AS kind, wo.is_opex AS isOpex, wo.resource_object_type IS NOT NULL AS isEffort, "
+                + "SUM(wo.amount * wo.currency_rate) AS totalAmount FROM work_order wo JOIN portfolio_entry pe ON wo.portfolio_entry_id = pe.id" + scopeJoin;
+        String costToCompleteSelect = "SELECT " + groupBy + " AS objectId, '" + FinancialAmounts.Kind.COST_TO_COMPLETE.name() + "'" + woSelect;
+        String engagedSelect = "SELECT " + groupBy + " AS objectId, '" + FinancialAmounts.Kind.ENGAGED.name() + "'" + woSelect;
+        String woCondAndGroup = " AND wo.deleted=0 AND " + scopeCondition + " GROUP BY " + groupBy + ", wo.is_opex, wo.resource_object_type IS NOT NULL";
+
+        if (PurchaseOrderDAO.isSystemPreferenceUsePurchaseOrder(preferenceManagerPlugin)) {
+            // if purchase orders are enable
+
+            // cost to complete: either the work orders without purchase order
+            // line or with one but cancelled
+            sqls.add(costToCompleteSelect + " WHERE wo.purchase_order_line_item_id IS NULL" + woCondAndGroup);
+            sqls.add(costToCompleteSelect
+                    + " JOIN purchase_order_line_item poli ON wo.purchase_order_line_item_id = poli.id WHERE (poli.deleted=1 OR poli.is_cancelled=1)"
+                    + woCondAndGroup);
+
+            // engaged: either the work orders with an active purchase order
+            // line or the purchase order lines assigned to an entry but never
+            // engaged by a work order (always a cost)
+            sqls.add(engagedSelect
+                    + " JOIN purchase_order_line_item poli ON wo.purchase_order_line_item_id = poli.id WHERE poli.deleted=0 AND poli.is_cancelled=0"
+                    + woCondAndGroup);
+            sqls.add("SELECT " + groupBy + " AS objectId, '" + FinancialAmounts.Kind.ENGAGED.name()
+                    + "' AS kind, poli.is_opex AS isOpex, 0 AS isEffort, SUM(poli.amount * poli.currency_rate) AS totalAmount "
+                    + "FROM purchase_order_line_item poli JOIN purchase_order po ON poli.purchase_order_id=po.id "
+                    + "JOIN portfolio_entry pe ON po.portfolio_entry_id = pe.id" + scopeJoin
+                    + " LEFT OUTER JOIN work_order wo ON poli.id=wo.purchase_order_line_item_id "
+                    + "WHERE poli.deleted=0 AND poli.is_cancelled=0 AND po.deleted=0 AND po.is_cancelled=0 AND wo.purchase_order_line_item_id IS NULL AND "
+                    + scopeCondition + " GROUP BY " + groupBy + ", poli.is_opex");
+
+        } else { // if purchase orders are not enable
+            // the is_engaged flag gives the kind
+            sqls.add(costToCompleteSelect + " WHERE wo.is_engaged=0" + woCondAndGroup);
+            sqls.add(engagedSelect + " WHERE wo.is_engaged=1" + woCondAndGroup);
+        }
+
+        RawSql rawSql = RawSqlBuilder.unparsed(StringUtils.join(sqls, " UNION ALL ")).columnMapping("objectId", "objectId").columnMapping("kind", "kind")
+                .columnMapping("isOpex", "isOpex").columnMapping("isEffort", "isEffort").columnMapping("totalAmount", "totalAmount").create();
+
+        for (FinancialAmount financialAmount : Ebean.find(FinancialAmount.class).setRawSql(rawSql).findList()) {
+            FinancialAmounts objectAmounts = amounts.get(financialAmount.objectId);
+            if (objectAmounts != null && financialAmount.totalAmount != null) {
+                objectAmounts.add(FinancialAmounts.Kind.valueOf(financialAmount.kind), Boolean.TRUE.equals(financialAmount.isOpex),
+                        Boolean.TRUE.equals(financialAmount.isEffort), financialAmount.totalAmount);
+            }
+        }
+
+        return amounts;
+    }
+
+    /**
+     * Get the non deleted portfolio entries with the given ids.
+     * 
+     * @param ids
+     *            the portfolio entry ids
+     */
+    public static List<PortfolioEntry> getPEAsListByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return findPortfolioEntry.where().eq("deleted", false).idIn(new ArrayList<>(ids)).findList();
+    }
+
+    /**
+     * Get the portfolio entries with the given ids, with all the associations
+     * displayed in a list view (see PortfolioEntryListView) already loaded.
+     * 
+     * The single associations are fetched with the entries and each list
+     * association is loaded with one query for all the entries, so the number
+     * of queries doesn't depend on the number of entries.
+     * 
+     * @param ids
+     *            the portfolio entry ids
+     */
+    public static List<PortfolioEntry> getPEAsListWithListViewAssociationsByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return findPortfolioEntry.fetch("portfolioEntryType").fetch("manager").fetch("manager.orgUnit").fetch("sponsoringUnit")
+                .fetch("lastPortfolioEntryReport").fetch("lastApprovedLifeCycleMilestoneInstance").fetch("activeLifeCycleInstance")
+                .fetch("activeLifeCycleInstance.lifeCycleProcess").fetch("activeLifeCycleInstance.lifeCycleMilestoneInstances", new FetchConfig().query())
+                .fetch("deliveryUnits", new FetchConfig().query()).fetch("portfolios", new FetchConfig().query())
+                .fetch("stakeholders", new FetchConfig().query()).fetch("stakeholders.actor").fetch("destinationDependencies", new FetchConfig().query())
+                .where().idIn(new ArrayList<>(ids)).findList();
+    }
+
+    /**
+     * Get the portfolio entries with the given ids, with the associations
+     * displayed in the roadmap planning (gantt) already loaded.
+     * 
+     * @param ids
+     *            the portfolio entry ids
+     */
+    public static List<PortfolioEntry> getPEAsListWithPlanningAssociationsByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return findPortfolioEntry.fetch("manager").fetch("activeLifeCycleInstance").fetch("lastPortfolioEntryReport")
+                .fetch("lastPortfolioEntryReport.portfolioEntryReportStatusType").fetch("portfolios", new FetchConfig().query()).where()
+                .idIn(new ArrayList<>(ids)).findList();
+    }
+
     /**
      * Get all portfolio entries as expression.
      * 
@@ -358,6 +529,125 @@ public abstract class PortfolioEntryDao {
         return e;
     }
 
+    /**
+     * Get the ids of the active portfolio entries for which the budget tracking
+     * should be run.
+     * 
+     * An entry is selected if the budget tracking has never been run for it,
+     * or if one of its resource allocations, planning packages, timesheet logs
+     * (or their report) or work orders, or a currency, has been updated since
+     * its last run.
+     */
+    public static List<Long> getPEIdsAsListForBudgetTracking() {
+
+        String activeCondition = "pe.deleted=0 AND pe.archived=0";
+        String planningJoin = " JOIN life_cycle_instance_planning lcip ON lcip.life_cycle_instance_id = pe.active_life_cycle_instance_id";
+        String planningCondition = " WHERE lcip.deleted=0 AND lcip.is_frozen=0 AND " + activeCondition;
+
+        List<String> sqls = new ArrayList<>();
+
+        // never run
+        sqls.add("SELECT pe.id AS objectId, 1 AS total FROM portfolio_entry pe WHERE pe.budget_tracking_last_run IS NULL AND " + activeCondition);
+
+        // resource allocations (including the deleted ones)
+        for (String allocationTable : new String[] { "portfolio_entry_resource_plan_allocated_actor", "portfolio_entry_resource_plan_allocated_org_unit",
+                "portfolio_entry_resource_plan_allocated_competency" }) {
+            sqls.add("SELECT pe.id AS objectId, COUNT(*) AS total FROM portfolio_entry pe" + planningJoin + " JOIN " + allocationTable
+                    + " a ON a.portfolio_entry_resource_plan_id = lcip.portfolio_entry_resource_plan_id" + planningCondition
+                    + " AND a.last_update > pe.budget_tracking_last_run GROUP BY pe.id");
+        }
+
+        // planning packages, the allocations following their dates change
+        // with them
+        sqls.add("SELECT pe.id AS objectId, COUNT(*) AS total FROM portfolio_entry pe JOIN portfolio_entry_planning_package pepp"
+                + " ON pepp.portfolio_entry_id = pe.id WHERE " + activeCondition + " AND pepp.last_update > pe.budget_tracking_last_run GROUP BY pe.id");
+
+        // timesheet logs, a report approval changes the logs to consider
+        sqls.add("SELECT pe.id AS objectId, COUNT(*) AS total FROM portfolio_entry pe JOIN timesheet_entry te ON te.portfolio_entry_id = pe.id "
+                + "JOIN timesheet_report tr ON te.timesheet_report_id = tr.id JOIN timesheet_log tl ON tl.timesheet_entry_id = te.id WHERE "
+                + activeCondition + " AND (tl.last_update > pe.budget_tracking_last_run OR tr.last_update > pe.budget_tracking_last_run) GROUP BY pe.id");
+
+        // work orders
+        sqls.add("SELECT pe.id AS objectId, COUNT(*) AS total FROM portfolio_entry pe JOIN work_order wo ON wo.portfolio_entry_id = pe.id WHERE "
+                + activeCondition + " AND wo.last_update > pe.budget_tracking_last_run GROUP BY pe.id");
+
+        // currency rates
+        sqls.add("SELECT pe.id AS objectId, COUNT(*) AS total FROM portfolio_entry pe JOIN currency c ON c.last_update > pe.budget_tracking_last_run WHERE "
+                + activeCondition + " GROUP BY pe.id");
+
+        return new ArrayList<>(TotalByObject.getAsMap(StringUtils.join(sqls, " UNION ALL ")).keySet());
+    }
+
+    /**
+     * Get the last update date of the planning of some portfolio entries: the
+     * max last update of the entries, their life cycle instance plannings,
+     * planned milestone instances, milestone instances and reports.
+     *
+     * @param ids
+     *            the portfolio entry ids
+     * @return the last update date, null if there is no entry
+     */
+    public static Date getPEPlanningLastUpdateByIds(Collection<Long> ids) {
+
+        if (ids.isEmpty()) {
+            return null;
+        }
+
+        String idsCondition = " IN (" + StringUtils.join(ids, ",") + ")";
+        String instanceJoin = " JOIN life_cycle_instance lci ON lci.id = lcip.life_cycle_instance_id WHERE lci.portfolio_entry_id" + idsCondition;
+
+        String sql = "SELECT MAX(t.last_update) AS last_update FROM ("
+                + "SELECT pe.last_update FROM portfolio_entry pe WHERE pe.id" + idsCondition
+                + " UNION ALL SELECT lcip.last_update FROM life_cycle_instance_planning lcip" + instanceJoin
+                + " UNION ALL SELECT plcmi.last_update FROM planned_life_cycle_milestone_instance plcmi"
+                + " JOIN life_cycle_instance_planning lcip ON lcip.id = plcmi.life_cycle_instance_planning_id" + instanceJoin
+                + " UNION ALL SELECT lcmi.last_update FROM life_cycle_milestone_instance lcmi"
+                + " JOIN life_cycle_instance lci ON lci.id = lcmi.life_cycle_instance_id WHERE lci.portfolio_entry_id" + idsCondition
+                + " UNION ALL SELECT per.last_update FROM portfolio_entry_report per WHERE per.portfolio_entry_id" + idsCondition + ") t";
+
+        SqlRow row = Ebean.createSqlQuery(sql).findUnique();
+        return row != null ? row.getTimestamp("last_update") : null;
+    }
+
+    /**
+     * Get the ids of the portfolio entries for which the resource allocations
+     * may have changed since a date.
+     *
+     * An entry is selected if it has been updated (archived for example), or
+     * if one of its resource allocations (including the deleted ones), life
+     * cycle instance plannings (a milestone approval copies the resource plan)
+     * or planning packages (the allocations could follow their dates) has been
+     * updated since the date.
+     *
+     * @param since
+     *            the date
+     */
+    public static List<Long> getPEIdsAsListUpdatedForCapacitySince(Date since) {
+
+        String planningJoin = " JOIN life_cycle_instance_planning lcip ON lcip.life_cycle_instance_id = lci.id";
+
+        List<String> sqls = new ArrayList<>();
+
+        sqls.add("SELECT pe.id AS id FROM portfolio_entry pe WHERE pe.last_update >= :since");
+
+        for (String allocationTable : new String[] { "portfolio_entry_resource_plan_allocated_actor", "portfolio_entry_resource_plan_allocated_org_unit",
+                "portfolio_entry_resource_plan_allocated_competency" }) {
+            sqls.add("SELECT lci.portfolio_entry_id AS id FROM life_cycle_instance lci" + planningJoin + " JOIN " + allocationTable
+                    + " a ON a.portfolio_entry_resource_plan_id = lcip.portfolio_entry_resource_plan_id WHERE a.last_update >= :since");
+        }
+
+        sqls.add("SELECT lci.portfolio_entry_id AS id FROM life_cycle_instance lci" + planningJoin
+                + " WHERE lci.last_update >= :since OR lcip.last_update >= :since");
+
+        sqls.add("SELECT pepp.portfolio_entry_id AS id FROM portfolio_entry_planning_package pepp WHERE pepp.last_update >= :since");
+
+        List<Long> ids = new ArrayList<>();
+        for (SqlRow row : Ebean.createSqlQuery(StringUtils.join(sqls, " UNION ")).setParameter("since", since).findList()) {
+            ids.add(row.getLong("id"));
+        }
+        return ids;
+    }
+
     /**
      * Get the number of consumed licenses of PE.
      */
@@ -578,7 +868,34 @@ public abstract class PortfolioEntryDao {
     }
 
     /**
-     * Get the portfolio entries list with filter.
+     * Get the number of active entries of some portfolios, by portfolio id.
+     * 
+     * @param portfolioIds
+     *            the portfolio ids
+     * @param isConcept
+     *            set to true for conceptual entries only, to false for
+     *            non-conceptual entries only, to null for all
+     */
+    public static Map<Long, BigDecimal> getPEAsNbActiveMapByPortfolio(Collection<Long> portfolioIds, Boolean isConcept) {
+
+        if (portfolioIds.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        String sql = "SELECT phpe.portfolio_id AS objectId, COUNT(pe.id) AS total FROM portfolio_entry pe "
+                + "JOIN portfolio_has_portfolio_entry phpe ON pe.id = phpe.portfolio_entry_id ";
+
+        if (isConcept != null) {
+            sql += "JOIN life_cycle_instance lci ON pe.active_life_cycle_instance_id = lci.id AND lci.is_concept = " + isConcept + " ";
+        }
+
+        sql += "WHERE pe.deleted = 0 AND pe.archived = 0 AND phpe.portfolio_id IN (" + StringUtils.join(portfolioIds, ",") + ") GROUP BY phpe.portfolio_id";
+
+        return TotalByObject.getAsMap(sql);
+    }
+
+    /**
+     * Get the portfolio entries with filters as an expression list.
      * 
      * @param managerId
      *            if not null then return only portfolio entries for the given
@@ -602,8 +919,8 @@ public abstract class PortfolioEntryDao {
      *            true to return only public portfolio entries, false only
      *            confidential, null all.
      */
-    public static List<PortfolioEntry> getPEAsListByFilter(Long managerId, List<Long> sponsoringUnitId, List<Long> deliveryUnitId, List<Long> portfolioId, Boolean archived,
-                                                           List<Long> portfolioEntryTypeId, Boolean isPublic) {
+    public static ExpressionList<PortfolioEntry> getPEAsExprByFilter(Long managerId, List<Long> sponsoringUnitId, List<Long> deliveryUnitId,
+            List<Long> portfolioId, Boolean archived, List<Long> portfolioEntryTypeId, Boolean isPublic) {
 
         ExpressionList<PortfolioEntry> e = findPortfolioEntry.where().eq("deleted", false);
         if (managerId != null) {
@@ -628,7 +945,37 @@ public abstract class PortfolioEntryDao {
             e = e.eq("isPublic", isPublic);
         }
 
-        return e.findList();
+        return e;
+    }
+
+    /**
+     * Get the portfolio entries list with filter.
+     * 
+     * @param managerId
+     *            if not null then return only portfolio entries for the given
+     *            manager.
+     * @param sponsoringUnitId
+     *            if not null then return only portfolio entries with the given
+     *            sponsoring unit.
+     * @param deliveryUnitId
+     *            if not null then return only portfolio entries with the given
+     *            delivery unit.
+     * @param portfolioId
+     *            if not null then return only portfolio entries belonging to
+     *            the given portfolio.
+     * @param archived
+     *            true to return only archived portfolio entries, false only
+     *            active, null all.
+     * @param portfolioEntryTypeId
+     *            if not null then return only portfolio entries with the given
+     *            type.
+     * @param isPublic
+     *            true to return only public portfolio entries, false only
+     *            confidential, null all.
+     */
+    public static List<PortfolioEntry> getPEAsListByFilter(Long managerId, List<Long> sponsoringUnitId, List<Long> deliveryUnitId, List<Long> portfolioId, Boolean archived,
+                                                           List<Long> portfolioEntryTypeId, Boolean isPublic) {
+        return getPEAsExprByFilter(managerId, sponsoringUnitId, deliveryUnitId, portfolioId, archived, portfolioEntryTypeId, isPublic).findList();
     }
     
     /**
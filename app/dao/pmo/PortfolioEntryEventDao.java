@@ -17,7 +17,11 @@
  */
 package dao.pmo;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 import com.avaje.ebean.ExpressionList;
 import com.avaje.ebean.Model.Finder;
@@ -65,6 +69,21 @@ public abstract class PortfolioEntryEventDao {
         return findPortfolioEntryEvent.where().eq("deleted", false).eq("portfolioEntry.id", portfolioEntryId);
     }
 
+    /**
+     * Get the events with some ids (in the same order) with their type and
+     * actor.
+     * 
+     * @param ids
+     *            the event ids
+     */
+    public static List<PortfolioEntryEvent> getPEEventAsListByIds(List<Long> ids) {
+        Map<Long, PortfolioEntryEvent> events = new HashMap<>();
+        for (PortfolioEntryEvent event : findPortfolioEntryEvent.fetch("portfolioEntryEventType").fetch("actor").where().idIn(ids).findList()) {
+            events.put(event.id, event);
+        }
+        return ids.stream().map(events::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
     /**
      * Get a portfolio entry event type by id.
      * 
@@ -17,6 +17,8 @@
  */
 package dao.pmo;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 import com.avaje.ebean.ExpressionList;
@@ -115,6 +117,29 @@ public abstract class PortfolioEntryPlanningPackageDao {
         return getPEPlanningPackageAsExprByPE(portfolioEntryId).findList();
     }
 
+    /**
+     * Get the planning packages (including the deleted ones) of a portfolio
+     * entry that have been updated since a date.
+     * 
+     * @param portfolioEntryId
+     *            the portfolio entry id
+     * @param since
+     *            the date
+     */
+    public static List<PortfolioEntryPlanningPackage> getPEPlanningPackageAsListByPEAndUpdatedSince(Long portfolioEntryId, Date since) {
+        return findPortfolioEntryPlanningPackage.where().eq("portfolioEntry.id", portfolioEntryId).gt("lastUpdate", since).findList();
+    }
+
+    /**
+     * Get all planning packages of some portfolio entries.
+     * 
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     */
+    public static List<PortfolioEntryPlanningPackage> getPEPlanningPackageAsListByPEs(Collection<Long> portfolioEntryIds) {
+        return findPortfolioEntryPlanningPackage.where().eq("deleted", false).in("portfolioEntry.id", portfolioEntryIds).findList();
+    }
+
     /**
      * Get all planning packages of a portfolio entry as a value holder
      * collection.
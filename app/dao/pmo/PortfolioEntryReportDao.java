@@ -17,6 +17,7 @@
  */
 package dao.pmo;
 
+import java.util.Date;
 import java.util.List;
 
 import com.avaje.ebean.ExpressionList;
@@ -99,6 +100,19 @@ public abstract class PortfolioEntryReportDao {
         return findPortfolioEntryReport.orderBy("creationDate DESC").where().eq("deleted", false).eq("portfolioEntry.id", portfolioEntryId).findList();
     }
 
+    /**
+     * Get the reports (including the deleted ones) of a portfolio entry that
+     * have been updated since a date.
+     * 
+     * @param portfolioEntryId
+     *            the portfolio entry id
+     * @param since
+     *            the date
+     */
+    public static List<PortfolioEntryReport> getPEReportAsListByPEAndUpdatedSince(Long portfolioEntryId, Date since) {
+        return findPortfolioEntryReport.orderBy("creationDate DESC").where().eq("portfolioEntry.id", portfolioEntryId).gt("lastUpdate", since).findList();
+    }
+
     /**
      * Get a status type by id.
      * 
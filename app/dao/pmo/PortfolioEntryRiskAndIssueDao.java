@@ -17,12 +17,19 @@
  */
 package dao.pmo;
 
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
 
 import models.pmo.PortfolioEntryIssue;
 import models.pmo.PortfolioEntryIssueType;
 import models.pmo.PortfolioEntryRisk;
 import models.pmo.PortfolioEntryRiskType;
+import models.sql.TotalByObject;
 import play.Play;
 import com.avaje.ebean.Model.Finder;
 
@@ -124,6 +131,49 @@ public abstract class PortfolioEntryRiskAndIssueDao {
                 .findRowCount();
     }
 
+    /**
+     * Get the number of active not occurred risks of some portfolio entries, by
+     * portfolio entry id.
+     * 
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     */
+    public static Map<Long, BigDecimal> getPERiskAsNbActiveMapByPE(Collection<Long> portfolioEntryIds) {
+        return getAsNbActiveMapByPE("portfolio_entry_risk", portfolioEntryIds);
+    }
+
+    /**
+     * Get the number of active issues of some portfolio entries, by portfolio
+     * entry id.
+     * 
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     */
+    public static Map<Long, BigDecimal> getPEIssueAsNbActiveMapByPE(Collection<Long> portfolioEntryIds) {
+        return getAsNbActiveMapByPE("portfolio_entry_issue", portfolioEntryIds);
+    }
+
+    /**
+     * Count the active rows of a risk/issue table with a single grouped query.
+     * 
+     * @param table
+     *            the risk or issue table
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     */
+    private static Map<Long, BigDecimal> getAsNbActiveMapByPE(String table, Collection<Long> portfolioEntryIds) {
+
+        if (portfolioEntryIds.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        String sql = "SELECT t.portfolio_entry_id AS objectId, COUNT(t.id) AS total FROM " + table + " t "
+                + "WHERE t.deleted = 0 AND t.is_active = 1 AND t.portfolio_entry_id IN (" + StringUtils.join(portfolioEntryIds, ",") + ") "
+                + "GROUP BY t.portfolio_entry_id";
+
+        return TotalByObject.getAsMap(sql);
+    }
+
     /**
      * Get the portfolio entry risks of a portfolio entry with filters.
      *
@@ -19,14 +19,21 @@ package dao.timesheet;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.sql.Timestamp;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
 
 import com.avaje.ebean.Ebean;
 import com.avaje.ebean.Expr;
@@ -35,16 +42,20 @@ import com.avaje.ebean.Model.Finder;
 import com.avaje.ebean.Query;
 import com.avaje.ebean.RawSql;
 import com.avaje.ebean.RawSqlBuilder;
+import com.avaje.ebean.SqlQuery;
+import com.avaje.ebean.SqlRow;
+import com.avaje.ebean.SqlUpdate;
 
 import constants.IMafConstants;
+import dao.pmo.ActorDao;
 import framework.services.account.IPreferenceManagerPlugin;
 import framework.utils.DefaultSelectableValueHolderCollection;
 import framework.utils.ISelectableValueHolderCollection;
 import framework.utils.Pagination;
 import java.util.Map;
-import java.util.stream.Collectors;
 import models.pmo.Actor;
 import models.pmo.PortfolioEntryPlanningPackage;
+import models.sql.TotalByObject;
 import models.sql.TotalHours;
 import models.timesheet.TimesheetActivity;
 import models.timesheet.TimesheetActivityAllocatedActor;
@@ -292,6 +303,22 @@ public abstract class TimesheetDao {
                 .ge("endDate", start).eq("actor.id", actorId).findList();
     }
 
+    /**
+     * Get the allocated activities with a period (start and end dates) of the
+     * non-deleted actors, with their details.
+     * 
+     * @param actorIds
+     *            the actor ids, null for all actors
+     */
+    public static List<TimesheetActivityAllocatedActor> getTimesheetActivityAllocatedActorWithPeriodAsListByActors(Collection<Long> actorIds) {
+        ExpressionList<TimesheetActivityAllocatedActor> expr = findTimesheetActivityAllocatedActor.fetch("timesheetActivityAllocatedActorDetails").where()
+                .eq("deleted", false).isNotNull("startDate").isNotNull("endDate").eq("actor.deleted", false);
+        if (actorIds != null) {
+            expr = expr.in("actor.id", actorIds);
+        }
+        return expr.findList();
+    }
+
     /**
      * Get a timesheet activity type by id.
      * 
@@ -327,6 +354,16 @@ public abstract class TimesheetDao {
         return findTimesheetEntry.where().eq("deleted", false).eq("id", id).findUnique();
     }
 
+    /**
+     * Get the entries of a timesheet report with their logs.
+     * 
+     * @param reportId
+     *            the timesheet report id
+     */
+    public static List<TimesheetEntry> getTimesheetEntryAsListWithLogsByReport(Long reportId) {
+        return findTimesheetEntry.fetch("timesheetLogs").where().eq("deleted", false).eq("timesheetReport.id", reportId).findList();
+    }
+
     /**
      * Get a timesheet log by id.
      * 
@@ -389,6 +426,49 @@ public abstract class TimesheetDao {
         return totalHours;
     }
 
+    /**
+     * Get the total timesheeted hours of some portfolio entries, by portfolio
+     * entry id.
+     * 
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     */
+    public static Map<Long, BigDecimal> getTimesheetLogAsTotalHoursMapByPE(Collection<Long> portfolioEntryIds) {
+
+        if (portfolioEntryIds.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        String sql = "SELECT te.portfolio_entry_id AS objectId, SUM(tl.hours) AS total FROM timesheet_log tl "
+                + "JOIN timesheet_entry te ON tl.timesheet_entry_id = te.id " + "JOIN timesheet_report tr ON te.timesheet_report_id = tr.id "
+                + "WHERE tl.deleted = false AND te.deleted = false AND tr.deleted = false AND te.portfolio_entry_id IN ("
+                + StringUtils.join(portfolioEntryIds, ",") + ") AND tr.status != '" + Status.REJECTED.name() + "' GROUP BY te.portfolio_entry_id";
+
+        return TotalByObject.getAsMap(sql);
+    }
+
+    /**
+     * Get the total timesheeted hours of the planning packages of some
+     * portfolio entries, by portfolio entry id.
+     * 
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     */
+    public static Map<Long, BigDecimal> getTimesheetLogAsTotalHoursMapByPEPlanningPackages(Collection<Long> portfolioEntryIds) {
+
+        if (portfolioEntryIds.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        String sql = "SELECT pepp.portfolio_entry_id AS objectId, SUM(tl.hours) AS total FROM timesheet_log tl "
+                + "JOIN timesheet_entry te ON tl.timesheet_entry_id = te.id " + "JOIN timesheet_report tr ON te.timesheet_report_id = tr.id "
+                + "JOIN portfolio_entry_planning_package pepp ON te.portfolio_entry_planning_package_id = pepp.id "
+                + "WHERE tl.deleted = false AND te.deleted = false AND tr.deleted = false AND pepp.deleted = false AND pepp.portfolio_entry_id IN ("
+                + StringUtils.join(portfolioEntryIds, ",") + ") GROUP BY pepp.portfolio_entry_id";
+
+        return TotalByObject.getAsMap(sql);
+    }
+
     /**
      * Get the timesheet logs of a portfolio entry.
      * 
@@ -400,6 +480,22 @@ public abstract class TimesheetDao {
                 .eq("timesheetEntry.portfolioEntry.id", portfolioEntryId).eq("timesheetEntry.timesheetReport.deleted", false);
     }
 
+    /**
+     * Get the timesheet logs with some ids (in the same order) with their
+     * entry and report.
+     * 
+     * @param ids
+     *            the timesheet log ids
+     */
+    public static List<TimesheetLog> getTimesheetLogAsListByIds(List<Long> ids) {
+        Map<Long, TimesheetLog> logs = new HashMap<>();
+        for (TimesheetLog timesheetLog : findTimesheetLog.fetch("timesheetEntry").fetch("timesheetEntry.portfolioEntryPlanningPackage")
+                .fetch("timesheetEntry.timesheetReport").fetch("timesheetEntry.timesheetReport.actor").where().idIn(ids).findList()) {
+            logs.put(timesheetLog.id, timesheetLog);
+        }
+        return ids.stream().map(logs::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
     /**
      * Get the active timesheet logs of a portfolio entry.
      * 
@@ -412,6 +508,35 @@ public abstract class TimesheetDao {
                 .eq("timesheetEntry.timesheetReport.status", Status.APPROVED).eq("timesheetEntry.timesheetReport.status", Status.LOCKED);
     }
 
+    /**
+     * Return true if a timesheet log is active, meaning that it matches the
+     * conditions of getTimesheetLogActiveAsExprByPortfolioEntry.
+     * 
+     * @param timesheetLog
+     *            the timesheet log
+     */
+    public static boolean isTimesheetLogActive(TimesheetLog timesheetLog) {
+        return !timesheetLog.deleted && timesheetLog.hours != null && timesheetLog.hours != 0 && !timesheetLog.timesheetEntry.deleted
+                && !timesheetLog.timesheetEntry.timesheetReport.deleted && (timesheetLog.timesheetEntry.timesheetReport.status.equals(Status.APPROVED)
+                        || timesheetLog.timesheetEntry.timesheetReport.status.equals(Status.LOCKED));
+    }
+
+    /**
+     * Get the timesheet logs (including the deleted and not active ones) of a
+     * portfolio entry that have been updated (or their entry or report) since
+     * a date.
+     * 
+     * @param portfolioEntryId
+     *            the portfolio entry id
+     * @param since
+     *            the date
+     */
+    public static List<TimesheetLog> getTimesheetLogAsListByPortfolioEntryAndUpdatedSince(Long portfolioEntryId, Date since) {
+        return findTimesheetLog.fetch("timesheetEntry").fetch("timesheetEntry.timesheetReport").where()
+                .eq("timesheetEntry.portfolioEntry.id", portfolioEntryId).disjunction().gt("lastUpdate", since).gt("timesheetEntry.lastUpdate", since).gt("timesheetEntry.timesheetReport.lastUpdate", since)
+                .endJunction().findList();
+    }
+
     /**
      * Get a timesheet report by id.
      * 
@@ -434,7 +559,30 @@ public abstract class TimesheetDao {
         return findTimesheetReport.where().eq("deleted", false).eq("actor.id", actorId).eq("startDate", startDate).findUnique();
     }
 
-    public static List<TimesheetSummary> getTimesheetLogSummary(Long portfolioEntryId, String groupBy, Long actorId, String startDateString, String endDateString) {
+    /**
+     * Get the timesheet summary of a portfolio entry: the timesheeted hours of
+     * each actor by period.
+     * 
+     * The hours are summed by the database (GROUP BY on the actor and the
+     * period) so that the logs are not loaded. The date range is applied
+     * directly on the log date column, so that it can use an index on it.
+     * 
+     * @param portfolioEntryId
+     *            the portfolio entry id
+     * @param groupBy
+     *            the period granularity: day, week (ISO week, as "yyyy-ww"),
+     *            month or quarter, any other value to get the total of each
+     *            actor
+     * @param actorId
+     *            the actor id, 0 for all actors
+     * @param startDateString
+     *            the logs are after this date (yyyy-MM-dd), null for no start
+     * @param endDateString
+     *            the logs are before this date (yyyy-MM-dd), null for no end
+     */
+    public static List<TimesheetSummary> getTimesheetLogSummary(Long portfolioEntryId, String groupBy, Long actorId, String startDateString,
+            String endDateString) {
+
         Date startDate = null;
         Date endDate = null;
         try {
@@ -449,70 +597,79 @@ public abstract class TimesheetDao {
             log.error(e.getMessage());
         }
 
-        ExpressionList<TimesheetLog> expressionList = findTimesheetLog
-                .fetch("timesheetEntry.timesheetReport.actor")
-                .where()
-                .eq("timesheetEntry.portfolioEntry.id", portfolioEntryId)
-                .eq("deleted", 0)
-                .eq("timesheetEntry.deleted", 0)
-                .eq("timesheetEntry.timesheetReport.deleted", 0)
-                .ne("hours", 0);
-        if (actorId != 0) {
-            expressionList = expressionList.eq("timesheetEntry.timesheetReport.actor.id", actorId);
+        String sql = "SELECT tr.actor_id AS actor_id, " + getTimesheetLogPeriodExpression(groupBy) + " AS period, SUM(tl.hours) AS hours "
+                + "FROM timesheet_log tl JOIN timesheet_entry te ON tl.timesheet_entry_id = te.id JOIN timesheet_report tr ON te.timesheet_report_id = tr.id "
+                + "WHERE te.portfolio_entry_id = :portfolioEntryId AND tl.deleted = false AND te.deleted = false AND tr.deleted = false AND tl.hours <> 0";
+        if (actorId != null && actorId != 0) {
+            sql += " AND tr.actor_id = :actorId";
         }
         if (startDate != null) {
-            expressionList = expressionList.gt("logDate", startDate);
+            sql += " AND tl.log_date > :startDate";
         }
         if (endDate != null) {
-            expressionList = expressionList.lt("logDate", endDate);
+            sql += " AND tl.log_date < :endDate";
+        }
+        sql += " GROUP BY tr.actor_id, period ORDER BY tr.actor_id, period";
+
+        SqlQuery query = Ebean.createSqlQuery(sql).setParameter("portfolioEntryId", portfolioEntryId);
+        if (actorId != null && actorId != 0) {
+            query.setParameter("actorId", actorId);
         }
-        List<TimesheetLog> logs = expressionList.findList();
+        if (startDate != null) {
+            query.setParameter("startDate", startDate);
+        }
+        if (endDate != null) {
+            query.setParameter("endDate", endDate);
+        }
+
+        Map<Long, List<TimesheetSummaryForActor>> summariesByActor = new LinkedHashMap<>();
+        for (SqlRow row : query.findList()) {
+            TimesheetSummaryForActor timesheetSummaryForActor = new TimesheetSummaryForActor();
+            timesheetSummaryForActor.setGroupBy(groupBy);
+            timesheetSummaryForActor.setPeriod(row.getString("period"));
+            timesheetSummaryForActor.setHours(row.getBigDecimal("hours").setScale(2, RoundingMode.HALF_EVEN).doubleValue());
+            summariesByActor.computeIfAbsent(row.getLong("actor_id"), aId -> new ArrayList<>()).add(timesheetSummaryForActor);
+        }
+
         Map<Long, Actor> actorMap = new HashMap<>();
+        for (Actor actor : ActorDao.getActorAsListByIds(summariesByActor.keySet())) {
+            actorMap.put(actor.id, actor);
+        }
+
         List<TimesheetSummary> summaries = new ArrayList<>();
-        DateFormat monthFormatter = new SimpleDateFormat("yyyy-MM");
-        DateFormat weekFormatter = new SimpleDateFormat("yyyy-w");
-
-        Map<Long, List<TimesheetLog>> logsByActor = logs.stream().collect(Collectors.groupingBy(log -> {
-            actorMap.put(log.timesheetEntry.timesheetReport.actor.id, log.timesheetEntry.timesheetReport.actor);
-            return log.timesheetEntry.timesheetReport.actor.id;
-        }));
-
-        Map<Long, Map<String, Double>> hoursByActorGroupByPeriod = new HashMap<>();
-        logsByActor.keySet().forEach(aId -> {
-            Map<String, Double> groupedHours = logsByActor.get(aId).stream().collect(Collectors.toMap(
-                    timesheetLog -> {
-                        if ("month".equalsIgnoreCase(groupBy)) {
-                            return monthFormatter.format(timesheetLog.logDate);
-                        }
-                        if ("week".equalsIgnoreCase(groupBy)) {
-                            return weekFormatter.format(timesheetLog.logDate);
-                        }
-                        return "";
-                    },
-                    timesheetLog -> timesheetLog.hours,
-                    Double::sum
-            ));
-            hoursByActorGroupByPeriod.put(aId, groupedHours);
-        });
-
-        hoursByActorGroupByPeriod.keySet().forEach(aId -> {
+        for (Map.Entry<Long, List<TimesheetSummaryForActor>> entry : summariesByActor.entrySet()) {
             TimesheetSummary timesheetSummary = new TimesheetSummary();
-            List<TimesheetSummaryForActor> timesheetSummaryForActors = new ArrayList<>();
-            timesheetSummary.setActor(actorMap.get(aId));
-            for (String period : hoursByActorGroupByPeriod.get(aId).keySet()) {
-                TimesheetSummaryForActor timesheetSummaryForActor = new TimesheetSummaryForActor();
-                timesheetSummaryForActor.setGroupBy(groupBy);
-                timesheetSummaryForActor.setPeriod(period);
-                timesheetSummaryForActor.setHours(BigDecimal.valueOf(hoursByActorGroupByPeriod.get(aId).get(period)).setScale(2, RoundingMode.HALF_EVEN).doubleValue());
-                timesheetSummaryForActors.add(timesheetSummaryForActor);
-            }
-            timesheetSummary.setTimesheetSummary(timesheetSummaryForActors);
+            timesheetSummary.setActor(actorMap.get(entry.getKey()));
+            timesheetSummary.setTimesheetSummary(entry.getValue());
             summaries.add(timesheetSummary);
-        });
+        }
 
         return summaries;
     }
 
+    /**
+     * Get the SQL expression of the period of a timesheet log (alias "tl") for
+     * a granularity of the timesheet summary.
+     * 
+     * @param groupBy
+     *            the period granularity (day, week, month or quarter)
+     */
+    private static String getTimesheetLogPeriodExpression(String groupBy) {
+        if ("day".equalsIgnoreCase(groupBy)) {
+            return "DATE_FORMAT(tl.log_date, '%Y-%m-%d')";
+        }
+        if ("week".equalsIgnoreCase(groupBy)) {
+            return "DATE_FORMAT(tl.log_date, '%x-%v')";
+        }
+        if ("month".equalsIgnoreCase(groupBy)) {
+            return "DATE_FORMAT(tl.log_date, '%Y-%m')";
+        }
+        if ("quarter".equalsIgnoreCase(groupBy)) {
+            return "CONCAT(YEAR(tl.log_date), '-Q', QUARTER(tl.log_date))";
+        }
+        return "''";
+    }
+
     /**
      * Look for a timesheet entry with the specified characteristics
      * @param timeSheetReportId a report id
@@ -530,6 +687,41 @@ public abstract class TimesheetDao {
         return (list!=null&&list.size()!=0)?list.get(0):null;
     }
 
+    /**
+     * Change the version (last update date) of a timesheet report only if it
+     * is still the given one (optimistic locking).
+     * 
+     * The update also locks the report row until the end of the current
+     * transaction, so the concurrent saves of the same report are serialized.
+     * 
+     * @param reportId
+     *            the timesheet report id
+     * @param version
+     *            the expected version (null if the report has never been
+     *            updated)
+     * @return false if the report has been updated since (the version has not
+     *         been changed)
+     */
+    public static boolean updateTimesheetReportVersion(Long reportId, Date version) {
+
+        // the new version is at least one second after the expected one
+        // (precision of the column)
+        long newVersion = System.currentTimeMillis();
+        if (version != null && newVersion < version.getTime() + 1000) {
+            newVersion = version.getTime() + 1000;
+        }
+        newVersion = newVersion - newVersion % 1000;
+
+        String sql = "UPDATE timesheet_report SET last_update = :newVersion WHERE id = :id AND "
+                + (version != null ? "last_update = :version" : "last_update IS NULL");
+        SqlUpdate update = Ebean.createSqlUpdate(sql).setParameter("newVersion", new Timestamp(newVersion)).setParameter("id", reportId);
+        if (version != null) {
+            update.setParameter("version", new Timestamp(version.getTime()));
+        }
+
+        return Ebean.execute(update) == 1;
+    }
+
     /**
      * Get the submitted timesheets of the subordinates of a manager.
      * 
@@ -0,0 +1,37 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package models.sql;
+
+import javax.persistence.Entity;
+
+import com.avaje.ebean.annotation.Sql;
+
+/**
+ * Entity that provide a financial amount of an object for a kind of amount
+ * (budget, cost to complete or engaged), an expenditure type (OPEX or CAPEX)
+ * and a nature (effort or cost).
+ */
+@Entity
+@Sql
+public class FinancialAmount {
+    public Long objectId;
+    public String kind;
+    public Boolean isOpex;
+    public Boolean isEffort;
+    public Double totalAmount;
+}
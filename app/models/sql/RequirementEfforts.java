@@ -0,0 +1,54 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package models.sql;
+
+import java.math.BigDecimal;
+
+/**
+ * The effort totals of a set of requirements (the result of a "SUM" query, see
+ * RequirementDAO.getRequirementAllAsEffortsMapByPE).
+ */
+public class RequirementEfforts {
+
+    public BigDecimal remainingEffort;
+    public BigDecimal effort;
+    public BigDecimal initialEstimation;
+
+    /**
+     * Default constructor.
+     */
+    public RequirementEfforts() {
+    }
+
+    /**
+     * Construct the efforts with totals.
+     * 
+     * @param remainingEffort
+     *            the total remaining effort
+     * @param effort
+     *            the total effort
+     * @param initialEstimation
+     *            the total initial estimation
+     */
+    public RequirementEfforts(BigDecimal remainingEffort, BigDecimal effort, BigDecimal initialEstimation) {
+        this.remainingEffort = remainingEffort;
+        this.effort = effort;
+        this.initialEstimation = initialEstimation;
+    }
+
+}
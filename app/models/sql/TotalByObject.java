@@ -0,0 +1,62 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package models.sql;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.Entity;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.RawSqlBuilder;
+import com.avaje.ebean.annotation.Sql;
+
+/**
+ * Entity that provide a total for an object (the result of a "GROUP BY"
+ * query).
+ * 
+ * The query must select the grouping id as "objectId" and the aggregated
+ * value as "total".
+ */
+@Entity
+@Sql
+public class TotalByObject {
+
+    public Long objectId;
+    public BigDecimal total;
+
+    /**
+     * Execute a grouped query and return the totals by object id.
+     * 
+     * Note: an object without any row is simply not present in the map.
+     * 
+     * @param sql
+     *            the SQL query
+     */
+    public static Map<Long, BigDecimal> getAsMap(String sql) {
+        Map<Long, BigDecimal> totals = new HashMap<>();
+        for (TotalByObject totalByObject : Ebean.find(TotalByObject.class).setRawSql(RawSqlBuilder.parse(sql).create()).findList()) {
+            if (totalByObject.objectId != null && totalByObject.total != null) {
+                totals.put(totalByObject.objectId, totalByObject.total);
+            }
+        }
+        return totals;
+    }
+
+}
@@ -95,18 +95,30 @@ import services.bizdockapi.BizdockApiClientImpl;
 import services.bizdockapi.IBizdockApiClient;
 import services.budgettracking.BudgetTrackingServiceImpl;
 import services.budgettracking.IBudgetTrackingService;
+import services.capacityforecast.CapacityForecastServiceImpl;
+import services.capacityforecast.ICapacityForecastService;
 import services.configuration.ImplementationDefinedObjectImpl;
 import services.configuration.TopMenuBarService;
 import services.database.DatabaseDependencyServiceImpl;
 import services.datasyndication.DataSyndicationServiceImpl;
 import services.datasyndication.IDataSyndicationService;
+import services.delivery.IRequirementStatisticsService;
+import services.delivery.RequirementStatisticsServiceImpl;
 import services.echannel.EchannelServiceImpl;
 import services.echannel.IEchannelService;
+import services.gantt.GanttDataServiceImpl;
+import services.gantt.IGanttDataService;
 import services.job.JobDescriptors;
 import services.licensesmanagement.ILicensesManagementService;
 import services.licensesmanagement.LicensesManagementServiceImpl;
+import services.notification.BulkNotificationServiceImpl;
+import services.notification.IBulkNotificationService;
 import services.picker.IPickerService;
 import services.picker.PickerServiceImpl;
+import services.search.ISearchIndexService;
+import services.search.SearchIndexServiceImpl;
+import services.tableexport.ITableExportService;
+import services.tableexport.TableExportServiceImpl;
 import services.tableprovider.ITableProvider;
 import services.tableprovider.TableProviderImpl;
 import utils.reporting.IReportingUtils;
@@ -190,7 +202,13 @@ public class ApplicationServicesModule extends FrameworkModule {
         bind(IBizdockApiClient.class).to(BizdockApiClientImpl.class).asEagerSingleton();
         bind(IEmailService.class).to(EmailServiceImpl.class).asEagerSingleton();
         bind(IBudgetTrackingService.class).to(BudgetTrackingServiceImpl.class).asEagerSingleton();
+        bind(ICapacityForecastService.class).to(CapacityForecastServiceImpl.class).asEagerSingleton();
+        bind(IGanttDataService.class).to(GanttDataServiceImpl.class).asEagerSingleton();
+        bind(ISearchIndexService.class).to(SearchIndexServiceImpl.class).asEagerSingleton();
         bind(IPickerService.class).to(PickerServiceImpl.class).asEagerSingleton();
+        bind(ITableExportService.class).to(TableExportServiceImpl.class).asEagerSingleton();
+        bind(IBulkNotificationService.class).to(BulkNotificationServiceImpl.class).asEagerSingleton();
+        bind(IRequirementStatisticsService.class).to(RequirementStatisticsServiceImpl.class).asEagerSingleton();
         bind(ITableProvider.class).to(TableProviderImpl.class).asEagerSingleton();
 
         bind(IDashboardService.class).to(DashboardServiceImpl.class).asEagerSingleton();
@@ -214,6 +232,12 @@ public class ApplicationServicesModule extends FrameworkModule {
         JobDescriptors.BudgetTrackingJobDescriptor budgetTrackingJobDescriptor = new JobDescriptors.BudgetTrackingJobDescriptor();
         bind(JobDescriptors.BudgetTrackingJobDescriptor.class).toInstance(budgetTrackingJobDescriptor);
         jobs.add(budgetTrackingJobDescriptor);
+        JobDescriptors.CapacityCubeJobDescriptor capacityCubeJobDescriptor = new JobDescriptors.CapacityCubeJobDescriptor();
+        bind(JobDescriptors.CapacityCubeJobDescriptor.class).toInstance(capacityCubeJobDescriptor);
+        jobs.add(capacityCubeJobDescriptor);
+        JobDescriptors.SearchIndexJobDescriptor searchIndexJobDescriptor = new JobDescriptors.SearchIndexJobDescriptor();
+        bind(JobDescriptors.SearchIndexJobDescriptor.class).toInstance(searchIndexJobDescriptor);
+        jobs.add(searchIndexJobDescriptor);
         bind(JobInitialConfig.class).annotatedWith(Names.named("JobConfig")).toInstance(new JobInitialConfig(jobs));
         bind(IJobsService.class).to(JobsServiceImpl.class).asEagerSingleton();
 
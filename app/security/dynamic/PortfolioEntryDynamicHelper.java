@@ -17,6 +17,9 @@
  */
 package security.dynamic;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.avaje.ebean.Expr;
 import com.avaje.ebean.Expression;
 import com.avaje.ebean.ExpressionList;
@@ -80,27 +83,35 @@ public class PortfolioEntryDynamicHelper {
                 raw += "manager.id=" + actor.id + " OR ";
             }
 
-            // user has permission
-            // PORTFOLIO_ENTRY_VIEW_DETAILS_AS_STAKEHOLDER_PERMISSION AND
-            // user is direct stakeholder of the portfolioEntry
-            if (securityService.restrict(IMafConstants.PORTFOLIO_ENTRY_VIEW_DETAILS_AS_STAKEHOLDER_PERMISSION, userAccount)) {
-                raw += "(stakeholders.deleted=false AND stakeholders.actor.id=" + actor.id + ") OR ";
-            }
+            /*
+             * The stakeholder and portfolio rules are grouped in a single
+             * semi-join (id IN subquery) instead of joining the stakeholders
+             * and the portfolios to the portfolio entry, which would duplicate
+             * the rows.
+             */
+            List<String> visibleIdsQueries = new ArrayList<>();
 
             // user has permission
             // PORTFOLIO_ENTRY_VIEW_DETAILS_AS_STAKEHOLDER_PERMISSION AND
-            // user is stakeholder of a portfolio of the portfolioEntry
+            // user is direct stakeholder of the portfolioEntry OR user is
+            // stakeholder of a portfolio of the portfolioEntry
             if (securityService.restrict(IMafConstants.PORTFOLIO_ENTRY_VIEW_DETAILS_AS_STAKEHOLDER_PERMISSION, userAccount)) {
-                raw += "(portfolios.deleted=false AND portfolios.stakeholders.deleted=false AND portfolios.stakeholders.actor.id=" + actor.id + ") OR ";
+                visibleIdsQueries.add("SELECT s.portfolio_entry_id FROM stakeholder s WHERE s.deleted=0 AND s.actor_id=" + actor.id);
+                visibleIdsQueries.add("SELECT phpe.portfolio_entry_id FROM portfolio_has_portfolio_entry phpe "
+                        + "JOIN portfolio p ON phpe.portfolio_id=p.id JOIN stakeholder s ON s.portfolio_id=p.id "
+                        + "WHERE p.deleted=0 AND s.deleted=0 AND s.actor_id=" + actor.id);
             }
 
             // user has permission
             // PORTFOLIO_ENTRY_VIEW_DETAILS_AS_PORTFOLIO_MANAGER_PERMISSION
-            // AND
-            // user
-            // is portfolio manager of the portfolioEntry
+            // AND user is portfolio manager of the portfolioEntry
             if (securityService.restrict(IMafConstants.PORTFOLIO_ENTRY_VIEW_DETAILS_AS_PORTFOLIO_MANAGER_PERMISSION, userAccount)) {
-                raw += "(portfolios.deleted=false AND portfolios.manager.id=" + actor.id + ") OR ";
+                visibleIdsQueries.add("SELECT phpe.portfolio_entry_id FROM portfolio_has_portfolio_entry phpe "
+                        + "JOIN portfolio p ON phpe.portfolio_id=p.id WHERE p.deleted=0 AND p.manager_id=" + actor.id);
+            }
+
+            if (!visibleIdsQueries.isEmpty()) {
+                raw += "id IN (" + String.join(" UNION ", visibleIdsQueries) + ") OR ";
             }
 
         }
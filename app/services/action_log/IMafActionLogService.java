@@ -1,5 +1,8 @@
 package services.action_log;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * The action log service interface for maf objects.
  * 
@@ -9,6 +12,7 @@ package services.action_log;
 public interface IMafActionLogService {
 
     public static final String DELIVERABLE_CHANGE_REQUIREMENTS = "CHANGE_REQUIREMENTS";
+    public static final String PORTFOLIO_ENTRY_CHANGE_ALLOCATIONS_STATUS = "CHANGE_ALLOCATIONS_STATUS";
 
     /**
      * Log the change of requirements in a deliverable.
@@ -22,4 +26,20 @@ public interface IMafActionLogService {
      */
     void logChangeRequirementsOfDeliverable(Long deliverableId, Integer previousNumber, Integer newNumber);
 
+    /**
+     * Log the change of the status of some resource allocations: one entry by
+     * portfolio entry with the ids of its changed allocations, the new status
+     * and the actor who changed it. The entries are inserted with one batch.
+     * 
+     * @param allocationType
+     *            the type of the allocations (actor, orgUnit or competency)
+     * @param status
+     *            the new status
+     * @param actorId
+     *            the id of the actor who changed the status, could be null
+     * @param allocationIdsByPortfolioEntry
+     *            the ids of the changed allocations by portfolio entry id
+     */
+    void logChangeAllocationsStatus(String allocationType, String status, Long actorId, Map<Long, List<Long>> allocationIdsByPortfolioEntry);
+
 }
@@ -1,10 +1,16 @@
 package services.action_log;
 
+import java.util.List;
+import java.util.Map;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.apache.commons.configuration.PropertiesConfiguration;
 
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.Transaction;
+
 import constants.MafDataType;
 import framework.services.action_log.IActionLogService;
 import play.Configuration;
@@ -55,6 +61,29 @@ public class MafActionLogServiceImpl implements IMafActionLogService {
         this.getActionLogService().log(MafDataType.getDeliverable(), deliverableId, IMafActionLogService.DELIVERABLE_CHANGE_REQUIREMENTS, parameters);
     }
 
+    @Override
+    public void logChangeAllocationsStatus(String allocationType, String status, Long actorId, Map<Long, List<Long>> allocationIdsByPortfolioEntry) {
+        Transaction transaction = Ebean.beginTransaction();
+        try {
+            transaction.setBatchMode(true);
+            for (Map.Entry<Long, List<Long>> entry : allocationIdsByPortfolioEntry.entrySet()) {
+                PropertiesConfiguration parameters = new PropertiesConfiguration();
+                parameters.addProperty("allocationType", allocationType);
+                parameters.addProperty("status", status);
+                parameters.addProperty("number", entry.getValue().size());
+                parameters.addProperty("allocationIds", entry.getValue());
+                if (actorId != null) {
+                    parameters.addProperty("actorId", actorId);
+                }
+                this.getActionLogService().log(MafDataType.getPortfolioEntry(), entry.getKey(), IMafActionLogService.PORTFOLIO_ENTRY_CHANGE_ALLOCATIONS_STATUS,
+                        parameters);
+            }
+            transaction.commit();
+        } finally {
+            transaction.end();
+        }
+    }
+
     /**
      * Get the action log service.
      */
@@ -2,11 +2,18 @@ package services.budgettracking;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -14,10 +21,13 @@ import javax.inject.Singleton;
 import org.apache.commons.collections.keyvalue.MultiKey;
 import org.apache.commons.lang3.tuple.Pair;
 
+import com.avaje.ebean.Ebean;
+
 import constants.IMafConstants;
 import dao.finance.PortfolioEntryBudgetDAO;
 import dao.finance.PurchaseOrderDAO;
 import dao.finance.WorkOrderDAO;
+import dao.pmo.PortfolioEntryDao;
 import dao.timesheet.TimesheetDao;
 import framework.services.account.IPreferenceManagerPlugin;
 import models.finance.Currency;
@@ -47,6 +57,9 @@ public class BudgetTrackingServiceImpl implements IBudgetTrackingService {
 
     private IPreferenceManagerPlugin preferenceManagerPlugin;
 
+    private ExecutorService executor;
+    private int batchSize;
+
     /**
      * Initialize the service.
      * 
@@ -64,12 +77,21 @@ public class BudgetTrackingServiceImpl implements IBudgetTrackingService {
 
         lifecycle.addStopHook(() -> {
             Logger.info("SERVICE>>> BudgetTrackingServiceImpl stopping...");
+            this.executor.shutdownNow();
             Logger.info("SERVICE>>> BudgetTrackingServiceImpl stopped");
             return Promise.pure(null);
         });
 
         this.preferenceManagerPlugin = preferenceManagerPlugin;
 
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(configuration.getInt("maf.budget_tracking.parallelism", 4), runnable -> {
+            Thread thread = new Thread(runnable, "budget-tracking-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batchSize = configuration.getInt("maf.budget_tracking.batch_size", 50);
+
         Logger.info("SERVICE>>> BudgetTrackingServiceImpl started");
     }
 
@@ -157,6 +179,120 @@ public class BudgetTrackingServiceImpl implements IBudgetTrackingService {
 
     }
 
+    @Override
+    public void recomputeActivePortfolioEntries(boolean onlyChanged) {
+
+        List<Long> portfolioEntryIds;
+        if (onlyChanged) {
+            portfolioEntryIds = PortfolioEntryDao.getPEIdsAsListForBudgetTracking();
+        } else {
+            portfolioEntryIds = new ArrayList<>();
+            for (Object id : PortfolioEntryDao.getPEAsExpr(false).findIds()) {
+                portfolioEntryIds.add(Long.valueOf(String.valueOf(id)));
+            }
+        }
+
+        Logger.info("budget tracking: " + portfolioEntryIds.size() + " portfolio entries to process");
+
+        long startTime = System.currentTimeMillis();
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < portfolioEntryIds.size(); i += batchSize) {
+            List<Long> batch = portfolioEntryIds.subList(i, Math.min(i + batchSize, portfolioEntryIds.size()));
+            futures.add(executor.submit(() -> {
+                for (Long portfolioEntryId : batch) {
+                    if (!recomputePortfolioEntry(portfolioEntryId)) {
+                        failed.incrementAndGet();
+                    }
+                    processed.incrementAndGet();
+                }
+                logProgress(processed.get(), portfolioEntryIds.size(), failed.get(), startTime);
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Logger.error("budget tracking: interrupted", e);
+                return;
+            } catch (ExecutionException e) {
+                Logger.error("budget tracking: unexpected error", e);
+            }
+        }
+
+        Logger.info("budget tracking: done");
+        logProgress(processed.get(), portfolioEntryIds.size(), failed.get(), startTime);
+    }
+
+    @Override
+    public void recomputePortfolioEntries(Collection<Long> portfolioEntryIds) {
+        if (isActive()) {
+            for (Long portfolioEntryId : new LinkedHashSet<>(portfolioEntryIds)) {
+                executor.execute(() -> recomputePortfolioEntry(portfolioEntryId));
+            }
+        }
+    }
+
+    /**
+     * Recompute all budget and forecast of a portfolio entry in its own
+     * transaction.
+     * 
+     * Return false if the recompute failed.
+     * 
+     * @param portfolioEntryId
+     *            the portfolio entry id
+     */
+    private boolean recomputePortfolioEntry(Long portfolioEntryId) {
+
+        Ebean.beginTransaction();
+        try {
+
+            // get current planning
+            PortfolioEntry portfolioEntry = PortfolioEntryDao.getPEById(portfolioEntryId);
+            LifeCycleInstancePlanning planning = portfolioEntry.activeLifeCycleInstance.getCurrentLifeCycleInstancePlanning();
+
+            // process the run
+            recomputeAllBugdetAndForecastFromResource(planning);
+
+            Ebean.commitTransaction();
+            Ebean.endTransaction();
+
+            return true;
+
+        } catch (Exception e) {
+
+            Ebean.rollbackTransaction();
+            Ebean.endTransaction();
+
+            Logger.error("budget tracking: unexpected error for the portfolio entry " + portfolioEntryId, e);
+
+            return false;
+
+        }
+    }
+
+    /**
+     * Log the progress and the throughput of a budget tracking run.
+     * 
+     * @param processed
+     *            the number of processed portfolio entries
+     * @param total
+     *            the number of portfolio entries to process
+     * @param failed
+     *            the number of failed portfolio entries
+     * @param startTime
+     *            the start time of the run
+     */
+    private static void logProgress(int processed, int total, int failed, long startTime) {
+        double seconds = Math.max(System.currentTimeMillis() - startTime, 1) / 1000.0;
+        Logger.info(String.format("budget tracking: %d/%d portfolio entries processed (%d failed) in %.1f s, %.2f entries/s", processed, total, failed,
+                seconds, processed / seconds));
+    }
+
     /**
      * Compute and get the forecast amounts (cost to complete and engage) from
      * an allocated actor.
@@ -1,5 +1,7 @@
 package services.budgettracking;
 
+import java.util.Collection;
+
 import models.governance.LifeCycleInstancePlanning;
 
 /**
@@ -24,4 +26,29 @@ public interface IBudgetTrackingService {
      */
     void recomputeAllBugdetAndForecastFromResource(LifeCycleInstancePlanning planning);
 
+    /**
+     * Recompute all budget and forecast of the active portfolio entries.
+     * 
+     * The entries are processed by batches on a dedicated pool of threads,
+     * each entry in its own transaction. The progress is logged after each
+     * batch.
+     * 
+     * @param onlyChanged
+     *            set to true to process only the entries for which an input
+     *            of the budget tracking changed since their last run
+     */
+    void recomputeActivePortfolioEntries(boolean onlyChanged);
+
+    /**
+     * Recompute in background all budget and forecast of some portfolio
+     * entries (if the budget tracking is active).
+     * 
+     * Each entry is processed once in its own transaction on the dedicated
+     * pool of threads.
+     * 
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     */
+    void recomputePortfolioEntries(Collection<Long> portfolioEntryIds);
+
 }
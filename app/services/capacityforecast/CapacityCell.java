@@ -0,0 +1,236 @@
+package services.capacityforecast;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * A cell of the capacity cube: the planned days by month of an allocation.
+ *
+ * The months are identified by an absolute index (year * 12 + month) and the
+ * days are stored in a primitive array starting at the first month of the
+ * allocation.
+ */
+class CapacityCell {
+
+    /**
+     * The kinds of allocation.
+     *
+     * The days of an actor or activity allocation are stored twice: by month
+     * from its details (ACTOR, ACTIVITY) for the actors and the org units, and
+     * spread uniformly over its period (ACTOR_INTERVAL, ACTIVITY_INTERVAL) for
+     * the competencies.
+     */
+    enum Type {
+        ACTOR, ORG_UNIT, COMPETENCY, ACTIVITY, ACTOR_INTERVAL, ACTIVITY_INTERVAL;
+    }
+
+    final Type type;
+    final boolean isConfirmed;
+    final Long resourceId;
+
+    int firstMonth;
+    double[] days = new double[0];
+
+    /**
+     * Construct a cell.
+     *
+     * @param type
+     *            the kind of allocation
+     * @param isConfirmed
+     *            true if the allocation is confirmed
+     * @param resourceId
+     *            the allocated resource: the actor id for an actor or activity
+     *            allocation (details or interval), the org unit id for an org unit allocation and
+     *            the competency id for a competency allocation
+     */
+    CapacityCell(Type type, boolean isConfirmed, Long resourceId) {
+        this.type = type;
+        this.isConfirmed = isConfirmed;
+        this.resourceId = resourceId;
+    }
+
+    /**
+     * Add days to a month.
+     *
+     * @param year
+     *            the year
+     * @param month
+     *            the month (0 for January)
+     * @param value
+     *            the days to add
+     */
+    void add(Integer year, Integer month, Double value) {
+
+        if (year == null || month == null || value == null) {
+            return;
+        }
+
+        int index = year * 12 + month;
+        if (days.length == 0) {
+            firstMonth = index;
+            days = new double[1];
+        } else if (index < firstMonth) {
+            double[] newDays = new double[days.length + firstMonth - index];
+            System.arraycopy(days, 0, newDays, firstMonth - index, days.length);
+            days = newDays;
+            firstMonth = index;
+        } else if (index >= firstMonth + days.length) {
+            double[] newDays = new double[index - firstMonth + 1];
+            System.arraycopy(days, 0, newDays, 0, days.length);
+            days = newDays;
+        }
+        days[index - firstMonth] += value;
+    }
+
+    /**
+     * Share days uniformly among the calendar days of a period.
+     *
+     * @param startDate
+     *            the start date of the period
+     * @param endDate
+     *            the end date of the period (included)
+     * @param value
+     *            the days to share
+     */
+    void addInterval(Date startDate, Date endDate, double value) {
+
+        long start = getDayNumber(startDate);
+        long end = getDayNumber(endDate);
+        if (end < start) {
+            return;
+        }
+
+        double dayRate = value / (end - start + 1);
+
+        // only the months between the one of the start and the one of the end
+        // are concerned
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(startDate);
+        int startIndex = calendar.get(Calendar.YEAR) * 12 + calendar.get(Calendar.MONTH);
+        calendar.setTime(endDate);
+        int endIndex = calendar.get(Calendar.YEAR) * 12 + calendar.get(Calendar.MONTH);
+
+        for (int index = startIndex; index <= endIndex; index++) {
+            add(index / 12, index % 12, getOverlap(start, end, index / 12, index % 12) * dayRate);
+        }
+    }
+
+    /**
+     * Return true if a month is in the period of the cell.
+     *
+     * @param index
+     *            the absolute index of the month
+     */
+    boolean hasMonth(int index) {
+        return index >= firstMonth && index < firstMonth + days.length;
+    }
+
+    /**
+     * Get the days of a month, 0 if the month is not in the period of the
+     * cell.
+     *
+     * @param index
+     *            the absolute index of the month
+     */
+    double getDays(int index) {
+        return hasMonth(index) ? days[index - firstMonth] : 0;
+    }
+
+    /**
+     * Add the days of the cell that are in a forecast to the planned values of
+     * a resource.
+     *
+     * @param planned
+     *            the planned values by resource id
+     * @param resourceId
+     *            the resource id, nothing is done if null
+     * @param startMonth
+     *            the absolute index of the first month of the forecast
+     * @param create
+     *            true to create the planned values of the resource if the cell
+     *            overlaps the forecast, false to only complete the existing
+     *            ones
+     */
+    void addTo(Map<Long, double[]> planned, Long resourceId, int startMonth, boolean create) {
+
+        int nbMonths = ICapacityForecastService.NB_MONTHS;
+        if (resourceId == null || days.length == 0 || firstMonth >= startMonth + nbMonths || firstMonth + days.length <= startMonth) {
+            return;
+        }
+
+        double[] values = planned.get(resourceId);
+        if (values == null) {
+            if (!create) {
+                return;
+            }
+            values = new double[nbMonths];
+            planned.put(resourceId, values);
+        }
+
+        int from = Math.max(startMonth, firstMonth);
+        int to = Math.min(startMonth + nbMonths, firstMonth + days.length);
+        for (int index = from; index < to; index++) {
+            values[index - startMonth] += days[index - firstMonth];
+        }
+    }
+
+    /**
+     * Get the number of days of an interval that are in a month.
+     *
+     * @param start
+     *            the first day number of the interval
+     * @param end
+     *            the last day number of the interval (included)
+     * @param year
+     *            the year
+     * @param month
+     *            the month (0 for January), could be greater than 11
+     */
+    static long getOverlap(long start, long end, int year, int month) {
+        long monthStart = getDayNumber(year, month, 1);
+        long monthEnd = getDayNumber(year, month + 1, 1) - 1;
+        return Math.max(0, Math.min(end, monthEnd) - Math.max(start, monthStart) + 1);
+    }
+
+    /**
+     * Get the day number of a date (the time part is ignored).
+     *
+     * @param date
+     *            the date
+     */
+    static long getDayNumber(Date date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        return getDayNumber(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH), calendar.get(Calendar.DAY_OF_MONTH));
+    }
+
+    /**
+     * Get the number of days since 1970-01-01 of a day of the proleptic
+     * Gregorian calendar.
+     *
+     * @param year
+     *            the year
+     * @param month
+     *            the month (0 for January), could be greater than 11
+     * @param day
+     *            the day of the month (starting at 1)
+     */
+    static long getDayNumber(int year, int month, int day) {
+
+        long y = year + Math.floorDiv(month, 12);
+        long m = Math.floorMod(month, 12) + 1;
+
+        // shift the year start to March so that the leap day is the last one
+        if (m <= 2) {
+            y--;
+        }
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (m > 2 ? m - 3 : m + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+}
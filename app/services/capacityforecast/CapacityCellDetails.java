@@ -0,0 +1,139 @@
+package services.capacityforecast;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The planned days of a month of an org unit or a competency for some
+ * portfolio entries: the days of its own allocations (generic), of the
+ * allocations of its actors (nominative) and of the activity allocations of
+ * its actors.
+ */
+public class CapacityCellDetails {
+
+    private final Days genericDays = new Days();
+    private final Map<Long, Days> nominativeDaysByActor = new HashMap<>();
+    private final Map<Long, Double> activityDaysByActor = new HashMap<>();
+    private final Map<Long, Days> genericDaysByPortfolioEntry = new HashMap<>();
+    private final Map<Long, Days> nominativeDaysByPortfolioEntry = new HashMap<>();
+
+    /**
+     * Add the days of a generic allocation.
+     *
+     * @param portfolioEntryId
+     *            the portfolio entry id
+     * @param isConfirmed
+     *            true if the allocation is confirmed
+     * @param days
+     *            the days of the month
+     */
+    void addGeneric(Long portfolioEntryId, boolean isConfirmed, double days) {
+        genericDays.add(isConfirmed, days);
+        genericDaysByPortfolioEntry.computeIfAbsent(portfolioEntryId, id -> new Days()).add(isConfirmed, days);
+    }
+
+    /**
+     * Add the days of a nominative allocation.
+     *
+     * @param portfolioEntryId
+     *            the portfolio entry id
+     * @param actorId
+     *            the actor id
+     * @param isConfirmed
+     *            true if the allocation is confirmed
+     * @param days
+     *            the days of the month
+     */
+    void addNominative(Long portfolioEntryId, Long actorId, boolean isConfirmed, double days) {
+        nominativeDaysByActor.computeIfAbsent(actorId, id -> new Days()).add(isConfirmed, days);
+        nominativeDaysByPortfolioEntry.computeIfAbsent(portfolioEntryId, id -> new Days()).add(isConfirmed, days);
+    }
+
+    /**
+     * Add the days of an activity allocation.
+     *
+     * @param actorId
+     *            the actor id
+     * @param days
+     *            the days of the month
+     */
+    void addActivity(Long actorId, double days) {
+        activityDaysByActor.merge(actorId, days, Double::sum);
+    }
+
+    /**
+     * Get the days of the generic allocations.
+     */
+    public Days getGenericDays() {
+        return genericDays;
+    }
+
+    /**
+     * Get the days of the nominative allocations by actor id.
+     */
+    public Map<Long, Days> getNominativeDaysByActor() {
+        return nominativeDaysByActor;
+    }
+
+    /**
+     * Get the days of the activity allocations by actor id.
+     */
+    public Map<Long, Double> getActivityDaysByActor() {
+        return activityDaysByActor;
+    }
+
+    /**
+     * Get the days of the generic allocations by portfolio entry id.
+     */
+    public Map<Long, Days> getGenericDaysByPortfolioEntry() {
+        return genericDaysByPortfolioEntry;
+    }
+
+    /**
+     * Get the days of the nominative allocations by portfolio entry id.
+     */
+    public Map<Long, Days> getNominativeDaysByPortfolioEntry() {
+        return nominativeDaysByPortfolioEntry;
+    }
+
+    /**
+     * The confirmed and not confirmed days of some allocations.
+     */
+    public static class Days {
+
+        private double confirmed;
+        private double notConfirmed;
+
+        /**
+         * Add days.
+         *
+         * @param isConfirmed
+         *            true if the allocation is confirmed
+         * @param days
+         *            the days to add
+         */
+        void add(boolean isConfirmed, double days) {
+            if (isConfirmed) {
+                confirmed += days;
+            } else {
+                notConfirmed += days;
+            }
+        }
+
+        /**
+         * Get the confirmed days.
+         */
+        public double getConfirmed() {
+            return confirmed;
+        }
+
+        /**
+         * Get the not confirmed days.
+         */
+        public double getNotConfirmed() {
+            return notConfirmed;
+        }
+
+    }
+
+}
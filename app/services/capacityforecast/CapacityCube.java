@@ -0,0 +1,289 @@
+package services.capacityforecast;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The capacity cube: the cells (one by allocation) by portfolio entry, the
+ * cells (one by activity allocation) by actor, and the org unit and default
+ * competency of the actors.
+ *
+ * The cells of an actor allocation or of an activity allocation only know the
+ * actor (see {@link CapacityCell.Type} for their two forms), its org unit and its default competency are resolved when the planned
+ * values are computed, so that a change of an actor only requires to reload
+ * the actor.
+ */
+class CapacityCube {
+
+    private final Map<Long, List<CapacityCell>> portfolioEntryCells = new ConcurrentHashMap<>();
+    private final Map<Long, List<CapacityCell>> actorCells = new ConcurrentHashMap<>();
+    private final Map<Long, ActorResources> actors = new ConcurrentHashMap<>();
+
+    /**
+     * Set the cells of a portfolio entry.
+     *
+     * @param portfolioEntryId
+     *            the portfolio entry id
+     * @param cells
+     *            the cells of the allocations of its current resource plan
+     */
+    void putPortfolioEntryCells(Long portfolioEntryId, List<CapacityCell> cells) {
+        if (cells.isEmpty()) {
+            portfolioEntryCells.remove(portfolioEntryId);
+        } else {
+            portfolioEntryCells.put(portfolioEntryId, cells);
+        }
+    }
+
+    /**
+     * Set the activity cells of an actor.
+     *
+     * @param actorId
+     *            the actor id
+     * @param cells
+     *            the cells of its activity allocations
+     */
+    void putActorCells(Long actorId, List<CapacityCell> cells) {
+        if (cells.isEmpty()) {
+            actorCells.remove(actorId);
+        } else {
+            actorCells.put(actorId, cells);
+        }
+    }
+
+    /**
+     * Set the org unit and the default competency of an actor.
+     *
+     * @param actorId
+     *            the actor id
+     * @param orgUnitId
+     *            the org unit id, could be null
+     * @param competencyId
+     *            the default competency id, could be null
+     */
+    void putActor(Long actorId, Long orgUnitId, Long competencyId) {
+        actors.put(actorId, new ActorResources(orgUnitId, competencyId));
+    }
+
+    /**
+     * Return true if the org unit and the default competency of an actor are
+     * known.
+     *
+     * @param actorId
+     *            the actor id
+     */
+    boolean hasActor(Long actorId) {
+        return actors.containsKey(actorId);
+    }
+
+    /**
+     * Get the planned days by actor of some portfolio entries.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     * @param onlyConfirmed
+     *            set to true to consider only the confirmed allocations
+     * @param startMonth
+     *            the absolute index of the first month of the forecast
+     */
+    Map<Long, double[]> getPlannedByActor(Collection<Long> portfolioEntryIds, boolean onlyConfirmed, int startMonth) {
+        return getPlanned(portfolioEntryIds, onlyConfirmed, startMonth, CapacityCell.Type.ACTOR);
+    }
+
+    /**
+     * Get the planned days by org unit of some portfolio entries, completed
+     * with the activity allocations of their actors.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     * @param onlyConfirmed
+     *            set to true to consider only the confirmed allocations
+     * @param startMonth
+     *            the absolute index of the first month of the forecast
+     */
+    Map<Long, double[]> getPlannedByOrgUnit(Collection<Long> portfolioEntryIds, boolean onlyConfirmed, int startMonth) {
+        return getPlanned(portfolioEntryIds, onlyConfirmed, startMonth, CapacityCell.Type.ORG_UNIT);
+    }
+
+    /**
+     * Get the planned days by competency of some portfolio entries, completed
+     * with the activity allocations of the actors.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     * @param onlyConfirmed
+     *            set to true to consider only the confirmed allocations
+     * @param startMonth
+     *            the absolute index of the first month of the forecast
+     */
+    Map<Long, double[]> getPlannedByCompetency(Collection<Long> portfolioEntryIds, boolean onlyConfirmed, int startMonth) {
+        return getPlanned(portfolioEntryIds, onlyConfirmed, startMonth, CapacityCell.Type.COMPETENCY);
+    }
+
+    /**
+     * Get the planned days of a month of an org unit or a competency for some
+     * portfolio entries.
+     *
+     * The allocations of the actors are taken from their details for both
+     * kinds of resource, as their activity allocations.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     * @param resourceType
+     *            the kind of resource: ORG_UNIT or COMPETENCY
+     * @param resourceId
+     *            the org unit id or the competency id
+     * @param month
+     *            the absolute index of the month
+     */
+    CapacityCellDetails getCellDetails(Collection<Long> portfolioEntryIds, CapacityCell.Type resourceType, Long resourceId, int month) {
+
+        CapacityCellDetails details = new CapacityCellDetails();
+
+        for (Long portfolioEntryId : portfolioEntryIds) {
+            List<CapacityCell> cells = portfolioEntryCells.get(portfolioEntryId);
+            if (cells != null) {
+                for (CapacityCell cell : cells) {
+                    if (cell.hasMonth(month)) {
+                        if (cell.type.equals(resourceType) && resourceId.equals(cell.resourceId)) {
+                            details.addGeneric(portfolioEntryId, cell.isConfirmed, cell.getDays(month));
+                        } else if (cell.type.equals(CapacityCell.Type.ACTOR) && resourceId.equals(getActorResourceId(cell.resourceId, resourceType))) {
+                            details.addNominative(portfolioEntryId, cell.resourceId, cell.isConfirmed, cell.getDays(month));
+                        }
+                    }
+                }
+            }
+        }
+
+        for (List<CapacityCell> cells : actorCells.values()) {
+            for (CapacityCell cell : cells) {
+                if (cell.type.equals(CapacityCell.Type.ACTIVITY) && cell.hasMonth(month)
+                        && resourceId.equals(getActorResourceId(cell.resourceId, resourceType))) {
+                    details.addActivity(cell.resourceId, cell.getDays(month));
+                }
+            }
+        }
+
+        return details;
+    }
+
+    /**
+     * Get the planned days of some portfolio entries by resource.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     * @param onlyConfirmed
+     *            set to true to consider only the confirmed allocations
+     * @param startMonth
+     *            the absolute index of the first month of the forecast
+     * @param resourceType
+     *            the kind of resource: ACTOR, ORG_UNIT or COMPETENCY
+     */
+    private Map<Long, double[]> getPlanned(Collection<Long> portfolioEntryIds, boolean onlyConfirmed, int startMonth, CapacityCell.Type resourceType) {
+
+        Map<Long, double[]> planned = new HashMap<>();
+
+        for (Long portfolioEntryId : portfolioEntryIds) {
+            List<CapacityCell> cells = portfolioEntryCells.get(portfolioEntryId);
+            if (cells != null) {
+                for (CapacityCell cell : cells) {
+                    if (!onlyConfirmed || cell.isConfirmed) {
+                        cell.addTo(planned, getResourceId(cell, resourceType), startMonth, true);
+                    }
+                }
+            }
+        }
+
+        // the activities only complete the planned days of the org units and
+        // competencies
+        if (!resourceType.equals(CapacityCell.Type.ACTOR)) {
+            for (List<CapacityCell> cells : actorCells.values()) {
+                for (CapacityCell cell : cells) {
+                    cell.addTo(planned, getResourceId(cell, resourceType), startMonth, false);
+                }
+            }
+        }
+
+        return planned;
+    }
+
+    /**
+     * Get the resource of a kind of a cell.
+     *
+     * @param cell
+     *            the cell
+     * @param resourceType
+     *            the kind of resource: ACTOR, ORG_UNIT or COMPETENCY
+     * @return the resource id, null if the cell doesn't concern a resource of
+     *         this kind
+     */
+    private Long getResourceId(CapacityCell cell, CapacityCell.Type resourceType) {
+
+        if (cell.type.equals(resourceType)) {
+            return cell.resourceId;
+        }
+
+        // the org units are resolved from the details of the actor allocations
+        // and the competencies from their uniform spread
+        boolean isResolved;
+        switch (resourceType) {
+        case ORG_UNIT:
+            isResolved = cell.type.equals(CapacityCell.Type.ACTOR) || cell.type.equals(CapacityCell.Type.ACTIVITY);
+            break;
+        case COMPETENCY:
+            isResolved = cell.type.equals(CapacityCell.Type.ACTOR_INTERVAL) || cell.type.equals(CapacityCell.Type.ACTIVITY_INTERVAL);
+            break;
+        default:
+            isResolved = false;
+        }
+        if (!isResolved) {
+            return null;
+        }
+
+        return getActorResourceId(cell.resourceId, resourceType);
+    }
+
+    /**
+     * Get the org unit or the default competency of an actor.
+     *
+     * @param actorId
+     *            the actor id
+     * @param resourceType
+     *            the kind of resource: ORG_UNIT or COMPETENCY
+     * @return the resource id, null if unknown
+     */
+    private Long getActorResourceId(Long actorId, CapacityCell.Type resourceType) {
+        ActorResources resources = actors.get(actorId);
+        if (resources == null) {
+            return null;
+        }
+        return resourceType.equals(CapacityCell.Type.ORG_UNIT) ? resources.orgUnitId : resources.competencyId;
+    }
+
+    /**
+     * The org unit and the default competency of an actor.
+     */
+    private static class ActorResources {
+
+        final Long orgUnitId;
+        final Long competencyId;
+
+        /**
+         * Construct the resources of an actor.
+         *
+         * @param orgUnitId
+         *            the org unit id
+         * @param competencyId
+         *            the default competency id
+         */
+        ActorResources(Long orgUnitId, Long competencyId) {
+            this.orgUnitId = orgUnitId;
+            this.competencyId = competencyId;
+        }
+
+    }
+
+}
@@ -0,0 +1,457 @@
+package services.capacityforecast;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.google.common.collect.Lists;
+
+import constants.IMafConstants;
+import dao.finance.PortfolioEntryResourcePlanDAO;
+import dao.pmo.ActorDao;
+import dao.pmo.PortfolioEntryDao;
+import dao.timesheet.TimesheetDao;
+import framework.services.account.IPreferenceManagerPlugin;
+import models.finance.PortfolioEntryResourcePlanAllocatedActor;
+import models.finance.PortfolioEntryResourcePlanAllocatedCompetency;
+import models.finance.PortfolioEntryResourcePlanAllocatedOrgUnit;
+import models.finance.PortfolioEntryResourcePlanAllocationStatusType;
+import models.pmo.Actor;
+import models.timesheet.TimesheetActivityAllocatedActor;
+import play.Configuration;
+import play.Logger;
+import play.inject.ApplicationLifecycle;
+import play.libs.F.Promise;
+import services.budgettracking.IBudgetTrackingService;
+
+/**
+ * The implementation of the capacity forecast service.
+ *
+ * The dates are converted to day numbers and the months are processed as
+ * intervals of day numbers, so the cost of an allocation depends only on the
+ * number of months of the forecast and not on its duration.
+ *
+ * The capacity cube is kept in memory (see {@link CapacityCube}). It is loaded
+ * with one query by kind of allocation and by batch of portfolio entries (the
+ * archived ones included, as in the former forecast), in the background at
+ * startup.
+ *
+ * The refreshes are serialized: a refresh requested during a rebuild is
+ * applied to the current cube and replayed on the new one before it replaces
+ * the current one.
+ */
+@Singleton
+public class CapacityForecastServiceImpl implements ICapacityForecastService {
+
+    /**
+     * The max number of portfolio entry ids in an IN clause.
+     */
+    private static final int PORTFOLIO_ENTRIES_BATCH_SIZE = 500;
+
+    /**
+     * The rows updated less than this delay (in ms) before the last periodic
+     * refresh are loaded again, to catch the transactions committed during
+     * it.
+     */
+    private static final long REFRESH_MARGIN = 60000L;
+
+    private IPreferenceManagerPlugin preferenceManagerPlugin;
+    private IBudgetTrackingService budgetTrackingService;
+
+    private ScheduledExecutorService executor;
+
+    private volatile CapacityCube cube;
+
+    /**
+     * The lock of the refreshes, guarding the fields below.
+     */
+    private final Object refreshLock = new Object();
+    private Date lastRefresh;
+    private Set<Long> pendingPortfolioEntryIds;
+    private Set<Long> pendingActorIds;
+
+    /**
+     * Initialize the service.
+     *
+     * @param lifecycle
+     *            the Play life cycle service
+     * @param configuration
+     *            the Play configuration service
+     * @param preferenceManagerPlugin
+     *            the preference manager service
+     * @param budgetTrackingService
+     *            the budget tracking service
+     */
+    @Inject
+    public CapacityForecastServiceImpl(ApplicationLifecycle lifecycle, Configuration configuration, IPreferenceManagerPlugin preferenceManagerPlugin,
+            IBudgetTrackingService budgetTrackingService) {
+
+        Logger.info("SERVICE>>> CapacityForecastServiceImpl starting...");
+
+        lifecycle.addStopHook(() -> {
+            Logger.info("SERVICE>>> CapacityForecastServiceImpl stopping...");
+            this.executor.shutdownNow();
+            Logger.info("SERVICE>>> CapacityForecastServiceImpl stopped");
+            return Promise.pure(null);
+        });
+
+        this.preferenceManagerPlugin = preferenceManagerPlugin;
+        this.budgetTrackingService = budgetTrackingService;
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "capacity-forecast");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.execute(() -> {
+            try {
+                buildIfNeeded();
+            } catch (Exception e) {
+                Logger.error("impossible to build the capacity cube", e);
+            }
+        });
+        long refreshDelay = configuration.getInt("maf.capacity_forecast.refresh_delay", 60);
+        this.executor.scheduleWithFixedDelay(() -> {
+            try {
+                refreshUpdated();
+            } catch (Exception e) {
+                Logger.error("impossible to refresh the capacity cube", e);
+            }
+        }, refreshDelay, refreshDelay, TimeUnit.SECONDS);
+
+        Logger.info("SERVICE>>> CapacityForecastServiceImpl started");
+    }
+
+    @Override
+    public double getAllocationForMonth(int year, int month, Date startDate, Date endDate, double allocatedDays) {
+
+        if (startDate == null || endDate == null) {
+            return 0.0;
+        }
+
+        long start = CapacityCell.getDayNumber(startDate);
+        long end = CapacityCell.getDayNumber(endDate);
+        if (end < start) {
+            return 0.0;
+        }
+
+        return CapacityCell.getOverlap(start, end, year, month) * allocatedDays / (end - start + 1);
+    }
+
+    @Override
+    public Map<Long, double[]> getPlannedByActor(Collection<Long> portfolioEntryIds, boolean onlyConfirmed, int year, int month) {
+        return getCube().getPlannedByActor(portfolioEntryIds, onlyConfirmed, year * 12 + month);
+    }
+
+    @Override
+    public Map<Long, double[]> getPlannedByOrgUnit(Collection<Long> portfolioEntryIds, boolean onlyConfirmed, int year, int month) {
+        return getCube().getPlannedByOrgUnit(portfolioEntryIds, onlyConfirmed, year * 12 + month);
+    }
+
+    @Override
+    public Map<Long, double[]> getPlannedByCompetency(Collection<Long> portfolioEntryIds, boolean onlyConfirmed, int year, int month) {
+        return getCube().getPlannedByCompetency(portfolioEntryIds, onlyConfirmed, year * 12 + month);
+    }
+
+    @Override
+    public CapacityCellDetails getCellDetailsByOrgUnit(Collection<Long> portfolioEntryIds, Long orgUnitId, int year, int month) {
+        return getCube().getCellDetails(portfolioEntryIds, CapacityCell.Type.ORG_UNIT, orgUnitId, year * 12 + month);
+    }
+
+    @Override
+    public CapacityCellDetails getCellDetailsByCompetency(Collection<Long> portfolioEntryIds, Long competencyId, int year, int month) {
+        return getCube().getCellDetails(portfolioEntryIds, CapacityCell.Type.COMPETENCY, competencyId, year * 12 + month);
+    }
+
+    @Override
+    public void refreshPortfolioEntry(Long portfolioEntryId) {
+        refresh(Collections.singletonList(portfolioEntryId), Collections.emptyList());
+    }
+
+    @Override
+    public void refreshActor(Long actorId) {
+        refresh(Collections.emptyList(), Collections.singletonList(actorId));
+    }
+
+    @Override
+    public synchronized void rebuild() {
+
+        long start = System.currentTimeMillis();
+
+        synchronized (refreshLock) {
+            this.pendingPortfolioEntryIds = new HashSet<>();
+            this.pendingActorIds = new HashSet<>();
+        }
+
+        try {
+
+            CapacityCube newCube = new CapacityCube();
+            loadActors(newCube, null);
+            loadActorCells(newCube, null);
+            loadPortfolioEntryCells(newCube, null);
+
+            synchronized (refreshLock) {
+                loadActors(newCube, this.pendingActorIds);
+                loadActorCells(newCube, this.pendingActorIds);
+                loadPortfolioEntryCells(newCube, this.pendingPortfolioEntryIds);
+                this.cube = newCube;
+                this.lastRefresh = new Date(start);
+            }
+
+        } finally {
+            synchronized (refreshLock) {
+                this.pendingPortfolioEntryIds = null;
+                this.pendingActorIds = null;
+            }
+        }
+
+        Logger.info("capacity cube rebuilt in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Get the cube, it is built if needed (if the build at startup is not
+     * finished, this waits for it).
+     */
+    private CapacityCube getCube() {
+        CapacityCube cube = this.cube;
+        if (cube == null) {
+            buildIfNeeded();
+            cube = this.cube;
+        }
+        return cube;
+    }
+
+    /**
+     * Build the cube if it has not been done by another thread in the
+     * meantime.
+     */
+    private synchronized void buildIfNeeded() {
+        if (this.cube == null) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Reload some portfolio entries and actors in the cube.
+     *
+     * If a rebuild is running, they are also recorded to be reloaded in the
+     * new cube.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     * @param actorIds
+     *            the actor ids
+     */
+    private void refresh(Collection<Long> portfolioEntryIds, Collection<Long> actorIds) {
+        synchronized (refreshLock) {
+            if (this.pendingPortfolioEntryIds != null) {
+                this.pendingPortfolioEntryIds.addAll(portfolioEntryIds);
+                this.pendingActorIds.addAll(actorIds);
+            }
+            CapacityCube cube = this.cube;
+            if (cube != null) {
+                loadActors(cube, actorIds);
+                loadActorCells(cube, actorIds);
+                loadPortfolioEntryCells(cube, portfolioEntryIds);
+            }
+        }
+    }
+
+    /**
+     * Reload the portfolio entries and the actors updated since the last
+     * refresh (including the changes done outside of the controllers: plugins,
+     * API, milestone approvals).
+     */
+    private void refreshUpdated() {
+        synchronized (refreshLock) {
+            if (this.cube == null || this.lastRefresh == null) {
+                return;
+            }
+            Date start = new Date();
+            Date since = new Date(this.lastRefresh.getTime() - REFRESH_MARGIN);
+            refresh(PortfolioEntryDao.getPEIdsAsListUpdatedForCapacitySince(since), ActorDao.getActorIdsAsListUpdatedForCapacitySince(since));
+            this.lastRefresh = start;
+        }
+    }
+
+    /**
+     * Load in the cube the org unit and the default competency of some actors.
+     *
+     * @param cube
+     *            the cube
+     * @param actorIds
+     *            the actor ids, null for all actors
+     */
+    private static void loadActors(CapacityCube cube, Collection<Long> actorIds) {
+        if (actorIds != null && actorIds.isEmpty()) {
+            return;
+        }
+        for (Actor actor : ActorDao.getActorResourcesAsListByIds(actorIds)) {
+            cube.putActor(actor.id, actor.orgUnit != null ? actor.orgUnit.id : null, actor.defaultCompetency != null ? actor.defaultCompetency.id : null);
+        }
+    }
+
+    /**
+     * Load in the cube the cells of the allocations of the current resource
+     * plan of some portfolio entries.
+     *
+     * @param cube
+     *            the cube
+     * @param portfolioEntryIds
+     *            the portfolio entry ids, null for all portfolio entries
+     */
+    private void loadPortfolioEntryCells(CapacityCube cube, Collection<Long> portfolioEntryIds) {
+
+        if (portfolioEntryIds != null && portfolioEntryIds.isEmpty()) {
+            return;
+        }
+
+        boolean isBudgetTrackingActive = budgetTrackingService.isActive();
+        boolean workingDaysOnly = preferenceManagerPlugin.getPreferenceValueAsBoolean(IMafConstants.RESOURCES_WEEK_DAYS_ALLOCATION_PREFERENCE);
+
+        Map<Long, List<CapacityCell>> cells = new HashMap<>();
+        Set<Long> actorIds = new HashSet<>();
+
+        List<Collection<Long>> batches = new ArrayList<>();
+        if (portfolioEntryIds == null) {
+            batches.add(null);
+        } else {
+            portfolioEntryIds.forEach(id -> cells.put(id, new ArrayList<>()));
+            batches.addAll(Lists.partition(new ArrayList<>(new HashSet<>(portfolioEntryIds)), PORTFOLIO_ENTRIES_BATCH_SIZE));
+        }
+
+        for (Collection<Long> batchIds : batches) {
+
+            List<PortfolioEntryResourcePlanAllocatedActor> allocatedActors = PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorActiveAsListByPEs(batchIds);
+            Map<Long, Long> allocatedActorPEIds = PortfolioEntryResourcePlanDAO.getPEIdAsMapByAllocations(PortfolioEntryResourcePlanAllocatedActor.class,
+                    allocatedActors.stream().map(allocatedActor -> allocatedActor.id).collect(Collectors.toList()));
+            for (PortfolioEntryResourcePlanAllocatedActor allocatedActor : allocatedActors) {
+                Long portfolioEntryId = allocatedActorPEIds.get(allocatedActor.id);
+                if (portfolioEntryId != null && allocatedActor.actor != null && allocatedActor.startDate != null && allocatedActor.endDate != null) {
+                    if (allocatedActor.portfolioEntryResourcePlanAllocatedActorDetails.isEmpty()) {
+                        allocatedActor.computeAllocationDetails(isBudgetTrackingActive, workingDaysOnly);
+                    }
+                    CapacityCell cell = new CapacityCell(CapacityCell.Type.ACTOR, allocatedActor.isConfirmed(), allocatedActor.actor.id);
+                    allocatedActor.portfolioEntryResourcePlanAllocatedActorDetails.forEach(detail -> cell.add(detail.year, detail.month, detail.days));
+                    cells.computeIfAbsent(portfolioEntryId, id -> new ArrayList<>()).add(cell);
+                    BigDecimal days = getAllocatedDays(isBudgetTrackingActive, allocatedActor.days, allocatedActor.forecastDays);
+                    if (days != null) {
+                        CapacityCell intervalCell = new CapacityCell(CapacityCell.Type.ACTOR_INTERVAL, allocatedActor.isConfirmed(), allocatedActor.actor.id);
+                        intervalCell.addInterval(allocatedActor.startDate, allocatedActor.endDate, days.doubleValue());
+                        cells.get(portfolioEntryId).add(intervalCell);
+                    }
+                    actorIds.add(allocatedActor.actor.id);
+                }
+            }
+
+            List<PortfolioEntryResourcePlanAllocatedOrgUnit> allocatedOrgUnits = PortfolioEntryResourcePlanDAO
+                    .getPEResourcePlanAllocatedOrgUnitActiveAsListByPEs(batchIds);
+            Map<Long, Long> allocatedOrgUnitPEIds = PortfolioEntryResourcePlanDAO.getPEIdAsMapByAllocations(PortfolioEntryResourcePlanAllocatedOrgUnit.class,
+                    allocatedOrgUnits.stream().map(allocatedOrgUnit -> allocatedOrgUnit.id).collect(Collectors.toList()));
+            for (PortfolioEntryResourcePlanAllocatedOrgUnit allocatedOrgUnit : allocatedOrgUnits) {
+                Long portfolioEntryId = allocatedOrgUnitPEIds.get(allocatedOrgUnit.id);
+                if (portfolioEntryId != null && allocatedOrgUnit.startDate != null && allocatedOrgUnit.endDate != null) {
+                    if (allocatedOrgUnit.portfolioEntryResourcePlanAllocatedOrgUnitDetails.isEmpty()) {
+                        allocatedOrgUnit.computeAllocationDetails(isBudgetTrackingActive, workingDaysOnly);
+                    }
+                    CapacityCell cell = new CapacityCell(CapacityCell.Type.ORG_UNIT, allocatedOrgUnit.isConfirmed(), allocatedOrgUnit.orgUnit.id);
+                    allocatedOrgUnit.portfolioEntryResourcePlanAllocatedOrgUnitDetails.forEach(detail -> cell.add(detail.year, detail.month, detail.days));
+                    cells.computeIfAbsent(portfolioEntryId, id -> new ArrayList<>()).add(cell);
+                }
+            }
+
+            List<PortfolioEntryResourcePlanAllocatedCompetency> allocatedCompetencies = PortfolioEntryResourcePlanDAO
+                    .getPEResourcePlanAllocatedCompetencyActiveAsListByPEs(batchIds);
+            Map<Long, Long> allocatedCompetencyPEIds = PortfolioEntryResourcePlanDAO.getPEIdAsMapByAllocations(
+                    PortfolioEntryResourcePlanAllocatedCompetency.class,
+                    allocatedCompetencies.stream().map(allocatedCompetency -> allocatedCompetency.id).collect(Collectors.toList()));
+            for (PortfolioEntryResourcePlanAllocatedCompetency allocatedCompetency : allocatedCompetencies) {
+                Long portfolioEntryId = allocatedCompetencyPEIds.get(allocatedCompetency.id);
+                if (portfolioEntryId != null && allocatedCompetency.startDate != null && allocatedCompetency.endDate != null
+                        && allocatedCompetency.days != null) {
+                    CapacityCell cell = new CapacityCell(CapacityCell.Type.COMPETENCY, allocatedCompetency.portfolioEntryResourcePlanAllocationStatusType.status
+                            .equals(PortfolioEntryResourcePlanAllocationStatusType.AllocationStatus.CONFIRMED), allocatedCompetency.competency.id);
+                    cell.addInterval(allocatedCompetency.startDate, allocatedCompetency.endDate, allocatedCompetency.days.doubleValue());
+                    cells.computeIfAbsent(portfolioEntryId, id -> new ArrayList<>()).add(cell);
+                }
+            }
+
+        }
+
+        // a refresh could concern an actor created after the build
+        loadActors(cube, actorIds.stream().filter(actorId -> !cube.hasActor(actorId)).collect(Collectors.toList()));
+
+        cells.forEach(cube::putPortfolioEntryCells);
+    }
+
+    /**
+     * Get the allocated days of an actor allocation spread over its period for
+     * the competencies: the forecast days if the budget tracking is active and
+     * they are set, else the days.
+     *
+     * @param isBudgetTrackingActive
+     *            true if the budget tracking is active
+     * @param days
+     *            the days
+     * @param forecastDays
+     *            the forecast days
+     */
+    private static BigDecimal getAllocatedDays(boolean isBudgetTrackingActive, BigDecimal days, BigDecimal forecastDays) {
+        if (isBudgetTrackingActive && forecastDays != null && !forecastDays.equals(BigDecimal.ZERO)) {
+            return forecastDays;
+        }
+        return days;
+    }
+
+    /**
+     * Load in the cube the cells of the activity allocations of some actors.
+     *
+     * @param cube
+     *            the cube
+     * @param actorIds
+     *            the actor ids, null for all actors
+     */
+    private void loadActorCells(CapacityCube cube, Collection<Long> actorIds) {
+
+        if (actorIds != null && actorIds.isEmpty()) {
+            return;
+        }
+
+        boolean workingDaysOnly = preferenceManagerPlugin.getPreferenceValueAsBoolean(IMafConstants.RESOURCES_WEEK_DAYS_ALLOCATION_PREFERENCE);
+
+        Map<Long, List<CapacityCell>> cells = new HashMap<>();
+        if (actorIds != null) {
+            actorIds.forEach(id -> cells.put(id, new ArrayList<>()));
+        }
+        for (TimesheetActivityAllocatedActor allocatedActivity : TimesheetDao.getTimesheetActivityAllocatedActorWithPeriodAsListByActors(actorIds)) {
+            if (allocatedActivity.timesheetActivityAllocatedActorDetails.isEmpty()) {
+                allocatedActivity.computeAllocationDetails(false, workingDaysOnly);
+            }
+            CapacityCell cell = new CapacityCell(CapacityCell.Type.ACTIVITY, true, allocatedActivity.actor.id);
+            allocatedActivity.timesheetActivityAllocatedActorDetails.forEach(detail -> cell.add(detail.year, detail.month, detail.days));
+            cells.computeIfAbsent(allocatedActivity.actor.id, id -> new ArrayList<>()).add(cell);
+            if (allocatedActivity.days != null) {
+                CapacityCell intervalCell = new CapacityCell(CapacityCell.Type.ACTIVITY_INTERVAL, true, allocatedActivity.actor.id);
+                intervalCell.addInterval(allocatedActivity.startDate, allocatedActivity.endDate, allocatedActivity.days.doubleValue());
+                cells.get(allocatedActivity.actor.id).add(intervalCell);
+            }
+        }
+
+        cells.forEach(cube::putActorCells);
+    }
+
+}
@@ -0,0 +1,167 @@
+package services.capacityforecast;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * The capacity forecast service.
+ *
+ * It shares the allocated days of a resource allocation (actor, org unit,
+ * competency, activity) among the months of a period. The days are spread
+ * uniformly over the calendar days of the allocation and each month receives
+ * the part matching its overlap with the allocation interval.
+ *
+ * The service also maintains a capacity cube: the planned days by month of
+ * each allocation of the current resource plans and of each activity
+ * allocation, indexed by portfolio entry and by actor. The cube is built in
+ * the background at startup and then kept up to date incrementally: by
+ * calling {@link #refreshPortfolioEntry(Long)} and {@link #refreshActor(Long)}
+ * when an allocation or an actor is saved or deleted, and by a periodic
+ * refresh of the portfolio entries and actors updated since the previous one
+ * (for the changes done by the plugins, the API or a milestone approval). A
+ * full rebuild is scheduled by the CapacityCube job.
+ *
+ * The planned values of a resource are kept in a primitive array with one
+ * column by month, the first column being the start month of the forecast.
+ */
+public interface ICapacityForecastService {
+
+    /**
+     * The number of months (columns) of a capacity forecast.
+     */
+    int NB_MONTHS = 12;
+
+    /**
+     * Get the part of the days of an allocation that falls in a given month.
+     *
+     * @param year
+     *            the year
+     * @param month
+     *            the month (0 for January)
+     * @param startDate
+     *            the allocation start date
+     * @param endDate
+     *            the allocation end date
+     * @param allocatedDays
+     *            the number of allocated days
+     */
+    double getAllocationForMonth(int year, int month, Date startDate, Date endDate, double allocatedDays);
+
+    /**
+     * Get the planned days of the actors allocated to some portfolio entries.
+     *
+     * Only the actors with an allocation during the forecast are returned.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     * @param onlyConfirmed
+     *            set to true to consider only the confirmed allocations
+     * @param year
+     *            the start year of the forecast
+     * @param month
+     *            the start month of the forecast (0 for January)
+     * @return the planned days by column, by actor id
+     */
+    Map<Long, double[]> getPlannedByActor(Collection<Long> portfolioEntryIds, boolean onlyConfirmed, int year, int month);
+
+    /**
+     * Get the planned days of the org units allocated (directly or with one of
+     * their actors) to some portfolio entries.
+     *
+     * Only the org units with an allocation during the forecast are returned,
+     * and their planned days include the activity allocations of their actors.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     * @param onlyConfirmed
+     *            set to true to consider only the confirmed allocations
+     * @param year
+     *            the start year of the forecast
+     * @param month
+     *            the start month of the forecast (0 for January)
+     * @return the planned days by column, by org unit id
+     */
+    Map<Long, double[]> getPlannedByOrgUnit(Collection<Long> portfolioEntryIds, boolean onlyConfirmed, int year, int month);
+
+    /**
+     * Get the planned days of the competencies allocated (directly or with an
+     * actor having it as default competency) to some portfolio entries.
+     *
+     * Only the competencies with an allocation during the forecast are
+     * returned, and their planned days include the activity allocations of
+     * their actors.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     * @param onlyConfirmed
+     *            set to true to consider only the confirmed allocations
+     * @param year
+     *            the start year of the forecast
+     * @param month
+     *            the start month of the forecast (0 for January)
+     * @return the planned days by column, by competency id
+     */
+    Map<Long, double[]> getPlannedByCompetency(Collection<Long> portfolioEntryIds, boolean onlyConfirmed, int year, int month);
+
+    /**
+     * Get the planned days of a month of an org unit for some portfolio
+     * entries: the days of its allocations, of the allocations of its actors
+     * and of their activity allocations.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     * @param orgUnitId
+     *            the org unit id
+     * @param year
+     *            the year
+     * @param month
+     *            the month (0 for January)
+     */
+    CapacityCellDetails getCellDetailsByOrgUnit(Collection<Long> portfolioEntryIds, Long orgUnitId, int year, int month);
+
+    /**
+     * Get the planned days of a month of a competency for some portfolio
+     * entries: the days of its allocations, of the allocations of the actors
+     * having it as default competency and of their activity allocations.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     * @param competencyId
+     *            the competency id
+     * @param year
+     *            the year
+     * @param month
+     *            the month (0 for January)
+     */
+    CapacityCellDetails getCellDetailsByCompetency(Collection<Long> portfolioEntryIds, Long competencyId, int year, int month);
+
+    /**
+     * Reload the allocations of a portfolio entry in the capacity cube.
+     *
+     * Should be called when an allocation of the portfolio entry is created,
+     * updated or deleted (once the transaction is committed).
+     *
+     * @param portfolioEntryId
+     *            the portfolio entry id
+     */
+    void refreshPortfolioEntry(Long portfolioEntryId);
+
+    /**
+     * Reload an actor (org unit and default competency) and its activity
+     * allocations in the capacity cube.
+     *
+     * Should be called when the actor or one of its activity allocations is
+     * created, updated or deleted (once the transaction is committed).
+     *
+     * @param actorId
+     *            the actor id
+     */
+    void refreshActor(Long actorId);
+
+    /**
+     * Rebuild the full capacity cube.
+     */
+    void rebuild();
+
+}
@@ -17,16 +17,44 @@
  */
 package services.datasyndication;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.StringUtils;
+
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 
@@ -59,6 +87,7 @@ import services.datasyndication.models.DataSyndicationAgreementItem;
 import services.datasyndication.models.DataSyndicationAgreementLink;
 import services.datasyndication.models.DataSyndicationApiKey;
 import services.datasyndication.models.DataSyndicationPartner;
+import services.datasyndication.models.DataSyndicationPayload;
 import services.echannel.IEchannelService;
 import services.echannel.IEchannelService.EchannelException;
 import services.echannel.models.RecipientsDescriptor;
@@ -66,6 +95,13 @@ import services.echannel.models.RecipientsDescriptor;
 /**
  * The data syndication service.
  * 
+ * The dates of the last synchronization of the agreement link items (the
+ * watermarks) are kept in a file of the node, read again when it changes: if
+ * the file is not configured, missing or unreadable then a full
+ * synchronization is done. With several nodes, the file should be on a shared
+ * file system, else each node posts the changes since its own last
+ * synchronization (the posted data remain complete but the deltas are larger).
+ * 
  * @author Johann Kohler
  * 
  */
@@ -81,6 +117,35 @@ public class DataSyndicationServiceImpl implements IDataSyndicationService {
     private IPreferenceManagerPlugin preferenceManagerPlugin;
     private IBizdockApiClient bizdockApiClient;
 
+    private ExecutorService executor;
+    private int partnerParallelism;
+    private int maxAttempts;
+    private long retryDelay;
+    private String checkpointFile;
+    private String watermarkFile;
+    private long fullSynchronizationFrequency;
+    private Properties watermarks;
+    private long watermarksLastModified;
+
+    /**
+     * The error codes of postData that are due to a communication problem with
+     * the slave instance, and so for which a retry makes sense.
+     */
+    private static final Set<DataSyndicationPostDataException.ErrorCode> RETRYABLE_ERROR_CODES = Collections
+            .unmodifiableSet(new HashSet<>(Arrays.asList(DataSyndicationPostDataException.ErrorCode.E1001,
+                    DataSyndicationPostDataException.ErrorCode.E1002, DataSyndicationPostDataException.ErrorCode.E1004)));
+
+    /**
+     * The max age of a checkpoint to be resumed (in ms).
+     */
+    private static final long CHECKPOINT_MAX_AGE = 24 * 60 * 60 * 1000L;
+
+    /**
+     * The number of pushed agreement links between two saves of the
+     * checkpoint.
+     */
+    private static final int CHECKPOINT_SAVE_INTERVAL = 50;
+
     /**
      * Configurations of the the service.
      * 
@@ -89,7 +154,21 @@ public class DataSyndicationServiceImpl implements IDataSyndicationService {
      */
     public enum Config {
 
-        DATA_SYNDICATION_ACTIVE("maf.data_syndication.is_active");
+        DATA_SYNDICATION_ACTIVE("maf.data_syndication.is_active"),
+
+        SYNCHRONIZATION_PARALLELISM("maf.data_syndication.synchronization.parallelism"),
+
+        SYNCHRONIZATION_PARTNER_PARALLELISM("maf.data_syndication.synchronization.partner_parallelism"),
+
+        SYNCHRONIZATION_MAX_ATTEMPTS("maf.data_syndication.synchronization.max_attempts"),
+
+        SYNCHRONIZATION_RETRY_DELAY("maf.data_syndication.synchronization.retry_delay"),
+
+        SYNCHRONIZATION_CHECKPOINT_FILE("maf.data_syndication.synchronization.checkpoint_file"),
+
+        SYNCHRONIZATION_WATERMARK_FILE("maf.data_syndication.synchronization.watermark_file"),
+
+        SYNCHRONIZATION_FULL_FREQUENCY("maf.data_syndication.synchronization.full_frequency");
 
         private String configurationKey;
 
@@ -145,8 +224,22 @@ public class DataSyndicationServiceImpl implements IDataSyndicationService {
         this.preferenceManagerPlugin = preferenceManagerPlugin;
         this.bizdockApiClient = bizdockApiClient;
 
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(configuration.getInt(Config.SYNCHRONIZATION_PARALLELISM.getConfigurationKey(), 8), runnable -> {
+            Thread thread = new Thread(runnable, "data-syndication-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.partnerParallelism = configuration.getInt(Config.SYNCHRONIZATION_PARTNER_PARALLELISM.getConfigurationKey(), 2);
+        this.maxAttempts = configuration.getInt(Config.SYNCHRONIZATION_MAX_ATTEMPTS.getConfigurationKey(), 3);
+        this.retryDelay = configuration.getInt(Config.SYNCHRONIZATION_RETRY_DELAY.getConfigurationKey(), 5) * 1000L;
+        this.checkpointFile = configuration.getString(Config.SYNCHRONIZATION_CHECKPOINT_FILE.getConfigurationKey());
+        this.watermarkFile = configuration.getString(Config.SYNCHRONIZATION_WATERMARK_FILE.getConfigurationKey());
+        this.fullSynchronizationFrequency = configuration.getInt(Config.SYNCHRONIZATION_FULL_FREQUENCY.getConfigurationKey(), 7) * 24 * 60 * 60 * 1000L;
+
         lifecycle.addStopHook(() -> {
             Logger.info("SERVICE>>> DataSyndicationServiceImpl stopping...");
+            this.executor.shutdownNow();
             Logger.info("SERVICE>>> DataSyndicationServiceImpl stopped");
             return Promise.pure(null);
         });
@@ -540,9 +633,214 @@ public class DataSyndicationServiceImpl implements IDataSyndicationService {
 
     @Override
     public void postData(DataSyndicationAgreementLink agreementLink) throws DataSyndicationPostDataException {
+        checkSlaveInstance(agreementLink);
+        pushData(agreementLink, true);
+    }
+
+    @Override
+    public void synchronizeAgreementLinks() throws EchannelException {
+
+        List<DataSyndicationAgreementLink> agreementLinks = getAgreementLinksToSynchronize();
+
+        // resume the previous run if it has been interrupted
+        Properties checkpoint = loadCheckpoint();
+        Set<Long> doneLinkIds = ConcurrentHashMap.newKeySet();
+        for (String id : StringUtils.split(checkpoint.getProperty("doneLinkIds", ""), ',')) {
+            doneLinkIds.add(Long.valueOf(id));
+        }
+        if (!doneLinkIds.isEmpty()) {
+            Logger.info("dataSyndicationService.synchronizeAgreementLinks: resume the run started at " + checkpoint.getProperty("startTime") + ", "
+                    + doneLinkIds.size() + " agreement links already processed");
+        } else {
+            checkpoint.setProperty("startTime", String.valueOf(System.currentTimeMillis()));
+        }
+
+        // group the links by slave partner
+        Map<String, List<DataSyndicationAgreementLink>> linksByPartner = new LinkedHashMap<>();
+        Set<Long> linkIds = new HashSet<>();
+        for (DataSyndicationAgreementLink agreementLink : agreementLinks) {
+            if (agreementLink.agreement.slavePartner != null) {
+                linkIds.add(agreementLink.id);
+                if (!doneLinkIds.contains(agreementLink.id)) {
+                    linksByPartner.computeIfAbsent(agreementLink.agreement.slavePartner.domain, domain -> new ArrayList<>()).add(agreementLink);
+                }
+            }
+        }
+
+        // check once by partner if the slave instance is accessible
+        Map<String, Future<Boolean>> reachabilities = new LinkedHashMap<>();
+        for (Entry<String, List<DataSyndicationAgreementLink>> entry : linksByPartner.entrySet()) {
+            reachabilities.put(entry.getKey(), executor.submit(() -> {
+                try {
+                    checkSlaveInstance(entry.getValue().get(0));
+                    return true;
+                } catch (DataSyndicationPostDataException e) {
+                    return false;
+                }
+            }));
+        }
+
+        // push the links of the accessible partners, each partner has its own
+        // queue processed by a limited number of workers, only the successfully
+        // pushed links are recorded in the checkpoint (saved every
+        // CHECKPOINT_SAVE_INTERVAL links)
+        AtomicInteger nbPushedLinks = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<>();
+        for (Entry<String, Future<Boolean>> reachability : reachabilities.entrySet()) {
+            List<DataSyndicationAgreementLink> partnerLinks = linksByPartner.get(reachability.getKey());
+            if (!Boolean.TRUE.equals(getResult(reachability.getValue()))) {
+                Logger.warn("dataSyndicationService.synchronizeAgreementLinks: the partner " + reachability.getKey() + " is not accessible, "
+                        + partnerLinks.size() + " agreement links not synchronized");
+                continue;
+            }
+            Queue<DataSyndicationAgreementLink> queue = new ConcurrentLinkedQueue<>(partnerLinks);
+            for (int i = 0; i < Math.min(partnerParallelism, partnerLinks.size()); i++) {
+                workers.add(executor.submit(() -> {
+                    DataSyndicationAgreementLink agreementLink;
+                    while (!Thread.currentThread().isInterrupted() && (agreementLink = queue.poll()) != null) {
+                        if (pushDataWithRetry(agreementLink)) {
+                            doneLinkIds.add(agreementLink.id);
+                            if (nbPushedLinks.incrementAndGet() % CHECKPOINT_SAVE_INTERVAL == 0) {
+                                saveCheckpoint(checkpoint, doneLinkIds);
+                            }
+                        }
+                    }
+                }));
+            }
+        }
 
-        // Call the getSystemCurrentTime method in order to now if the slave
-        // instance is accessible
+        for (Future<?> worker : workers) {
+            getResult(worker);
+        }
+
+        // the run is complete if all the links have been pushed (a skipped
+        // partner, a failed push or an interrupted worker leaves the run
+        // incomplete), so the next one starts from scratch
+        if (doneLinkIds.containsAll(linkIds)) {
+            deleteCheckpoint();
+        } else {
+            saveCheckpoint(checkpoint, doneLinkIds);
+        }
+
+    }
+
+    /**
+     * Wait for the result of a task.
+     * 
+     * Return null if the task failed or the wait has been interrupted.
+     * 
+     * @param future
+     *            the task
+     */
+    private static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Logger.error("dataSyndicationService.synchronizeAgreementLinks: unexpected error", e);
+            return null;
+        }
+    }
+
+    /**
+     * Post the data of an agreement link, and retry with an exponential
+     * backoff in case of communication error with the slave instance.
+     * 
+     * The errors are logged.
+     * 
+     * @param agreementLink
+     *            the agreement link
+     * @return true if the data has been posted, false if all the attempts
+     *         failed or the wait before a retry has been interrupted
+     */
+    private boolean pushDataWithRetry(DataSyndicationAgreementLink agreementLink) {
+        for (int attempt = 1;; attempt++) {
+            try {
+                pushData(agreementLink, false);
+                return true;
+            } catch (DataSyndicationPostDataException e) {
+                if (attempt < maxAttempts && RETRYABLE_ERROR_CODES.contains(e.getCode())) {
+                    try {
+                        Thread.sleep(retryDelay << (attempt - 1));
+                    } catch (InterruptedException e2) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                } else {
+                    Logger.warn("postData for agreement link [id=" + agreementLink.id + ", agreementId=" + agreementLink.agreement.id + ", dataType="
+                            + agreementLink.dataType + ", masterObjectId=" + agreementLink.masterObjectId + ", slaveObjectId="
+                            + agreementLink.slaveObjectId + "]");
+                    Logger.error(Msg.get(this.lang, e.getCode().getMessageKey()));
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Load the checkpoint of the last synchronization run.
+     * 
+     * The checkpoint is empty if the last run is complete or too old.
+     */
+    private Properties loadCheckpoint() {
+        Properties checkpoint = new Properties();
+        if (checkpointFile != null && new File(checkpointFile).exists()) {
+            try (InputStream in = new FileInputStream(checkpointFile)) {
+                checkpoint.load(in);
+            } catch (IOException e) {
+                Logger.error("dataSyndicationService.synchronizeAgreementLinks: impossible to read the checkpoint", e);
+            }
+            long startTime = Long.parseLong(checkpoint.getProperty("startTime", "0"));
+            if (System.currentTimeMillis() - startTime > CHECKPOINT_MAX_AGE) {
+                checkpoint.clear();
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Save the checkpoint of the current synchronization run.
+     * 
+     * The saves are serialized by the checkpoint lock, the pushes continue
+     * meanwhile.
+     * 
+     * @param checkpoint
+     *            the checkpoint
+     * @param doneLinkIds
+     *            the ids of the agreement links pushed so far
+     */
+    private void saveCheckpoint(Properties checkpoint, Set<Long> doneLinkIds) {
+        if (checkpointFile != null) {
+            synchronized (checkpoint) {
+                checkpoint.setProperty("doneLinkIds", StringUtils.join(doneLinkIds, ','));
+                try (OutputStream out = new FileOutputStream(checkpointFile)) {
+                    checkpoint.store(out, null);
+                } catch (IOException e) {
+                    Logger.error("dataSyndicationService.synchronizeAgreementLinks: impossible to write the checkpoint", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete the checkpoint (the last synchronization run is complete).
+     */
+    private void deleteCheckpoint() {
+        if (checkpointFile != null) {
+            new File(checkpointFile).delete();
+        }
+    }
+
+    /**
+     * Call the getSystemCurrentTime method in order to know if the slave
+     * instance of an agreement link is accessible.
+     * 
+     * @param agreementLink
+     *            the agreement link
+     */
+    private void checkSlaveInstance(DataSyndicationAgreementLink agreementLink) throws DataSyndicationPostDataException {
         try {
             String getSystemCurrentTimeUrl = agreementLink.agreement.slavePartner.baseUrl
                     + controllers.api.system.routes.SystemApiController.getSystemCurrentTime().url();
@@ -552,6 +850,21 @@ public class DataSyndicationServiceImpl implements IDataSyndicationService {
             Logger.error("dataSyndicationService.postData: error with bizdockApiClient.getSystemCurrentTime", e);
             throw new DataSyndicationPostDataException(DataSyndicationPostDataException.ErrorCode.E1001);
         }
+    }
+
+    /**
+     * Post the data of an agreement link in the slave instance (the
+     * accessibility of the slave instance is not checked).
+     * 
+     * Except for a full synchronization, only the rows created, updated or
+     * deleted since the last synchronization of an item are posted.
+     * 
+     * @param agreementLink
+     *            the agreement link
+     * @param isFull
+     *            set to true to post all the data
+     */
+    private void pushData(DataSyndicationAgreementLink agreementLink, boolean isFull) throws DataSyndicationPostDataException {
 
         // PortfolioEntry case
         if (agreementLink.dataType.equals(PortfolioEntry.class.getName())) {
@@ -606,52 +919,37 @@ public class DataSyndicationServiceImpl implements IDataSyndicationService {
             // for each item
             for (DataSyndicationAgreementItem agreementItem : agreementLink.items) {
 
-                // construct the data
-                List<List<Object>> data = new ArrayList<>();
-                if (agreementItem.descriptor.equals("PLANNING_PACKAGE")) {
-                    data.add(Arrays.asList("object.portfolio_entry_planning_package.name.label", "object.portfolio_entry_planning_package.description.label",
-                            "object.portfolio_entry_planning_package.start_date.label", "object.portfolio_entry_planning_package.end_date.label",
-                            "object.portfolio_entry_planning_package.group.label", "object.portfolio_entry_planning_package.status.label"));
-                    for (PortfolioEntryPlanningPackage planningPackage : PortfolioEntryPlanningPackageDao
-                            .getPEPlanningPackageAsListByPE(agreementLink.masterObjectId)) {
-                        String group = planningPackage.portfolioEntryPlanningPackageGroup != null
-                                ? Msg.get(planningPackage.portfolioEntryPlanningPackageGroup.getName()) : null;
-                        data.add(Arrays.asList(planningPackage.name, planningPackage.description, planningPackage.startDate, planningPackage.endDate, group,
-                                "object.portfolio_entry_planning_package.status." + planningPackage.status.name() + ".label"));
-                    }
+                String watermarkKey = agreementLink.id + "." + agreementItem.id;
+                Date syncDate = new Date();
 
-                } else if (agreementItem.descriptor.equals("REPORT")) {
-                    data.add(Arrays.asList("object.portfolio_entry_report.report_date.label", "object.portfolio_entry_report.author.label",
-                            "object.portfolio_entry_report.status.label", "object.portfolio_entry_report.comments.label"));
-                    for (PortfolioEntryReport report : PortfolioEntryReportDao.getPEReportAsListByPE(agreementLink.masterObjectId)) {
-                        String status = views.html.modelsparts.display_portfolio_entry_report_status_type.render(report.portfolioEntryReportStatusType)
-                                .body();
-                        data.add(Arrays.asList(report.creationDate, report.author.getName(), status, report.comments));
-                    }
-                } else if (agreementItem.descriptor.equals("TIMESHEET")) {
-                    data.add(Arrays.asList("object.timesheet_report.actor.label", "object.timesheet_log.log_date.label", "object.timesheet_log.hours.label",
-                            "object.timesheet_report.status.label", "object.timesheet_entry.planning_package.label"));
-                    for (TimesheetLog timesheetLog : TimesheetDao.getTimesheetLogActiveAsExprByPortfolioEntry(agreementLink.masterObjectId).findList()) {
-                        String planningPackageName = timesheetLog.timesheetEntry.portfolioEntryPlanningPackage != null
-                                ? timesheetLog.timesheetEntry.portfolioEntryPlanningPackage.getName() : null;
-                        String status = "object.timesheet_report.status." + timesheetLog.timesheetEntry.timesheetReport.status.name() + ".label";
-                        data.add(Arrays.asList(timesheetLog.timesheetEntry.timesheetReport.actor.getName(), timesheetLog.logDate, timesheetLog.hours, status,
-                                planningPackageName));
-                    }
-                }
-                JsonNode jsonData = bizdockApiClient.getMapper().valueToTree(data);
+                // construct the data: only the changes since the last
+                // synchronization, except for the periodic full one
+                Date watermark = isFull ? null : getWatermark(watermarkKey);
+                DataSyndicationPayload payload = getPortfolioEntryPayload(agreementLink.masterObjectId, agreementItem.descriptor, watermark);
 
                 // post the data
-                try {
-                    String postDataUrl = agreementLink.agreement.slavePartner.baseUrl
-                            + controllers.api.core.routes.DataSyndicationApiController.postData(agreementLink.id, agreementItem.id).url();
-                    bizdockApiClient.call(agreementLink.agreement.apiKey.applicationKey, agreementLink.agreement.apiKey.secretKey, ApiMethod.POST,
-                            postDataUrl, jsonData);
-                } catch (BizdockApiException e) {
-                    Logger.error("dataSyndicationService.postData: error with bizdockApiClient.postData", e);
-                    throw new DataSyndicationPostDataException(DataSyndicationPostDataException.ErrorCode.E1004);
+                if (!payload.isEmptyDelta()) {
+                    try {
+                        postPayload(agreementLink, agreementItem, payload);
+                    } catch (BizdockApiException e) {
+                        if (!payload.isFull && e.getHttpStatusCode() != null && e.getHttpStatusCode().equals(409)) {
+                            // the slave instance has no data to merge with
+                            payload = getPortfolioEntryPayload(agreementLink.masterObjectId, agreementItem.descriptor, null);
+                            try {
+                                postPayload(agreementLink, agreementItem, payload);
+                            } catch (BizdockApiException e2) {
+                                Logger.error("dataSyndicationService.postData: error with bizdockApiClient.postData", e2);
+                                throw new DataSyndicationPostDataException(DataSyndicationPostDataException.ErrorCode.E1004);
+                            }
+                        } else {
+                            Logger.error("dataSyndicationService.postData: error with bizdockApiClient.postData", e);
+                            throw new DataSyndicationPostDataException(DataSyndicationPostDataException.ErrorCode.E1004);
+                        }
+                    }
                 }
 
+                saveWatermark(watermarkKey, syncDate, payload.isFull);
+
             }
 
         } else {
@@ -660,4 +958,190 @@ public class DataSyndicationServiceImpl implements IDataSyndicationService {
 
     }
 
-}
\ No newline at end of file
+    /**
+     * Post the payload of an item of an agreement link in the slave instance.
+     * 
+     * @param agreementLink
+     *            the agreement link
+     * @param agreementItem
+     *            the agreement item
+     * @param payload
+     *            the payload
+     */
+    private void postPayload(DataSyndicationAgreementLink agreementLink, DataSyndicationAgreementItem agreementItem, DataSyndicationPayload payload)
+            throws BizdockApiException {
+        String postDataUrl = agreementLink.agreement.slavePartner.baseUrl
+                + controllers.api.core.routes.DataSyndicationApiController.postData(agreementLink.id, agreementItem.id).url();
+        bizdockApiClient.call(agreementLink.agreement.apiKey.applicationKey, agreementLink.agreement.apiKey.secretKey, ApiMethod.POST, postDataUrl,
+                bizdockApiClient.getMapper().valueToTree(payload));
+    }
+
+    /**
+     * Construct the payload of an item for a master portfolio entry.
+     * 
+     * @param portfolioEntryId
+     *            the master portfolio entry id
+     * @param descriptor
+     *            the item descriptor
+     * @param since
+     *            the date of the last synchronization for a delta, null for
+     *            a full payload
+     */
+    private DataSyndicationPayload getPortfolioEntryPayload(Long portfolioEntryId, String descriptor, Date since) {
+
+        DataSyndicationPayload payload = new DataSyndicationPayload();
+        payload.isFull = since == null;
+
+        if (descriptor.equals("PLANNING_PACKAGE")) {
+            payload.header = Arrays.asList("object.portfolio_entry_planning_package.name.label", "object.portfolio_entry_planning_package.description.label",
+                    "object.portfolio_entry_planning_package.start_date.label", "object.portfolio_entry_planning_package.end_date.label",
+                    "object.portfolio_entry_planning_package.group.label", "object.portfolio_entry_planning_package.status.label");
+            List<PortfolioEntryPlanningPackage> planningPackages = payload.isFull
+                    ? PortfolioEntryPlanningPackageDao.getPEPlanningPackageAsListByPE(portfolioEntryId)
+                    : PortfolioEntryPlanningPackageDao.getPEPlanningPackageAsListByPEAndUpdatedSince(portfolioEntryId, since);
+            for (PortfolioEntryPlanningPackage planningPackage : planningPackages) {
+                if (planningPackage.deleted) {
+                    payload.deletedKeys.add(String.valueOf(planningPackage.id));
+                } else {
+                    String group = planningPackage.portfolioEntryPlanningPackageGroup != null
+                            ? Msg.get(planningPackage.portfolioEntryPlanningPackageGroup.getName()) : null;
+                    payload.addRow(String.valueOf(planningPackage.id), Arrays.asList(planningPackage.name, planningPackage.description,
+                            planningPackage.startDate, planningPackage.endDate, group,
+                            "object.portfolio_entry_planning_package.status." + planningPackage.status.name() + ".label"));
+                }
+            }
+
+        } else if (descriptor.equals("REPORT")) {
+            payload.newRowsFirst = true;
+            payload.header = Arrays.asList("object.portfolio_entry_report.report_date.label", "object.portfolio_entry_report.author.label",
+                    "object.portfolio_entry_report.status.label", "object.portfolio_entry_report.comments.label");
+            List<PortfolioEntryReport> reports = payload.isFull ? PortfolioEntryReportDao.getPEReportAsListByPE(portfolioEntryId)
+                    : PortfolioEntryReportDao.getPEReportAsListByPEAndUpdatedSince(portfolioEntryId, since);
+            for (PortfolioEntryReport report : reports) {
+                if (report.deleted) {
+                    payload.deletedKeys.add(String.valueOf(report.id));
+                } else {
+                    String status = views.html.modelsparts.display_portfolio_entry_report_status_type.render(report.portfolioEntryReportStatusType).body();
+                    payload.addRow(String.valueOf(report.id), Arrays.asList(report.creationDate, report.author.getName(), status, report.comments));
+                }
+            }
+
+        } else if (descriptor.equals("TIMESHEET")) {
+            payload.header = Arrays.asList("object.timesheet_report.actor.label", "object.timesheet_log.log_date.label", "object.timesheet_log.hours.label",
+                    "object.timesheet_report.status.label", "object.timesheet_entry.planning_package.label");
+            List<TimesheetLog> timesheetLogs = payload.isFull ? TimesheetDao.getTimesheetLogActiveAsExprByPortfolioEntry(portfolioEntryId).findList()
+                    : TimesheetDao.getTimesheetLogAsListByPortfolioEntryAndUpdatedSince(portfolioEntryId, since);
+            for (TimesheetLog timesheetLog : timesheetLogs) {
+                if (!payload.isFull && !TimesheetDao.isTimesheetLogActive(timesheetLog)) {
+                    payload.deletedKeys.add(String.valueOf(timesheetLog.id));
+                } else {
+                    String planningPackageName = timesheetLog.timesheetEntry.portfolioEntryPlanningPackage != null
+                            ? timesheetLog.timesheetEntry.portfolioEntryPlanningPackage.getName() : null;
+                    String status = "object.timesheet_report.status." + timesheetLog.timesheetEntry.timesheetReport.status.name() + ".label";
+                    payload.addRow(String.valueOf(timesheetLog.id), Arrays.asList(timesheetLog.timesheetEntry.timesheetReport.actor.getName(),
+                            timesheetLog.logDate, timesheetLog.hours, status, planningPackageName));
+                }
+            }
+        }
+
+        return payload;
+    }
+
+    /**
+     * Get the date of the last synchronization of an item of an agreement
+     * link.
+     * 
+     * Return null if the item has never been synchronized, if the last full
+     * synchronization is too old or if the watermarks are unavailable (so a
+     * full synchronization should be done).
+     * 
+     * @param watermarkKey
+     *            the key of the agreement link and item
+     */
+    private synchronized Date getWatermark(String watermarkKey) {
+        Properties watermarks = getWatermarks();
+        String watermark = watermarks.getProperty(watermarkKey);
+        String lastFull = watermarks.getProperty(watermarkKey + ".full");
+        try {
+            if (watermark == null || lastFull == null || System.currentTimeMillis() - Long.parseLong(lastFull) > fullSynchronizationFrequency) {
+                return null;
+            }
+            return new Date(Long.parseLong(watermark));
+        } catch (NumberFormatException e) {
+            Logger.error("dataSyndicationService.postData: invalid watermark for " + watermarkKey + ", a full synchronization is done", e);
+            return null;
+        }
+    }
+
+    /**
+     * Save the date of the synchronization of an item of an agreement link,
+     * once acknowledged by the slave instance.
+     * 
+     * The file is read again before the update (it could have been updated by
+     * another node) and replaced atomically.
+     * 
+     * @param watermarkKey
+     *            the key of the agreement link and item
+     * @param syncDate
+     *            the date at which the data has been read
+     * @param isFull
+     *            true if it was a full synchronization
+     */
+    private synchronized void saveWatermark(String watermarkKey, Date syncDate, boolean isFull) {
+        if (watermarkFile == null) {
+            return;
+        }
+        Properties watermarks = new Properties();
+        watermarks.putAll(getWatermarks());
+        watermarks.setProperty(watermarkKey, String.valueOf(syncDate.getTime()));
+        if (isFull) {
+            watermarks.setProperty(watermarkKey + ".full", String.valueOf(syncDate.getTime()));
+        }
+        Path target = Paths.get(watermarkFile);
+        Path temp = Paths.get(watermarkFile + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                watermarks.store(out, null);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            this.watermarks = watermarks;
+            this.watermarksLastModified = target.toFile().lastModified();
+        } catch (IOException e) {
+            Logger.error("dataSyndicationService.postData: impossible to write the watermarks", e);
+        }
+    }
+
+    /**
+     * Get the synchronization watermarks.
+     * 
+     * They are read again when the file has changed, and are empty (so a full
+     * synchronization is done) if the file is not configured, missing or
+     * unreadable.
+     */
+    private synchronized Properties getWatermarks() {
+        File file = watermarkFile != null ? new File(watermarkFile) : null;
+        if (file == null || !file.exists()) {
+            this.watermarks = null;
+            return new Properties();
+        }
+        if (this.watermarks == null || file.lastModified() != this.watermarksLastModified) {
+            Properties watermarks = new Properties();
+            long lastModified = file.lastModified();
+            try (InputStream in = new FileInputStream(file)) {
+                watermarks.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                Logger.error("dataSyndicationService.postData: impossible to read the watermarks, a full synchronization is done", e);
+                this.watermarks = null;
+                return new Properties();
+            }
+            this.watermarks = watermarks;
+            this.watermarksLastModified = lastModified;
+        }
+        return this.watermarks;
+    }
+
+}
@@ -308,6 +308,20 @@ public interface IDataSyndicationService {
      */
     public void postData(DataSyndicationAgreementLink agreementLink) throws DataSyndicationPostDataException;
 
+    /**
+     * Post the data of all the agreement links to synchronize in their slave
+     * instance.
+     * 
+     * The links are grouped by slave partner: the accessibility of a partner is
+     * checked once, then its links are posted concurrently (with a limited
+     * number of workers by partner) and retried with a backoff in case of
+     * communication error. The processed links are saved in a checkpoint, so
+     * an interrupted run resumes where it stopped.
+     * 
+     * The errors of the links are logged.
+     */
+    void synchronizeAgreementLinks() throws EchannelException;
+
     /**
      * The data syndication exception for postData method.
      * 
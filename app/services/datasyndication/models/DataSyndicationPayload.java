@@ -0,0 +1,126 @@
+package services.datasyndication.models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Define the data of an item of an agreement link, as posted to the slave
+ * instance.
+ *
+ * Each row is identified by a key (the id of the master object). A full
+ * payload replaces the data of the slave instance, whereas a delta payload
+ * contains only the rows created or updated since the last synchronization
+ * and the keys of the removed rows, and is merged into the data of the slave
+ * instance.
+ */
+public class DataSyndicationPayload {
+
+    public boolean isFull = true;
+
+    public boolean newRowsFirst = false;
+
+    public List<Object> header;
+
+    public List<String> keys = new ArrayList<>();
+
+    public List<List<Object>> rows = new ArrayList<>();
+
+    public List<String> deletedKeys = new ArrayList<>();
+
+    /**
+     * Add a row.
+     *
+     * @param key
+     *            the key of the row
+     * @param row
+     *            the row values
+     */
+    public void addRow(String key, List<Object> row) {
+        this.keys.add(key);
+        this.rows.add(row);
+    }
+
+    /**
+     * Return true if the payload does not change the data (an empty delta).
+     */
+    @JsonIgnore
+    public boolean isEmptyDelta() {
+        return !this.isFull && this.rows.isEmpty() && this.deletedKeys.isEmpty();
+    }
+
+    /**
+     * Merge a delta payload into this one.
+     *
+     * The updated rows are replaced in place, the new rows are added (at the
+     * beginning or the end according to newRowsFirst) and the deleted rows
+     * are removed.
+     *
+     * @param delta
+     *            the delta payload
+     */
+    public void merge(DataSyndicationPayload delta) {
+
+        if (delta.header != null) {
+            this.header = delta.header;
+        }
+
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < this.keys.size(); i++) {
+            indexes.put(this.keys.get(i), i);
+        }
+
+        List<String> newKeys = new ArrayList<>();
+        List<List<Object>> newRows = new ArrayList<>();
+        for (int i = 0; i < delta.keys.size(); i++) {
+            Integer index = indexes.get(delta.keys.get(i));
+            if (index != null) {
+                this.rows.set(index, delta.rows.get(i));
+            } else {
+                newKeys.add(delta.keys.get(i));
+                newRows.add(delta.rows.get(i));
+            }
+        }
+        if (delta.newRowsFirst) {
+            this.keys.addAll(0, newKeys);
+            this.rows.addAll(0, newRows);
+        } else {
+            this.keys.addAll(newKeys);
+            this.rows.addAll(newRows);
+        }
+
+        if (!delta.deletedKeys.isEmpty()) {
+            Set<String> deletedKeys = new HashSet<>(delta.deletedKeys);
+            List<String> keptKeys = new ArrayList<>();
+            List<List<Object>> keptRows = new ArrayList<>();
+            for (int i = 0; i < this.keys.size(); i++) {
+                if (!deletedKeys.contains(this.keys.get(i))) {
+                    keptKeys.add(this.keys.get(i));
+                    keptRows.add(this.rows.get(i));
+                }
+            }
+            this.keys = keptKeys;
+            this.rows = keptRows;
+        }
+
+    }
+
+    /**
+     * Get the data as a table: the header followed by the rows.
+     */
+    @JsonIgnore
+    public List<List<Object>> getData() {
+        List<List<Object>> data = new ArrayList<>();
+        if (this.header != null) {
+            data.add(this.header);
+            data.addAll(this.rows);
+        }
+        return data;
+    }
+
+}
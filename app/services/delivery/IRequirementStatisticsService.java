@@ -0,0 +1,63 @@
+package services.delivery;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * The requirement statistics service.
+ *
+ * It computes all the breakdowns of the direct requirements of portfolio
+ * entries (by status type, priority, severity, scope...) with a single grouped
+ * query for one or many portfolio entries. The statistics of a portfolio entry
+ * are cached until one of its requirements is changed (or until the
+ * configured time to live is reached for the changes done outside the
+ * application, for example by a synchronization plugin). The KPIs don't read
+ * the cache (see {@link #computeStatistics}).
+ */
+public interface IRequirementStatisticsService {
+
+    /**
+     * Get the requirement statistics of a portfolio entry.
+     *
+     * @param portfolioEntryId
+     *            the portfolio entry id
+     */
+    RequirementStatistics getStatistics(Long portfolioEntryId);
+
+    /**
+     * Get the requirement statistics of some portfolio entries.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     *
+     * @return the statistics by portfolio entry id (an entry is returned for
+     *         each given portfolio entry id)
+     */
+    Map<Long, RequirementStatistics> getStatistics(Collection<Long> portfolioEntryIds);
+
+    /**
+     * Compute the requirement statistics of some portfolio entries without
+     * reading the cache (which is then refreshed with them).
+     *
+     * To use when the statistics must not be stale, for example for the KPI
+     * values (a requirement could have been changed without invalidation).
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids
+     *
+     * @return the statistics by portfolio entry id (an entry is returned for
+     *         each given portfolio entry id)
+     */
+    Map<Long, RequirementStatistics> computeStatistics(Collection<Long> portfolioEntryIds);
+
+    /**
+     * Invalidate the cached statistics of a portfolio entry, must be called
+     * when a requirement of the portfolio entry is created, updated or
+     * deleted.
+     *
+     * @param portfolioEntryId
+     *            the portfolio entry id
+     */
+    void invalidate(Long portfolioEntryId);
+
+}
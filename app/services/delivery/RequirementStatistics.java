@@ -0,0 +1,214 @@
+package services.delivery;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import com.avaje.ebean.SqlRow;
+
+import models.delivery.RequirementStatus.Type;
+
+/**
+ * The statistics of the direct requirements of a portfolio entry.
+ *
+ * The object is immutable: it only keeps the number of requirements (and their
+ * story points) by combination of defect flag, scoped flag, status, priority
+ * and severity, and each breakdown is computed from these groups.
+ */
+public final class RequirementStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Group> groups;
+
+    /**
+     * Construct the statistics from the grouped rows of a portfolio entry.
+     *
+     * @param rows
+     *            the rows, see RequirementDAO.getRequirementStatsAsListByPE
+     */
+    public RequirementStatistics(List<SqlRow> rows) {
+        List<Group> groups = new ArrayList<>();
+        for (SqlRow row : rows) {
+            groups.add(new Group(row));
+        }
+        this.groups = Collections.unmodifiableList(groups);
+    }
+
+    /**
+     * Get the number of needs (not defects) for a status type.
+     *
+     * @param statusType
+     *            the status type
+     * @param isMust
+     *            set to true to count only mandatory needs, to false to count
+     *            only optional needs, to null to count all
+     */
+    public int getNeedsCount(Type statusType, Boolean isMust) {
+        return count(g -> !g.isDefect && statusType.equals(g.statusType) && (isMust == null || g.priorityId != null && isMust.equals(g.isMust)));
+    }
+
+    /**
+     * Get the number of needs (not defects) for a status type and a priority.
+     *
+     * @param statusType
+     *            the status type
+     * @param requirementPriorityId
+     *            the requirement priority id
+     */
+    public int getNeedsCountByPriority(Type statusType, Long requirementPriorityId) {
+        return count(g -> !g.isDefect && statusType.equals(g.statusType) && requirementPriorityId.equals(g.priorityId));
+    }
+
+    /**
+     * Get the number of defects for a status type.
+     *
+     * @param statusType
+     *            the status type
+     * @param isBlocker
+     *            set to true to count only blocker defects, to false to count
+     *            only non blocker defects, to null to count all
+     */
+    public int getDefectsCount(Type statusType, Boolean isBlocker) {
+        return count(g -> g.isDefect && statusType.equals(g.statusType) && (isBlocker == null || g.severityId != null && isBlocker.equals(g.isBlocker)));
+    }
+
+    /**
+     * Get the number of defects for a status type and a severity.
+     *
+     * @param statusType
+     *            the status type
+     * @param requirementSeverityId
+     *            the requirement severity id
+     */
+    public int getDefectsCountBySeverity(Type statusType, Long requirementSeverityId) {
+        return count(g -> g.isDefect && statusType.equals(g.statusType) && requirementSeverityId.equals(g.severityId));
+    }
+
+    /**
+     * Get the number of requirements (with a non deleted status).
+     *
+     * @param isClosed
+     *            if true: count only closed requirements, if false: count only
+     *            non-closed requirements, if null: count all requirements
+     */
+    public int getCount(Boolean isClosed) {
+        return count(g -> g.hasActiveStatus() && (isClosed == null || isClosed.equals(g.isClosed())));
+    }
+
+    /**
+     * Get the total story points of the requirements (with a non deleted
+     * status).
+     *
+     * @param isClosed
+     *            if true: only closed requirements, if false: only non-closed
+     *            requirements, if null: all requirements
+     */
+    public int getStoryPoints(Boolean isClosed) {
+        int storyPoints = 0;
+        for (Group group : this.groups) {
+            if (group.hasActiveStatus() && (isClosed == null || isClosed.equals(group.isClosed()))) {
+                storyPoints += group.storyPoints;
+            }
+        }
+        return storyPoints;
+    }
+
+    /**
+     * Get the number of open defects.
+     *
+     * @param isBlocker
+     *            if true: count only blocker defects, if false: count only
+     *            non-blocker defects, if null: count all defects
+     */
+    public int getOpenDefectsCount(Boolean isBlocker) {
+        return count(g -> g.isDefect && g.statusType != null && !g.isClosed() && (isBlocker == null || g.severityId != null && isBlocker.equals(g.isBlocker)));
+    }
+
+    /**
+     * Get the number of requirements according to the isScoped value.
+     *
+     * @param isScoped
+     *            if true: count only the scoped requirements, if false: count
+     *            only the non-scoped requirements, if null: count all
+     *            requirements
+     */
+    public int getScopedCount(Boolean isScoped) {
+        return count(g -> isScoped == null || isScoped.equals(g.isScoped));
+    }
+
+    /**
+     * Get the number of requirements of the groups matching a filter.
+     *
+     * @param filter
+     *            the filter of the groups
+     */
+    private int count(Predicate<Group> filter) {
+        int count = 0;
+        for (Group group : this.groups) {
+            if (filter.test(group)) {
+                count += group.total;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * A group of requirements (a row of the grouped query).
+     */
+    private static final class Group implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean isDefect;
+        private final Boolean isScoped;
+        private final Type statusType;
+        private final boolean isStatusDeleted;
+        private final Long priorityId;
+        private final Boolean isMust;
+        private final Long severityId;
+        private final Boolean isBlocker;
+        private final int total;
+        private final int storyPoints;
+
+        /**
+         * Construct a group from a row.
+         *
+         * @param row
+         *            the row
+         */
+        private Group(SqlRow row) {
+            this.isDefect = Boolean.TRUE.equals(row.getBoolean("is_defect"));
+            this.isScoped = row.getBoolean("is_scoped");
+            String type = row.getString("status_type");
+            this.statusType = type != null ? Type.valueOf(type) : null;
+            this.isStatusDeleted = Boolean.TRUE.equals(row.getBoolean("status_deleted"));
+            this.priorityId = row.getLong("priority_id");
+            this.isMust = row.getBoolean("is_must");
+            this.severityId = row.getLong("severity_id");
+            this.isBlocker = row.getBoolean("is_blocker");
+            Integer total = row.getInteger("total");
+            this.total = total != null ? total : 0;
+            Integer storyPoints = row.getInteger("story_points");
+            this.storyPoints = storyPoints != null ? storyPoints : 0;
+        }
+
+        /**
+         * Return true if the requirements have a non deleted status.
+         */
+        private boolean hasActiveStatus() {
+            return this.statusType != null && !this.isStatusDeleted;
+        }
+
+        /**
+         * Return true if the status of the requirements is closed or deployed.
+         */
+        private boolean isClosed() {
+            return Type.CLOSED.equals(this.statusType) || Type.DEPLOYED.equals(this.statusType);
+        }
+
+    }
+
+}
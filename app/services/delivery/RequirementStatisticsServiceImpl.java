@@ -0,0 +1,125 @@
+package services.delivery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.avaje.ebean.SqlRow;
+
+import dao.delivery.RequirementDAO;
+import play.Configuration;
+import play.Logger;
+import play.cache.CacheApi;
+import play.inject.ApplicationLifecycle;
+import play.libs.F.Promise;
+
+/**
+ * The implementation of the requirement statistics service.
+ *
+ * The statistics are stored in the Play cache, by portfolio entry. Each
+ * computation (cached or not) refreshes the cache.
+ */
+@Singleton
+public class RequirementStatisticsServiceImpl implements IRequirementStatisticsService {
+
+    private static final String CACHE_KEY_PREFIX = "requirement.statistics.";
+
+    private CacheApi cache;
+
+    private int cacheTtl;
+
+    /**
+     * Initialize the service.
+     *
+     * @param lifecycle
+     *            the Play life cycle service
+     * @param configuration
+     *            the Play configuration service
+     * @param cache
+     *            the Play cache service
+     */
+    @Inject
+    public RequirementStatisticsServiceImpl(ApplicationLifecycle lifecycle, Configuration configuration, CacheApi cache) {
+
+        Logger.info("SERVICE>>> RequirementStatisticsServiceImpl starting...");
+
+        this.cache = cache;
+        this.cacheTtl = configuration.getInt("maf.requirement.statistics.cache_ttl", 600);
+
+        lifecycle.addStopHook(() -> {
+            Logger.info("SERVICE>>> RequirementStatisticsServiceImpl stopping...");
+            Logger.info("SERVICE>>> RequirementStatisticsServiceImpl stopped");
+            return Promise.pure(null);
+        });
+
+        Logger.info("SERVICE>>> RequirementStatisticsServiceImpl started");
+    }
+
+    @Override
+    public RequirementStatistics getStatistics(Long portfolioEntryId) {
+        return getStatistics(Collections.singletonList(portfolioEntryId)).get(portfolioEntryId);
+    }
+
+    @Override
+    public Map<Long, RequirementStatistics> getStatistics(Collection<Long> portfolioEntryIds) {
+
+        Map<Long, RequirementStatistics> statistics = new HashMap<>();
+
+        // get the cached statistics
+        List<Long> missingIds = new ArrayList<>();
+        for (Long portfolioEntryId : new LinkedHashSet<>(portfolioEntryIds)) {
+            RequirementStatistics cached = this.cache.get(CACHE_KEY_PREFIX + portfolioEntryId);
+            if (cached != null) {
+                statistics.put(portfolioEntryId, cached);
+            } else {
+                missingIds.add(portfolioEntryId);
+            }
+        }
+
+        // compute the others with one query
+        if (!missingIds.isEmpty()) {
+            statistics.putAll(computeStatistics(missingIds));
+        }
+
+        return statistics;
+    }
+
+    @Override
+    public Map<Long, RequirementStatistics> computeStatistics(Collection<Long> portfolioEntryIds) {
+
+        Map<Long, RequirementStatistics> statistics = new HashMap<>();
+        if (portfolioEntryIds.isEmpty()) {
+            return statistics;
+        }
+
+        Set<Long> ids = new LinkedHashSet<>(portfolioEntryIds);
+
+        Map<Long, List<SqlRow>> rowsByPortfolioEntry = new HashMap<>();
+        for (SqlRow row : RequirementDAO.getRequirementStatsAsListByPE(ids)) {
+            rowsByPortfolioEntry.computeIfAbsent(row.getLong("portfolio_entry_id"), id -> new ArrayList<>()).add(row);
+        }
+
+        for (Long portfolioEntryId : ids) {
+            List<SqlRow> rows = rowsByPortfolioEntry.get(portfolioEntryId);
+            RequirementStatistics computed = new RequirementStatistics(rows != null ? rows : Collections.emptyList());
+            this.cache.set(CACHE_KEY_PREFIX + portfolioEntryId, computed, this.cacheTtl);
+            statistics.put(portfolioEntryId, computed);
+        }
+
+        return statistics;
+    }
+
+    @Override
+    public void invalidate(Long portfolioEntryId) {
+        this.cache.remove(CACHE_KEY_PREFIX + portfolioEntryId);
+    }
+
+}
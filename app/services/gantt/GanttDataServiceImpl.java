@@ -0,0 +1,354 @@
+package services.gantt;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import dao.finance.PortfolioEntryResourcePlanDAO;
+import dao.governance.LifeCycleMilestoneDao;
+import dao.governance.LifeCyclePlanningDao;
+import dao.pmo.PortfolioEntryDao;
+import dao.timesheet.TimesheetDao;
+import framework.utils.JqueryGantt;
+import models.finance.PortfolioEntryResourcePlanAllocatedActor;
+import models.governance.LifeCyclePhase;
+import models.governance.PlannedLifeCycleMilestoneInstance;
+import models.pmo.PortfolioEntry;
+import models.pmo.PortfolioEntryReport;
+import models.timesheet.TimesheetActivityAllocatedActor;
+import play.Logger;
+import play.inject.ApplicationLifecycle;
+import play.libs.F.Promise;
+import play.libs.Json;
+import play.mvc.Http;
+import utils.SortableCollection;
+import utils.SortableCollection.DateSortableObject;
+import utils.gantt.SourceDataValue;
+import utils.gantt.SourceItem;
+import utils.gantt.SourceValue;
+
+/**
+ * The implementation of the gantt data service.
+ *
+ * The phases are loaded once by life cycle process and the rendered fragments
+ * (manager, portfolios) once by actor and set of portfolios.
+ *
+ * For the allocations, the associations displayed in the bars are fetched with
+ * the allocations, the portfolio entries are resolved with one join query and
+ * loaded with one query, and the numbers of days are formatted without
+ * rendering a template.
+ */
+@Singleton
+public class GanttDataServiceImpl implements IGanttDataService {
+
+    /**
+     * The default CSS class for a gantt bar. The classes are defined in the
+     * file main.css of app-framework.
+     */
+    private static final String GANTT_DEFAULT_CSS_CLASS = "default";
+
+    /**
+     * The CSS class of the bar of an activity allocation.
+     */
+    private static final String GANTT_ACTIVITY_CSS_CLASS = "info";
+
+    /**
+     * The format of the number of days of an allocation (as display_number).
+     */
+    private static final String DAYS_FORMAT_PATTERN = "#,##0.00";
+
+    /**
+     * Initialize the service.
+     *
+     * @param lifecycle
+     *            the Play life cycle service
+     */
+    @Inject
+    public GanttDataServiceImpl(ApplicationLifecycle lifecycle) {
+
+        Logger.info("SERVICE>>> GanttDataServiceImpl starting...");
+
+        lifecycle.addStopHook(() -> {
+            Logger.info("SERVICE>>> GanttDataServiceImpl stopping...");
+            Logger.info("SERVICE>>> GanttDataServiceImpl stopped");
+            return Promise.pure(null);
+        });
+
+        Logger.info("SERVICE>>> GanttDataServiceImpl started");
+    }
+
+    @Override
+    public List<SourceItem> getRoadmapSourceItems(List<Long> portfolioEntryIds, Date windowStart, Date windowEnd) {
+
+        List<SourceItem> items = new ArrayList<>();
+
+        Map<Long, PortfolioEntry> portfolioEntries = new HashMap<>();
+        for (PortfolioEntry portfolioEntry : PortfolioEntryDao.getPEAsListWithPlanningAssociationsByIds(portfolioEntryIds)) {
+            portfolioEntries.put(portfolioEntry.id, portfolioEntry);
+        }
+
+        // get the last planned milestone instances and their passed dates
+        Map<Long, List<PlannedLifeCycleMilestoneInstance>> lastPlannedMilestoneInstancesByPE = LifeCyclePlanningDao
+                .getPlannedLCMilestoneInstanceLastAsMapByPE(portfolioEntryIds);
+        Map<Long, Date> passedDates = LifeCyclePlanningDao.getPlannedLCMilestoneInstanceAsPassedDateMap(
+                lastPlannedMilestoneInstancesByPE.values().stream().flatMap(List::stream).collect(Collectors.toList()));
+
+        Map<Long, List<LifeCyclePhase>> lifeCyclePhasesByProcess = new HashMap<>();
+        Map<Long, String> managerFragments = new HashMap<>();
+        Map<String, String> portfoliosFragments = new HashMap<>();
+
+        for (Long portfolioEntryId : portfolioEntryIds) {
+
+            PortfolioEntry portfolioEntry = portfolioEntries.get(portfolioEntryId);
+            List<PlannedLifeCycleMilestoneInstance> lastPlannedMilestoneInstances = lastPlannedMilestoneInstancesByPE.get(portfolioEntryId);
+            if (portfolioEntry == null || lastPlannedMilestoneInstances == null || lastPlannedMilestoneInstances.isEmpty()) {
+                continue;
+            }
+
+            // get the roadmap phases of the process
+            List<LifeCyclePhase> lifeCyclePhases = lifeCyclePhasesByProcess.computeIfAbsent(portfolioEntry.activeLifeCycleInstance.lifeCycleProcess.id,
+                    LifeCycleMilestoneDao::getLCPhaseRoadmapAsListByLCProcess);
+            if (lifeCyclePhases == null || lifeCyclePhases.isEmpty()) {
+                continue;
+            }
+
+            // transform the list of last planned milestone instances to a map
+            Map<Long, PlannedLifeCycleMilestoneInstance> lastPlannedMilestoneInstancesAsMap = new HashMap<>();
+            for (PlannedLifeCycleMilestoneInstance plannedMilestoneInstance : lastPlannedMilestoneInstances) {
+                lastPlannedMilestoneInstancesAsMap.put(plannedMilestoneInstance.lifeCycleMilestone.id, plannedMilestoneInstance);
+            }
+
+            /*
+             * compute the common components for all phases
+             */
+
+            // get the CSS class
+            String cssClass = GANTT_DEFAULT_CSS_CLASS;
+            PortfolioEntryReport report = portfolioEntry.lastPortfolioEntryReport;
+            if (report != null && report.portfolioEntryReportStatusType != null) {
+                cssClass = report.portfolioEntryReportStatusType.cssClass;
+            }
+
+            // create the source data value (used when clicking on a phase)
+            String managerFragment = managerFragments.computeIfAbsent(portfolioEntry.manager != null ? portfolioEntry.manager.id : null,
+                    managerId -> views.html.modelsparts.display_actor.render(portfolioEntry.manager).body());
+            String portfoliosFragment = portfoliosFragments.computeIfAbsent(
+                    portfolioEntry.portfolios.stream().map(portfolio -> String.valueOf(portfolio.id)).collect(Collectors.joining(",")),
+                    portfolioIds -> views.html.framework_views.parts.formats.display_list_of_values.render(portfolioEntry.portfolios, "display").body());
+            SourceDataValue sourceDataValue = new SourceDataValue(controllers.core.routes.PortfolioEntryController.overview(portfolioEntry.id).url(),
+                    portfolioEntry.getName(), portfolioEntry.getDescription(), managerFragment, portfoliosFragment);
+
+            boolean isFirstLoop = true;
+
+            for (LifeCyclePhase phase : lifeCyclePhases) {
+
+                if (lastPlannedMilestoneInstancesAsMap.containsKey(phase.startLifeCycleMilestone.id)
+                        && lastPlannedMilestoneInstancesAsMap.containsKey(phase.endLifeCycleMilestone.id)) {
+
+                    Date from = passedDates.get(lastPlannedMilestoneInstancesAsMap.get(phase.startLifeCycleMilestone.id).id);
+                    Date to = passedDates.get(lastPlannedMilestoneInstancesAsMap.get(phase.endLifeCycleMilestone.id).id);
+
+                    if (from != null && to != null) {
+
+                        to = JqueryGantt.cleanToDate(from, to);
+
+                        // add gap for the from date
+                        if (phase.gapDaysStart != null && phase.gapDaysStart > 0) {
+                            Calendar c = Calendar.getInstance();
+                            c.setTime(from);
+                            c.add(Calendar.DATE, phase.gapDaysStart);
+                            from = c.getTime();
+                        }
+
+                        // remove gap for the to date
+                        if (phase.gapDaysEnd != null && phase.gapDaysEnd > 0) {
+                            Calendar c = Calendar.getInstance();
+                            c.setTime(to);
+                            c.add(Calendar.DATE, -1 * phase.gapDaysEnd);
+                            to = c.getTime();
+                        }
+
+                        // ignore the phases out of the time window
+                        if ((windowStart != null && to.before(windowStart)) || (windowEnd != null && from.after(windowEnd))) {
+                            continue;
+                        }
+
+                        String name = "";
+                        String str = "";
+                        if (isFirstLoop) {
+                            if (portfolioEntry.governanceId != null) {
+                                name += portfolioEntry.governanceId + " - ";
+                            }
+                            name += portfolioEntry.getName();
+                            str = String.format("<a href= %s > %s </a>",
+                                    controllers.core.routes.PortfolioEntryGovernanceController.index(portfolioEntry.id).url(), name);
+                        }
+
+                        SourceItem item = new SourceItem(str, "");
+
+                        item.values.add(new SourceValue(from, to, "", phase.getName(), cssClass, sourceDataValue));
+
+                        items.add(item);
+
+                        isFirstLoop = false;
+
+                    }
+
+                }
+
+            }
+
+        }
+
+        return items;
+    }
+
+    @Override
+    public String getOrgUnitAllocationSource(Long orgUnitId) {
+        return getAllocationSource(
+                PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsExprByOrgUnitAndActive(orgUnitId, true, true).isNotNull("endDate").query()
+                        .fetch("actor").fetch("portfolioEntryPlanningPackage").fetch("portfolioEntryResourcePlanAllocationStatusType").findList(),
+                TimesheetDao.getTimesheetActivityAllocatedActorAsExprByOrgUnit(orgUnitId, true).isNotNull("endDate").query().fetch("actor")
+                        .fetch("timesheetActivity").findList(),
+                true);
+    }
+
+    @Override
+    public String getActorAllocationSource(Long actorId) {
+        return getAllocationSource(
+                PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsExprByActorAndActive(actorId, true, false).isNotNull("endDate").query()
+                        .fetch("actor").fetch("portfolioEntryPlanningPackage").fetch("portfolioEntryResourcePlanAllocationStatusType").findList(),
+                TimesheetDao.getTimesheetActivityAllocatedActorAsExprByActor(actorId, true).isNotNull("endDate").query().fetch("actor")
+                        .fetch("timesheetActivity").findList(),
+                false);
+    }
+
+    /**
+     * Get the gantt source of some allocations.
+     *
+     * @param allocatedActors
+     *            the portfolio entry allocations (with an end date)
+     * @param allocatedActivities
+     *            the activity allocations (with an end date)
+     * @param isOrgUnit
+     *            true if the allocations are those of an org unit (the items
+     *            are named by actor), false if they are those of an actor
+     */
+    private String getAllocationSource(List<PortfolioEntryResourcePlanAllocatedActor> allocatedActors,
+            List<TimesheetActivityAllocatedActor> allocatedActivities, boolean isOrgUnit) {
+
+        // get the portfolio entries of the allocations
+        Map<Long, Long> portfolioEntryIds = PortfolioEntryResourcePlanDAO.getPEIdAsMapByAllocations(PortfolioEntryResourcePlanAllocatedActor.class,
+                allocatedActors.stream().map(allocatedActor -> allocatedActor.id).collect(Collectors.toList()));
+        Map<Long, PortfolioEntry> portfolioEntries = new HashMap<>();
+        for (PortfolioEntry portfolioEntry : PortfolioEntryDao.getPEAsListByIds(portfolioEntryIds.values())) {
+            portfolioEntries.put(portfolioEntry.id, portfolioEntry);
+        }
+
+        // sort the allocations by end date
+        SortableCollection<DateSortableObject> sortableCollection = new SortableCollection<>();
+        for (PortfolioEntryResourcePlanAllocatedActor allocatedActor : allocatedActors) {
+            sortableCollection.addObject(new DateSortableObject(allocatedActor.endDate, allocatedActor));
+        }
+        for (TimesheetActivityAllocatedActor allocatedActivity : allocatedActivities) {
+            sortableCollection.addObject(new DateSortableObject(allocatedActivity.endDate, allocatedActivity));
+        }
+
+        // the separators are the ones of the language of the user
+        Locale locale = Http.Context.current().lang().toLocale();
+        DecimalFormat daysFormat = new DecimalFormat(DAYS_FORMAT_PATTERN, DecimalFormatSymbols.getInstance(locale));
+
+        List<SourceItem> items = new ArrayList<>();
+
+        for (DateSortableObject dateSortableObject : sortableCollection.getSorted()) {
+
+            if (dateSortableObject.getObject() instanceof PortfolioEntryResourcePlanAllocatedActor) {
+
+                PortfolioEntryResourcePlanAllocatedActor allocatedActor = (PortfolioEntryResourcePlanAllocatedActor) dateSortableObject.getObject();
+
+                PortfolioEntry portfolioEntry = portfolioEntries.get(portfolioEntryIds.get(allocatedActor.id));
+                if (portfolioEntry == null) {
+                    continue;
+                }
+
+                String packageName = allocatedActor.portfolioEntryPlanningPackage != null ? allocatedActor.portfolioEntryPlanningPackage.getName() : "";
+
+                SourceItem item;
+                String label = allocatedActor.days != null ? daysFormat.format(allocatedActor.days) : "";
+                if (isOrgUnit) {
+                    item = new SourceItem(allocatedActor.actor.getNameHumanReadable(), portfolioEntry.getName());
+                    if (!packageName.isEmpty()) {
+                        label = packageName + " / " + label;
+                    }
+                } else {
+                    item = new SourceItem(portfolioEntry.getName(), packageName);
+                }
+
+                SourceDataValue dataValue = new SourceDataValue(controllers.core.routes.PortfolioEntryPlanningController.resources(portfolioEntry.id).url(),
+                        null, null, null, null);
+
+                item.values.add(getAllocationSourceValue(allocatedActor.startDate, allocatedActor.endDate, label,
+                        allocatedActor.portfolioEntryResourcePlanAllocationStatusType.getCssClass(), dataValue));
+
+                items.add(item);
+
+            }
+
+            if (dateSortableObject.getObject() instanceof TimesheetActivityAllocatedActor) {
+
+                TimesheetActivityAllocatedActor allocatedActivity = (TimesheetActivityAllocatedActor) dateSortableObject.getObject();
+
+                SourceItem item;
+                if (isOrgUnit) {
+                    item = new SourceItem(allocatedActivity.actor.getNameHumanReadable(), allocatedActivity.timesheetActivity.getName());
+                } else {
+                    item = new SourceItem(allocatedActivity.timesheetActivity.getName(), "");
+                }
+
+                SourceDataValue dataValue = new SourceDataValue(
+                        controllers.core.routes.ActorController.allocationDetails(allocatedActivity.actor.id, 0, 0, false).url(), null, null, null, null);
+
+                item.values.add(getAllocationSourceValue(allocatedActivity.startDate, allocatedActivity.endDate,
+                        allocatedActivity.days != null ? daysFormat.format(allocatedActivity.days) : "", GANTT_ACTIVITY_CSS_CLASS, dataValue));
+
+                items.add(item);
+            }
+
+        }
+
+        return Json.stringify(Json.toJson(items));
+    }
+
+    /**
+     * Get the source value (bar) of an allocation: a milestone (diamond) at the
+     * end date if there is no start date.
+     *
+     * @param from
+     *            the start date, could be null
+     * @param to
+     *            the end date
+     * @param label
+     *            the label
+     * @param cssClass
+     *            the CSS class of the allocation status
+     * @param dataValue
+     *            the source data value (used when clicking on the bar)
+     */
+    private static SourceValue getAllocationSourceValue(Date from, Date to, String label, String cssClass, SourceDataValue dataValue) {
+        if (from != null) {
+            return new SourceValue(from, JqueryGantt.cleanToDate(from, to), "", label, cssClass, dataValue);
+        }
+        return new SourceValue(to, to, "", label, "diamond diamond-" + cssClass, dataValue);
+    }
+
+}
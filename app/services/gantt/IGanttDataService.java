@@ -0,0 +1,55 @@
+package services.gantt;
+
+import java.util.Date;
+import java.util.List;
+
+import utils.gantt.SourceItem;
+
+/**
+ * The gantt data service.
+ *
+ * It computes the source items of the gantt views for a set of objects with a
+ * fixed number of queries (and not a few queries by object).
+ */
+public interface IGanttDataService {
+
+    /**
+     * Get the source items of the roadmap planning: one item by roadmap phase
+     * of the life cycle process of each portfolio entry.
+     *
+     * The start and end dates of a phase are the passed dates of its start and
+     * end milestones in the last planning of the portfolio entry (see
+     * LifeCyclePlanningDao.getPlannedLCMilestoneInstanceAsPassedDate).
+     *
+     * If a time window is given, only the phases overlapping it are returned.
+     *
+     * @param portfolioEntryIds
+     *            the portfolio entry ids, in the display order
+     * @param windowStart
+     *            the start of the time window (null for no start)
+     * @param windowEnd
+     *            the end of the time window (null for no end)
+     */
+    List<SourceItem> getRoadmapSourceItems(List<Long> portfolioEntryIds, Date windowStart, Date windowEnd);
+
+    /**
+     * Get the gantt source (compact JSON) of the allocations of the actors of
+     * an org unit: one item by active allocation (portfolio entry or activity)
+     * with an end date, sorted by end date.
+     *
+     * @param orgUnitId
+     *            the org unit id
+     */
+    String getOrgUnitAllocationSource(Long orgUnitId);
+
+    /**
+     * Get the gantt source (compact JSON) of the allocations of an actor: one
+     * item by active allocation (portfolio entry or activity) with an end
+     * date, sorted by end date.
+     *
+     * @param actorId
+     *            the actor id
+     */
+    String getActorAllocationSource(Long actorId);
+
+}
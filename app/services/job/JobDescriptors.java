@@ -19,29 +19,25 @@ package services.job;
 
 import java.util.List;
 import java.util.Random;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
-import com.avaje.ebean.Ebean;
-
 import dao.pmo.ActorDao;
-import dao.pmo.PortfolioEntryDao;
 import framework.services.job.IJobDescriptor;
 import framework.services.notification.INotificationManagerPlugin;
-import framework.utils.Msg;
 import models.framework_models.account.NotificationCategory;
 import models.framework_models.account.NotificationCategory.Code;
-import models.governance.LifeCycleInstancePlanning;
-import models.pmo.PortfolioEntry;
 import play.Logger;
 import services.budgettracking.IBudgetTrackingService;
+import services.capacityforecast.ICapacityForecastService;
 import services.datasyndication.IDataSyndicationService;
-import services.datasyndication.IDataSyndicationService.DataSyndicationPostDataException;
 import services.datasyndication.models.DataSyndicationAgreement;
-import services.datasyndication.models.DataSyndicationAgreementLink;
 import services.echannel.IEchannelService;
 import services.echannel.models.NotificationEvent;
 import services.licensesmanagement.ILicensesManagementService;
+import services.notification.IBulkNotificationService;
+import services.search.ISearchIndexService;
 
 /**
  * All available job descriptors.
@@ -122,6 +118,9 @@ public interface JobDescriptors {
         @Inject
         private INotificationManagerPlugin notificationManagerPlugin;
 
+        @Inject
+        private IBulkNotificationService bulkNotificationService;
+
         @Override
         public String getId() {
             return "SendNotificationEvents";
@@ -166,11 +165,11 @@ public interface JobDescriptors {
 
                         switch (notificationEvent.recipientsDescriptor.type) {
                         case ACTORS:
-                            for (Long actorId : notificationEvent.recipientsDescriptor.actors) {
-                                ActorDao.sendNotificationWithContent(notificationManagerPlugin, ActorDao.getActorById(actorId),
-                                        NotificationCategory.getByCode(Code.INFORMATION), notificationEvent.actionLink, notificationEvent.title,
-                                        notificationEvent.message);
-                            }
+                            bulkNotificationService.sendNotificationWithContent(
+                                    ActorDao.getActorAsListByIds(notificationEvent.recipientsDescriptor.actors).stream().filter(actor -> !actor.deleted)
+                                            .map(actor -> actor.uid).collect(Collectors.toList()),
+                                    NotificationCategory.getByCode(Code.INFORMATION), notificationEvent.actionLink, notificationEvent.title,
+                                    notificationEvent.message);
                             break;
                         case PERMISSIONS:
                             for (String permission : notificationEvent.recipientsDescriptor.permissions) {
@@ -179,10 +178,9 @@ public interface JobDescriptors {
                             }
                             break;
                         case PRINCIPALS:
-                            for (String uid : notificationEvent.recipientsDescriptor.principals) {
-                                ActorDao.sendNotificationWithContent(notificationManagerPlugin, uid, NotificationCategory.getByCode(Code.INFORMATION),
-                                        notificationEvent.actionLink, notificationEvent.title, notificationEvent.message);
-                            }
+                            bulkNotificationService.sendNotificationWithContent(notificationEvent.recipientsDescriptor.principals,
+                                    NotificationCategory.getByCode(Code.INFORMATION), notificationEvent.actionLink, notificationEvent.title,
+                                    notificationEvent.message);
                             break;
                         default:
                             break;
@@ -333,26 +331,10 @@ public interface JobDescriptors {
 
             Logger.info("start trigger " + this.getId());
 
-            List<DataSyndicationAgreementLink> agreementLinks = null;
             try {
-                agreementLinks = dataSyndicationService.getAgreementLinksToSynchronize();
+                dataSyndicationService.synchronizeAgreementLinks();
             } catch (Exception e) {
-                Logger.error("error with dataSyndicationService.getAgreementLinksToSynchronize", e);
-            }
-
-            if (agreementLinks != null) {
-
-                for (DataSyndicationAgreementLink agreementLink : agreementLinks) {
-                    try {
-                        dataSyndicationService.postData(agreementLink);
-                    } catch (DataSyndicationPostDataException e) {
-                        Logger.warn("postData for agreement link [id=" + agreementLink.id + ", agreementId=" + agreementLink.agreement.id + ", dataType="
-                                + agreementLink.dataType + ", masterObjectId=" + agreementLink.masterObjectId + ", slaveObjectId="
-                                + agreementLink.slaveObjectId + "]");
-                        Logger.error(Msg.get(e.getCode().getMessageKey()));
-                    }
-                }
-
+                Logger.error("error with dataSyndicationService.synchronizeAgreementLinks", e);
             }
 
             Logger.info("end trigger " + this.getId());
@@ -367,7 +349,8 @@ public interface JobDescriptors {
     }
 
     /**
-     * Run budget tracking for all active PE.
+     * Run budget tracking for the active PE with changes since their last
+     * run.
      * 
      * @author Johann Kohler
      * 
@@ -389,7 +372,7 @@ public interface JobDescriptors {
 
         @Override
         public String getDescription(String languageCode) {
-            return "Run budget tracking for all active initiatives.";
+            return "Run budget tracking for the active initiatives with changes since their last run.";
         }
 
         @Override
@@ -414,35 +397,134 @@ public interface JobDescriptors {
 
                 Logger.info("start trigger " + this.getId());
 
-                for (PortfolioEntry portfolioEntry : PortfolioEntryDao.getPEAsExpr(false).findList()) {
+                budgetTrackingService.recomputeActivePortfolioEntries(true);
 
-                    // get current planning
-                    LifeCycleInstancePlanning planning = portfolioEntry.activeLifeCycleInstance.getCurrentLifeCycleInstancePlanning();
+                Logger.info("end trigger " + this.getId());
 
-                    Ebean.beginTransaction();
-                    try {
+            }
 
-                        // process the run
-                        budgetTrackingService.recomputeAllBugdetAndForecastFromResource(planning);
+        }
 
-                        Ebean.commitTransaction();
-                        Ebean.endTransaction();
+        @Override
+        public String getTriggerUrl() {
+            return null;
+        }
 
-                    } catch (Exception e) {
+    }
 
-                        Ebean.rollbackTransaction();
-                        Ebean.endTransaction();
+    /**
+     * Rebuild the capacity cube of the capacity forecast service.
+     * 
+     */
+    class CapacityCubeJobDescriptor implements IJobDescriptor {
 
-                        Logger.error(this.getId() + " unexpected error", e);
+        @Inject
+        private ICapacityForecastService capacityForecastService;
 
-                    }
+        @Override
+        public String getId() {
+            return "CapacityCube";
+        }
 
-                }
+        @Override
+        public String getName(String languageCode) {
+            return "Capacity cube";
+        }
 
-                Logger.info("end trigger " + this.getId());
+        @Override
+        public String getDescription(String languageCode) {
+            return "Rebuild the planned days by month used by the capacity forecast.";
+        }
 
+        @Override
+        public Frequency getFrequency() {
+            return Frequency.DAILY;
+        }
+
+        @Override
+        public int getStartHour() {
+            return 3;
+        }
+
+        @Override
+        public int getStartMinute() {
+            return 0;
+        }
+
+        @Override
+        public void trigger() {
+
+            Logger.info("start trigger " + this.getId());
+
+            try {
+                capacityForecastService.rebuild();
+            } catch (Exception e) {
+                Logger.error(this.getId() + " unexpected error", e);
+            }
+
+            Logger.info("end trigger " + this.getId());
+
+        }
+
+        @Override
+        public String getTriggerUrl() {
+            return null;
+        }
+
+    }
+
+    /**
+     * Rebuild the index of the search index service.
+     * 
+     */
+    class SearchIndexJobDescriptor implements IJobDescriptor {
+
+        @Inject
+        private ISearchIndexService searchIndexService;
+
+        @Override
+        public String getId() {
+            return "SearchIndex";
+        }
+
+        @Override
+        public String getName(String languageCode) {
+            return "Search index";
+        }
+
+        @Override
+        public String getDescription(String languageCode) {
+            return "Rebuild the index of the names and codes used by the search and the pickers.";
+        }
+
+        @Override
+        public Frequency getFrequency() {
+            return Frequency.DAILY;
+        }
+
+        @Override
+        public int getStartHour() {
+            return 3;
+        }
+
+        @Override
+        public int getStartMinute() {
+            return 30;
+        }
+
+        @Override
+        public void trigger() {
+
+            Logger.info("start trigger " + this.getId());
+
+            try {
+                searchIndexService.rebuild();
+            } catch (Exception e) {
+                Logger.error(this.getId() + " unexpected error", e);
             }
 
+            Logger.info("end trigger " + this.getId());
+
         }
 
         @Override
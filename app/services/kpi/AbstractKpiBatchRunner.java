@@ -0,0 +1,334 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package services.kpi;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import framework.services.account.IPreferenceManagerPlugin;
+import framework.services.kpi.Kpi;
+import framework.services.kpi.Kpi.DataType;
+import framework.services.script.IScriptService;
+import play.mvc.Http;
+
+/**
+ * Abstract KPI batch runner.
+ * 
+ * The ids given to {@link #computeAll} are split in chunks to keep the "IN"
+ * clauses of the grouped queries reasonable.
+ * 
+ * The per-object methods of {@link framework.services.kpi.IKpiRunner} compute
+ * only the requested value, except when the object belongs to the batch
+ * prepared for the current request (see {@link #prepareBatch}): in this case
+ * the values of all the objects of the batch are computed with
+ * {@link #computeAll} the first time the KPI is rendered, and kept in the
+ * request until the end of the rendering.
+ * 
+ * For the runners computing all the values of an object at once (those which
+ * don't override the single-value {@link #computeChunk}), the values of an
+ * object are computed once by evaluation: they are kept until the end of the
+ * request, or outside a request (for example in the KPI job) until each value
+ * has been requested once.
+ */
+public abstract class AbstractKpiBatchRunner implements IKpiBatchRunner {
+
+    private static final int CHUNK_SIZE = 500;
+
+    /**
+     * The key of the prepared batch in the arguments of the request context.
+     */
+    private static final String BATCH_CONTEXT_KEY = "services.kpi.batch";
+
+    /**
+     * The key of the values computed out of the batch in the arguments of the
+     * request context.
+     */
+    private static final String VALUES_CONTEXT_KEY = "services.kpi.values";
+
+    /**
+     * The max age (in milliseconds) of the values of an evaluation outside a
+     * request.
+     */
+    private static final long EVALUATION_MAX_AGE = 60000;
+
+    /**
+     * The last evaluation of the current thread outside a request.
+     */
+    private static final ThreadLocal<Evaluation> lastEvaluation = new ThreadLocal<>();
+
+    /**
+     * Compute the main and additional values of a chunk of objects.
+     * 
+     * @param preferenceManagerPlugin
+     *            the preference manager service
+     * @param scriptService
+     *            the script service
+     * @param kpi
+     *            the KPI
+     * @param objectIds
+     *            the object ids (not empty)
+     */
+    protected abstract Map<Long, KpiValues> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            List<Long> objectIds);
+
+    /**
+     * Compute one value of a chunk of objects.
+     * 
+     * By default the values are extracted from {@link #computeChunk}, with
+     * the values of the current evaluation of the objects if any: the runners
+     * for which each value comes from its own query must override it to run
+     * only the query of the requested value (an object missing from the
+     * returned map has a zero value).
+     * 
+     * @param preferenceManagerPlugin
+     *            the preference manager service
+     * @param scriptService
+     *            the script service
+     * @param kpi
+     *            the KPI
+     * @param dataType
+     *            the value to compute
+     * @param objectIds
+     *            the object ids (not empty)
+     */
+    protected Map<Long, BigDecimal> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            DataType dataType, List<Long> objectIds) {
+        Map<Long, BigDecimal> values = new HashMap<>();
+        for (Map.Entry<Long, KpiValues> entry : getEvaluatedValues(preferenceManagerPlugin, scriptService, kpi, dataType, objectIds).entrySet()) {
+            values.put(entry.getKey(), entry.getValue().get(dataType));
+        }
+        return values;
+    }
+
+    @Override
+    public Map<Long, KpiValues> computeAll(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            List<Long> objectIds) {
+        Map<Long, KpiValues> values = new HashMap<>();
+        for (int i = 0; i < objectIds.size(); i += CHUNK_SIZE) {
+            values.putAll(computeChunk(preferenceManagerPlugin, scriptService, kpi, objectIds.subList(i, Math.min(i + CHUNK_SIZE, objectIds.size()))));
+        }
+        return values;
+    }
+
+    @Override
+    public BigDecimal computeMain(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
+        return compute(preferenceManagerPlugin, scriptService, kpi, DataType.MAIN, objectId);
+    }
+
+    @Override
+    public BigDecimal computeAdditional1(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
+        return compute(preferenceManagerPlugin, scriptService, kpi, DataType.ADDITIONAL1, objectId);
+    }
+
+    @Override
+    public BigDecimal computeAdditional2(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
+        return compute(preferenceManagerPlugin, scriptService, kpi, DataType.ADDITIONAL2, objectId);
+    }
+
+    /**
+     * Declare the objects that are going to be rendered (for example the rows
+     * of a table page) by the current request, so that the KPI values of
+     * these objects are computed with one batch by KPI.
+     * 
+     * Nothing is done outside a request (for example in a scheduler).
+     * 
+     * @param objectIds
+     *            the object ids
+     */
+    public static void prepareBatch(Collection<Long> objectIds) {
+        Http.Context context = Http.Context.current.get();
+        if (context != null) {
+            context.args.put(BATCH_CONTEXT_KEY, new Batch(objectIds));
+        }
+    }
+
+    /**
+     * Compute one value of an object.
+     * 
+     * @param preferenceManagerPlugin
+     *            the preference manager service
+     * @param scriptService
+     *            the script service
+     * @param kpi
+     *            the KPI
+     * @param dataType
+     *            the value to compute
+     * @param objectId
+     *            the object id
+     */
+    private BigDecimal compute(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, DataType dataType,
+            Long objectId) {
+
+        Http.Context context = Http.Context.current.get();
+        Batch batch = context != null ? (Batch) context.args.get(BATCH_CONTEXT_KEY) : null;
+
+        if (batch != null && batch.objectIds.contains(objectId)) {
+            KpiValues values = batch.values.computeIfAbsent(this.getClass(),
+                    runnerClass -> computeAll(preferenceManagerPlugin, scriptService, kpi, new ArrayList<>(batch.objectIds))).get(objectId);
+            return values != null ? values.get(dataType) : null;
+        }
+
+        Map<Long, BigDecimal> values = computeChunk(preferenceManagerPlugin, scriptService, kpi, dataType, Collections.singletonList(objectId));
+        return values.containsKey(objectId) ? values.get(objectId) : BigDecimal.ZERO;
+    }
+
+    /**
+     * Get the values of some objects for a requested value: the values of the
+     * current evaluation of an object are reused, the others are computed with
+     * {@link #computeChunk} and start a new evaluation.
+     * 
+     * @param preferenceManagerPlugin
+     *            the preference manager service
+     * @param scriptService
+     *            the script service
+     * @param kpi
+     *            the KPI
+     * @param dataType
+     *            the requested value
+     * @param objectIds
+     *            the object ids
+     */
+    private Map<Long, KpiValues> getEvaluatedValues(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            DataType dataType, List<Long> objectIds) {
+
+        Http.Context context = Http.Context.current.get();
+        Map<Long, KpiValues> requestValues = null;
+        if (context != null) {
+            @SuppressWarnings("unchecked")
+            Map<Class<?>, Map<Long, KpiValues>> valuesByRunner = (Map<Class<?>, Map<Long, KpiValues>>) context.args.computeIfAbsent(VALUES_CONTEXT_KEY,
+                    key -> new HashMap<Class<?>, Map<Long, KpiValues>>());
+            requestValues = valuesByRunner.computeIfAbsent(this.getClass(), runnerClass -> new HashMap<>());
+        }
+
+        Map<Long, KpiValues> values = new HashMap<>();
+        List<Long> missingIds = new ArrayList<>();
+        for (Long objectId : objectIds) {
+            KpiValues objectValues = requestValues != null ? requestValues.get(objectId) : getLastEvaluationValues(dataType, objectId);
+            if (objectValues != null) {
+                values.put(objectId, objectValues);
+            } else {
+                missingIds.add(objectId);
+            }
+        }
+
+        if (!missingIds.isEmpty()) {
+            Map<Long, KpiValues> computed = computeChunk(preferenceManagerPlugin, scriptService, kpi, missingIds);
+            values.putAll(computed);
+            if (requestValues != null) {
+                requestValues.putAll(computed);
+            } else if (missingIds.size() == 1 && computed.containsKey(missingIds.get(0))) {
+                lastEvaluation.set(new Evaluation(this.getClass(), missingIds.get(0), computed.get(missingIds.get(0)), dataType));
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Get the values of the last evaluation of the current thread if it is
+     * the one of the object and the value has not been requested yet.
+     * 
+     * @param dataType
+     *            the requested value
+     * @param objectId
+     *            the object id
+     */
+    private KpiValues getLastEvaluationValues(DataType dataType, Long objectId) {
+        Evaluation evaluation = lastEvaluation.get();
+        if (evaluation != null && evaluation.runnerClass.equals(this.getClass()) && evaluation.objectId.equals(objectId)
+                && System.currentTimeMillis() - evaluation.time < EVALUATION_MAX_AGE && evaluation.requestedDataTypes.add(dataType)) {
+            return evaluation.values;
+        }
+        return null;
+    }
+
+    /**
+     * Get a total from a map of totals, zero if the object has no total.
+     * 
+     * @param totals
+     *            the totals by object id
+     * @param objectId
+     *            the object id
+     */
+    protected static BigDecimal get(Map<Long, BigDecimal> totals, Long objectId) {
+        BigDecimal total = totals.get(objectId);
+        return total != null ? total : BigDecimal.ZERO;
+    }
+
+    /**
+     * The objects rendered by a request and their KPI values.
+     */
+    private static class Batch {
+
+        private final Set<Long> objectIds;
+        private final Map<Class<?>, Map<Long, KpiValues>> values = new HashMap<>();
+
+        /**
+         * Construct a batch.
+         * 
+         * @param objectIds
+         *            the object ids
+         */
+        private Batch(Collection<Long> objectIds) {
+            this.objectIds = new LinkedHashSet<>(objectIds);
+        }
+
+    }
+
+    /**
+     * The values of an object computed outside a request, with the values
+     * already requested.
+     */
+    private static class Evaluation {
+
+        private final Class<?> runnerClass;
+        private final Long objectId;
+        private final KpiValues values;
+        private final Set<DataType> requestedDataTypes = EnumSet.noneOf(DataType.class);
+        private final long time = System.currentTimeMillis();
+
+        /**
+         * Construct an evaluation.
+         * 
+         * @param runnerClass
+         *            the runner class
+         * @param objectId
+         *            the object id
+         * @param values
+         *            the values of the object
+         * @param dataType
+         *            the first requested value
+         */
+        private Evaluation(Class<?> runnerClass, Long objectId, KpiValues values, DataType dataType) {
+            this.runnerClass = runnerClass;
+            this.objectId = objectId;
+            this.values = values;
+            this.requestedDataTypes.add(dataType);
+        }
+
+    }
+
+}
@@ -0,0 +1,69 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package services.kpi;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import framework.services.account.IPreferenceManagerPlugin;
+import framework.services.kpi.Kpi;
+import framework.services.script.IScriptService;
+import play.Play;
+import services.delivery.IRequirementStatisticsService;
+import services.delivery.RequirementStatistics;
+
+/**
+ * An abstract KPI computed from the requirement statistics of the portfolio
+ * entries (all the values of a chunk are computed from the same statistics).
+ * 
+ * The statistics are always computed (the cache of the statistics is not
+ * read), so that the stored KPI values are not stale when a requirement has
+ * been changed without invalidation of the cache (for example by a plugin).
+ */
+public abstract class AbstractRequirementKpi extends AbstractKpiBatchRunner {
+
+    /**
+     * Compute the main and additional values from the requirement statistics
+     * of a portfolio entry.
+     * 
+     * @param statistics
+     *            the requirement statistics
+     */
+    protected abstract KpiValues compute(RequirementStatistics statistics);
+
+    @Override
+    protected Map<Long, KpiValues> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            List<Long> objectIds) {
+        Map<Long, RequirementStatistics> statistics = getRequirementStatisticsService().computeStatistics(objectIds);
+
+        Map<Long, KpiValues> values = new HashMap<>();
+        for (Long objectId : objectIds) {
+            values.put(objectId, compute(statistics.get(objectId)));
+        }
+        return values;
+    }
+
+    /**
+     * Get the requirement statistics service.
+     */
+    private static IRequirementStatisticsService getRequirementStatisticsService() {
+        return Play.application().injector().instanceOf(IRequirementStatisticsService.class);
+    }
+
+}
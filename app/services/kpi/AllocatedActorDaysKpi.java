@@ -19,42 +19,50 @@ package services.kpi;
 
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.tuple.Pair;
 
 import dao.finance.PortfolioEntryResourcePlanDAO;
-import dao.pmo.PortfolioEntryDao;
 import framework.services.account.IPreferenceManagerPlugin;
-import framework.services.kpi.IKpiRunner;
 import framework.services.kpi.Kpi;
+import framework.services.kpi.Kpi.DataType;
 import framework.services.script.IScriptService;
 import models.framework_models.kpi.KpiData;
-import models.pmo.PortfolioEntry;
 
 /**
  * The "Allocated actor days" KPI computation class.
  * 
  * @author Johann Kohler
  */
-public class AllocatedActorDaysKpi implements IKpiRunner {
+public class AllocatedActorDaysKpi extends AbstractKpiBatchRunner {
 
     @Override
-    public BigDecimal computeMain(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        PortfolioEntry portfolioEntry = PortfolioEntryDao.getPEById(objectId);
-        return PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsDaysByPEAndConfirmed(portfolioEntry, null);
-    }
+    protected Map<Long, KpiValues> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            List<Long> objectIds) {
+        Map<Long, BigDecimal> mainValues = PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsDaysMapByPEAndConfirmed(objectIds, null);
+        Map<Long, BigDecimal> additional1Values = PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsDaysMapByPEAndConfirmed(objectIds, true);
+        Map<Long, BigDecimal> additional2Values = PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsDaysMapByPEAndConfirmed(objectIds, false);
 
-    @Override
-    public BigDecimal computeAdditional1(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        PortfolioEntry portfolioEntry = PortfolioEntryDao.getPEById(objectId);
-        return PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsDaysByPEAndConfirmed(portfolioEntry, true);
+        Map<Long, KpiValues> values = new HashMap<>();
+        for (Long objectId : objectIds) {
+            values.put(objectId, new KpiValues(get(mainValues, objectId), get(additional1Values, objectId), get(additional2Values, objectId)));
+        }
+        return values;
     }
 
     @Override
-    public BigDecimal computeAdditional2(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        PortfolioEntry portfolioEntry = PortfolioEntryDao.getPEById(objectId);
-        return PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsDaysByPEAndConfirmed(portfolioEntry, false);
+    protected Map<Long, BigDecimal> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            DataType dataType, List<Long> objectIds) {
+        Boolean isConfirmed = null;
+        if (dataType == DataType.ADDITIONAL1) {
+            isConfirmed = true;
+        } else if (dataType == DataType.ADDITIONAL2) {
+            isConfirmed = false;
+        }
+        return PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsDaysMapByPEAndConfirmed(objectIds, isConfirmed);
     }
 
     @Override
@@ -19,45 +19,61 @@ package services.kpi;
 
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.tuple.Pair;
 
 import dao.finance.PortfolioEntryResourcePlanDAO;
-import dao.pmo.PortfolioEntryDao;
 import framework.services.account.IPreferenceManagerPlugin;
-import framework.services.kpi.IKpiRunner;
 import framework.services.kpi.Kpi;
+import framework.services.kpi.Kpi.DataType;
 import framework.services.script.IScriptService;
 import models.framework_models.kpi.KpiData;
-import models.pmo.PortfolioEntry;
 
 /**
  * The "Allocated org unit days" KPI computation class.
  * 
  * @author Johann Kohler
  */
-public class AllocatedOrgUnitDaysKpi implements IKpiRunner {
+public class AllocatedOrgUnitDaysKpi extends AbstractKpiBatchRunner {
 
     @Override
-    public BigDecimal computeMain(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        PortfolioEntry portfolioEntry = PortfolioEntryDao.getPEById(objectId);
-        return PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitAsDaysByPE(portfolioEntry, null)
-                .add(PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedCompetencyAsDaysByPortfolioEntry(portfolioEntry, null));
-    }
+    protected Map<Long, KpiValues> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            List<Long> objectIds) {
+        Map<Long, BigDecimal> orgUnitDays = PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitAsDaysMapByPE(objectIds, null);
+        Map<Long, BigDecimal> confirmedOrgUnitDays = PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitAsDaysMapByPE(objectIds, true);
+        Map<Long, BigDecimal> notConfirmedOrgUnitDays = PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitAsDaysMapByPE(objectIds, false);
+        Map<Long, BigDecimal> competencyDays = PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedCompetencyAsDaysMapByPE(objectIds, null);
+        Map<Long, BigDecimal> confirmedCompetencyDays = PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedCompetencyAsDaysMapByPE(objectIds, true);
+        Map<Long, BigDecimal> notConfirmedCompetencyDays = PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedCompetencyAsDaysMapByPE(objectIds, false);
 
-    @Override
-    public BigDecimal computeAdditional1(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        PortfolioEntry portfolioEntry = PortfolioEntryDao.getPEById(objectId);
-        return PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitAsDaysByPE(portfolioEntry, true)
-                .add(PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedCompetencyAsDaysByPortfolioEntry(portfolioEntry, true));
+        Map<Long, KpiValues> values = new HashMap<>();
+        for (Long objectId : objectIds) {
+            values.put(objectId,
+                    new KpiValues(get(orgUnitDays, objectId).add(get(competencyDays, objectId)),
+                            get(confirmedOrgUnitDays, objectId).add(get(confirmedCompetencyDays, objectId)),
+                            get(notConfirmedOrgUnitDays, objectId).add(get(notConfirmedCompetencyDays, objectId))));
+        }
+        return values;
     }
 
     @Override
-    public BigDecimal computeAdditional2(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        PortfolioEntry portfolioEntry = PortfolioEntryDao.getPEById(objectId);
-        return PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitAsDaysByPE(portfolioEntry, false)
-                .add(PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedCompetencyAsDaysByPortfolioEntry(portfolioEntry, false));
+    protected Map<Long, BigDecimal> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            DataType dataType, List<Long> objectIds) {
+        Boolean isConfirmed = null;
+        if (dataType == DataType.ADDITIONAL1) {
+            isConfirmed = true;
+        } else if (dataType == DataType.ADDITIONAL2) {
+            isConfirmed = false;
+        }
+        Map<Long, BigDecimal> values = PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitAsDaysMapByPE(objectIds, isConfirmed);
+        for (Map.Entry<Long, BigDecimal> entry : PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedCompetencyAsDaysMapByPE(objectIds, isConfirmed)
+                .entrySet()) {
+            values.merge(entry.getKey(), entry.getValue(), BigDecimal::add);
+        }
+        return values;
     }
 
     @Override
@@ -19,15 +19,17 @@ package services.kpi;
 
 import dao.pmo.PortfolioEntryDao;
 import framework.services.account.IPreferenceManagerPlugin;
-import framework.services.kpi.IKpiRunner;
 import framework.services.kpi.Kpi;
 import framework.services.script.IScriptService;
 import models.framework_models.kpi.KpiData;
+import utils.finance.FinancialAmounts;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -35,20 +37,20 @@ import java.util.List;
  *
  * @author Guillaume Petit
  */
-public class BudgetCapexOpexKpi implements IKpiRunner {
+public class BudgetCapexOpexKpi extends AbstractKpiBatchRunner {
     @Override
-    public BigDecimal computeMain(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(PortfolioEntryDao.getPEAsBudgetAmountByOpex(objectId, true) + PortfolioEntryDao.getPEAsBudgetAmountByOpex(objectId, false));
-    }
+    protected Map<Long, KpiValues> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            List<Long> objectIds) {
+        Map<Long, FinancialAmounts> amounts = PortfolioEntryDao.getPEAsFinancialAmountsMapByPE(preferenceManagerPlugin, objectIds);
 
-    @Override
-    public BigDecimal computeAdditional1(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(PortfolioEntryDao.getPEAsBudgetAmountByOpex(objectId, false));
-    }
-
-    @Override
-    public BigDecimal computeAdditional2(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(PortfolioEntryDao.getPEAsBudgetAmountByOpex(objectId, true));
+        Map<Long, KpiValues> values = new HashMap<>();
+        for (Long objectId : objectIds) {
+            FinancialAmounts objectAmounts = amounts.get(objectId);
+            Double capex = objectAmounts.getBudget(false, null);
+            Double opex = objectAmounts.getBudget(true, null);
+            values.put(objectId, new KpiValues(new BigDecimal(opex + capex), new BigDecimal(capex), new BigDecimal(opex)));
+        }
+        return values;
     }
 
     @Override
@@ -19,15 +19,17 @@ package services.kpi;
 
 import dao.pmo.PortfolioEntryDao;
 import framework.services.account.IPreferenceManagerPlugin;
-import framework.services.kpi.IKpiRunner;
 import framework.services.kpi.Kpi;
 import framework.services.script.IScriptService;
 import models.framework_models.kpi.KpiData;
+import utils.finance.FinancialAmounts;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -35,20 +37,20 @@ import java.util.List;
  *
  * @author Guillaume Petit
  */
-public class BudgetInternalExternalKpi implements IKpiRunner {
+public class BudgetInternalExternalKpi extends AbstractKpiBatchRunner {
     @Override
-    public BigDecimal computeMain(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(PortfolioEntryDao.getPEAsBudgetAmountByOpex(objectId, null, true) + PortfolioEntryDao.getPEAsBudgetAmountByOpex(objectId, null, false));
-    }
+    protected Map<Long, KpiValues> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            List<Long> objectIds) {
+        Map<Long, FinancialAmounts> amounts = PortfolioEntryDao.getPEAsFinancialAmountsMapByPE(preferenceManagerPlugin, objectIds);
 
-    @Override
-    public BigDecimal computeAdditional1(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(PortfolioEntryDao.getPEAsBudgetAmountByOpex(objectId, null, true));
-    }
-
-    @Override
-    public BigDecimal computeAdditional2(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(PortfolioEntryDao.getPEAsBudgetAmountByOpex(objectId, null, false));
+        Map<Long, KpiValues> values = new HashMap<>();
+        for (Long objectId : objectIds) {
+            FinancialAmounts objectAmounts = amounts.get(objectId);
+            Double internal = objectAmounts.getBudget(null, true);
+            Double external = objectAmounts.getBudget(null, false);
+            values.put(objectId, new KpiValues(new BigDecimal(internal + external), new BigDecimal(internal), new BigDecimal(external)));
+        }
+        return values;
     }
 
     @Override
@@ -23,33 +23,23 @@ import java.util.List;
 
 import org.apache.commons.lang3.tuple.Pair;
 
-import dao.delivery.RequirementDAO;
 import framework.services.account.IPreferenceManagerPlugin;
-import framework.services.kpi.IKpiRunner;
 import framework.services.kpi.Kpi;
 import framework.services.script.IScriptService;
 import models.framework_models.kpi.KpiData;
+import services.delivery.RequirementStatistics;
 
 /**
  * The "Defect number" KPI computation class.
  * 
  * @author Johann Kohler
  */
-public class DefectNumberKpi implements IKpiRunner {
+public class DefectNumberKpi extends AbstractRequirementKpi {
 
     @Override
-    public BigDecimal computeMain(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(RequirementDAO.getRequirementAsOpenDefectCountByPE(objectId, null));
-    }
-
-    @Override
-    public BigDecimal computeAdditional1(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(RequirementDAO.getRequirementAsOpenDefectCountByPE(objectId, true));
-    }
-
-    @Override
-    public BigDecimal computeAdditional2(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(RequirementDAO.getRequirementAsOpenDefectCountByPE(objectId, false));
+    protected KpiValues compute(RequirementStatistics statistics) {
+        return new KpiValues(BigDecimal.valueOf(statistics.getOpenDefectsCount(null)), BigDecimal.valueOf(statistics.getOpenDefectsCount(true)),
+                BigDecimal.valueOf(statistics.getOpenDefectsCount(false)));
     }
 
     @Override
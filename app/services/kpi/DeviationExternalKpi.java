@@ -19,45 +19,45 @@ package services.kpi;
 
 import dao.pmo.PortfolioEntryDao;
 import framework.services.account.IPreferenceManagerPlugin;
-import framework.services.kpi.IKpiRunner;
 import framework.services.kpi.Kpi;
 import framework.services.script.IScriptService;
 import models.framework_models.kpi.KpiData;
+import utils.finance.FinancialAmounts;
 import org.apache.commons.lang3.tuple.Pair;
-import utils.finance.Totals;
 
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The "Deviation CAPEX" KPI computation class.
  * 
  * @author Johann Kohler
  */
-public class DeviationExternalKpi implements IKpiRunner {
+public class DeviationExternalKpi extends AbstractKpiBatchRunner {
 
     @Override
-    public BigDecimal computeMain(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        Double budget = PortfolioEntryDao.getPEAsBudgetAmountByOpex(objectId, null, false);
-        Double actual = PortfolioEntryDao.getPEAsEngagedAmountByOpex(preferenceManagerPlugin, objectId, null,  false);
-        Double toComplete = PortfolioEntryDao.getPEAsCostToCompleteAmountByOpex(preferenceManagerPlugin, objectId, null, false);
-        if (budget != null && budget > 0) {
-            return new BigDecimal((actual + toComplete - budget) / budget * 100);
-        } else {
-            return null;
-        }
-    }
+    protected Map<Long, KpiValues> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            List<Long> objectIds) {
+        Map<Long, FinancialAmounts> amounts = PortfolioEntryDao.getPEAsFinancialAmountsMapByPE(preferenceManagerPlugin, objectIds);
 
-    @Override
-    public BigDecimal computeAdditional1(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(PortfolioEntryDao.getPEAsBudgetAmountByOpex(objectId, null, false));
-    }
+        Map<Long, KpiValues> values = new HashMap<>();
+        for (Long objectId : objectIds) {
+            FinancialAmounts objectAmounts = amounts.get(objectId);
+            Double budget = objectAmounts.getBudget(null, false);
+            Double engaged = objectAmounts.getEngaged(null, false);
+            Double toComplete = objectAmounts.getCostToComplete(null, false);
 
-    @Override
-    public BigDecimal computeAdditional2(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(PortfolioEntryDao.getPEAsCostToCompleteAmountByOpex(preferenceManagerPlugin, objectId, null, false)
-                + PortfolioEntryDao.getPEAsEngagedAmountByOpex(preferenceManagerPlugin, objectId, null, false));
+            BigDecimal main = null;
+            if (budget != null && budget > 0) {
+                main = new BigDecimal((engaged + toComplete - budget) / budget * 100);
+            }
+
+            values.put(objectId, new KpiValues(main, new BigDecimal(budget), new BigDecimal(toComplete + engaged)));
+        }
+        return values;
     }
 
     @Override
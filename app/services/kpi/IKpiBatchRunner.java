@@ -0,0 +1,51 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package services.kpi;
+
+import java.util.List;
+import java.util.Map;
+
+import framework.services.account.IPreferenceManagerPlugin;
+import framework.services.kpi.IKpiRunner;
+import framework.services.kpi.Kpi;
+import framework.services.script.IScriptService;
+
+/**
+ * A KPI runner which is able to compute the values of a whole set of objects
+ * with a few grouped queries (instead of a few queries per object).
+ */
+public interface IKpiBatchRunner extends IKpiRunner {
+
+    /**
+     * Compute the main and additional values of a set of objects.
+     * 
+     * @param preferenceManagerPlugin
+     *            the preference manager service
+     * @param scriptService
+     *            the script service
+     * @param kpi
+     *            the KPI
+     * @param objectIds
+     *            the object ids
+     * 
+     * @return the values by object id (an entry is returned for each given
+     *         object id)
+     */
+    Map<Long, KpiValues> computeAll(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, List<Long> objectIds);
+
+}
@@ -0,0 +1,88 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package services.kpi;
+
+import java.math.BigDecimal;
+
+import framework.services.kpi.Kpi.DataType;
+
+/**
+ * The values computed by a KPI runner for one object: the main value and the
+ * two additional values.
+ */
+public class KpiValues {
+
+    private final BigDecimal main;
+    private final BigDecimal additional1;
+    private final BigDecimal additional2;
+
+    /**
+     * Construct the values.
+     * 
+     * @param main
+     *            the main value
+     * @param additional1
+     *            the additional1 value
+     * @param additional2
+     *            the additional2 value
+     */
+    public KpiValues(BigDecimal main, BigDecimal additional1, BigDecimal additional2) {
+        this.main = main;
+        this.additional1 = additional1;
+        this.additional2 = additional2;
+    }
+
+    /**
+     * Get the main value.
+     */
+    public BigDecimal getMain() {
+        return main;
+    }
+
+    /**
+     * Get the additional1 value.
+     */
+    public BigDecimal getAdditional1() {
+        return additional1;
+    }
+
+    /**
+     * Get the additional2 value.
+     */
+    public BigDecimal getAdditional2() {
+        return additional2;
+    }
+
+    /**
+     * Get a value by type.
+     * 
+     * @param dataType
+     *            the value type
+     */
+    public BigDecimal get(DataType dataType) {
+        switch (dataType) {
+        case ADDITIONAL1:
+            return additional1;
+        case ADDITIONAL2:
+            return additional2;
+        default:
+            return main;
+        }
+    }
+
+}
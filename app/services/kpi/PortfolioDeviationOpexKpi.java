@@ -19,16 +19,18 @@ package services.kpi;
 
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.tuple.Pair;
 
 import dao.pmo.PortfolioDao;
 import framework.services.account.IPreferenceManagerPlugin;
-import framework.services.kpi.IKpiRunner;
 import framework.services.kpi.Kpi;
 import framework.services.script.IScriptService;
 import models.framework_models.kpi.KpiData;
+import utils.finance.FinancialAmounts;
 import utils.finance.Totals;
 
 /**
@@ -36,30 +38,22 @@ import utils.finance.Totals;
  * 
  * @author Johann Kohler
  */
-public class PortfolioDeviationOpexKpi implements IKpiRunner {
+public class PortfolioDeviationOpexKpi extends AbstractKpiBatchRunner {
 
     @Override
-    public BigDecimal computeMain(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        Totals totals = new Totals(PortfolioDao.getPortfolioAsBudgetAmountByOpex(objectId, true), 0.0,
-                PortfolioDao.getPortfolioAsCostToCompleteAmountByOpex(preferenceManagerPlugin, objectId, true), 0.0,
-                PortfolioDao.getPortfolioAsEngagedAmountByOpex(preferenceManagerPlugin, objectId, true), 0.0);
-        Double deviation = totals.getDeviationRate(true);
-        if (deviation != null) {
-            return new BigDecimal(totals.getDeviationRate(true));
-        } else {
-            return null;
-        }
-    }
+    protected Map<Long, KpiValues> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            List<Long> objectIds) {
+        Map<Long, FinancialAmounts> amounts = PortfolioDao.getPortfolioAsFinancialAmountsMap(preferenceManagerPlugin, objectIds);
 
-    @Override
-    public BigDecimal computeAdditional1(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(PortfolioDao.getPortfolioAsBudgetAmountByOpex(objectId, true));
-    }
-
-    @Override
-    public BigDecimal computeAdditional2(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(PortfolioDao.getPortfolioAsCostToCompleteAmountByOpex(preferenceManagerPlugin, objectId, true)
-                + PortfolioDao.getPortfolioAsEngagedAmountByOpex(preferenceManagerPlugin, objectId, true));
+        Map<Long, KpiValues> values = new HashMap<>();
+        for (Long objectId : objectIds) {
+            FinancialAmounts objectAmounts = amounts.get(objectId);
+            Totals totals = objectAmounts.getTotals(null);
+            Double deviation = totals.getDeviationRate(true);
+            values.put(objectId, new KpiValues(deviation != null ? new BigDecimal(deviation) : null, new BigDecimal(objectAmounts.getBudget(true, null)),
+                    new BigDecimal(totals.getForecast(true))));
+        }
+        return values;
     }
 
     @Override
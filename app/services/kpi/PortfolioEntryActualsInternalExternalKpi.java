@@ -19,42 +19,41 @@ package services.kpi;
 
 import dao.pmo.PortfolioEntryDao;
 import framework.services.account.IPreferenceManagerPlugin;
-import framework.services.kpi.IKpiRunner;
 import framework.services.kpi.Kpi;
 import framework.services.script.IScriptService;
 import models.framework_models.kpi.KpiData;
+import utils.finance.FinancialAmounts;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Actuals KPI computation class.
  * 
  * @author Pierre-Yves Cloux
  */
-public class PortfolioEntryActualsInternalExternalKpi implements IKpiRunner {
+public class PortfolioEntryActualsInternalExternalKpi extends AbstractKpiBatchRunner {
 
     @Override
-    public BigDecimal computeMain(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        Double entryEngagedInternal = PortfolioEntryDao.getPEAsEngagedAmountByOpex(preferenceManagerPlugin, objectId, null, true);
-        Double entryEngagedExternal = PortfolioEntryDao.getPEAsEngagedAmountByOpex(preferenceManagerPlugin, objectId, null, false);
-        BigDecimal engaged = (new BigDecimal(entryEngagedInternal + entryEngagedExternal)).setScale(2, RoundingMode.HALF_UP);;
-        return engaged;
-    }
+    protected Map<Long, KpiValues> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            List<Long> objectIds) {
+        Map<Long, FinancialAmounts> amounts = PortfolioEntryDao.getPEAsFinancialAmountsMapByPE(preferenceManagerPlugin, objectIds);
 
-    @Override
-    public BigDecimal computeAdditional1(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        Double entryEngagedInternal = PortfolioEntryDao.getPEAsEngagedAmountByOpex(preferenceManagerPlugin, objectId, null, true);
-        return (new BigDecimal(entryEngagedInternal)).setScale(2, RoundingMode.HALF_UP);
-    }
-
-    @Override
-    public BigDecimal computeAdditional2(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        Double entryEngagedExternal = PortfolioEntryDao.getPEAsEngagedAmountByOpex(preferenceManagerPlugin, objectId, null, false);
-        return (new BigDecimal(entryEngagedExternal)).setScale(2, RoundingMode.HALF_UP);
+        Map<Long, KpiValues> values = new HashMap<>();
+        for (Long objectId : objectIds) {
+            FinancialAmounts objectAmounts = amounts.get(objectId);
+            Double entryEngagedInternal = objectAmounts.getEngaged(null, true);
+            Double entryEngagedExternal = objectAmounts.getEngaged(null, false);
+            values.put(objectId, new KpiValues(new BigDecimal(entryEngagedInternal + entryEngagedExternal).setScale(2, RoundingMode.HALF_UP),
+                    new BigDecimal(entryEngagedInternal).setScale(2, RoundingMode.HALF_UP),
+                    new BigDecimal(entryEngagedExternal).setScale(2, RoundingMode.HALF_UP)));
+        }
+        return values;
     }
 
     @Override
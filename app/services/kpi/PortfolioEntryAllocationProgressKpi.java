@@ -20,51 +20,63 @@ package services.kpi;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.tuple.Pair;
 
 import dao.finance.PortfolioEntryResourcePlanDAO;
-import dao.pmo.PortfolioEntryDao;
 import dao.timesheet.TimesheetDao;
 import framework.services.account.IPreferenceManagerPlugin;
-import framework.services.kpi.IKpiRunner;
 import framework.services.kpi.Kpi;
+import framework.services.kpi.Kpi.DataType;
 import framework.services.script.IScriptService;
 import models.framework_models.kpi.KpiData;
-import models.pmo.PortfolioEntry;
 
 /**
  * The "Portfolio entry allocation progress" KPI computation class.
  * 
  * @author Johann Kohler
  */
-public class PortfolioEntryAllocationProgressKpi implements IKpiRunner {
+public class PortfolioEntryAllocationProgressKpi extends AbstractKpiBatchRunner {
 
     @Override
-    public BigDecimal computeMain(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-
-        BigDecimal timesheetedDays = computeAdditional1(preferenceManagerPlugin, scriptService, kpi, objectId).setScale(2, RoundingMode.HALF_UP);
-
-        BigDecimal forecastDays = computeAdditional2(preferenceManagerPlugin, scriptService, kpi, objectId);
-
-        if (forecastDays.compareTo(BigDecimal.ZERO) > 0) {
-            return timesheetedDays.divide(forecastDays, 2, RoundingMode.HALF_UP).multiply(new BigDecimal(100));
+    protected Map<Long, KpiValues> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            List<Long> objectIds) {
+        Map<Long, BigDecimal> timesheetedHours = TimesheetDao.getTimesheetLogAsTotalHoursMapByPE(objectIds);
+        Map<Long, BigDecimal> forecastDays = PortfolioEntryResourcePlanDAO.getPEResourcePlanAsForecastDaysMapByPE(objectIds);
+
+        Map<Long, KpiValues> values = new HashMap<>();
+        for (Long objectId : objectIds) {
+            BigDecimal timesheetedDays = convertInDays(get(timesheetedHours, objectId), preferenceManagerPlugin);
+            BigDecimal forecast = get(forecastDays, objectId);
+
+            BigDecimal main = null;
+            if (forecast.compareTo(BigDecimal.ZERO) > 0) {
+                main = timesheetedDays.setScale(2, RoundingMode.HALF_UP).divide(forecast, 2, RoundingMode.HALF_UP).multiply(new BigDecimal(100));
+            }
+
+            values.put(objectId, new KpiValues(main, timesheetedDays, forecast));
         }
-
-        return null;
-
+        return values;
     }
 
     @Override
-    public BigDecimal computeAdditional1(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return convertInDays(TimesheetDao.getTimesheetLogAsTotalHoursByPE(objectId), preferenceManagerPlugin);
-    }
-
-    @Override
-    public BigDecimal computeAdditional2(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        PortfolioEntry portfolioEntry = PortfolioEntryDao.getPEById(objectId);
-        return PortfolioEntryResourcePlanDAO.getPEResourcePlanAsForecastDaysByPE(portfolioEntry);
+    protected Map<Long, BigDecimal> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            DataType dataType, List<Long> objectIds) {
+        switch (dataType) {
+        case ADDITIONAL1:
+            Map<Long, BigDecimal> timesheetedDays = new HashMap<>();
+            for (Map.Entry<Long, BigDecimal> entry : TimesheetDao.getTimesheetLogAsTotalHoursMapByPE(objectIds).entrySet()) {
+                timesheetedDays.put(entry.getKey(), convertInDays(entry.getValue(), preferenceManagerPlugin));
+            }
+            return timesheetedDays;
+        case ADDITIONAL2:
+            return PortfolioEntryResourcePlanDAO.getPEResourcePlanAsForecastDaysMapByPE(objectIds);
+        default:
+            return super.computeChunk(preferenceManagerPlugin, scriptService, kpi, dataType, objectIds);
+        }
     }
 
     @Override
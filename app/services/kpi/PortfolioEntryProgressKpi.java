@@ -20,20 +20,21 @@ package services.kpi;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.tuple.Pair;
 
 import constants.IMafConstants;
 import dao.finance.PortfolioEntryResourcePlanDAO;
-import dao.pmo.PortfolioEntryDao;
+import dao.pmo.PortfolioEntryPlanningPackageDao;
 import dao.timesheet.TimesheetDao;
 import framework.services.account.IPreferenceManagerPlugin;
-import framework.services.kpi.IKpiRunner;
 import framework.services.kpi.Kpi;
+import framework.services.kpi.Kpi.DataType;
 import framework.services.script.IScriptService;
 import models.framework_models.kpi.KpiData;
-import models.pmo.PortfolioEntry;
 import models.pmo.PortfolioEntryPlanningPackage;
 
 /**
@@ -41,63 +42,64 @@ import models.pmo.PortfolioEntryPlanningPackage;
  * 
  * @author Johann Kohler
  */
-public class PortfolioEntryProgressKpi implements IKpiRunner {
+public class PortfolioEntryProgressKpi extends AbstractKpiBatchRunner {
 
     @Override
-    public BigDecimal computeMain(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        PortfolioEntry portfolioEntry = PortfolioEntryDao.getPEById(objectId);
-
-        BigDecimal numerator = BigDecimal.ZERO;
-        BigDecimal denominator = BigDecimal.ZERO;
-        BigDecimal value = new BigDecimal(100);
-
-        for (PortfolioEntryPlanningPackage planningPackage : portfolioEntry.planningPackages) {
-
-            BigDecimal days = PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsDaysByPlanningPackage(planningPackage)
-                    .add(PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitAsDaysByPlanningPackage(planningPackage))
-                    .add(PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedCompetencyAsDaysByPlanningPackage(planningPackage));
-
-            denominator = denominator.add(days);
-
-            switch (planningPackage.status) {
-            case CLOSED:
-                numerator = numerator.add(days);
-                break;
-            case ON_GOING:
-                numerator = numerator.add(days.multiply(getOnGoingRate(preferenceManagerPlugin)));
-                break;
-            default:
-                break;
-            }
-
+    protected Map<Long, KpiValues> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            List<Long> objectIds) {
+        Pair<Map<Long, BigDecimal>, Map<Long, BigDecimal>> progress = computeProgress(preferenceManagerPlugin, objectIds);
+        Map<Long, BigDecimal> timesheetedDays = computeTimesheetedDays(preferenceManagerPlugin, objectIds);
+
+        Map<Long, KpiValues> values = new HashMap<>();
+        for (Long objectId : objectIds) {
+            values.put(objectId, new KpiValues(get(progress.getLeft(), objectId), get(progress.getRight(), objectId), get(timesheetedDays, objectId)));
         }
+        return values;
+    }
 
-        if (!denominator.equals(BigDecimal.ZERO)) {
-            value = numerator.divide(denominator, RoundingMode.HALF_UP).multiply(value);
+    @Override
+    protected Map<Long, BigDecimal> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            DataType dataType, List<Long> objectIds) {
+        switch (dataType) {
+        case ADDITIONAL1:
+            return computeProgress(preferenceManagerPlugin, objectIds).getRight();
+        case ADDITIONAL2:
+            return computeTimesheetedDays(preferenceManagerPlugin, objectIds);
+        default:
+            return computeProgress(preferenceManagerPlugin, objectIds).getLeft();
         }
-
-        return value;
     }
 
-    @Override
-    public BigDecimal computeAdditional1(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
+    /**
+     * Compute the progress rate (left) and the progress days (right) of some
+     * portfolio entries from the days and the status of their planning
+     * packages.
+     * 
+     * @param preferenceManagerPlugin
+     *            the preference manager service
+     * @param objectIds
+     *            the portfolio entry ids
+     */
+    private Pair<Map<Long, BigDecimal>, Map<Long, BigDecimal>> computeProgress(IPreferenceManagerPlugin preferenceManagerPlugin, List<Long> objectIds) {
+        BigDecimal onGoingRate = getOnGoingRate(preferenceManagerPlugin);
 
-        PortfolioEntry portfolioEntry = PortfolioEntryDao.getPEById(objectId);
+        Map<Long, BigDecimal> packagesDays = PortfolioEntryResourcePlanDAO.getPEResourcePlanAsDaysMapByPlanningPackage(objectIds);
 
-        BigDecimal numerator = BigDecimal.ZERO;
+        Map<Long, BigDecimal> numerators = new HashMap<>();
+        Map<Long, BigDecimal> denominators = new HashMap<>();
+        for (PortfolioEntryPlanningPackage planningPackage : PortfolioEntryPlanningPackageDao.getPEPlanningPackageAsListByPEs(objectIds)) {
 
-        for (PortfolioEntryPlanningPackage planningPackage : portfolioEntry.planningPackages) {
+            Long portfolioEntryId = planningPackage.portfolioEntry.id;
+            BigDecimal days = get(packagesDays, planningPackage.id);
 
-            BigDecimal days = PortfolioEntryResourcePlanDAO.getPEPlanAllocatedActorAsDaysByPlanningPackage(planningPackage)
-                    .add(PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedOrgUnitAsDaysByPlanningPackage(planningPackage))
-                    .add(PortfolioEntryResourcePlanDAO.getPEResourcePlanAllocatedCompetencyAsDaysByPlanningPackage(planningPackage));
+            denominators.merge(portfolioEntryId, days, BigDecimal::add);
 
             switch (planningPackage.status) {
             case CLOSED:
-                numerator = numerator.add(days);
+                numerators.merge(portfolioEntryId, days, BigDecimal::add);
                 break;
             case ON_GOING:
-                numerator = numerator.add(days.multiply(getOnGoingRate(preferenceManagerPlugin)));
+                numerators.merge(portfolioEntryId, days.multiply(onGoingRate), BigDecimal::add);
                 break;
             default:
                 break;
@@ -105,20 +107,39 @@ public class PortfolioEntryProgressKpi implements IKpiRunner {
 
         }
 
-        return numerator;
-    }
-
-    @Override
-    public BigDecimal computeAdditional2(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        PortfolioEntry portfolioEntry = PortfolioEntryDao.getPEById(objectId);
+        Map<Long, BigDecimal> rates = new HashMap<>();
+        Map<Long, BigDecimal> progressDays = new HashMap<>();
+        for (Long objectId : objectIds) {
+            BigDecimal numerator = get(numerators, objectId);
+            BigDecimal denominator = get(denominators, objectId);
 
-        BigDecimal value = BigDecimal.ZERO;
+            BigDecimal rate = new BigDecimal(100);
+            if (!denominator.equals(BigDecimal.ZERO)) {
+                rate = numerator.divide(denominator, RoundingMode.HALF_UP).multiply(rate);
+            }
 
-        for (PortfolioEntryPlanningPackage planningPackage : portfolioEntry.planningPackages) {
-            value = value.add(TimesheetDao.getTimesheetLogAsTotalHoursByPEPlanningPackage(planningPackage));
+            rates.put(objectId, rate);
+            progressDays.put(objectId, numerator);
         }
+        return Pair.of(rates, progressDays);
+    }
 
-        return value.divide(TimesheetDao.getTimesheetReportHoursPerDay(preferenceManagerPlugin), RoundingMode.HALF_UP);
+    /**
+     * Compute the timesheeted days on the planning packages of some portfolio
+     * entries.
+     * 
+     * @param preferenceManagerPlugin
+     *            the preference manager service
+     * @param objectIds
+     *            the portfolio entry ids
+     */
+    private Map<Long, BigDecimal> computeTimesheetedDays(IPreferenceManagerPlugin preferenceManagerPlugin, List<Long> objectIds) {
+        BigDecimal hoursPerDay = TimesheetDao.getTimesheetReportHoursPerDay(preferenceManagerPlugin);
+        Map<Long, BigDecimal> timesheetedDays = new HashMap<>();
+        for (Map.Entry<Long, BigDecimal> entry : TimesheetDao.getTimesheetLogAsTotalHoursMapByPEPlanningPackages(objectIds).entrySet()) {
+            timesheetedDays.put(entry.getKey(), entry.getValue().divide(hoursPerDay, RoundingMode.HALF_UP));
+        }
+        return timesheetedDays;
     }
 
     @Override
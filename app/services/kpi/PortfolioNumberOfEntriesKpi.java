@@ -19,14 +19,16 @@ package services.kpi;
 
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.tuple.Pair;
 
 import dao.pmo.PortfolioEntryDao;
 import framework.services.account.IPreferenceManagerPlugin;
-import framework.services.kpi.IKpiRunner;
 import framework.services.kpi.Kpi;
+import framework.services.kpi.Kpi.DataType;
 import framework.services.script.IScriptService;
 import models.framework_models.kpi.KpiData;
 
@@ -35,21 +37,32 @@ import models.framework_models.kpi.KpiData;
  * 
  * @author Johann Kohler
  */
-public class PortfolioNumberOfEntriesKpi implements IKpiRunner {
+public class PortfolioNumberOfEntriesKpi extends AbstractKpiBatchRunner {
 
     @Override
-    public BigDecimal computeMain(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(PortfolioEntryDao.getPEAsNbActiveByPortfolio(objectId));
-    }
+    protected Map<Long, KpiValues> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            List<Long> objectIds) {
+        Map<Long, BigDecimal> mainValues = PortfolioEntryDao.getPEAsNbActiveMapByPortfolio(objectIds, null);
+        Map<Long, BigDecimal> additional1Values = PortfolioEntryDao.getPEAsNbActiveMapByPortfolio(objectIds, true);
+        Map<Long, BigDecimal> additional2Values = PortfolioEntryDao.getPEAsNbActiveMapByPortfolio(objectIds, false);
 
-    @Override
-    public BigDecimal computeAdditional1(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(PortfolioEntryDao.getPEAsNbActiveConceptualByPortfolio(objectId));
+        Map<Long, KpiValues> values = new HashMap<>();
+        for (Long objectId : objectIds) {
+            values.put(objectId, new KpiValues(get(mainValues, objectId), get(additional1Values, objectId), get(additional2Values, objectId)));
+        }
+        return values;
     }
 
     @Override
-    public BigDecimal computeAdditional2(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(PortfolioEntryDao.getPEAsNbActiveNonConceptualByPortfolio(objectId));
+    protected Map<Long, BigDecimal> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            DataType dataType, List<Long> objectIds) {
+        Boolean isConcept = null;
+        if (dataType == DataType.ADDITIONAL1) {
+            isConcept = true;
+        } else if (dataType == DataType.ADDITIONAL2) {
+            isConcept = false;
+        }
+        return PortfolioEntryDao.getPEAsNbActiveMapByPortfolio(objectIds, isConcept);
     }
 
     @Override
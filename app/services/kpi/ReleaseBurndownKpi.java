@@ -33,78 +33,33 @@ import dao.governance.LifeCyclePlanningDao;
 import dao.pmo.PortfolioEntryDao;
 import dao.timesheet.TimesheetDao;
 import framework.services.account.IPreferenceManagerPlugin;
-import framework.services.kpi.IKpiRunner;
 import framework.services.kpi.Kpi;
 import framework.services.script.IScriptService;
-import models.delivery.Requirement;
 import models.framework_models.kpi.KpiData;
 import models.governance.LifeCycleMilestone;
 import models.governance.PlannedLifeCycleMilestoneInstance;
 import models.pmo.PortfolioEntry;
+import models.sql.RequirementEfforts;
 
 /**
  * The "Release burndown" KPI computation class.
  * 
  * @author Johann Kohler
  */
-public class ReleaseBurndownKpi implements IKpiRunner {
+public class ReleaseBurndownKpi extends AbstractKpiBatchRunner {
 
     @Override
-    public BigDecimal computeMain(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-
-        List<Requirement> requirements = getRequirements(objectId);
-
-        BigDecimal total = BigDecimal.ZERO;
-        for (Requirement requirement : requirements) {
-            if (requirement.remainingEffort != null) {
-                total = total.add(new BigDecimal(requirement.remainingEffort));
-            }
-        }
-
-        return convertInDays(total, preferenceManagerPlugin);
-
-    }
-
-    @Override
-    public BigDecimal computeAdditional1(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-
-        List<Requirement> requirements = getRequirements(objectId);
-
-        BigDecimal total = BigDecimal.ZERO;
-        for (Requirement requirement : requirements) {
-            if (requirement.effort != null) {
-                total = total.add(new BigDecimal(requirement.effort));
-            }
-        }
-
-        return convertInDays(total, preferenceManagerPlugin);
-
-    }
-
-    @Override
-    public BigDecimal computeAdditional2(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-
-        List<Requirement> requirements = getRequirements(objectId);
-
-        BigDecimal total = BigDecimal.ZERO;
-        for (Requirement requirement : requirements) {
-            if (requirement.initialEstimation != null) {
-                total = total.add(new BigDecimal(requirement.initialEstimation));
-            }
+    protected Map<Long, KpiValues> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            List<Long> objectIds) {
+        Map<Long, RequirementEfforts> allEfforts = RequirementDAO.getRequirementAllAsEffortsMapByPE(objectIds);
+
+        Map<Long, KpiValues> values = new HashMap<>();
+        for (Long objectId : objectIds) {
+            RequirementEfforts efforts = allEfforts.get(objectId);
+            values.put(objectId, new KpiValues(convertInDays(efforts.remainingEffort, preferenceManagerPlugin),
+                    convertInDays(efforts.effort, preferenceManagerPlugin), convertInDays(efforts.initialEstimation, preferenceManagerPlugin)));
         }
-
-        return convertInDays(total, preferenceManagerPlugin);
-
-    }
-
-    /**
-     * Get the requirements of a portfolio entry.
-     * 
-     * @param portfolioEntryId
-     *            the portfolio entry id
-     */
-    private List<Requirement> getRequirements(Long portfolioEntryId) {
-        return RequirementDAO.getRequirementAllAsExprByPE(portfolioEntryId).findList();
+        return values;
     }
 
     /**
@@ -23,33 +23,23 @@ import java.util.List;
 
 import org.apache.commons.lang3.tuple.Pair;
 
-import dao.delivery.RequirementDAO;
 import framework.services.account.IPreferenceManagerPlugin;
-import framework.services.kpi.IKpiRunner;
 import framework.services.kpi.Kpi;
 import framework.services.script.IScriptService;
 import models.framework_models.kpi.KpiData;
+import services.delivery.RequirementStatistics;
 
 /**
  * The "Requirement is scoped" KPI computation class.
  * 
  * @author Johann Kohler
  */
-public class RequirementIsScopedKpi implements IKpiRunner {
+public class RequirementIsScopedKpi extends AbstractRequirementKpi {
 
     @Override
-    public BigDecimal computeMain(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(RequirementDAO.getRequirementAsCountByPEAndIsScoped(objectId, true));
-    }
-
-    @Override
-    public BigDecimal computeAdditional1(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(RequirementDAO.getRequirementAsCountByPEAndIsScoped(objectId, null));
-    }
-
-    @Override
-    public BigDecimal computeAdditional2(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        return new BigDecimal(RequirementDAO.getRequirementAsCountByPEAndIsScoped(objectId, false));
+    protected KpiValues compute(RequirementStatistics statistics) {
+        return new KpiValues(BigDecimal.valueOf(statistics.getScopedCount(true)), BigDecimal.valueOf(statistics.getScopedCount(null)),
+                BigDecimal.valueOf(statistics.getScopedCount(false)));
     }
 
     @Override
@@ -19,14 +19,16 @@ package services.kpi;
 
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import dao.pmo.PortfolioEntryRiskAndIssueDao;
 import org.apache.commons.lang3.tuple.Pair;
 
 import framework.services.account.IPreferenceManagerPlugin;
-import framework.services.kpi.IKpiRunner;
 import framework.services.kpi.Kpi;
+import framework.services.kpi.Kpi.DataType;
 import framework.services.script.IScriptService;
 import models.framework_models.kpi.KpiData;
 
@@ -35,25 +37,34 @@ import models.framework_models.kpi.KpiData;
  * 
  * @author Johann Kohler
  */
-public class RisksAndIssuesKpi implements IKpiRunner {
+public class RisksAndIssuesKpi extends AbstractKpiBatchRunner {
 
     @Override
-    public BigDecimal computeMain(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        int nbActiveRisks = PortfolioEntryRiskAndIssueDao.getPERiskAsNbActiveByPE(objectId);
-        int nbActiveIssues = PortfolioEntryRiskAndIssueDao.getPEIssueAsNbActiveByPE(objectId);
-        return new BigDecimal(nbActiveRisks + nbActiveIssues);
-    }
+    protected Map<Long, KpiValues> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            List<Long> objectIds) {
+        Map<Long, BigDecimal> nbActiveRisks = PortfolioEntryRiskAndIssueDao.getPERiskAsNbActiveMapByPE(objectIds);
+        Map<Long, BigDecimal> nbActiveIssues = PortfolioEntryRiskAndIssueDao.getPEIssueAsNbActiveMapByPE(objectIds);
 
-    @Override
-    public BigDecimal computeAdditional1(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        int nbActiveRisks = PortfolioEntryRiskAndIssueDao.getPERiskAsNbActiveByPE(objectId);
-        return new BigDecimal(nbActiveRisks);
+        Map<Long, KpiValues> values = new HashMap<>();
+        for (Long objectId : objectIds) {
+            BigDecimal nbActiveRisk = get(nbActiveRisks, objectId);
+            BigDecimal nbActiveIssue = get(nbActiveIssues, objectId);
+            values.put(objectId, new KpiValues(nbActiveRisk.add(nbActiveIssue), nbActiveRisk, nbActiveIssue));
+        }
+        return values;
     }
 
     @Override
-    public BigDecimal computeAdditional2(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
-        int nbActiveIssues = PortfolioEntryRiskAndIssueDao.getPEIssueAsNbActiveByPE(objectId);
-        return new BigDecimal(nbActiveIssues);
+    protected Map<Long, BigDecimal> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+            DataType dataType, List<Long> objectIds) {
+        switch (dataType) {
+        case ADDITIONAL1:
+            return PortfolioEntryRiskAndIssueDao.getPERiskAsNbActiveMapByPE(objectIds);
+        case ADDITIONAL2:
+            return PortfolioEntryRiskAndIssueDao.getPEIssueAsNbActiveMapByPE(objectIds);
+        default:
+            return super.computeChunk(preferenceManagerPlugin, scriptService, kpi, dataType, objectIds);
+        }
     }
 
     @Override
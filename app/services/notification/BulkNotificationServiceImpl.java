@@ -0,0 +1,386 @@
+package services.notification;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.Transaction;
+import com.avaje.ebean.TransactionCallbackAdapter;
+import com.google.common.collect.Lists;
+
+import framework.services.account.IAccountManagerPlugin;
+import framework.services.account.IUserAccount;
+import framework.services.configuration.II18nMessagesPlugin;
+import framework.services.configuration.Language;
+import framework.services.email.IEmailService;
+import framework.utils.Msg;
+import models.framework_models.account.Notification;
+import models.framework_models.account.NotificationCategory;
+import models.framework_models.account.Principal;
+import play.Configuration;
+import play.Logger;
+import play.inject.ApplicationLifecycle;
+import play.libs.F.Promise;
+
+/**
+ * The implementation of the bulk notification service.
+ *
+ * The notifications of a chunk of recipients are inserted with one JDBC batch,
+ * in the transaction of the caller if any (else in a transaction by chunk).
+ * Once committed, the e-mails of the chunk are sent in background through a
+ * bounded queue, each recipient independently (a failure doesn't prevent the
+ * e-mails of the other recipients). When the queue is full, the chunk is sent
+ * by the calling thread (so a burst of notifications slows down the caller
+ * instead of filling the memory).
+ *
+ * If the transaction of the caller is rolled back, neither the notifications
+ * nor the e-mails are sent. At the stop of the application, the queued chunks
+ * are sent before the end of the stop.
+ */
+@Singleton
+public class BulkNotificationServiceImpl implements IBulkNotificationService {
+
+    /**
+     * The max number of uids in an IN clause when loading the principals.
+     */
+    private static final int PRINCIPALS_BATCH_SIZE = 500;
+
+    private static Logger.ALogger log = Logger.of(BulkNotificationServiceImpl.class);
+
+    private II18nMessagesPlugin i18nMessagesPlugin;
+    private IAccountManagerPlugin accountManagerPlugin;
+    private IEmailService emailService;
+
+    private int chunkSize;
+    private String emailFrom;
+    private String publicUrl;
+    private int shutdownTimeout;
+    private ThreadPoolExecutor executor;
+
+    /**
+     * Initialize the service.
+     *
+     * @param lifecycle
+     *            the Play life cycle service
+     * @param configuration
+     *            the Play configuration service
+     * @param i18nMessagesPlugin
+     *            the i18n messages service
+     * @param accountManagerPlugin
+     *            the account manager service
+     * @param emailService
+     *            the e-mail service
+     */
+    @Inject
+    public BulkNotificationServiceImpl(ApplicationLifecycle lifecycle, Configuration configuration, II18nMessagesPlugin i18nMessagesPlugin,
+            IAccountManagerPlugin accountManagerPlugin, IEmailService emailService) {
+
+        Logger.info("SERVICE>>> BulkNotificationServiceImpl starting...");
+
+        this.i18nMessagesPlugin = i18nMessagesPlugin;
+        this.accountManagerPlugin = accountManagerPlugin;
+        this.emailService = emailService;
+
+        this.chunkSize = configuration.getInt("maf.notification.bulk.chunk_size", 100);
+        this.shutdownTimeout = configuration.getInt("maf.notification.bulk.shutdown_timeout", 60);
+        this.emailFrom = configuration.getString("maf.email.from");
+        this.publicUrl = configuration.getString("maf.public.url");
+        this.executor = createExecutor(configuration.getInt("maf.notification.bulk.parallelism", 2),
+                configuration.getInt("maf.notification.bulk.queue_size", 100));
+
+        lifecycle.addStopHook(() -> {
+            Logger.info("SERVICE>>> BulkNotificationServiceImpl stopping...");
+            this.executor.shutdown();
+            try {
+                if (!this.executor.awaitTermination(this.shutdownTimeout, TimeUnit.SECONDS)) {
+                    log.error(this.executor.shutdownNow().size() + " chunks of notification e-mails not sent before the stop timeout");
+                }
+            } catch (InterruptedException e) {
+                log.error(this.executor.shutdownNow().size() + " chunks of notification e-mails not sent because the stop has been interrupted");
+                Thread.currentThread().interrupt();
+            }
+            Logger.info("SERVICE>>> BulkNotificationServiceImpl stopped");
+            return Promise.pure(null);
+        });
+
+        Logger.info("SERVICE>>> BulkNotificationServiceImpl started");
+    }
+
+    @Override
+    public void sendNotificationWithContent(Collection<String> uids, NotificationCategory category, String url, String title, String message) {
+        dispatch(getPrincipals(uids), category, url, title, message);
+    }
+
+    @Override
+    public void sendNotification(Collection<String> uids, NotificationCategory category, String url, String titleKey, String messageKey, Object... args) {
+
+        // group the recipients by language
+        Map<String, List<Principal>> recipientsByLanguage = new LinkedHashMap<>();
+        for (Principal principal : getPrincipals(uids)) {
+            String languageCode = principal.preferredLanguage != null ? new Language(principal.preferredLanguage).getCode() : null;
+            if (languageCode != null && !this.i18nMessagesPlugin.isLanguageValid(languageCode)) {
+                languageCode = null;
+            }
+            recipientsByLanguage.computeIfAbsent(languageCode, code -> new ArrayList<>()).add(principal);
+        }
+
+        // construct the title and the message once by language
+        for (Map.Entry<String, List<Principal>> entry : recipientsByLanguage.entrySet()) {
+            String message = null;
+            String title = null;
+            if (entry.getKey() != null) {
+                Language language = new Language(entry.getKey());
+                message = Msg.get(language.getLang(), messageKey, args);
+                title = Msg.get(language.getLang(), titleKey);
+            } else {
+                message = Msg.get(messageKey, args);
+                title = Msg.get(titleKey);
+            }
+            dispatch(entry.getValue(), category, url, title, message);
+        }
+
+    }
+
+    /**
+     * Get the principals of some uids (each principal once).
+     *
+     * @param uids
+     *            the uids (the blank and duplicated ones are ignored)
+     */
+    private static List<Principal> getPrincipals(Collection<String> uids) {
+        List<Principal> principals = new ArrayList<>();
+        for (List<String> batchUids : getChunks(uids, PRINCIPALS_BATCH_SIZE)) {
+            principals.addAll(Principal.find.where().eq("deleted", false).in("uid", batchUids).findList());
+        }
+        return principals;
+    }
+
+    /**
+     * Split some uids into chunks.
+     *
+     * @param uids
+     *            the uids (the blank and duplicated ones are ignored)
+     * @param chunkSize
+     *            the max number of uids in a chunk
+     * @return the chunks, in the order of the uids
+     */
+    static List<List<String>> getChunks(Collection<String> uids, int chunkSize) {
+
+        Set<String> distinctUids = new LinkedHashSet<>();
+        for (String uid : uids) {
+            if (!StringUtils.isBlank(uid)) {
+                distinctUids.add(uid);
+            }
+        }
+
+        List<List<String>> chunks = new ArrayList<>();
+        for (List<String> chunk : Lists.partition(new ArrayList<>(distinctUids), chunkSize)) {
+            chunks.add(new ArrayList<>(chunk));
+        }
+        return chunks;
+    }
+
+    /**
+     * Create the executor sending the chunks of e-mails: its queue is bounded
+     * and, when full, a chunk is sent by the calling thread.
+     *
+     * @param parallelism
+     *            the number of threads
+     * @param queueSize
+     *            the max number of queued chunks
+     */
+    static ThreadPoolExecutor createExecutor(int parallelism, int queueSize) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "bulk-notification-" + threadNumber.incrementAndGet());
+            thread.setDaemon(false);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Dispatch a notification to some users: the notifications are inserted
+     * by chunks and the e-mails of the chunks are queued after the commit.
+     *
+     * @param principals
+     *            the principals of the users (each one once)
+     * @param category
+     *            the notification category
+     * @param url
+     *            the attached url
+     * @param title
+     *            the title
+     * @param message
+     *            the message
+     */
+    private void dispatch(List<Principal> principals, NotificationCategory category, String url, String title, String message) {
+
+        Transaction transaction = Ebean.currentTransaction();
+        boolean isInTransaction = transaction != null && transaction.isActive();
+
+        List<List<String>> emailChunks = new ArrayList<>();
+
+        for (List<Principal> chunk : Lists.partition(principals, this.chunkSize)) {
+
+            List<String> uids = chunk.stream().map(principal -> principal.uid).collect(Collectors.toList());
+
+            if (isInTransaction) {
+                insertNotifications(transaction, chunk, category, url, title, message);
+                emailChunks.add(uids);
+            } else {
+                Transaction chunkTransaction = Ebean.beginTransaction();
+                try {
+                    insertNotifications(chunkTransaction, chunk, category, url, title, message);
+                    chunkTransaction.commit();
+                    queue(uids, url, title, message);
+                } catch (Exception e) {
+                    log.error("Unable to insert the notification \"" + title + "\" for " + uids, e);
+                } finally {
+                    chunkTransaction.end();
+                }
+            }
+
+        }
+
+        if (isInTransaction && !emailChunks.isEmpty()) {
+            transaction.register(new TransactionCallbackAdapter() {
+                @Override
+                public void postCommit() {
+                    for (List<String> uids : emailChunks) {
+                        queue(uids, url, title, message);
+                    }
+                }
+            });
+        }
+
+    }
+
+    /**
+     * Insert the notifications of a chunk of principals with one JDBC batch.
+     *
+     * @param transaction
+     *            the transaction
+     * @param principals
+     *            the principals of the chunk
+     * @param category
+     *            the notification category
+     * @param url
+     *            the attached url
+     * @param title
+     *            the title
+     * @param message
+     *            the message
+     */
+    private static void insertNotifications(Transaction transaction, List<Principal> principals, NotificationCategory category, String url, String title,
+            String message) {
+
+        boolean batchMode = transaction.isBatchMode();
+        int batchSize = transaction.getBatchSize();
+        transaction.setBatchMode(true);
+        transaction.setBatchSize(principals.size());
+
+        Date creationDate = new Date();
+        for (Principal principal : principals) {
+            Notification notification = new Notification();
+            notification.principal = principal;
+            notification.notificationCategory = category;
+            notification.title = title;
+            notification.message = message;
+            notification.actionLink = url;
+            notification.creationDate = creationDate;
+            notification.isMessage = false;
+            notification.isRead = false;
+            notification.save();
+        }
+
+        transaction.flushBatch();
+        transaction.setBatchSize(batchSize);
+        transaction.setBatchMode(batchMode);
+    }
+
+    /**
+     * Queue the e-mails of a chunk of recipients of a notification.
+     *
+     * @param uids
+     *            the uids of the chunk
+     * @param url
+     *            the attached url
+     * @param title
+     *            the title
+     * @param message
+     *            the message
+     */
+    private void queue(List<String> uids, String url, String title, String message) {
+
+        String body = url != null && !url.isEmpty() ? message + "<br/><a href=\"" + this.publicUrl + url + "\">" + this.publicUrl + url + "</a>" : message;
+
+        this.executor.execute(() -> sendEmails(uids, uid -> {
+            IUserAccount account = this.accountManagerPlugin.getUserAccountFromUid(uid);
+            if (account != null && !StringUtils.isBlank(account.getMail())) {
+                this.emailService.sendEmail(title, this.emailFrom, body, account.getMail());
+                return true;
+            }
+            return false;
+        }, title));
+    }
+
+    /**
+     * Send the e-mails of a chunk of recipients: a failure for a recipient is
+     * logged and the next ones are sent.
+     *
+     * @param uids
+     *            the uids of the recipients
+     * @param sender
+     *            the sender of the e-mail of a recipient
+     * @param title
+     *            the title of the notification (for the log)
+     * @return the number of sent e-mails
+     */
+    static int sendEmails(List<String> uids, EmailSender sender, String title) {
+        int sent = 0;
+        for (String uid : uids) {
+            try {
+                if (sender.send(uid)) {
+                    sent++;
+                }
+            } catch (Exception e) {
+                log.error("Unable to send the e-mail of the notification \"" + title + "\" to " + uid, e);
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * The sender of the e-mail of a notification to a recipient.
+     */
+    @FunctionalInterface
+    interface EmailSender {
+
+        /**
+         * Send the e-mail to a recipient.
+         *
+         * @param uid
+         *            the uid of the recipient
+         * @return false if the recipient has no e-mail address
+         */
+        boolean send(String uid) throws Exception;
+
+    }
+
+}
@@ -0,0 +1,58 @@
+package services.notification;
+
+import java.util.Collection;
+
+import models.framework_models.account.NotificationCategory;
+
+/**
+ * The bulk notification service.
+ *
+ * It sends a notification to a set of users (for example all the stakeholders
+ * of a portfolio): the recipients are deduplicated, their principals are
+ * loaded with one query, the title and the message are computed once by
+ * language, the notifications are inserted by chunks of recipients (one
+ * batch by chunk) and their e-mails are sent in background through a bounded
+ * queue.
+ *
+ * When called in a transaction, the notifications are inserted in it and the
+ * e-mails are sent only after its commit. The recipients without principal are
+ * ignored.
+ */
+public interface IBulkNotificationService {
+
+    /**
+     * Send a notification (with direct content - no keys used for title and
+     * message) to some users.
+     *
+     * @param uids
+     *            the uids of the users (principals)
+     * @param category
+     *            the notification category
+     * @param url
+     *            the attached url for the notification (can be null)
+     * @param title
+     *            the title
+     * @param message
+     *            the message
+     */
+    void sendNotificationWithContent(Collection<String> uids, NotificationCategory category, String url, String title, String message);
+
+    /**
+     * Send a notification to some users, each one in his preferred language.
+     *
+     * @param uids
+     *            the uids of the users (principals)
+     * @param category
+     *            the notification category
+     * @param url
+     *            the attached url for the notification (can be null)
+     * @param titleKey
+     *            the i18n key of the notification title
+     * @param messageKey
+     *            the i18n key of the message to send
+     * @param args
+     *            the arguments for the message
+     */
+    void sendNotification(Collection<String> uids, NotificationCategory category, String url, String titleKey, String messageKey, Object... args);
+
+}
@@ -2,6 +2,7 @@ package services.picker;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -22,6 +23,7 @@ import framework.services.account.IUserAccount;
 import framework.services.storage.IAttachmentManagerPlugin;
 import framework.utils.DefaultSelectableValueHolder;
 import framework.utils.DefaultSelectableValueHolderCollection;
+import framework.utils.ISelectableValueHolder;
 import framework.utils.ISelectableValueHolderCollection;
 import framework.utils.PickerHandler;
 import framework.utils.PickerHandler.Handle;
@@ -30,6 +32,8 @@ import play.Configuration;
 import play.Logger;
 import play.inject.ApplicationLifecycle;
 import play.libs.F.Promise;
+import services.search.ISearchIndexService;
+import services.search.ISearchIndexService.IndexedType;
 
 /**
  * The service that provides the pickers.
@@ -57,6 +61,7 @@ public class PickerServiceImpl implements IPickerService {
 
     private IAccountManagerPlugin accountManagerPlugin;
     private IAttachmentManagerPlugin attachmentManagerPlugin;
+    private ISearchIndexService searchIndexService;
 
     /**
      * Initialize the service.
@@ -69,15 +74,18 @@ public class PickerServiceImpl implements IPickerService {
      *            the account manager service
      * @param attachmentManagerPlugin
      *            the attachment manager service
+     * @param searchIndexService
+     *            the search index service
      */
     @Inject
     public PickerServiceImpl(ApplicationLifecycle lifecycle, Configuration configuration, IAccountManagerPlugin accountManagerPlugin,
-            IAttachmentManagerPlugin attachmentManagerPlugin) {
+            IAttachmentManagerPlugin attachmentManagerPlugin, ISearchIndexService searchIndexService) {
 
         Logger.info("SERVICE>>> PickerServiceImpl starting...");
 
         this.accountManagerPlugin = accountManagerPlugin;
         this.attachmentManagerPlugin = attachmentManagerPlugin;
+        this.searchIndexService = searchIndexService;
 
         this.init();
 
@@ -161,8 +169,7 @@ public class PickerServiceImpl implements IPickerService {
 
             @Override
             public ISelectableValueHolderCollection<Long> getFoundValueHolders(String searchString, Map<String, String> context) {
-                searchString = searchString.replaceAll("\\*", "%");
-                return ActorDao.getActorActiveAsVHByKeywords(searchString);
+                return getFoundValueHolders(IndexedType.ACTOR, searchString, ActorDao::getActorActiveAsListByIds);
             }
 
         });
@@ -182,8 +189,7 @@ public class PickerServiceImpl implements IPickerService {
 
             @Override
             public ISelectableValueHolderCollection<Long> getFoundValueHolders(String searchString, Map<String, String> context) {
-                searchString = searchString.replaceAll("\\*", "%");
-                return ActorDao.getActorActiveWithoutUidAsVHByKeywords(searchString);
+                return getFoundValueHolders(IndexedType.ACTOR, searchString, ActorDao::getActorActiveWithoutUidAsListByIds);
             }
 
         });
@@ -235,8 +241,7 @@ public class PickerServiceImpl implements IPickerService {
 
             @Override
             public ISelectableValueHolderCollection<Long> getFoundValueHolders(String searchString, Map<String, String> context) {
-                searchString = searchString.replaceAll("\\*", "%");
-                return BudgetBucketDAO.getActiveBudgetBucketSelectableAsListByName(searchString);
+                return getFoundValueHolders(IndexedType.BUDGET_BUCKET, searchString, BudgetBucketDAO::getActiveBudgetBucketAsListByIds);
             }
 
         });
@@ -256,8 +261,7 @@ public class PickerServiceImpl implements IPickerService {
 
             @Override
             public ISelectableValueHolderCollection<Long> getFoundValueHolders(String searchString, Map<String, String> context) {
-                searchString = searchString.replaceAll("\\*", "%");
-                return CostCenterDAO.getCostCenterSelectableAsVHByName(searchString);
+                return getFoundValueHolders(IndexedType.COST_CENTER, searchString, CostCenterDAO::getCostCenterAsListByIds);
             }
 
         });
@@ -293,8 +297,7 @@ public class PickerServiceImpl implements IPickerService {
 
             @Override
             public ISelectableValueHolderCollection<Long> getFoundValueHolders(String searchString, Map<String, String> context) {
-                searchString = searchString.replaceAll("\\*", "%");
-                return OrgUnitDao.getOrgUnitActiveAsVHByKeywords(searchString);
+                return getFoundValueHolders(IndexedType.ORG_UNIT, searchString, ids -> OrgUnitDao.getOrgUnitAsListByIdsAndFilter(ids, true, false, false));
             }
 
         });
@@ -314,8 +317,7 @@ public class PickerServiceImpl implements IPickerService {
 
             @Override
             public ISelectableValueHolderCollection<Long> getFoundValueHolders(String searchString, Map<String, String> context) {
-                searchString = searchString.replaceAll("\\*", "%");
-                return OrgUnitDao.getOrgUnitActiveCanDeliverAsVHByKeywords(searchString);
+                return getFoundValueHolders(IndexedType.ORG_UNIT, searchString, ids -> OrgUnitDao.getOrgUnitAsListByIdsAndFilter(ids, true, false, true));
             }
 
         });
@@ -335,8 +337,7 @@ public class PickerServiceImpl implements IPickerService {
 
             @Override
             public ISelectableValueHolderCollection<Long> getFoundValueHolders(String searchString, Map<String, String> context) {
-                searchString = searchString.replaceAll("\\*", "%");
-                return OrgUnitDao.getOrgUnitActiveCanSponsorAsVHByKeywords(searchString);
+                return getFoundValueHolders(IndexedType.ORG_UNIT, searchString, ids -> OrgUnitDao.getOrgUnitAsListByIdsAndFilter(ids, true, true, false));
             }
 
         });
@@ -494,6 +495,25 @@ public class PickerServiceImpl implements IPickerService {
         return this.portfolioType;
     }
 
+    /**
+     * Get the objects found by the search index for a search string as a
+     * value holder collection (the best first).
+     * 
+     * @param type
+     *            the indexed object type
+     * @param searchString
+     *            the search string ("*" for the wild cards), matched as the
+     *            beginning of a field
+     * @param finder
+     *            the function loading the selectable objects with the found
+     *            ids (null for all)
+     */
+    private <T extends ISelectableValueHolder<Long>> ISelectableValueHolderCollection<Long> getFoundValueHolders(IndexedType type, String searchString,
+            Function<List<Long>, List<T>> finder) {
+        return new DefaultSelectableValueHolderCollection<>(
+                this.getSearchIndexService().find(type, searchString + "*", finder::apply, object -> object.getValue()));
+    }
+
     /**
      * Get the account manager service.
      */
@@ -508,4 +528,11 @@ public class PickerServiceImpl implements IPickerService {
         return this.attachmentManagerPlugin;
     }
 
+    /**
+     * Get the search index service.
+     */
+    private ISearchIndexService getSearchIndexService() {
+        return this.searchIndexService;
+    }
+
 }
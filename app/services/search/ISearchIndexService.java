@@ -0,0 +1,102 @@
+package services.search;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The search index service.
+ *
+ * It keeps in memory the searchable fields (names, translated names, codes) of
+ * the objects found by the search page and by the pickers, so that a keyword
+ * search doesn't scan the tables with leading-wildcard LIKE expressions.
+ *
+ * A search pattern has the semantics of the LIKE expressions it replaces: "*"
+ * stands for any sequence of characters and the rest of the pattern must match
+ * a whole field (case and accents are ignored). The found objects are ranked:
+ * an exact match of a code (governance id, ref id, uid) comes first, then the
+ * objects with a field starting with the pattern.
+ *
+ * The index is built in the background at startup and then kept up to date
+ * incrementally from the last update dates of the indexed rows (every
+ * configured delay). A full rebuild is scheduled by the SearchIndex job.
+ *
+ * The index only answers "which objects match the pattern": the callers
+ * provide their own filters (active, deleted, permissions) to load the found
+ * objects, and the configured max number of results is applied after them.
+ */
+public interface ISearchIndexService {
+
+    /**
+     * The indexed object types.
+     */
+    enum IndexedType {
+        PORTFOLIO_ENTRY, PORTFOLIO, ACTOR, ORG_UNIT, PURCHASE_ORDER, BUDGET_BUCKET, COST_CENTER;
+    }
+
+    /**
+     * The loader of the found objects of a caller: it applies the filters of
+     * the caller to the objects with some ids.
+     *
+     * @param <T>
+     *            the object type
+     * @param <E>
+     *            the exception thrown by the loader
+     */
+    @FunctionalInterface
+    interface Finder<T, E extends Exception> {
+
+        /**
+         * Load the objects with some ids that pass the filters.
+         *
+         * @param ids
+         *            the object ids, null for all
+         */
+        List<T> find(List<Long> ids) throws E;
+
+    }
+
+    /**
+     * Search the ids of the objects of a type matching a pattern.
+     *
+     * @param type
+     *            the object type
+     * @param pattern
+     *            the pattern ("*" for the wild cards)
+     * @return the ids of all matching objects, the best first, or null if the
+     *         pattern contains only wild cards (no restriction)
+     */
+    List<Long> search(IndexedType type, String pattern);
+
+    /**
+     * Find the objects of a type matching a pattern and passing the filters of
+     * a caller.
+     *
+     * The matching ids are given to the finder by chunks (the best first)
+     * until the configured max number of objects is reached, so the filters
+     * are applied before the limit.
+     *
+     * @param type
+     *            the object type
+     * @param pattern
+     *            the pattern ("*" for the wild cards)
+     * @param finder
+     *            the loader of the objects passing the filters of the caller
+     * @param idGetter
+     *            the function giving the id of an object
+     * @return the found objects, the best first (if the pattern contains only
+     *         wild cards, the objects given by the finder for all ids)
+     */
+    <T, E extends Exception> List<T> find(IndexedType type, String pattern, Finder<T, E> finder, Function<T, Long> idGetter) throws E;
+
+    /**
+     * Apply to the index the rows created, updated or deleted since the last
+     * refresh.
+     */
+    void refresh();
+
+    /**
+     * Rebuild the full index.
+     */
+    void rebuild();
+
+}
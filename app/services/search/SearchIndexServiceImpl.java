@@ -0,0 +1,328 @@
+package services.search;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.SqlRow;
+import com.google.common.collect.Lists;
+
+import play.Configuration;
+import play.Logger;
+import play.inject.ApplicationLifecycle;
+import play.libs.F.Promise;
+
+/**
+ * The implementation of the search index service.
+ *
+ * There is one index by object type (see {@link TextIndex}). The rows of a
+ * type are loaded with a single SQL query, restricted to the rows updated
+ * since the last refresh for an incremental refresh (the deleted rows are
+ * removed from the index). The index is built and refreshed by a background
+ * thread, a search done before the end of the build at startup waits for it.
+ *
+ * Note: the translations of the org unit and cost center names are indexed
+ * too, but updating a translation doesn't change the last update date of the
+ * object, so it is applied by the next rebuild only.
+ */
+@Singleton
+public class SearchIndexServiceImpl implements ISearchIndexService {
+
+    /**
+     * The rows updated less than this delay (in ms) before the last refresh
+     * are loaded again, to catch the transactions committed during it.
+     */
+    private static final long REFRESH_MARGIN = 60000L;
+
+    /**
+     * The separator of the values of a column containing several values (the
+     * translations of a name).
+     */
+    private static final String VALUES_SEPARATOR = "\n";
+
+    private int maxResults;
+
+    private ScheduledExecutorService executor;
+
+    private volatile Map<IndexedType, TextIndex> indexes;
+    private volatile long lastRefresh = 0L;
+
+    /**
+     * Initialize the service.
+     *
+     * @param lifecycle
+     *            the Play life cycle service
+     * @param configuration
+     *            the Play configuration service
+     */
+    @Inject
+    public SearchIndexServiceImpl(ApplicationLifecycle lifecycle, Configuration configuration) {
+
+        Logger.info("SERVICE>>> SearchIndexServiceImpl starting...");
+
+        this.maxResults = configuration.getInt("maf.search.index.max_results", 500);
+
+        lifecycle.addStopHook(() -> {
+            Logger.info("SERVICE>>> SearchIndexServiceImpl stopping...");
+            this.executor.shutdownNow();
+            this.indexes = null;
+            Logger.info("SERVICE>>> SearchIndexServiceImpl stopped");
+            return Promise.pure(null);
+        });
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.execute(() -> {
+            try {
+                buildIfNeeded();
+            } catch (Exception e) {
+                Logger.error("impossible to build the search index", e);
+            }
+        });
+        long refreshDelay = configuration.getInt("maf.search.index.refresh_delay", 10);
+        this.executor.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                Logger.error("impossible to refresh the search index", e);
+            }
+        }, refreshDelay, refreshDelay, TimeUnit.SECONDS);
+
+        Logger.info("SERVICE>>> SearchIndexServiceImpl started");
+    }
+
+    @Override
+    public List<Long> search(IndexedType type, String pattern) {
+        return getIndexes().get(type).search(pattern);
+    }
+
+    @Override
+    public <T, E extends Exception> List<T> find(IndexedType type, String pattern, Finder<T, E> finder, Function<T, Long> idGetter) throws E {
+
+        List<Long> ids = this.search(type, pattern);
+        if (ids == null) {
+            return finder.find(null);
+        }
+
+        Map<Long, Integer> ranks = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            ranks.put(ids.get(i), i);
+        }
+
+        // the chunks are loaded in the rank order until enough objects pass
+        // the filters of the caller
+        List<T> objects = new ArrayList<>();
+        for (List<Long> chunk : Lists.partition(ids, this.maxResults)) {
+            List<T> chunkObjects = new ArrayList<>(finder.find(chunk));
+            chunkObjects.sort(Comparator.comparing(object -> ranks.getOrDefault(idGetter.apply(object), Integer.MAX_VALUE)));
+            objects.addAll(chunkObjects);
+            if (objects.size() >= this.maxResults) {
+                return new ArrayList<>(objects.subList(0, this.maxResults));
+            }
+        }
+        return objects;
+    }
+
+    @Override
+    public synchronized void refresh() {
+
+        Map<IndexedType, TextIndex> indexes = this.indexes;
+        if (indexes == null) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        Timestamp since = new Timestamp(this.lastRefresh - REFRESH_MARGIN);
+        for (IndexedType type : IndexedType.values()) {
+            load(type, since, indexes.get(type));
+        }
+        this.lastRefresh = start;
+
+    }
+
+    @Override
+    public synchronized void rebuild() {
+
+        long start = System.currentTimeMillis();
+        Timestamp since = new Timestamp(0L);
+        Map<IndexedType, TextIndex> indexes = new EnumMap<>(IndexedType.class);
+        for (IndexedType type : IndexedType.values()) {
+            TextIndex index = new TextIndex();
+            load(type, since, index);
+            indexes.put(type, index);
+        }
+        this.indexes = indexes;
+        this.lastRefresh = start;
+
+        Logger.info("search index rebuilt in " + (System.currentTimeMillis() - start) + " ms");
+
+    }
+
+    /**
+     * Get the indexes, they are built if needed (if the build at startup is
+     * not finished, this waits for it).
+     */
+    private Map<IndexedType, TextIndex> getIndexes() {
+        Map<IndexedType, TextIndex> indexes = this.indexes;
+        if (indexes == null) {
+            buildIfNeeded();
+            indexes = this.indexes;
+        }
+        return indexes;
+    }
+
+    /**
+     * Build the indexes if it has not been done by another thread in the
+     * meantime.
+     */
+    private synchronized void buildIfNeeded() {
+        if (this.indexes == null) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Load in an index the rows of a type updated since a date.
+     *
+     * @param type
+     *            the object type
+     * @param since
+     *            the date from which the rows are loaded
+     * @param index
+     *            the index of the type
+     */
+    private static void load(IndexedType type, Timestamp since, TextIndex index) {
+
+        IndexDefinition definition = getDefinition(type);
+
+        for (SqlRow row : Ebean.createSqlQuery(definition.sql).setParameter("since", since).findList()) {
+
+            Long id = row.getLong("id");
+
+            if (Boolean.TRUE.equals(row.getBoolean("deleted"))) {
+                index.remove(id);
+            } else {
+                index.put(id, getValues(row, definition.codeColumns), getValues(row, definition.textColumns));
+            }
+
+        }
+
+    }
+
+    /**
+     * Get the values of some columns of a row.
+     *
+     * @param row
+     *            the row
+     * @param columns
+     *            the columns, each one could contain several values
+     */
+    private static List<String> getValues(SqlRow row, List<String> columns) {
+        List<String> values = new ArrayList<>();
+        for (String column : columns) {
+            String value = row.getString(column);
+            if (value != null) {
+                values.addAll(Arrays.asList(value.split(VALUES_SEPARATOR)));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Get the definition of the index of a type.
+     *
+     * The SQL query selects the id, the deleted flag, the codes and the texts
+     * of the rows updated since the parameter "since".
+     *
+     * @param type
+     *            the object type
+     */
+    private static IndexDefinition getDefinition(IndexedType type) {
+
+        switch (type) {
+
+        case PORTFOLIO_ENTRY:
+            return new IndexDefinition("SELECT pe.id AS id, pe.deleted AS deleted, pe.governance_id AS governance_id, pe.ref_id AS ref_id, pe.name AS name"
+                    + " FROM `portfolio_entry` pe WHERE pe.last_update >= :since", new String[] { "governance_id", "ref_id" }, new String[] { "name" });
+
+        case PORTFOLIO:
+            return new IndexDefinition("SELECT p.id AS id, p.deleted AS deleted, p.ref_id AS ref_id, p.name AS name"
+                    + " FROM `portfolio` p WHERE p.last_update >= :since", new String[] { "ref_id" }, new String[] { "name" });
+
+        case ACTOR:
+            return new IndexDefinition("SELECT a.id AS id, a.deleted AS deleted, a.ref_id AS ref_id, a.uid AS uid,"
+                    + " CONCAT_WS(' ', a.first_name, a.last_name) AS first_last_name, CONCAT_WS(' ', a.last_name, a.first_name) AS last_first_name"
+                    + " FROM `actor` a WHERE a.last_update >= :since", new String[] { "ref_id", "uid" },
+                    new String[] { "first_last_name", "last_first_name" });
+
+        case ORG_UNIT:
+            return new IndexDefinition("SELECT ou.id AS id, ou.deleted AS deleted, ou.ref_id AS ref_id, ou.name AS name,"
+                    + " GROUP_CONCAT(im.value SEPARATOR '" + VALUES_SEPARATOR + "') AS translations FROM `org_unit` ou LEFT OUTER JOIN `i18n_messages` im"
+                    + " ON im.key = ou.name WHERE ou.last_update >= :since GROUP BY ou.id", new String[] { "ref_id" },
+                    new String[] { "name", "translations" });
+
+        case PURCHASE_ORDER:
+            return new IndexDefinition("SELECT po.id AS id, po.deleted AS deleted, po.ref_id AS ref_id"
+                    + " FROM `purchase_order` po WHERE po.last_update >= :since", new String[] { "ref_id" }, new String[] {});
+
+        case BUDGET_BUCKET:
+            return new IndexDefinition("SELECT bb.id AS id, bb.deleted AS deleted, bb.ref_id AS ref_id, bb.name AS name"
+                    + " FROM `budget_bucket` bb WHERE bb.last_update >= :since", new String[] { "ref_id" }, new String[] { "name" });
+
+        case COST_CENTER:
+            return new IndexDefinition("SELECT cc.id AS id, cc.deleted AS deleted, cc.ref_id AS ref_id, cc.name AS name,"
+                    + " GROUP_CONCAT(im.value SEPARATOR '" + VALUES_SEPARATOR + "') AS translations FROM `cost_center` cc LEFT OUTER JOIN `i18n_messages` im"
+                    + " ON im.key = cc.name WHERE cc.last_update >= :since GROUP BY cc.id", new String[] { "ref_id" },
+                    new String[] { "name", "translations" });
+
+        default:
+            throw new IllegalArgumentException("unknown indexed type " + type);
+        }
+
+    }
+
+    /**
+     * The definition of the index of a type.
+     */
+    private static class IndexDefinition {
+
+        public String sql;
+        public List<String> codeColumns;
+        public List<String> textColumns;
+
+        /**
+         * Construct a definition.
+         *
+         * @param sql
+         *            the SQL query
+         * @param codeColumns
+         *            the columns containing a code
+         * @param textColumns
+         *            the columns containing a text (the translations are
+         *            separated by a new line)
+         */
+        public IndexDefinition(String sql, String[] codeColumns, String[] textColumns) {
+            this.sql = sql;
+            this.codeColumns = Arrays.asList(codeColumns);
+            this.textColumns = Arrays.asList(textColumns);
+        }
+
+    }
+
+}
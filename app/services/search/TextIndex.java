@@ -0,0 +1,273 @@
+package services.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The index of the objects of a type: the normalized codes and texts of each
+ * object.
+ *
+ * A search matches a pattern against the indexed values with the semantics of
+ * the SQL LIKE expressions it replaces: "*" (or "%") stands for any sequence
+ * of characters, the rest of the pattern must match the whole value, the case
+ * and the accents are ignored. The values are kept normalized in memory so
+ * that a search is a scan of strings and doesn't touch the database.
+ */
+class TextIndex {
+
+    /**
+     * The score of an object with a code equal to the literal part of the
+     * pattern.
+     */
+    static final int CODE_SCORE = 2;
+
+    /**
+     * The score of an object with a value starting with the first literal
+     * part of the pattern.
+     */
+    static final int PREFIX_SCORE = 1;
+
+    private final Map<Long, IndexedObject> objects = new ConcurrentHashMap<>();
+
+    /**
+     * Add (or replace) an object.
+     *
+     * @param id
+     *            the object id
+     * @param codes
+     *            the codes (governance id, ref id, uid...), could contain null
+     *            values
+     * @param texts
+     *            the texts (names...), could contain null values
+     */
+    void put(Long id, Collection<String> codes, Collection<String> texts) {
+        this.objects.put(id, new IndexedObject(normalize(codes), normalize(texts)));
+    }
+
+    /**
+     * Remove an object.
+     *
+     * @param id
+     *            the object id
+     */
+    void remove(Long id) {
+        this.objects.remove(id);
+    }
+
+    /**
+     * Get the number of indexed objects.
+     */
+    int size() {
+        return this.objects.size();
+    }
+
+    /**
+     * Get the ranked ids of the objects with a code or a text matching a
+     * pattern.
+     *
+     * The objects with a code equal to the literal part of the pattern come
+     * first, then the ones with a value starting with the first literal part
+     * of the pattern, then the others (by id for the same score).
+     *
+     * @param pattern
+     *            the pattern ("*" or "%" for the wild cards)
+     * @return the ids, or null if the pattern contains only wild cards (no
+     *         restriction)
+     */
+    List<Long> search(String pattern) {
+
+        TextPattern textPattern = TextPattern.parse(pattern);
+        if (textPattern == null) {
+            return null;
+        }
+
+        Map<Long, Integer> scores = new HashMap<>();
+        for (Map.Entry<Long, IndexedObject> entry : this.objects.entrySet()) {
+            int score = textPattern.getScore(entry.getValue());
+            if (score >= 0) {
+                scores.put(entry.getKey(), score);
+            }
+        }
+
+        List<Long> ids = new ArrayList<>(scores.keySet());
+        ids.sort(Comparator.comparing((Long id) -> scores.get(id)).reversed().thenComparing(Comparator.naturalOrder()));
+        return ids;
+    }
+
+    /**
+     * Normalize a text: remove the accents and convert to lower case.
+     *
+     * @param text
+     *            the text
+     */
+    static String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Normalize some values, the empty ones are ignored.
+     *
+     * @param values
+     *            the values, could contain null values
+     */
+    private static String[] normalize(Collection<String> values) {
+        List<String> normalizedValues = new ArrayList<>();
+        for (String value : values) {
+            if (value != null && !value.trim().isEmpty()) {
+                normalizedValues.add(normalize(value.trim()));
+            }
+        }
+        return normalizedValues.toArray(new String[normalizedValues.size()]);
+    }
+
+    /**
+     * The indexed data of an object.
+     */
+    private static class IndexedObject {
+
+        final String[] codes;
+        final String[] texts;
+
+        /**
+         * Construct an indexed object.
+         *
+         * @param codes
+         *            the normalized codes
+         * @param texts
+         *            the normalized texts
+         */
+        IndexedObject(String[] codes, String[] texts) {
+            this.codes = codes;
+            this.texts = texts;
+        }
+
+    }
+
+    /**
+     * A parsed search pattern: the literal parts between the wild cards.
+     */
+    static class TextPattern {
+
+        /**
+         * The literal parts: the first one must start the value and the last
+         * one must end it (they are empty if the pattern starts or ends with a
+         * wild card), a pattern without wild card has only one part.
+         */
+        private final String[] parts;
+        private final String literal;
+        private final String firstLiteralPart;
+
+        /**
+         * Construct a pattern.
+         *
+         * @param parts
+         *            the literal parts
+         */
+        private TextPattern(String[] parts) {
+            this.parts = parts;
+            this.literal = String.join("", parts);
+            String firstLiteralPart = "";
+            for (String part : parts) {
+                if (!part.isEmpty()) {
+                    firstLiteralPart = part;
+                    break;
+                }
+            }
+            this.firstLiteralPart = firstLiteralPart;
+        }
+
+        /**
+         * Parse a pattern.
+         *
+         * @param pattern
+         *            the pattern ("*" or "%" for the wild cards), could be
+         *            null
+         * @return the parsed pattern, null if the pattern contains only wild
+         *         cards
+         */
+        static TextPattern parse(String pattern) {
+            if (pattern == null) {
+                return null;
+            }
+            String normalizedPattern = normalize(pattern.replace('%', '*').trim());
+            if (normalizedPattern.replace("*", "").trim().isEmpty()) {
+                return null;
+            }
+            return new TextPattern(normalizedPattern.split("\\*", -1));
+        }
+
+        /**
+         * Return true if a normalized value matches the pattern.
+         *
+         * @param value
+         *            the normalized value
+         */
+        boolean matches(String value) {
+
+            if (this.parts.length == 1) {
+                return value.equals(this.parts[0]);
+            }
+
+            String first = this.parts[0];
+            String last = this.parts[this.parts.length - 1];
+            if (!value.startsWith(first)) {
+                return false;
+            }
+
+            // the middle parts are searched in order, as left as possible
+            int position = first.length();
+            for (int i = 1; i < this.parts.length - 1; i++) {
+                int index = value.indexOf(this.parts[i], position);
+                if (index < 0) {
+                    return false;
+                }
+                position = index + this.parts[i].length();
+            }
+
+            return value.length() - last.length() >= position && value.endsWith(last);
+        }
+
+        /**
+         * Get the score of an object.
+         *
+         * @param object
+         *            the indexed object
+         * @return the score, -1 if no value of the object matches the pattern
+         */
+        private int getScore(IndexedObject object) {
+
+            boolean found = false;
+            int score = 0;
+
+            for (String code : object.codes) {
+                if (matches(code)) {
+                    found = true;
+                    if (code.equals(this.literal)) {
+                        score = CODE_SCORE;
+                    } else if (code.startsWith(this.firstLiteralPart)) {
+                        score = Math.max(score, PREFIX_SCORE);
+                    }
+                }
+            }
+            for (String text : object.texts) {
+                if (matches(text)) {
+                    found = true;
+                    if (text.startsWith(this.firstLiteralPart)) {
+                        score = Math.max(score, PREFIX_SCORE);
+                    }
+                }
+            }
+
+            return found ? score : -1;
+        }
+
+    }
+
+}
@@ -0,0 +1,148 @@
+package services.tableexport;
+
+import java.util.List;
+import java.util.function.Function;
+
+import com.avaje.ebean.ExpressionList;
+
+import framework.utils.Table;
+import play.i18n.Lang;
+
+/**
+ * The table export service.
+ *
+ * It exports a (possibly big) table as an Excel file in the personal storage
+ * of a user without building the full table, nor the full workbook, in
+ * memory.
+ *
+ * The progress of the running exports of a user is displayed in the personal
+ * storage.
+ */
+public interface ITableExportService {
+
+    /**
+     * Export a table as an Excel file in the personal storage of a user.
+     *
+     * This method only schedules a background job and returns. The job
+     * selects the ids of the rows, then loads, fills and renders the rows page
+     * by page, and writes them into a streamed workbook (only a window of rows
+     * is kept in memory) directly to the personal storage. The user is
+     * notified when the file is available (or if the export has failed).
+     *
+     * The job doesn't share the context of the request: the rows are rendered
+     * in a context of its own with the given language.
+     *
+     * @param uid
+     *            the uid of the user
+     * @param lang
+     *            the language of the user (of the headers and the values)
+     * @param fileName
+     *            the name of the file in the personal storage
+     * @param jobName
+     *            the name of the background job
+     * @param idsQuery
+     *            the query of the rows (filtered and sorted), only their ids
+     *            are selected
+     * @param rowsLoader
+     *            the function loading the rows of some ids (in the same order)
+     * @param tableFiller
+     *            the function filling the table of some rows
+     * @param failureUrl
+     *            the URL of the failure notification
+     */
+    <T> void exportAsExcel(String uid, Lang lang, String fileName, String jobName, ExpressionList<?> idsQuery, Function<List<Long>, List<T>> rowsLoader,
+            Function<List<T>, Table<T>> tableFiller, String failureUrl);
+
+    /**
+     * Get the progress of the running exports of a user.
+     *
+     * @param uid
+     *            the uid of the user
+     */
+    List<ExportProgress> getExportsInProgress(String uid);
+
+    /**
+     * The progress of a running export.
+     */
+    class ExportProgress {
+
+        private final String uid;
+        private final String fileName;
+        private volatile int exportedRows = 0;
+        private volatile int totalRows = -1;
+
+        /**
+         * Construct the progress of an export.
+         *
+         * @param uid
+         *            the uid of the user
+         * @param fileName
+         *            the name of the file
+         */
+        ExportProgress(String uid, String fileName) {
+            this.uid = uid;
+            this.fileName = fileName;
+        }
+
+        /**
+         * Get the uid of the user.
+         */
+        public String getUid() {
+            return this.uid;
+        }
+
+        /**
+         * Get the name of the file.
+         */
+        public String getFileName() {
+            return this.fileName;
+        }
+
+        /**
+         * Get the number of rows already written.
+         */
+        public int getExportedRows() {
+            return this.exportedRows;
+        }
+
+        /**
+         * Get the total number of rows, -1 if the rows are not selected yet.
+         */
+        public int getTotalRows() {
+            return this.totalRows;
+        }
+
+        /**
+         * Get the percentage of the rows already written.
+         */
+        public int getPercentage() {
+            int totalRows = this.totalRows;
+            if (totalRows < 0) {
+                return 0;
+            }
+            return totalRows == 0 ? 100 : (int) (100L * this.exportedRows / totalRows);
+        }
+
+        /**
+         * Set the number of rows already written.
+         *
+         * @param exportedRows
+         *            the number of rows
+         */
+        void setExportedRows(int exportedRows) {
+            this.exportedRows = exportedRows;
+        }
+
+        /**
+         * Set the total number of rows.
+         *
+         * @param totalRows
+         *            the number of rows
+         */
+        void setTotalRows(int totalRows) {
+            this.totalRows = totalRows;
+        }
+
+    }
+
+}
@@ -0,0 +1,193 @@
+package services.tableexport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import com.avaje.ebean.ExpressionList;
+import com.google.common.collect.Lists;
+
+import framework.services.notification.INotificationManagerPlugin;
+import framework.services.storage.IPersonalStoragePlugin;
+import framework.services.system.ISysAdminUtils;
+import framework.utils.Msg;
+import framework.utils.Table;
+import models.framework_models.account.NotificationCategory;
+import models.framework_models.account.NotificationCategory.Code;
+import play.Configuration;
+import play.Logger;
+import play.i18n.Lang;
+import play.inject.ApplicationLifecycle;
+import play.libs.F.Promise;
+import play.mvc.Http;
+import scala.concurrent.duration.Duration;
+
+/**
+ * The implementation of the table export service.
+ *
+ * The rows are loaded and the table is filled page by page, and the formatted
+ * values of each page are written straight into the streamed workbook (see
+ * {@link TableSheetWriter}), so only one page and the row window are in
+ * memory.
+ *
+ * The progress of an export is updated after each page and kept until the
+ * end of the export.
+ */
+@Singleton
+public class TableExportServiceImpl implements ITableExportService {
+
+    private static Logger.ALogger log = Logger.of(TableExportServiceImpl.class);
+
+    private ISysAdminUtils sysAdminUtils;
+    private IPersonalStoragePlugin personalStoragePlugin;
+    private INotificationManagerPlugin notificationManagerPlugin;
+
+    private int pageSize;
+    private int rowWindowSize;
+
+    private final Map<Long, ExportProgress> exportsInProgress = new ConcurrentHashMap<>();
+    private final AtomicLong lastExportId = new AtomicLong();
+
+    /**
+     * Initialize the service.
+     *
+     * @param lifecycle
+     *            the Play life cycle service
+     * @param configuration
+     *            the Play configuration service
+     * @param sysAdminUtils
+     *            the sysadmin utils
+     * @param personalStoragePlugin
+     *            the personal storage service
+     * @param notificationManagerPlugin
+     *            the notification manager service
+     */
+    @Inject
+    public TableExportServiceImpl(ApplicationLifecycle lifecycle, Configuration configuration, ISysAdminUtils sysAdminUtils,
+            IPersonalStoragePlugin personalStoragePlugin, INotificationManagerPlugin notificationManagerPlugin) {
+
+        Logger.info("SERVICE>>> TableExportServiceImpl starting...");
+
+        this.sysAdminUtils = sysAdminUtils;
+        this.personalStoragePlugin = personalStoragePlugin;
+        this.notificationManagerPlugin = notificationManagerPlugin;
+
+        this.pageSize = configuration.getInt("maf.table.export.page_size", 500);
+        this.rowWindowSize = configuration.getInt("maf.table.export.row_window_size", 100);
+
+        lifecycle.addStopHook(() -> {
+            Logger.info("SERVICE>>> TableExportServiceImpl stopping...");
+            Logger.info("SERVICE>>> TableExportServiceImpl stopped");
+            return Promise.pure(null);
+        });
+
+        Logger.info("SERVICE>>> TableExportServiceImpl started");
+    }
+
+    @Override
+    public <T> void exportAsExcel(String uid, Lang lang, String fileName, String jobName, ExpressionList<?> idsQuery, Function<List<Long>, List<T>> rowsLoader,
+            Function<List<T>, Table<T>> tableFiller, String failureUrl) {
+
+        final String successTitle = Msg.get("excel.export.success.title");
+        final String successMessage = Msg.get("excel.export.success.message", fileName);
+        final String failureTitle = Msg.get("excel.export.failure.title");
+        final String failureMessage = Msg.get("excel.export.failure.message");
+
+        final Long exportId = this.lastExportId.incrementAndGet();
+        final ExportProgress progress = new ExportProgress(uid, fileName);
+        this.exportsInProgress.put(exportId, progress);
+
+        this.sysAdminUtils.scheduleOnce(false, jobName, Duration.create(0, TimeUnit.MILLISECONDS), () -> {
+
+            // the rows and the headers are rendered with the language of the
+            // user, in a context of the job
+            Http.Context context = new Http.Context(new Http.RequestBuilder());
+            context.changeLang(lang);
+            Http.Context.current.set(context);
+
+            try (OutputStream out = this.personalStoragePlugin.createNewFile(uid, fileName)) {
+
+                List<Long> ids = idsQuery.findIds().stream().map(id -> (Long) id).collect(Collectors.toList());
+                progress.setTotalRows(ids.size());
+                writeExcel(progress, ids, rowsLoader, tableFiller, out);
+
+                this.notificationManagerPlugin.sendNotification(uid, NotificationCategory.getByCode(Code.DOCUMENT), successTitle, successMessage,
+                        controllers.my.routes.MyPersonalStorage.index().url());
+
+            } catch (Exception e) {
+                log.error("Unable to export the excel file " + fileName, e);
+                this.notificationManagerPlugin.sendNotification(uid, NotificationCategory.getByCode(Code.ISSUE), failureTitle, failureMessage, failureUrl);
+            } finally {
+                this.exportsInProgress.remove(exportId);
+                Http.Context.current.remove();
+            }
+
+        });
+
+    }
+
+    @Override
+    public List<ExportProgress> getExportsInProgress(String uid) {
+        return this.exportsInProgress.values().stream().filter(progress -> progress.getUid().equals(uid)).collect(Collectors.toList());
+    }
+
+    /**
+     * Write the rows of some ids as an Excel file.
+     *
+     * @param progress
+     *            the progress of the export
+     * @param ids
+     *            the ids of the rows
+     * @param rowsLoader
+     *            the function loading the rows of some ids
+     * @param tableFiller
+     *            the function filling the table of some rows
+     * @param out
+     *            the output stream of the file
+     */
+    private <T> void writeExcel(ExportProgress progress, List<Long> ids, Function<List<Long>, List<T>> rowsLoader, Function<List<T>, Table<T>> tableFiller,
+            OutputStream out) throws IOException {
+
+        SXSSFWorkbook workbook = new SXSSFWorkbook(this.rowWindowSize);
+        workbook.setCompressTempFiles(true);
+
+        try {
+
+            TableSheetWriter sheetWriter = new TableSheetWriter(workbook);
+            int exportedIds = 0;
+
+            // an empty table is written for the headers if there is no row
+            List<List<Long>> pages = ids.isEmpty() ? Collections.singletonList(new ArrayList<>()) : Lists.partition(ids, this.pageSize);
+
+            for (List<Long> pageIds : pages) {
+
+                sheetWriter.write(tableFiller.apply(rowsLoader.apply(pageIds)));
+
+                exportedIds += pageIds.size();
+                progress.setExportedRows(exportedIds);
+                log.info(String.format("Excel export %s: %d/%d rows", progress.getFileName(), exportedIds, ids.size()));
+
+            }
+
+            workbook.write(out);
+
+        } finally {
+            workbook.dispose();
+        }
+
+    }
+
+}
@@ -0,0 +1,125 @@
+package services.tableexport;
+
+import java.util.List;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import framework.utils.Msg;
+import framework.utils.Table;
+
+/**
+ * Write the filled tables of the pages of an export into the sheet of a
+ * (streamed) workbook.
+ *
+ * The header is written with the first page, then the formatted values of
+ * each row are written as text cells: the HTML of the column formatters is
+ * removed. The column widths are computed from the header and the first page,
+ * because the rows of a streamed workbook are not kept in memory.
+ */
+class TableSheetWriter {
+
+    /**
+     * The max width of a column, in characters.
+     */
+    static final int MAX_COLUMN_WIDTH = 80;
+
+    private final Workbook workbook;
+
+    private Sheet sheet;
+    private CellStyle headerStyle;
+    private int rowIndex = 0;
+
+    /**
+     * Construct a writer.
+     *
+     * @param workbook
+     *            the workbook
+     */
+    TableSheetWriter(Workbook workbook) {
+        this.workbook = workbook;
+    }
+
+    /**
+     * Write the rows of a filled table (and the header if it is the first
+     * one).
+     *
+     * @param table
+     *            the filled table of a page
+     */
+    void write(Table<?> table) {
+
+        List<String> headers = table.getHeaders();
+
+        boolean isFirstPage = this.sheet == null;
+        if (isFirstPage) {
+            this.sheet = this.workbook.createSheet();
+            this.headerStyle = createHeaderStyle();
+            Row row = this.sheet.createRow(this.rowIndex++);
+            for (int i = 0; i < headers.size(); i++) {
+                Cell cell = row.createCell(i);
+                cell.setCellValue(Msg.get(headers.get(i)));
+                cell.setCellStyle(this.headerStyle);
+            }
+        }
+
+        int[] widths = new int[headers.size()];
+        for (int i = 0; i < headers.size(); i++) {
+            widths[i] = StringUtils.length(Msg.get(headers.get(i)));
+        }
+
+        for (Table.FormattedRow formattedRow : table.getFormattedRows()) {
+            Row row = this.sheet.createRow(this.rowIndex++);
+            List<String> values = formattedRow.getValues();
+            for (int i = 0; i < values.size(); i++) {
+                String text = getText(values.get(i));
+                if (!text.isEmpty()) {
+                    row.createCell(i).setCellValue(text);
+                }
+                if (i < widths.length) {
+                    widths[i] = Math.max(widths[i], text.length());
+                }
+            }
+        }
+
+        if (isFirstPage) {
+            for (int i = 0; i < widths.length; i++) {
+                this.sheet.setColumnWidth(i, (Math.min(widths[i], MAX_COLUMN_WIDTH) + 2) * 256);
+            }
+        }
+
+    }
+
+    /**
+     * Get the text of a formatted value: the HTML tags are removed and the
+     * entities are unescaped.
+     *
+     * @param formattedValue
+     *            the formatted value, could be null
+     */
+    static String getText(String formattedValue) {
+        if (formattedValue == null) {
+            return "";
+        }
+        String text = formattedValue.replaceAll("(?i)<br\\s*/?>", "\n").replaceAll("<[^>]*>", "");
+        return StringEscapeUtils.unescapeHtml4(text).trim();
+    }
+
+    /**
+     * Create the (bold) style of the header cells.
+     */
+    private CellStyle createHeaderStyle() {
+        CellStyle style = this.workbook.createCellStyle();
+        Font font = this.workbook.createFont();
+        font.setBoldweight(Font.BOLDWEIGHT_BOLD);
+        style.setFont(font);
+        return style;
+    }
+
+}
@@ -0,0 +1,133 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package utils.finance;
+
+/**
+ * The budget, cost to complete and engaged amounts of an object (usually a
+ * portfolio entry or a portfolio), split by expenditure type (OPEX / CAPEX)
+ * and by nature (effort / cost).
+ * 
+ * An instance is filled by a single grouped query (see
+ * dao.pmo.PortfolioEntryDao#getPEAsFinancialAmountsMapByPE) and then gives the
+ * same values as the unit getters of the DAO.
+ */
+public class FinancialAmounts {
+
+    /**
+     * The kinds of amount.
+     */
+    public enum Kind {
+        BUDGET, COST_TO_COMPLETE, ENGAGED;
+    }
+
+    /**
+     * The amounts indexed by [kind][isOpex][isEffort].
+     */
+    private final double[][][] amounts = new double[Kind.values().length][2][2];
+
+    /**
+     * Add an amount.
+     * 
+     * @param kind
+     *            the kind of amount
+     * @param isOpex
+     *            true for OPEX, false for CAPEX
+     * @param isEffort
+     *            true for effort (from allocation), false for cost (direct)
+     * @param amount
+     *            the amount to add
+     */
+    public void add(Kind kind, boolean isOpex, boolean isEffort, double amount) {
+        amounts[kind.ordinal()][isOpex ? 1 : 0][isEffort ? 1 : 0] += amount;
+    }
+
+    /**
+     * Get an amount.
+     * 
+     * @param kind
+     *            the kind of amount
+     * @param isOpex
+     *            set to true for OPEX value, false for CAPEX, null for all
+     * @param onlyEffort
+     *            true for only effort (from allocation), false for only cost
+     *            (direct), null for all
+     */
+    public Double get(Kind kind, Boolean isOpex, Boolean onlyEffort) {
+        double total = 0.0;
+        for (int opex = 0; opex < 2; opex++) {
+            for (int effort = 0; effort < 2; effort++) {
+                if ((isOpex == null || isOpex == (opex == 1)) && (onlyEffort == null || onlyEffort == (effort == 1))) {
+                    total += amounts[kind.ordinal()][opex][effort];
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Get the budget.
+     * 
+     * @param isOpex
+     *            set to true for OPEX value, false for CAPEX, null for all
+     * @param onlyEffort
+     *            true for only effort (from allocation), false for only cost
+     *            (direct), null for all
+     */
+    public Double getBudget(Boolean isOpex, Boolean onlyEffort) {
+        return get(Kind.BUDGET, isOpex, onlyEffort);
+    }
+
+    /**
+     * Get the "cost to complete".
+     * 
+     * @param isOpex
+     *            set to true for OPEX value, false for CAPEX, null for all
+     * @param onlyEffort
+     *            true for only effort (from allocation), false for only cost
+     *            (direct), null for all
+     */
+    public Double getCostToComplete(Boolean isOpex, Boolean onlyEffort) {
+        return get(Kind.COST_TO_COMPLETE, isOpex, onlyEffort);
+    }
+
+    /**
+     * Get the engaged amount.
+     * 
+     * @param isOpex
+     *            set to true for OPEX value, false for CAPEX, null for all
+     * @param onlyEffort
+     *            true for only effort (from allocation), false for only cost
+     *            (direct), null for all
+     */
+    public Double getEngaged(Boolean isOpex, Boolean onlyEffort) {
+        return get(Kind.ENGAGED, isOpex, onlyEffort);
+    }
+
+    /**
+     * Get the OPEX / CAPEX totals.
+     * 
+     * @param onlyEffort
+     *            true for only effort (from allocation), false for only cost
+     *            (direct), null for all
+     */
+    public Totals getTotals(Boolean onlyEffort) {
+        return new Totals(getBudget(true, onlyEffort), getBudget(false, onlyEffort), getCostToComplete(true, onlyEffort),
+                getCostToComplete(false, onlyEffort), getEngaged(true, onlyEffort), getEngaged(false, onlyEffort));
+    }
+
+}
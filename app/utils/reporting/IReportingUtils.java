@@ -32,11 +32,16 @@ public interface IReportingUtils {
 
     /**
      * Get the data adapter (DB connection).
+     * 
+     * The connection must be closed by the caller.
      */
     public abstract Connection getDataAdapter();
 
     /**
      * Load the report definitions.
+     * 
+     * The definitions are compiled lazily (at the first generation of a
+     * report), so this only forgets the ones already loaded.
      */
     public abstract void loadDefinitions();
 
@@ -18,30 +18,36 @@
 package utils.reporting;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.codec.digest.DigestUtils;
+
 import dao.finance.CurrencyDAO;
 import dao.finance.PurchaseOrderDAO;
-import dao.reporting.ReportingDao;
 import framework.services.account.IPreferenceManagerPlugin;
 import framework.services.database.IDatabaseDependencyService;
 import framework.services.notification.INotificationManagerPlugin;
 import framework.services.session.IUserSessionManagerPlugin;
 import framework.services.storage.IPersonalStoragePlugin;
-import framework.services.system.ISysAdminUtils;
 import framework.utils.Msg;
 import models.framework_models.account.NotificationCategory;
 import models.framework_models.account.NotificationCategory.Code;
@@ -61,6 +67,10 @@ import net.sf.jasperreports.engine.export.JRRtfExporter;
 import net.sf.jasperreports.engine.export.ooxml.JRDocxExporter;
 import net.sf.jasperreports.engine.export.ooxml.JRPptxExporter;
 import net.sf.jasperreports.engine.export.ooxml.JRXlsxExporter;
+import net.sf.jasperreports.engine.fill.JRSwapFileVirtualizer;
+import net.sf.jasperreports.engine.util.JRLoader;
+import net.sf.jasperreports.engine.util.JRSaver;
+import net.sf.jasperreports.engine.util.JRSwapFile;
 import net.sf.jasperreports.engine.util.LocalJasperReportsContext;
 import net.sf.jasperreports.engine.util.SimpleFileResolver;
 import net.sf.jasperreports.engine.xml.JRXmlLoader;
@@ -75,10 +85,10 @@ import net.sf.jasperreports.export.WriterExporterOutput;
 import play.Configuration;
 import play.Environment;
 import play.Logger;
+import play.db.DBApi;
 import play.inject.ApplicationLifecycle;
 import play.libs.F.Promise;
 import play.mvc.Http.Context;
-import scala.concurrent.duration.Duration;
 import services.budgettracking.IBudgetTrackingService;
 
 /**
@@ -93,14 +103,14 @@ public class ReportingUtilsImpl implements IReportingUtils {
     private IUserSessionManagerPlugin userSessionManagerPlugin;
     private IPersonalStoragePlugin personalStoragePlugin;
     private INotificationManagerPlugin notificationManagerPlugin;
-    private ISysAdminUtils sysAdminUtils;
+    private DBApi dbApi;
     private Configuration configuration;
     private Environment environment;
     private IPreferenceManagerPlugin preferenceManagerPlugin;
 
     private static Logger.ALogger log = Logger.of(ReportingUtilsImpl.class);
 
-    public Map<String, JasperReport> jasperReports = null;
+    private Map<String, CompiledReport> compiledReports = new ConcurrentHashMap<>();
 
     private static final String EXCEL_FILE_NAME = "report_%s_%s_%s.xlsx";
     private static final String PDF_FILE_NAME = "report_%s_%s_%s.pdf";
@@ -109,6 +119,18 @@ public class ReportingUtilsImpl implements IReportingUtils {
     private static final String RTF_FILE_NAME = "report_%s_%s_%s.doc";
     private static final String POWER_POINT_FILE_NAME = "report_%s_%s_%s.pptx";
 
+    /**
+     * The number of pages of a report kept in memory during a fill, the other
+     * ones are written in a swap file.
+     */
+    private static final int VIRTUALIZER_MAX_SIZE = 50;
+
+    /**
+     * The executor of the report generations: a limited number of reports are
+     * generated at the same time, the others are queued.
+     */
+    private ExecutorService executor;
+
     /**
      * Creates a new ReportingUtilsImpl.
      * 
@@ -124,8 +146,8 @@ public class ReportingUtilsImpl implements IReportingUtils {
      *            the personal storage manager
      * @param notificationManagerPlugin
      *            the notification manager
-     * @param sysAdminUtils
-     *            the sysadmin utilities
+     * @param dbApi
+     *            the play database API (for the pooled connections)
      * @param databaseDependencyService
      *            the database dependency service
      * @param preferenceManagerPlugin
@@ -136,7 +158,7 @@ public class ReportingUtilsImpl implements IReportingUtils {
     @Inject
     public ReportingUtilsImpl(ApplicationLifecycle lifecycle, Configuration configuration, Environment environment,
             IUserSessionManagerPlugin userSessionManagerPlugin, IPersonalStoragePlugin personalStoragePlugin,
-            INotificationManagerPlugin notificationManagerPlugin, ISysAdminUtils sysAdminUtils, IDatabaseDependencyService databaseDependencyService,
+            INotificationManagerPlugin notificationManagerPlugin, DBApi dbApi, IDatabaseDependencyService databaseDependencyService,
             IPreferenceManagerPlugin preferenceManagerPlugin, IBudgetTrackingService budgetTrackingService) {
         log.info("SERVICE>>> ReportingUtilsImpl starting...");
         this.configuration = configuration;
@@ -144,12 +166,21 @@ public class ReportingUtilsImpl implements IReportingUtils {
         this.userSessionManagerPlugin = userSessionManagerPlugin;
         this.personalStoragePlugin = personalStoragePlugin;
         this.notificationManagerPlugin = notificationManagerPlugin;
-        this.sysAdminUtils = sysAdminUtils;
+        this.dbApi = dbApi;
         this.preferenceManagerPlugin = preferenceManagerPlugin;
         this.budgetTrackingService = budgetTrackingService;
         loadDefinitions();
+        int parallelism = configuration.getInt("maf.report.generation.parallelism", 2);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(configuration.getInt("maf.report.generation.queue_size", 50)), runnable -> {
+                    Thread thread = new Thread(runnable, "report-generation-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
         lifecycle.addStopHook(() -> {
             log.info("SERVICE>>> ReportingUtilsImpl stopping...");
+            this.executor.shutdownNow();
             shutdown();
             log.info("SERVICE>>> ReportingUtilsImpl stopped");
             return Promise.pure(null);
@@ -216,7 +247,7 @@ public class ReportingUtilsImpl implements IReportingUtils {
         final String failureTitle = Msg.get("core.reporting.generate.process.failure.title");
         final String failureMessage = Msg.get("core.reporting.generate.process.failure.message");
 
-        getSysAdminUtils().scheduleOnce(false, "ReportGeneration " + report.getName(), Duration.create(0, TimeUnit.MILLISECONDS), new Runnable() {
+        Runnable generation = new Runnable() {
             @Override
             public void run() {
 
@@ -226,9 +257,16 @@ public class ReportingUtilsImpl implements IReportingUtils {
                 OutputStream out = null;
                 String fileName = null;
 
-                try {
+                // the filled pages are swapped to a file to keep the memory
+                // constant for a large report
+                JRSwapFileVirtualizer virtualizer = new JRSwapFileVirtualizer(VIRTUALIZER_MAX_SIZE,
+                        new JRSwapFile(System.getProperty("java.io.tmpdir"), 4096, 100), true);
+                parameters.put(JRParameter.REPORT_VIRTUALIZER, virtualizer);
 
-                    JasperPrint print = fillManager.fill(jasperReports.get(report.template), parameters, getDataAdapter());
+                try (Connection connection = getDataAdapter()) {
+
+                    JasperPrint print = fillManager.fill(getJasperReport(report), parameters, connection);
+                    virtualizer.setReadOnly(true);
 
                     switch (format) {
 
@@ -320,21 +358,42 @@ public class ReportingUtilsImpl implements IReportingUtils {
                     notificationManagerPlugin.sendNotification(uid, NotificationCategory.getByCode(Code.ISSUE), failureTitle, failureMessage,
                             controllers.core.routes.ReportingController.index().url());
 
+                } finally {
+
+                    if (out != null) {
+                        try {
+                            out.close();
+                        } catch (Exception e) {
+                            log.error("Unable to close the report file", e);
+                        }
+                    }
+                    virtualizer.cleanup();
+
                 }
             }
-        });
+        };
+
+        try {
+            this.executor.execute(generation);
+        } catch (RejectedExecutionException e) {
+            log.error("Too many reports are being generated, the report " + report.template + " is rejected");
+            getNotificationManagerPlugin().sendNotification(uid, NotificationCategory.getByCode(Code.ISSUE), failureTitle, failureMessage,
+                    controllers.core.routes.ReportingController.index().url());
+        }
 
     }
 
     /**
      * Get the data adapter (DB connection).
+     * 
+     * The connection is taken from the pool of the application, so it must be
+     * closed by the caller.
      */
     @Override
     public Connection getDataAdapter() {
         try {
-            return DriverManager.getConnection(getConfiguration().getString("db.default.url"), getConfiguration().getString("db.default.username"),
-                    getConfiguration().getString("db.default.password"));
-        } catch (SQLException e) {
+            return this.dbApi.getDatabase("default").getConnection();
+        } catch (Exception e) {
             log.error("Unable to initialize the access to the database for the reports", e);
         }
         return null;
@@ -342,29 +401,65 @@ public class ReportingUtilsImpl implements IReportingUtils {
 
     /**
      * Load the report definitions.
+     * 
+     * The definitions are compiled at their first use (see getJasperReport),
+     * so the loaded ones are simply forgotten.
      */
     @Override
     public void loadDefinitions() {
+        compiledReports.clear();
+    }
 
-        jasperReports = new HashMap<String, JasperReport>();
+    /**
+     * Get the compiled definition of a report.
+     * 
+     * The compiled reports are cached on disk with the checksum of their
+     * definition file in their name, so a definition is compiled again only
+     * when it changes. The loaded ones are also kept in memory and reloaded
+     * only if their definition file has been modified.
+     * 
+     * @param report
+     *            the report
+     */
+    private JasperReport getJasperReport(Reporting report) throws Exception {
+
+        File reportFile = getReportPath(report);
+        if (reportFile == null || !reportFile.exists()) {
+            throw new IOException("Jasper report " + report.template + " not found !");
+        }
+
+        CompiledReport compiledReport = compiledReports.get(report.template);
+        if (compiledReport != null && compiledReport.lastModified == reportFile.lastModified()) {
+            return compiledReport.jasperReport;
+        }
 
-        for (Reporting report : ReportingDao.getReportingAsList()) {
-            File reportFile = getReportPath(report);
-            if (reportFile != null && reportFile.exists()) {
-                try {
+        synchronized (this) {
+
+            String checksum = DigestUtils.sha256Hex(Files.readAllBytes(reportFile.toPath()));
+            compiledReport = compiledReports.get(report.template);
+            if (compiledReport == null || !compiledReport.checksum.equals(checksum)) {
+
+                JasperReport jasperReport;
+                File cacheFolder = new File(getConfiguration().getString("maf.report.cache.root"));
+                File cacheFile = new File(cacheFolder, report.template + "_" + checksum + ".jasper");
+                if (cacheFile.exists()) {
+                    jasperReport = (JasperReport) JRLoader.loadObject(cacheFile);
+                } else {
                     JasperDesign jasperDesign = JRXmlLoader.load(reportFile);
-                    JasperReport jasperReport = JasperCompileManager.compileReport(jasperDesign);
-                    jasperReports.put(report.template, jasperReport);
+                    jasperReport = JasperCompileManager.compileReport(jasperDesign);
+                    cacheFolder.mkdirs();
+                    JRSaver.saveObject(jasperReport, cacheFile);
                     if (log.isDebugEnabled()) {
-                        log.debug("the jasper report " + report.template + " has been loaded");
+                        log.debug("the jasper report " + report.template + " has been compiled");
                     }
-                } catch (Exception e) {
-                    log.error("Error while loading the report " + report.template, e.getMessage());
                 }
+                compiledReport = new CompiledReport(checksum, jasperReport);
 
-            } else {
-                log.error("Jasper report " + report.template + " not found !");
             }
+            compiledReport.lastModified = reportFile.lastModified();
+            compiledReports.put(report.template, compiledReport);
+
+            return compiledReport.jasperReport;
         }
 
     }
@@ -373,7 +468,7 @@ public class ReportingUtilsImpl implements IReportingUtils {
      * Clean the reports.
      */
     private void shutdown() {
-        jasperReports = null;
+        compiledReports.clear();
     }
 
     /**
@@ -426,13 +521,6 @@ public class ReportingUtilsImpl implements IReportingUtils {
         return notificationManagerPlugin;
     }
 
-    /**
-     * Get the system admin utils.
-     */
-    private ISysAdminUtils getSysAdminUtils() {
-        return sysAdminUtils;
-    }
-
     /**
      * Get the Play configuration service.
      */
@@ -462,4 +550,28 @@ public class ReportingUtilsImpl implements IReportingUtils {
     private IBudgetTrackingService getBudgetTrackingService() {
         return this.budgetTrackingService;
     }
+
+    /**
+     * A compiled report definition.
+     */
+    private static class CompiledReport {
+
+        private String checksum;
+        private long lastModified;
+        private JasperReport jasperReport;
+
+        /**
+         * Construct a compiled report.
+         * 
+         * @param checksum
+         *            the checksum of the definition file
+         * @param jasperReport
+         *            the compiled report
+         */
+        public CompiledReport(String checksum, JasperReport jasperReport) {
+            this.checksum = checksum;
+            this.jasperReport = jasperReport;
+        }
+
+    }
 }
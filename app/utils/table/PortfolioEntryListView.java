@@ -17,6 +17,7 @@
  */
 package utils.table;
 
+import com.avaje.ebean.ExpressionList;
 import dao.governance.LifeCycleMilestoneDao;
 import dao.governance.LifeCyclePlanningDao;
 import dao.governance.LifeCycleProcessDao;
@@ -34,6 +35,7 @@ import framework.utils.formats.ObjectFormatter;
 import models.governance.LifeCycleMilestoneInstance;
 import models.governance.PlannedLifeCycleMilestoneInstance;
 import models.pmo.*;
+import services.kpi.AbstractKpiBatchRunner;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -282,6 +284,40 @@ public class PortfolioEntryListView {
             };
         }
 
+        /**
+         * Apply the search and sort expressions of a filter configuration to a
+         * query of portfolio entries.
+         * 
+         * Only the SQL part of the configuration is applied (the KPI and custom
+         * attribute columns are translated by the framework): as for the former
+         * selections, the post-query filters of the next milestone columns,
+         * computed by the datamodel, are not.
+         * 
+         * @param filterConfig
+         *            the filter configuration
+         * @param query
+         *            the query (for example the viewable portfolio entries)
+         */
+        public static ExpressionList<PortfolioEntry> getSelectionQuery(PostQueryFilterConfig<PortfolioEntryListView, PortfolioEntry> filterConfig,
+                ExpressionList<PortfolioEntry> query) {
+            ExpressionList<PortfolioEntry> expressionList = filterConfig.updateWithSearchExpression(query);
+            filterConfig.updateWithSortExpression(expressionList);
+            return expressionList;
+        }
+
+        /**
+         * Select in the database the ids of the portfolio entries of a filter
+         * configuration, in their order.
+         * 
+         * @param filterConfig
+         *            the filter configuration
+         * @param query
+         *            the query (for example the viewable portfolio entries)
+         */
+        public static List<Long> getSelectedIds(PostQueryFilterConfig<PortfolioEntryListView, PortfolioEntry> filterConfig, ExpressionList<PortfolioEntry> query) {
+            return getSelectionQuery(filterConfig, query).findIds().stream().map(id -> (Long) id).collect(Collectors.toList());
+        }
+
         /**
          * Get the table.
          * 
@@ -479,6 +515,65 @@ public class PortfolioEntryListView {
      *            the portfolio entry in the DB
      */
     public PortfolioEntryListView(PortfolioEntry portfolioEntry) {
+        this.fill(portfolioEntry, LifeCyclePlanningDao.getPlannedLCMilestoneInstanceLastAsListByPE(portfolioEntry.id));
+    }
+
+    /**
+     * Get the list views of some portfolio entries (in the same order).
+     * 
+     * Contrary to the constructor (which lazily loads the associations of each
+     * entry), the associations of all entries are loaded with a fixed number
+     * of queries, so this should be used to display a page or to export a
+     * list of entries. The KPI columns of the entries are computed with one
+     * batch by KPI (see AbstractKpiBatchRunner.prepareBatch).
+     * 
+     * @param portfolioEntries
+     *            the portfolio entries
+     */
+    public static List<PortfolioEntryListView> getAsList(List<PortfolioEntry> portfolioEntries) {
+        return getAsListByIds(portfolioEntries.stream().map(portfolioEntry -> portfolioEntry.id).collect(Collectors.toList()));
+    }
+
+    /**
+     * Get the list views of some portfolio entries (in the same order) with
+     * their ids.
+     * 
+     * @param ids
+     *            the portfolio entry ids
+     */
+    public static List<PortfolioEntryListView> getAsListByIds(List<Long> ids) {
+
+        AbstractKpiBatchRunner.prepareBatch(ids);
+
+        Map<Long, PortfolioEntry> loadedPortfolioEntries = new HashMap<>();
+        for (PortfolioEntry portfolioEntry : PortfolioEntryDao.getPEAsListWithListViewAssociationsByIds(ids)) {
+            loadedPortfolioEntries.put(portfolioEntry.id, portfolioEntry);
+        }
+        Map<Long, List<PlannedLifeCycleMilestoneInstance>> plannedLifeCycleMilestoneInstances = LifeCyclePlanningDao
+                .getPlannedLCMilestoneInstanceLastAsMapByPE(ids);
+
+        List<PortfolioEntryListView> portfolioEntryListViews = new ArrayList<>();
+        for (Long id : ids) {
+            PortfolioEntry portfolioEntry = loadedPortfolioEntries.get(id);
+            if (portfolioEntry != null) {
+                PortfolioEntryListView portfolioEntryListView = new PortfolioEntryListView();
+                portfolioEntryListView.fill(portfolioEntry, plannedLifeCycleMilestoneInstances.getOrDefault(id, new ArrayList<>()));
+                portfolioEntryListViews.add(portfolioEntryListView);
+            }
+        }
+
+        return portfolioEntryListViews;
+    }
+
+    /**
+     * Fill the list view with a DB entry.
+     * 
+     * @param portfolioEntry
+     *            the portfolio entry in the DB
+     * @param plannedLifeCycleMilestoneInstances
+     *            the last planned dates of the portfolio entry
+     */
+    private void fill(PortfolioEntry portfolioEntry, List<PlannedLifeCycleMilestoneInstance> plannedLifeCycleMilestoneInstances) {
 
         this.id = portfolioEntry.id;
         this.governanceId = portfolioEntry.governanceId;
@@ -540,7 +635,7 @@ public class PortfolioEntryListView {
         }
         this.dependencies.sort(Comparator.comparing(d -> d.name));
 
-        this.plannedLifeCycleMilestoneInstances = LifeCyclePlanningDao.getPlannedLCMilestoneInstanceLastAsListByPE(this.id);
+        this.plannedLifeCycleMilestoneInstances = plannedLifeCycleMilestoneInstances;
         this.lifeCycleMilestoneInstances = portfolioEntry.activeLifeCycleInstance.lifeCycleMilestoneInstances;
 
     }
@@ -0,0 +1,206 @@
+package services.capacityforecast;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests of the capacity cube and of its cells.
+ */
+public class CapacityCubeTest {
+
+    private static final double DELTA = 1e-9;
+
+    private static final int JANUARY_2016 = 2016 * 12;
+
+    @Test
+    public void addExtendsTheMonthsInBothDirections() {
+        CapacityCell cell = new CapacityCell(CapacityCell.Type.ACTOR, true, 1L);
+
+        cell.add(2016, 5, 2.0);
+        cell.add(2016, 2, 1.0);
+        cell.add(2016, 7, 3.0);
+        cell.add(2016, 5, 0.5);
+        cell.add(null, 5, 1.0);
+
+        assertEquals(JANUARY_2016 + 2, cell.firstMonth);
+        assertArrayEquals(new double[] { 1.0, 0.0, 0.0, 2.5, 0.0, 3.0 }, cell.days, DELTA);
+    }
+
+    @Test
+    public void addIntervalSharesTheDaysByCalendarDay() {
+        CapacityCell cell = new CapacityCell(CapacityCell.Type.COMPETENCY, true, 1L);
+
+        // 31 days in January and 29 days in February 2016
+        cell.addInterval(date(2016, Calendar.JANUARY, 1), date(2016, Calendar.FEBRUARY, 29), 60.0);
+
+        assertEquals(JANUARY_2016, cell.firstMonth);
+        assertArrayEquals(new double[] { 31.0, 29.0 }, cell.days, DELTA);
+    }
+
+    @Test
+    public void addToKeepsOnlyTheMonthsOfTheForecast() {
+        CapacityCell cell = new CapacityCell(CapacityCell.Type.ACTOR, true, 1L);
+        cell.add(2015, 11, 1.0);
+        cell.add(2016, 0, 2.0);
+        cell.add(2016, 11, 3.0);
+        cell.add(2017, 0, 4.0);
+
+        Map<Long, double[]> planned = new HashMap<>();
+        cell.addTo(planned, 1L, JANUARY_2016, true);
+        cell.addTo(planned, 2L, JANUARY_2016, false);
+        cell.addTo(planned, null, JANUARY_2016, true);
+
+        assertEquals(Collections.singleton(1L), planned.keySet());
+        double[] expected = new double[ICapacityForecastService.NB_MONTHS];
+        expected[0] = 2.0;
+        expected[11] = 3.0;
+        assertArrayEquals(expected, planned.get(1L), DELTA);
+    }
+
+    @Test
+    public void getOverlapCountsTheDaysOfTheMonth() {
+        long start = CapacityCell.getDayNumber(date(2016, Calendar.JANUARY, 20));
+        long end = CapacityCell.getDayNumber(date(2016, Calendar.MARCH, 10));
+
+        assertEquals(12, CapacityCell.getOverlap(start, end, 2016, Calendar.JANUARY));
+        assertEquals(29, CapacityCell.getOverlap(start, end, 2016, Calendar.FEBRUARY));
+        assertEquals(10, CapacityCell.getOverlap(start, end, 2016, Calendar.MARCH));
+        assertEquals(0, CapacityCell.getOverlap(start, end, 2016, Calendar.APRIL));
+        assertEquals(0, CapacityCell.getDayNumber(1970, 0, 1));
+    }
+
+    @Test
+    public void plannedByActorIgnoresTheOtherAllocationsAndTheUnconfirmedOnes() {
+        CapacityCube cube = new CapacityCube();
+        cube.putActor(1L, 10L, 100L);
+        cube.putPortfolioEntryCells(1000L, Arrays.asList(cell(CapacityCell.Type.ACTOR, true, 1L, 5.0), cell(CapacityCell.Type.ACTOR, false, 1L, 2.0),
+                cell(CapacityCell.Type.ORG_UNIT, true, 10L, 7.0)));
+        cube.putActorCells(1L, Collections.singletonList(cell(CapacityCell.Type.ACTIVITY, true, 1L, 3.0)));
+
+        Map<Long, double[]> planned = cube.getPlannedByActor(Collections.singletonList(1000L), false, JANUARY_2016);
+        Map<Long, double[]> confirmed = cube.getPlannedByActor(Collections.singletonList(1000L), true, JANUARY_2016);
+
+        assertEquals(Collections.singleton(1L), planned.keySet());
+        assertEquals(7.0, planned.get(1L)[0], DELTA);
+        assertEquals(5.0, confirmed.get(1L)[0], DELTA);
+    }
+
+    @Test
+    public void plannedByOrgUnitResolvesTheOrgUnitOfTheActors() {
+        CapacityCube cube = new CapacityCube();
+        cube.putActor(1L, 10L, 100L);
+        cube.putActor(2L, 20L, 100L);
+        cube.putPortfolioEntryCells(1000L, Arrays.asList(cell(CapacityCell.Type.ACTOR, true, 1L, 5.0), cell(CapacityCell.Type.ORG_UNIT, true, 10L, 7.0),
+                cell(CapacityCell.Type.COMPETENCY, true, 100L, 11.0)));
+        cube.putPortfolioEntryCells(2000L, Collections.singletonList(cell(CapacityCell.Type.ACTOR, true, 2L, 13.0)));
+        cube.putActorCells(1L, Collections.singletonList(cell(CapacityCell.Type.ACTIVITY, true, 1L, 3.0)));
+        cube.putActorCells(2L, Collections.singletonList(cell(CapacityCell.Type.ACTIVITY, true, 2L, 17.0)));
+
+        Map<Long, double[]> planned = cube.getPlannedByOrgUnit(Collections.singletonList(1000L), false, JANUARY_2016);
+
+        // the activities only complete the org units allocated to the entries
+        assertEquals(Collections.singleton(10L), planned.keySet());
+        assertEquals(15.0, planned.get(10L)[0], DELTA);
+    }
+
+    @Test
+    public void plannedByCompetencyUsesTheUniformSpreadOfTheActorsAndActivities() {
+        CapacityCube cube = new CapacityCube();
+        cube.putActor(1L, 10L, 100L);
+        cube.putPortfolioEntryCells(1000L, Arrays.asList(cell(CapacityCell.Type.ACTOR, true, 1L, 5.0), cell(CapacityCell.Type.ACTOR_INTERVAL, true, 1L, 4.0),
+                cell(CapacityCell.Type.COMPETENCY, true, 100L, 11.0)));
+        cube.putActorCells(1L, Arrays.asList(cell(CapacityCell.Type.ACTIVITY, true, 1L, 3.0), cell(CapacityCell.Type.ACTIVITY_INTERVAL, true, 1L, 2.0)));
+
+        Map<Long, double[]> byCompetency = cube.getPlannedByCompetency(Collections.singletonList(1000L), false, JANUARY_2016);
+        Map<Long, double[]> byOrgUnit = cube.getPlannedByOrgUnit(Collections.singletonList(1000L), false, JANUARY_2016);
+        Map<Long, double[]> byActor = cube.getPlannedByActor(Collections.singletonList(1000L), false, JANUARY_2016);
+
+        assertEquals(17.0, byCompetency.get(100L)[0], DELTA);
+        assertEquals(8.0, byOrgUnit.get(10L)[0], DELTA);
+        assertEquals(5.0, byActor.get(1L)[0], DELTA);
+    }
+
+    @Test
+    public void cellDetailsSplitTheDaysOfTheMonthByActorAndByEntry() {
+        CapacityCube cube = new CapacityCube();
+        cube.putActor(1L, 10L, 100L);
+        cube.putActor(2L, 20L, 100L);
+        cube.putPortfolioEntryCells(1000L, Arrays.asList(cell(CapacityCell.Type.ACTOR, true, 1L, 5.0), cell(CapacityCell.Type.ACTOR, false, 1L, 2.0),
+                cell(CapacityCell.Type.ORG_UNIT, true, 10L, 7.0), cell(CapacityCell.Type.ORG_UNIT, true, 20L, 19.0)));
+        cube.putPortfolioEntryCells(2000L, Arrays.asList(cell(CapacityCell.Type.ACTOR, true, 2L, 13.0), cell(CapacityCell.Type.ORG_UNIT, false, 10L, 11.0)));
+        cube.putActorCells(1L, Arrays.asList(cell(CapacityCell.Type.ACTIVITY, true, 1L, 3.0), cell(CapacityCell.Type.ACTIVITY_INTERVAL, true, 1L, 3.0)));
+
+        CapacityCellDetails details = cube.getCellDetails(Arrays.asList(1000L, 2000L), CapacityCell.Type.ORG_UNIT, 10L, JANUARY_2016);
+
+        assertEquals(7.0, details.getGenericDays().getConfirmed(), DELTA);
+        assertEquals(11.0, details.getGenericDays().getNotConfirmed(), DELTA);
+        assertEquals(Collections.singleton(1L), details.getNominativeDaysByActor().keySet());
+        assertEquals(5.0, details.getNominativeDaysByActor().get(1L).getConfirmed(), DELTA);
+        assertEquals(2.0, details.getNominativeDaysByActor().get(1L).getNotConfirmed(), DELTA);
+        assertEquals(3.0, details.getActivityDaysByActor().get(1L), DELTA);
+        assertEquals(Collections.singleton(1000L), details.getNominativeDaysByPortfolioEntry().keySet());
+        assertEquals(11.0, details.getGenericDaysByPortfolioEntry().get(2000L).getNotConfirmed(), DELTA);
+        assertTrue(cube.getCellDetails(Arrays.asList(1000L, 2000L), CapacityCell.Type.ORG_UNIT, 10L, JANUARY_2016 + 1).getGenericDaysByPortfolioEntry()
+                .isEmpty());
+    }
+
+    @Test
+    public void plannedByOrgUnitFollowsAChangeOfTheActor() {
+        CapacityCube cube = new CapacityCube();
+        cube.putActor(1L, 10L, 100L);
+        cube.putPortfolioEntryCells(1000L, Arrays.asList(cell(CapacityCell.Type.ACTOR, true, 1L, 5.0), cell(CapacityCell.Type.ACTOR_INTERVAL, true, 1L, 5.0)));
+
+        cube.putActor(1L, 20L, 200L);
+
+        Map<Long, double[]> byOrgUnit = cube.getPlannedByOrgUnit(Collections.singletonList(1000L), false, JANUARY_2016);
+        Map<Long, double[]> byCompetency = cube.getPlannedByCompetency(Collections.singletonList(1000L), false, JANUARY_2016);
+
+        assertEquals(Collections.singleton(20L), byOrgUnit.keySet());
+        assertEquals(Collections.singleton(200L), byCompetency.keySet());
+    }
+
+    @Test
+    public void putWithoutCellsRemovesTheEntry() {
+        CapacityCube cube = new CapacityCube();
+        cube.putActor(1L, 10L, null);
+        cube.putPortfolioEntryCells(1000L, Collections.singletonList(cell(CapacityCell.Type.ACTOR, true, 1L, 5.0)));
+
+        cube.putPortfolioEntryCells(1000L, Collections.emptyList());
+
+        assertTrue(cube.getPlannedByActor(Collections.singletonList(1000L), false, JANUARY_2016).isEmpty());
+        assertTrue(cube.hasActor(1L));
+        assertFalse(cube.hasActor(2L));
+        assertTrue(cube.getPlannedByCompetency(Collections.singletonList(1000L), false, JANUARY_2016).isEmpty());
+    }
+
+    /**
+     * Create a cell with days in January 2016.
+     */
+    private static CapacityCell cell(CapacityCell.Type type, boolean isConfirmed, Long resourceId, double days) {
+        CapacityCell cell = new CapacityCell(type, isConfirmed, resourceId);
+        cell.add(2016, 0, days);
+        return cell;
+    }
+
+    /**
+     * Create a date.
+     */
+    private static Date date(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month, day);
+        return calendar.getTime();
+    }
+
+}
@@ -0,0 +1,275 @@
+package services.kpi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.After;
+import org.junit.Test;
+
+import framework.services.account.IPreferenceManagerPlugin;
+import framework.services.kpi.Kpi;
+import framework.services.kpi.Kpi.DataType;
+import framework.services.script.IScriptService;
+import models.framework_models.kpi.KpiData;
+import play.mvc.Http;
+
+/**
+ * Tests of the abstract KPI batch runner.
+ */
+public class AbstractKpiBatchRunnerTest {
+
+    @After
+    public void tearDown() {
+        Http.Context.current.remove();
+    }
+
+    @Test
+    public void computeAllSplitsTheIdsInChunks() {
+        TestRunner runner = new TestRunner();
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 1201; id++) {
+            ids.add(id);
+        }
+
+        Map<Long, KpiValues> values = runner.computeAll(null, null, null, ids);
+
+        assertEquals(1201, values.size());
+        assertEquals(Arrays.asList(500, 500, 201), runner.chunkSizes);
+        assertEquals(new BigDecimal(1201), values.get(1201L).getMain());
+        assertEquals(new BigDecimal(12010), values.get(1201L).getAdditional1());
+    }
+
+    @Test
+    public void computeMainOutsideRequestComputesOnlyTheMainValue() {
+        TestRunner runner = new TestRunner();
+
+        assertEquals(new BigDecimal(7), runner.computeMain(null, null, null, 7L));
+        assertEquals(new BigDecimal(700), runner.computeAdditional2(null, null, null, 7L));
+
+        assertEquals(0, runner.chunkSizes.size());
+        assertEquals(Arrays.asList(DataType.MAIN, DataType.ADDITIONAL2), runner.computedDataTypes);
+    }
+
+    @Test
+    public void missingValueOfTheSingleValuePathIsZero() {
+        TestRunner runner = new TestRunner();
+
+        assertEquals(BigDecimal.ZERO, runner.computeAdditional1(null, null, null, TestRunner.MISSING_ID));
+    }
+
+    @Test
+    public void preparedBatchIsComputedOnceByRunner() {
+        Http.Context.current.set(new Http.Context(new Http.RequestBuilder()));
+        TestRunner runner = new TestRunner();
+
+        AbstractKpiBatchRunner.prepareBatch(Arrays.asList(1L, 2L, 3L));
+
+        assertEquals(new BigDecimal(1), runner.computeMain(null, null, null, 1L));
+        assertEquals(new BigDecimal(20), runner.computeAdditional1(null, null, null, 2L));
+        assertEquals(new BigDecimal(300), runner.computeAdditional2(null, null, null, 3L));
+        assertEquals(new BigDecimal(3), runner.computeMain(null, null, null, 3L));
+
+        assertEquals(Arrays.asList(3), runner.chunkSizes);
+        assertEquals(0, runner.computedDataTypes.size());
+
+        // an object out of the batch is computed alone
+        assertEquals(new BigDecimal(4), runner.computeMain(null, null, null, 4L));
+        assertEquals(Arrays.asList(DataType.MAIN), runner.computedDataTypes);
+
+        // another runner computes its own batch
+        TestRunner otherRunner = new OtherTestRunner();
+        assertEquals(new BigDecimal(2), otherRunner.computeMain(null, null, null, 2L));
+        assertEquals(Arrays.asList(3), otherRunner.chunkSizes);
+    }
+
+    @Test
+    public void newBatchReplacesThePreparedOne() {
+        Http.Context.current.set(new Http.Context(new Http.RequestBuilder()));
+        TestRunner runner = new TestRunner();
+
+        AbstractKpiBatchRunner.prepareBatch(Arrays.asList(1L, 2L));
+        runner.computeMain(null, null, null, 1L);
+        AbstractKpiBatchRunner.prepareBatch(Arrays.asList(5L, 6L, 7L));
+        runner.computeMain(null, null, null, 5L);
+        runner.computeMain(null, null, null, 6L);
+
+        assertEquals(Arrays.asList(2, 3), runner.chunkSizes);
+    }
+
+    @Test
+    public void prepareBatchOutsideRequestIsIgnored() {
+        TestRunner runner = new TestRunner();
+
+        AbstractKpiBatchRunner.prepareBatch(Arrays.asList(1L, 2L));
+        runner.computeMain(null, null, null, 1L);
+
+        assertEquals(0, runner.chunkSizes.size());
+        assertEquals(Arrays.asList(DataType.MAIN), runner.computedDataTypes);
+    }
+
+    @Test
+    public void nullValueOfTheBatchIsKept() {
+        Http.Context.current.set(new Http.Context(new Http.RequestBuilder()));
+        TestRunner runner = new TestRunner();
+
+        AbstractKpiBatchRunner.prepareBatch(Arrays.asList(TestRunner.NULL_MAIN_ID));
+
+        assertNull(runner.computeMain(null, null, null, TestRunner.NULL_MAIN_ID));
+    }
+
+    @Test
+    public void valuesOfAnEvaluationOutsideRequestAreComputedOnce() {
+        SharedTestRunner runner = new SharedTestRunner();
+
+        assertEquals(new BigDecimal(11), runner.computeMain(null, null, null, 11L));
+        assertEquals(new BigDecimal(110), runner.computeAdditional1(null, null, null, 11L));
+        assertEquals(new BigDecimal(1100), runner.computeAdditional2(null, null, null, 11L));
+        assertEquals(Arrays.asList(1), runner.chunkSizes);
+
+        // a value requested again starts a new evaluation
+        assertEquals(new BigDecimal(11), runner.computeMain(null, null, null, 11L));
+        assertEquals(Arrays.asList(1, 1), runner.chunkSizes);
+    }
+
+    @Test
+    public void evaluationOutsideRequestIsTheOneOfTheObjectAndTheRunner() {
+        SharedTestRunner runner = new SharedTestRunner();
+
+        runner.computeMain(null, null, null, 12L);
+        assertEquals(new BigDecimal(130), runner.computeAdditional1(null, null, null, 13L));
+        assertEquals(Arrays.asList(1, 1), runner.chunkSizes);
+
+        SharedTestRunner otherRunner = new OtherSharedTestRunner();
+        assertEquals(new BigDecimal(1300), otherRunner.computeAdditional2(null, null, null, 13L));
+        assertEquals(Arrays.asList(1), otherRunner.chunkSizes);
+    }
+
+    @Test
+    public void valuesOutOfTheBatchAreKeptInTheRequest() {
+        Http.Context.current.set(new Http.Context(new Http.RequestBuilder()));
+        SharedTestRunner runner = new SharedTestRunner();
+
+        assertEquals(new BigDecimal(14), runner.computeMain(null, null, null, 14L));
+        assertEquals(new BigDecimal(1400), runner.computeAdditional2(null, null, null, 14L));
+        assertEquals(new BigDecimal(1400), runner.computeAdditional2(null, null, null, 14L));
+        assertEquals(new BigDecimal(15), runner.computeMain(null, null, null, 15L));
+
+        assertEquals(Arrays.asList(1, 1), runner.chunkSizes);
+    }
+
+    /**
+     * A runner that returns id, id * 10 and id * 100 and records its calls.
+     */
+    private static class TestRunner extends AbstractKpiBatchRunner {
+
+        private static final Long MISSING_ID = -1L;
+        private static final Long NULL_MAIN_ID = -2L;
+
+        private final List<Integer> chunkSizes = new ArrayList<>();
+        private final List<DataType> computedDataTypes = new ArrayList<>();
+
+        @Override
+        protected Map<Long, KpiValues> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+                List<Long> objectIds) {
+            this.chunkSizes.add(objectIds.size());
+            Map<Long, KpiValues> values = new HashMap<>();
+            for (Long objectId : objectIds) {
+                if (NULL_MAIN_ID.equals(objectId)) {
+                    values.put(objectId, new KpiValues(null, BigDecimal.ZERO, BigDecimal.ZERO));
+                } else {
+                    values.put(objectId, new KpiValues(new BigDecimal(objectId), new BigDecimal(objectId * 10), new BigDecimal(objectId * 100)));
+                }
+            }
+            return values;
+        }
+
+        @Override
+        protected Map<Long, BigDecimal> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+                DataType dataType, List<Long> objectIds) {
+            this.computedDataTypes.add(dataType);
+            Map<Long, BigDecimal> values = new HashMap<>();
+            for (Long objectId : objectIds) {
+                if (!MISSING_ID.equals(objectId)) {
+                    values.put(objectId, new BigDecimal(objectId * (dataType == DataType.MAIN ? 1 : dataType == DataType.ADDITIONAL1 ? 10 : 100)));
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public String link(Long objectId) {
+            return null;
+        }
+
+        @Override
+        public Pair<Date, Date> getTrendPeriod(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
+            return null;
+        }
+
+        @Override
+        public Pair<String, List<KpiData>> getStaticTrendLine(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+                Long objectId) {
+            return null;
+        }
+
+    }
+
+    /**
+     * Another runner class (the batch values are kept by runner class).
+     */
+    private static class OtherTestRunner extends TestRunner {
+    }
+
+    /**
+     * A runner that computes all the values of an object at once (it doesn't
+     * override the single-value path).
+     */
+    private static class SharedTestRunner extends AbstractKpiBatchRunner {
+
+        private final List<Integer> chunkSizes = new ArrayList<>();
+
+        @Override
+        protected Map<Long, KpiValues> computeChunk(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+                List<Long> objectIds) {
+            this.chunkSizes.add(objectIds.size());
+            Map<Long, KpiValues> values = new HashMap<>();
+            for (Long objectId : objectIds) {
+                values.put(objectId, new KpiValues(new BigDecimal(objectId), new BigDecimal(objectId * 10), new BigDecimal(objectId * 100)));
+            }
+            return values;
+        }
+
+        @Override
+        public String link(Long objectId) {
+            return null;
+        }
+
+        @Override
+        public Pair<Date, Date> getTrendPeriod(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi, Long objectId) {
+            return null;
+        }
+
+        @Override
+        public Pair<String, List<KpiData>> getStaticTrendLine(IPreferenceManagerPlugin preferenceManagerPlugin, IScriptService scriptService, Kpi kpi,
+                Long objectId) {
+            return null;
+        }
+
+    }
+
+    /**
+     * Another runner class (the evaluations are kept by runner class).
+     */
+    private static class OtherSharedTestRunner extends SharedTestRunner {
+    }
+
+}
@@ -0,0 +1,111 @@
+package services.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests of the split of the recipients of a bulk notification and of the
+ * sending of its e-mails.
+ */
+public class BulkNotificationServiceImplTest {
+
+    @Test
+    public void getChunksSplitsTheUidsInTheirOrder() {
+        List<List<String>> chunks = BulkNotificationServiceImpl.getChunks(Arrays.asList("a", "b", "c", "d", "e"), 2);
+
+        assertEquals(Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("c", "d"), Collections.singletonList("e")), chunks);
+    }
+
+    @Test
+    public void getChunksIgnoresTheBlankAndDuplicatedUids() {
+        List<List<String>> chunks = BulkNotificationServiceImpl.getChunks(Arrays.asList("a", null, "b", " ", "a", "", "c", "b"), 2);
+
+        assertEquals(Arrays.asList(Arrays.asList("a", "b"), Collections.singletonList("c")), chunks);
+    }
+
+    @Test
+    public void getChunksOfNoUidIsEmpty() {
+        assertEquals(Collections.emptyList(), BulkNotificationServiceImpl.getChunks(Arrays.asList(null, ""), 10));
+    }
+
+    @Test
+    public void getChunksReturnsIndependentCopies() {
+        List<String> uids = Arrays.asList("a", "b", "c");
+        List<List<String>> chunks = BulkNotificationServiceImpl.getChunks(uids, 10);
+        uids.set(0, "z");
+
+        assertEquals(Collections.singletonList(Arrays.asList("a", "b", "c")), chunks);
+    }
+
+    @Test
+    public void sendEmailsSendsAnEmailToEachRecipient() {
+        List<String> sentUids = new ArrayList<>();
+
+        int sent = BulkNotificationServiceImpl.sendEmails(Arrays.asList("a", "b", "c"), uid -> sentUids.add(uid), "title");
+
+        assertEquals(3, sent);
+        assertEquals(Arrays.asList("a", "b", "c"), sentUids);
+    }
+
+    @Test
+    public void sendEmailsContinuesAfterAFailureOrARecipientWithoutAddress() {
+        List<String> sentUids = new ArrayList<>();
+
+        int sent = BulkNotificationServiceImpl.sendEmails(Arrays.asList("a", "b", "c", "d"), uid -> {
+            if (uid.equals("b")) {
+                throw new IllegalStateException("unreachable mail server");
+            }
+            if (uid.equals("c")) {
+                return false;
+            }
+            return sentUids.add(uid);
+        }, "title");
+
+        assertEquals(2, sent);
+        assertEquals(Arrays.asList("a", "d"), sentUids);
+    }
+
+    @Test
+    public void createExecutorSendsInTheCallerWhenTheQueueIsFull() throws InterruptedException {
+        ThreadPoolExecutor executor = BulkNotificationServiceImpl.createExecutor(1, 1);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch started = new CountDownLatch(1);
+
+            // the thread is busy and the queue is full
+            executor.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            executor.execute(() -> {
+            });
+
+            AtomicReference<Thread> sendingThread = new AtomicReference<>();
+            executor.execute(() -> sendingThread.set(Thread.currentThread()));
+
+            assertSame(Thread.currentThread(), sendingThread.get());
+            release.countDown();
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package services.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the text index of the search.
+ */
+public class TextIndexTest {
+
+    private TextIndex index;
+
+    @Before
+    public void setUp() {
+        index = new TextIndex();
+        index.put(1L, Arrays.asList("PE-0123", null), Collections.singletonList("Migration of the ERP"));
+        index.put(2L, Arrays.asList("PE-0456", "REF-123"), Collections.singletonList("R\u00e9seau de l'entreprise"));
+        index.put(3L, Collections.singletonList("123"), Collections.singletonList("Data center"));
+    }
+
+    @Test
+    public void searchMatchesASubTextOfTheValues() {
+        assertEquals(Arrays.asList(3L, 1L, 2L), index.search("*123*"));
+        assertEquals(Collections.singletonList(1L), index.search("*erp*"));
+    }
+
+    @Test
+    public void searchRespectsTheWildCards() {
+        assertEquals(Collections.singletonList(1L), index.search("pe*23"));
+        assertEquals(Arrays.asList(1L, 2L), index.search("pe-0%"));
+        assertEquals(Collections.singletonList(1L), index.search("*migration*erp*"));
+        assertEquals(Collections.emptyList(), index.search("*erp*migration*"));
+        assertEquals(Collections.emptyList(), index.search("migration"));
+    }
+
+    @Test
+    public void searchIgnoresTheCaseAndTheAccents() {
+        assertEquals(Collections.singletonList(2L), index.search("RESEAU*"));
+    }
+
+    @Test
+    public void searchRanksAnExactCodeFirstThenTheValuesStartingWithThePattern() {
+        index.put(4L, Collections.singletonList("X-123"), Collections.singletonList("123 project"));
+
+        assertEquals(Arrays.asList(3L, 4L, 1L, 2L), index.search("*123*"));
+    }
+
+    @Test
+    public void searchWithOnlyWildCardsIsNotRestricted() {
+        assertNull(index.search("*"));
+        assertNull(index.search(" % "));
+        assertNull(index.search(null));
+    }
+
+    @Test
+    public void putReplacesAndRemoveDeletesAnObject() {
+        index.put(1L, Collections.singletonList("PE-0789"), Collections.singletonList("Migration of the CRM"));
+        index.remove(3L);
+
+        assertEquals(Collections.singletonList(2L), index.search("*123*"));
+        assertEquals(Collections.singletonList(1L), index.search("*crm"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void patternMatchesTheWholeValue() {
+        TextIndex.TextPattern pattern = TextIndex.TextPattern.parse("ab*ba");
+
+        assertFalse(pattern.matches("aba"));
+        assertTrue(pattern.matches("abba"));
+        assertTrue(pattern.matches("ab-x-ba"));
+        assertFalse(pattern.matches("ab-x-bax"));
+    }
+
+}
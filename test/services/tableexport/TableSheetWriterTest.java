@@ -0,0 +1,39 @@
+package services.tableexport;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests of the text of the formatted values written into the exported
+ * workbook.
+ */
+public class TableSheetWriterTest {
+
+    @Test
+    public void getTextKeepsAPlainValue() {
+        assertEquals("12.5", TableSheetWriter.getText("12.5"));
+    }
+
+    @Test
+    public void getTextRemovesTheTags() {
+        assertEquals("Project A", TableSheetWriter.getText("<a href=\"/portfolio-entry/1\"><span class=\"bold\">Project A</span></a>"));
+    }
+
+    @Test
+    public void getTextUnescapesTheEntities() {
+        assertEquals("R&D <core>", TableSheetWriter.getText("R&amp;D &lt;core&gt;"));
+    }
+
+    @Test
+    public void getTextWritesTheLineBreaksAsNewLines() {
+        assertEquals("first\nsecond", TableSheetWriter.getText(" first<br/>second<BR> "));
+    }
+
+    @Test
+    public void getTextOfNoValueIsEmpty() {
+        assertEquals("", TableSheetWriter.getText(null));
+        assertEquals("", TableSheetWriter.getText("<span class=\"glyphicon glyphicon-ok\"></span>"));
+    }
+
+}